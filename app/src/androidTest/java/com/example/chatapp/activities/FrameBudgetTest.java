@@ -0,0 +1,189 @@
+package com.example.chatapp.activities;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.view.FrameMetrics;
+import android.view.Window;
+import android.widget.EditText;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.chatapp.R;
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackendProvider;
+import com.example.chatapp.backend.InMemoryChatBackend;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.utilities.Constants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Drives sign-in, the user directory and a long chat on a device over an in-memory backend,
+ * and fails if any frame after the first one of a screen misses its budget.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameBudgetTest {
+
+    private static final String PASSWORD = "secret";
+
+    /**
+     * Messages in the chat, enough to scroll through several screens.
+     */
+    private static final int MESSAGES = 300;
+
+    /**
+     * Number of refresh intervals a frame may take; a frame missing two vsyncs is a visible stutter.
+     */
+    private static final int BUDGET_INTERVALS = 2;
+
+    private final HandlerThread metricsThread = new HandlerThread("frame-metrics");
+    private final List<String> slowFrames = new ArrayList<>();
+
+    private User alice;
+    private User bob;
+
+    @Before
+    public void setUp() {
+        metricsThread.start();
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        ChatBackendProvider.set(backend);
+        alice = signUp(backend, "Alice", "alice@example.com");
+        bob = signUp(backend, "Bob", "bob@example.com");
+        for (int i = 0; i < MESSAGES; i++) {
+            ChatMessage message = new ChatMessage();
+            message.senderId = i % 2 == 0 ? alice.id : bob.id;
+            message.receiverId = i % 2 == 0 ? bob.id : alice.id;
+            message.message = "Message " + i;
+            backend.sendMessage(message, failOnError());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        metricsThread.quitSafely();
+    }
+
+    @Test
+    public void signInDirectoryAndChatStayWithinFrameBudget() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        try (ActivityScenario<SignInActivity> signIn = ActivityScenario.launch(SignInActivity.class)) {
+            signIn.onActivity(activity -> {
+                record(activity);
+                ((EditText) activity.findViewById(R.id.inputEmail)).setText(alice.email);
+                ((EditText) activity.findViewById(R.id.inputPassword)).setText(PASSWORD);
+                activity.findViewById(R.id.buttonSignIn).performClick();
+            });
+            settle();
+        }
+
+        try (ActivityScenario<userActivity> users = ActivityScenario.launch(userActivity.class)) {
+            users.onActivity(this::record);
+            settle();
+        }
+
+        Intent chat = new Intent(context, ChatActivity.class).putExtra(Constants.KEY_USER, bob);
+        try (ActivityScenario<ChatActivity> scenario = ActivityScenario.launch(chat)) {
+            scenario.onActivity(this::record);
+            settle();
+            scrollTo(scenario, 0); // Back through the history
+            scrollTo(scenario, MESSAGES - 1); // And down again
+            scenario.onActivity(activity -> {
+                ((EditText) activity.findViewById(R.id.inputMessage)).setText("Hello Bob");
+                activity.findViewById(R.id.layoutSend).performClick();
+            });
+            settle();
+        }
+
+        synchronized (slowFrames) {
+            assertTrue("Frames over budget: " + slowFrames, slowFrames.isEmpty());
+        }
+    }
+
+    /**
+     * Records the frames of an activity over its budget, skipping the first frame, which measures the screen opening.
+     */
+    private void record(Activity activity) {
+        float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        long budgetNanos = (long) (BUDGET_INTERVALS * 1e9 / refreshRate);
+        String screen = activity.getClass().getSimpleName();
+        activity.getWindow().addOnFrameMetricsAvailableListener(
+                (Window window, FrameMetrics metrics, int dropCount) -> {
+                    long total = metrics.getMetric(FrameMetrics.TOTAL_DURATION);
+                    if (metrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 0 && total > budgetNanos) {
+                        synchronized (slowFrames) {
+                            slowFrames.add(String.format(Locale.ROOT, "%s %.1f ms (budget %.1f ms)",
+                                    screen, total / 1e6, budgetNanos / 1e6));
+                        }
+                    }
+                },
+                new Handler(metricsThread.getLooper()));
+    }
+
+    private static void scrollTo(ActivityScenario<ChatActivity> scenario, int position) {
+        scenario.onActivity(activity ->
+                ((RecyclerView) activity.findViewById(R.id.chatRecyclerView)).smoothScrollToPosition(position));
+        long deadline = SystemClock.uptimeMillis() + 10_000;
+        boolean[] scrolling = {true};
+        while (scrolling[0] && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(100);
+            scenario.onActivity(activity -> scrolling[0] = ((RecyclerView) activity
+                    .findViewById(R.id.chatRecyclerView)).getScrollState() != RecyclerView.SCROLL_STATE_IDLE);
+        }
+    }
+
+    /**
+     * Waits for the main thread, then a little longer for frames already rendering to be reported.
+     */
+    private static void settle() {
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        SystemClock.sleep(500);
+    }
+
+    private static User signUp(InMemoryChatBackend backend, String name, String email) {
+        User user = new User();
+        user.name = name;
+        user.email = email;
+        backend.signUp(user, PASSWORD, new Callback<User>() {
+            @Override
+            public void onSuccess(User result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                fail(exception.toString());
+            }
+        });
+        return user;
+    }
+
+    private static <T> Callback<T> failOnError() {
+        return new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                fail(exception.toString());
+            }
+        };
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * The ChatApplication class sets up process-wide services before the first activity starts,
+ * and passes the system's memory pressure on to the caches registered with the MemoryManager.
+ */
+package com.example.chatapp;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+
+import com.example.chatapp.backend.ChatBackendProvider;
+import com.example.chatapp.backend.OutboxProvider;
+import com.example.chatapp.memory.MemoryManager;
+import com.example.chatapp.memory.MemoryPressure;
+import com.example.chatapp.metrics.ScreenMetrics;
+import com.example.chatapp.metrics.StrictModeCollector;
+import com.example.chatapp.session.SessionStoreProvider;
+import com.example.chatapp.utilities.DeviceKeys;
+import com.example.chatapp.utilities.PresenceTracker;
+import com.example.chatapp.utilities.SyncWorker;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.PersistentCacheIndexManager;
+import com.google.firebase.firestore.PersistentCacheSettings;
+
+public class ChatApplication extends Application {
+
+    /**
+     * Size of Firestore's on-disk cache. Large enough for the user list, avatars
+     * included, and the recent history of the active conversations.
+     */
+    private static final long FIRESTORE_CACHE_SIZE_BYTES = 100L * 1024 * 1024;
+
+    /**
+     * Interval between presence heartbeats while the app is in the foreground,
+     * which is also the floor between two presence writes.
+     */
+    private static final long PRESENCE_HEARTBEAT_MILLIS = 60_000;
+
+    /**
+     * Called when the application is starting, before any activity has been created.
+     */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        StrictModeCollector.install(this); // Debug builds only: collect main-thread disk and decode work
+        SessionStoreProvider.init(this); // Start loading the session while Firestore is set up
+        OutboxProvider.init(this); // Start loading the messages still waiting to be sent
+        configureFirestore(); // Must run before anything else touches Firestore
+        DeviceKeys.load(this); // Read or create this device's encryption keys off the main thread
+        ChatBackendProvider.init(this); // Lets the backend use this device's encryption keys
+        ScreenMetrics.register(this); // Record screen open times and show the debug metrics overlay
+        PresenceTracker.register(this, PRESENCE_HEARTBEAT_MILLIS); // Keep the user online while in the foreground
+        SyncWorker.schedule(this); // Keep the cache warm in the background while charging or on Wi-Fi
+    }
+
+    /**
+     * Trims the registered caches as far as the trim level asks for.
+     *
+     * @param level The trim level, one of the ComponentCallbacks2 TRIM_MEMORY constants.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MemoryManager.get().onPressure(pressureOf(level));
+    }
+
+    /**
+     * Releases everything the caches can give back; only called on devices predating onTrimMemory levels.
+     */
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        MemoryManager.get().onPressure(MemoryPressure.CRITICAL);
+    }
+
+    /**
+     * Maps a trim level onto a memory pressure. Levels for a running app and for one in the
+     * background are interleaved, so they are compared by what they mean rather than by value.
+     */
+    private static MemoryPressure pressureOf(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return MemoryPressure.CRITICAL;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return MemoryPressure.LOW;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return MemoryPressure.MODERATE;
+        }
+        return MemoryPressure.HIDDEN;
+    }
+
+    /**
+     * Enables Firestore's persistent cache with an explicit size and lets the SDK
+     * create local indexes, so cached queries stay fast as the cache grows.
+     */
+    private void configureFirestore() {
+        FirebaseFirestore firestore = FirebaseFirestore.getInstance();
+        firestore.setFirestoreSettings(new FirebaseFirestoreSettings.Builder()
+                .setLocalCacheSettings(PersistentCacheSettings.newBuilder()
+                        .setSizeBytes(FIRESTORE_CACHE_SIZE_BYTES)
+                        .build())
+                .build());
+        PersistentCacheIndexManager indexManager = firestore.getPersistentCacheIndexManager();
+        if (indexManager != null) {
+            indexManager.enableIndexAutoCreation();
+        }
+    }
+}
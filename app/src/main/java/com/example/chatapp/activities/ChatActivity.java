@@ -2,37 +2,132 @@
  * ChatActivity class for the Chat App.
  * This activity is responsible for handling chat messages between users.
  * It initializes chat messages, listens for incoming messages, and manages sending messages.
+ * While visible it advances the user's read cursor to the newest message on screen, written at most
+ * once every few seconds, and shows when the receiver has seen the user's messages.
+ * Typing is announced through a throttle, at most one write per few seconds however fast the user types,
+ * and the receiver's typing and online states are shown until their expiry passes.
+ * Messages are ordered by their server-assigned sequence numbers; a gap in the numbers
+ * that does not close on its own is filled by fetching everything after the last contiguous one.
+ * Sent messages can be edited or unsent with a long press; each edit, unsend or removal is found
+ * by message ID and rebinds exactly one row.
+ * A group chat keeps the same single listener on the group's messages. Typing, presence and
+ * seen ticks are one-to-one features and are left out, since each would fan out to every member.
+ * Old history may be archived: only the messages after the archive are listened to, and each
+ * archive segment is loaded in a single read when the user scrolls to the top of what is shown.
  */
 package com.example.chatapp.activities;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.widget.EditText;
+import android.widget.PopupMenu;
+import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.chatapp.R;
 import com.example.chatapp.adapters.ChatAdapter;
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackend;
+import com.example.chatapp.backend.ChatBackendProvider;
+import com.example.chatapp.backend.DocumentSizes;
+import com.example.chatapp.backend.ExpiryListener;
+import com.example.chatapp.backend.MessageChange;
+import com.example.chatapp.backend.MessageListener;
+import com.example.chatapp.backend.OutboxProvider;
+import com.example.chatapp.backend.ReadCursorListener;
+import com.example.chatapp.backend.ReadPolicy;
+import com.example.chatapp.backend.Registration;
+import com.example.chatapp.backend.SendCallback;
 import com.example.chatapp.databinding.ActivityChatBinding;
+import com.example.chatapp.listeners.MessageActionListener;
+import com.example.chatapp.memory.MemoryManager;
+import com.example.chatapp.memory.MemoryPressure;
+import com.example.chatapp.memory.Trimmable;
+import com.example.chatapp.metrics.Counter;
+import com.example.chatapp.metrics.FrameTimer;
+import com.example.chatapp.metrics.Histogram;
+import com.example.chatapp.metrics.MetricNames;
+import com.example.chatapp.metrics.MetricsRegistry;
+import com.example.chatapp.modules.Archive;
 import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.Group;
 import com.example.chatapp.modules.User;
 import com.example.chatapp.utilities.Constants;
-import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentChange;
-import com.google.firebase.firestore.EventListener;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QuerySnapshot;
+import com.example.chatapp.utilities.DeviceKeys;
+import com.example.chatapp.utilities.ConversationIds;
+import com.example.chatapp.utilities.FrameCoalescer;
+import com.example.chatapp.utilities.MessageList;
+import com.example.chatapp.utilities.OutboxWorker;
+import com.example.chatapp.utilities.PresenceTracker;
+import com.example.chatapp.utilities.ReadCursor;
+import com.example.chatapp.utilities.ReadableDateFormat;
+import com.example.chatapp.utilities.SequenceTracker;
+import com.example.chatapp.utilities.StickToBottomScroller;
+import com.example.chatapp.utilities.Throttle;
+import com.example.chatapp.session.SessionStore;
+import com.example.chatapp.session.SessionStoreProvider;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class ChatActivity extends AppCompatActivity {
+    /**
+     * Time from tapping send to the server acknowledging the message.
+     */
+    private static final Histogram SEND_TO_ACK = MetricsRegistry.get().histogram(MetricNames.SEND_TO_ACK);
+
+    /**
+     * Time from a snapshot arriving to the adapter being notified.
+     */
+    private static final Histogram SNAPSHOT_TO_NOTIFY = MetricsRegistry.get().histogram(MetricNames.SNAPSHOT_TO_NOTIFY);
+
+    /**
+     * Time from a snapshot arriving to the updated rows being drawn.
+     */
+    private static final Histogram SNAPSHOT_TO_DRAW = MetricsRegistry.get().histogram(MetricNames.SNAPSHOT_TO_DRAW);
+
+    /**
+     * Counters of sent, queued, failed and received messages.
+     */
+    private static final Counter MESSAGES_SENT = MetricsRegistry.get().counter(MetricNames.MESSAGES_SENT);
+    private static final Counter MESSAGES_QUEUED = MetricsRegistry.get().counter(MetricNames.MESSAGES_QUEUED);
+    private static final Counter SEND_FAILURES = MetricsRegistry.get().counter(MetricNames.SEND_FAILURES);
+    private static final Counter MESSAGES_RECEIVED = MetricsRegistry.get().counter(MetricNames.MESSAGES_RECEIVED);
+
+    /**
+     * Counters of input edits and of the typing writes they were coalesced into.
+     */
+    private static final Counter TYPING_SIGNALS = MetricsRegistry.get().counter(MetricNames.TYPING_SIGNALS);
+    private static final Counter TYPING_WRITES = MetricsRegistry.get().counter(MetricNames.TYPING_WRITES);
+
+    /**
+     * Minimum time between two typing writes.
+     */
+    private static final long TYPING_FLOOR_MILLIS = 5000;
+
+    /**
+     * How long the typing state lasts after the last keystroke: one floor plus slack for the write to land.
+     */
+    private static final long TYPING_EXPIRY_MILLIS = TYPING_FLOOR_MILLIS + 2000;
+
+    /**
+     * How long a gap in the sequence numbers may stay open before the missing messages are fetched.
+     * Messages committed close together can arrive in separate snapshots, which closes most gaps.
+     */
+    private static final long GAP_GRACE_MILLIS = 1000;
+
     /**
      * Binding object for accessing views in the activity_chat.xml layout.
      */
@@ -44,9 +139,19 @@ public class ChatActivity extends AppCompatActivity {
     private User receiverUser;
 
     /**
-     * List to store chat messages.
+     * The group of a group chat, or null in a one-to-one chat.
      */
-    private List<ChatMessage> chatMessages;
+    private Group group;
+
+    /**
+     * Senders of received messages by user ID: the receiver, or the members of the group once loaded.
+     */
+    private final Map<String, User> senders = new HashMap<>();
+
+    /**
+     * Chat messages in sequence order, indexed by message ID.
+     */
+    private MessageList messageList;
 
     /**
      * Adapter for displaying chat messages in the RecyclerView.
@@ -54,14 +159,122 @@ public class ChatActivity extends AppCompatActivity {
     private ChatAdapter chatAdapter;
 
     /**
-     * PreferenceManager object to manage shared preferences for user session data.
+     * Store of the signed-in user's session.
+     */
+    private SessionStore sessionStore;
+
+    /**
+     * Backend used to send and listen for the messages of this conversation.
+     */
+    private ChatBackend chatBackend;
+
+    /**
+     * ID of the conversation between the current user and the receiver.
+     */
+    private String conversationId;
+
+    /**
+     * Registration of the snapshot listener on this conversation's messages.
+     */
+    private Registration messageRegistration;
+
+    /**
+     * Buffers incoming message changes until the next frame.
+     */
+    private final FrameCoalescer<MessageChange> messageUpdates = new FrameCoalescer<>(this::applyMessageChanges);
+
+    /**
+     * Keeps the chat pinned to the newest message while the user is at the bottom.
+     */
+    private StickToBottomScroller scroller;
+
+    /**
+     * The current user's read cursor in this conversation, written at most once per interval.
+     */
+    private ReadCursor readCursor;
+
+    /**
+     * Registration of the listener on the participants' read cursors.
+     */
+    private Registration readCursorRegistration;
+
+    /**
+     * Registration of the listener on the outbox, which keeps the pending rows in line with it.
+     */
+    private Registration outboxRegistration;
+
+    /**
+     * Whether the first messages were shown; pending rows go below them, so they wait until then.
+     */
+    private boolean messagesShown;
+
+    /**
+     * Whether the activity is in the foreground, i.e. new messages on screen are actually read.
+     */
+    private boolean visible;
+
+    /**
+     * Sequence numbers received so far; detects gaps and duplicates.
+     * Archived sequence numbers count as received, since archived messages are loaded separately.
+     */
+    private SequenceTracker sequenceTracker = new SequenceTracker();
+
+    /**
+     * How much of this conversation is archived; nothing until it has been loaded.
+     */
+    private Archive archive = Archive.NONE;
+
+    /**
+     * The next archive segment to load when the user scrolls up, or -1 once all are shown.
+     */
+    private int nextArchiveSegment = -1;
+
+    /**
+     * Whether an archive segment is being loaded.
+     */
+    private boolean loadingArchive;
+
+    /**
+     * Estimated size of the archived messages shown, which are given back under memory pressure.
      */
-    private PreferenceManager preferenceManager;
+    private long archivedBytes;
 
     /**
-     * Firebase Firestore database instance.
+     * Whether a fetch of the messages after a gap is running.
      */
-    private FirebaseFirestore database;
+    private boolean resyncing;
+
+    /**
+     * Fetches the messages after the last contiguous sequence number if a gap is still open.
+     */
+    private final Runnable resyncIfGap = this::resyncIfGap;
+
+    /**
+     * Coalesces keystrokes into typing writes.
+     */
+    private Throttle typingThrottle;
+
+    /**
+     * Registrations of the listeners on the receiver's typing and presence states.
+     */
+    private Registration typingRegistration;
+    private Registration presenceRegistration;
+
+    /**
+     * When the receiver's typing and online states end, or null if unknown.
+     */
+    private Date receiverTypingUntil;
+    private Date receiverOnlineUntil;
+
+    /**
+     * Refreshes the receiver's status once one of their states has expired.
+     */
+    private final Runnable updateStatus = this::updateStatus;
+
+    /**
+     * Writes a read cursor that was held back by the throttle once it is due.
+     */
+    private final Runnable flushReadCursor = () -> readCursor.flushIfDue();
 
     /**
      * Called when the activity is first created.
@@ -78,118 +291,760 @@ public class ChatActivity extends AppCompatActivity {
         loadReceiverDetails();  // Load receiver details from intent extras
         setListeners();  // Set click listeners for UI components
         init();  // Initialize chat components
-        listenMessage();  // Start listening for incoming messages
+        loadArchive();  // Find the archived history, then start listening for the messages after it
+        MemoryManager.get().register("chat.archived", MemoryPressure.MODERATE, archivedHistory);
+        if (group == null) {
+            listenReadCursors();  // Start listening for the receiver's read cursor
+            listenReceiverStatus();  // Start listening for the receiver's typing and presence
+        } else {
+            loadGroupMembers();  // Resolve the senders of group messages
+        }
+    }
+
+    /**
+     * Marks the messages on screen as read when the chat comes back to the foreground.
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        visible = true;
+        if (scroller.isAtBottom()) {
+            advanceReadCursor();
+        }
+    }
+
+    /**
+     * Writes the latest read cursor right away when the chat is left, so no receipt is lost.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        visible = false;
+        binding.getRoot().removeCallbacks(flushReadCursor);
+        readCursor.flush();
+        typingThrottle.cancel(); // Leaving the chat ends typing; the expiry does the rest
+    }
+
+    /**
+     * Stops listening for messages when the activity is destroyed.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (messageRegistration != null) {
+            messageRegistration.remove();
+        }
+        if (readCursorRegistration != null) {
+            readCursorRegistration.remove();
+        }
+        if (outboxRegistration != null) {
+            outboxRegistration.remove();
+        }
+        if (typingRegistration != null) {
+            typingRegistration.remove();
+        }
+        if (presenceRegistration != null) {
+            presenceRegistration.remove();
+        }
+        binding.textStatus.removeCallbacks(updateStatus);
+        binding.getRoot().removeCallbacks(resyncIfGap);
+        messageUpdates.cancel();
+        MemoryManager.get().unregister(archivedHistory);
     }
 
     /**
-     * Initializes chat messages list, chat adapter, and Firebase Firestore instance.
+     * Initializes chat messages list, chat adapter, and the chat backend.
      */
     private void init() {
-        preferenceManager = new PreferenceManager(getApplicationContext());
-        chatMessages = new ArrayList<>(); // Initialize chat messages list
+        sessionStore = SessionStoreProvider.get();
+        messageList = new MessageList(); // Initialize chat messages list
         chatAdapter = new ChatAdapter(
-                chatMessages,
-                getBitmapFromEncodedString(receiverUser.image),
-                preferenceManager.getString(Constants.KEY_USER_ID)
+                messageList.asList(),
+                senders,
+                group != null,
+                sessionStore.get().userId,
+                messageActionListener
         );
         binding.chatRecyclerView.setAdapter(chatAdapter); // Set adapter for RecyclerView
-        database = FirebaseFirestore.getInstance(); // Initialize Firestore instance
+        binding.chatRecyclerView.addOnScrollListener(readOnScroll);
+        binding.chatRecyclerView.addOnScrollListener(archiveOnScroll);
+        scroller = new StickToBottomScroller(binding.chatRecyclerView);
+        chatBackend = ChatBackendProvider.get();
+        conversationId = group != null ? group.id : ConversationIds.of(
+                sessionStore.get().userId, receiverUser.id);
+        if (group == null) {
+            DeviceKeys.setPeer(this, conversationId, receiverUser.publicKey); // Encrypts if the receiver has a key
+        }
+        readCursor = new ReadCursor(this::markRead, ReadCursor.DEFAULT_INTERVAL_MILLIS);
+        outboxRegistration = OutboxProvider.get().listen(this::syncPendingMessages);
+        typingThrottle = new Throttle(TYPING_FLOOR_MILLIS, this::writeTyping, binding.getRoot()::postDelayed);
+    }
+
+    /**
+     * Announces that the user is typing, until shortly after the last keystroke.
+     *
+     * @param lastSignalAgeMillis How long ago the last keystroke happened.
+     */
+    private void writeTyping(long lastSignalAgeMillis) {
+        TYPING_WRITES.increment();
+        Date expiresAt = new Date(System.currentTimeMillis() - lastSignalAgeMillis + TYPING_EXPIRY_MILLIS);
+        chatBackend.setTyping(conversationId, sessionStore.get().userId, expiresAt,
+                new Callback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        // Typing is best effort; the next keystrokes try again
+                    }
+                });
+    }
+
+    /**
+     * Signals the typing throttle on every edit that leaves text in the input.
+     */
+    private final TextWatcher typingWatcher = new TextWatcher() {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            if (s.length() > 0) {
+                TYPING_SIGNALS.increment();
+                typingThrottle.signal();
+            }
+        }
+    };
+
+    /**
+     * Advances the read cursor to the newest message when the user scrolls back to the bottom.
+     */
+    private final RecyclerView.OnScrollListener readOnScroll = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+            if (newState == RecyclerView.SCROLL_STATE_IDLE && scroller.isAtBottom()) {
+                advanceReadCursor();
+            }
+        }
+    };
+
+    /**
+     * Loads the next archive segment once the user scrolls to the oldest message shown.
+     */
+    private final RecyclerView.OnScrollListener archiveOnScroll = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            if (dy < 0) {
+                loadOlderIfAtTop();
+            }
+        }
+    };
+
+    /**
+     * Moves the read cursor to the newest message while the chat is visible.
+     * The cursor is written at most once per interval; a held-back value is written once it is due.
+     */
+    private void advanceReadCursor() {
+        int newest = messageList.size() - 1;
+        while (newest >= 0 && messageList.get(newest).pending) {
+            newest--; // The user's own queued messages, dated by the device's clock
+        }
+        if (!visible || newest < 0) {
+            return;
+        }
+        long delayMillis = readCursor.advance(messageList.get(newest).dateObject);
+        if (delayMillis > 0) {
+            binding.getRoot().removeCallbacks(flushReadCursor);
+            binding.getRoot().postDelayed(flushReadCursor, delayMillis);
+        }
+    }
+
+    /**
+     * Stores the read cursor; a failed write is retried by the next advance or visit.
+     *
+     * @param readUpTo The timestamp of the newest message the user has seen.
+     */
+    private void markRead(Date readUpTo) {
+        chatBackend.markRead(conversationId, sessionStore.get().userId, readUpTo,
+                new Callback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                    }
+                });
     }
 
     /**
      * Sends a message from the user to the receiver.
-     * The message is stored in the Firebase Firestore database.
+     * The message is stored in the conversation's messages subcollection; while offline it is queued
+     * in the outbox instead, and shown as a pending row until it is stored.
      */
     private void sendMessages() {
-        HashMap<String, Object> message = new HashMap<>();
-        // Add sender and receiver information to the message
-        message.put(Constants.KEY_SENDER_ID, preferenceManager.getString(Constants.KEY_USER_ID));
-        message.put(Constants.KEY_RECEIVER_ID, receiverUser.id);
-        // Add the message content and timestamp
-        message.put(Constants.KEY_MESSAGE, binding.inputMessage.getText().toString());
-        message.put(Constants.KEY_TIMESTAMP, new Date());
-        // Add the message to Firestore
-        database.collection(Constants.KEY_COLLECTION_CHAT).add(message);
+        long sendStartNanos = System.nanoTime();
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.senderId = sessionStore.get().userId;
+        if (group != null) {
+            chatMessage.conversationId = group.id;
+        } else {
+            chatMessage.receiverId = receiverUser.id;
+        }
+        chatMessage.message = binding.inputMessage.getText().toString();
+        chatBackend.sendMessage(chatMessage, new SendCallback() {
+            @Override
+            public void onSuccess(Void result) {
+                SEND_TO_ACK.record(System.nanoTime() - sendStartNanos);
+                MESSAGES_SENT.increment();
+            }
+
+            @Override
+            public void onQueued(String messageId) {
+                MESSAGES_QUEUED.increment(); // Not acknowledged yet; the outbox listener shows its row
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                SEND_FAILURES.increment();
+                showToast("Unable to send message");
+            }
+        });
         // Clear the input message box after sending
         binding.inputMessage.setText(null);
+        typingThrottle.cancel(); // The message itself ends typing
+
+    }
+
+    /**
+     * MessageActionListener offering to edit or unsend a long-pressed sent message,
+     * or to send again or discard one the outbox gave up.
+     */
+    private final MessageActionListener messageActionListener = (chatMessage, anchor) -> {
+        if (chatMessage.failed) {
+            PopupMenu popupMenu = new PopupMenu(this, anchor);
+            popupMenu.getMenu().add(R.string.send_again).setOnMenuItemClickListener(item -> {
+                OutboxProvider.get().retry(chatMessage.id);
+                OutboxWorker.schedule(this);
+                return true;
+            });
+            popupMenu.getMenu().add(R.string.discard).setOnMenuItemClickListener(item -> {
+                OutboxProvider.get().remove(chatMessage.id);
+                return true;
+            });
+            popupMenu.show();
+            return;
+        }
+        if (archive.contains(chatMessage)) {
+            showToast("Archived messages cannot be changed");
+            return;
+        }
+        PopupMenu popupMenu = new PopupMenu(this, anchor);
+        popupMenu.getMenu().add(R.string.edit).setOnMenuItemClickListener(item -> {
+            showEditDialog(chatMessage);
+            return true;
+        });
+        popupMenu.getMenu().add(R.string.unsend).setOnMenuItemClickListener(item -> {
+            unsendMessage(chatMessage);
+            return true;
+        });
+        popupMenu.show();
+    };
+
+    /**
+     * Shows a dialog to edit the text of a sent message.
+     * The row is updated once the change comes back through the message listener.
+     *
+     * @param chatMessage The message to edit.
+     */
+    private void showEditDialog(ChatMessage chatMessage) {
+        EditText input = new EditText(this);
+        input.setText(chatMessage.message);
+        input.setSelection(input.length());
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.edit_message)
+                .setView(input)
+                .setPositiveButton(R.string.save, (dialog, which) -> {
+                    String text = input.getText().toString().trim();
+                    if (text.isEmpty() || text.equals(chatMessage.message)) {
+                        return;
+                    }
+                    chatBackend.editMessage(chatMessage, text, new Callback<Void>() {
+                        @Override
+                        public void onSuccess(Void result) {
+                        }
+
+                        @Override
+                        public void onFailure(Exception exception) {
+                            showToast("Unable to edit message");
+                        }
+                    });
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    /**
+     * Unsends a sent message, which leaves a tombstone in its place until the tombstone expires.
+     *
+     * @param chatMessage The message to unsend.
+     */
+    private void unsendMessage(ChatMessage chatMessage) {
+        chatBackend.unsendMessage(chatMessage, new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                showToast("Unable to unsend message");
+            }
+        });
+    }
+
+    /**
+     * Loads how much of the conversation is archived before listening to the rest.
+     * The archive comes from the local cache when the conversation is there, so the listener is
+     * attached without a round trip in the usual case. Without the archive, every message is
+     * listened to, which is slower but complete.
+     */
+    private void loadArchive() {
+        chatBackend.getArchive(conversationId, new Callback<Archive>() {
+            @Override
+            public void onSuccess(Archive result) {
+                archive = result;
+                nextArchiveSegment = result.segmentCount - 1;
+                sequenceTracker = new SequenceTracker(result.lastSeq);
+                listenMessage();
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                listenMessage();
+            }
+        });
     }
 
     /**
-     * Listens for incoming messages between the sender and receiver.
-     * Updates the UI when new messages are added to the database.
+     * Listens for messages exchanged between the sender and receiver, after the archive if there is one.
+     * Both directions live in the same conversation, so a single listener is enough.
      */
     private void listenMessage() {
-        // Listen for messages sent by the current user to the receiver
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID,
-                        preferenceManager.getString(Constants.KEY_USER_ID))
-                .whereEqualTo(Constants.KEY_RECEIVER_ID, receiverUser.id)
-                .addSnapshotListener(eventListener);
-
-        // Listen for messages sent by the receiver to the current user
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID, receiverUser.id)
-                .whereEqualTo(Constants.KEY_RECEIVER_ID,
-                        preferenceManager.getString(Constants.KEY_USER_ID))
-                .addSnapshotListener(eventListener);
-    }
-
-    /**
-     * EventListener for monitoring changes in the Firestore chat collection.
-     * Adds new messages to the chat list and updates the UI.
-     */
-    private final EventListener<QuerySnapshot> eventListener = ((value, error) -> {
-        if (error != null) {
-            return; // Exit if there is an error
-        }
-        if (value != null) {
-            int count = chatMessages.size();
-            for (DocumentChange documentChange : value.getDocumentChanges()) {
-                if (documentChange.getType() == DocumentChange.Type.ADDED) {
-                    ChatMessage chatMessage = new ChatMessage();
-                    // Set chat message details from Firestore document
-                    chatMessage.senderId = documentChange.getDocument().getString(Constants.KEY_SENDER_ID);
-                    chatMessage.receiverId = documentChange.getDocument().getString(Constants.KEY_RECEIVER_ID);
-                    chatMessage.message = documentChange.getDocument().getString(Constants.KEY_MESSAGE);
-                    chatMessage.dateTime = getReadableDateTime(
-                            documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP));
-                    chatMessage.dateObject = documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP);
-                    chatMessages.add(chatMessage);
+        if (isDestroyed()) {
+            return;
+        }
+        messageRegistration = chatBackend.listenMessages(conversationId, archive.until, messageListener);
+    }
+
+    /**
+     * Loads the newest archive segment not shown yet if the oldest shown message is on screen.
+     */
+    private void loadOlderIfAtTop() {
+        if (loadingArchive || nextArchiveSegment < 0 || binding.chatRecyclerView.canScrollVertically(-1)) {
+            return;
+        }
+        loadingArchive = true;
+        int segment = nextArchiveSegment;
+        chatBackend.getArchivedMessages(conversationId, segment, new Callback<List<ChatMessage>>() {
+            @Override
+            public void onSuccess(List<ChatMessage> result) {
+                loadingArchive = false;
+                nextArchiveSegment = segment - 1;
+                prependArchivedMessages(result);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                loadingArchive = false; // The next scroll to the top tries again
+            }
+        });
+    }
+
+    /**
+     * Shows the messages of an archive segment above those already shown.
+     * Archived messages are older than every live one, so they are inserted as a single range.
+     *
+     * @param archived The messages of the segment, in timestamp order.
+     */
+    private void prependArchivedMessages(List<ChatMessage> archived) {
+        int count = messageList.size();
+        int firstInserted = count;
+        // Sizes count the document's path, so each message is measured under its own path
+        String messagesPath = Constants.KEY_COLLECTION_CONVERSATIONS + "/" + conversationId + "/"
+                + Constants.KEY_COLLECTION_MESSAGES + "/";
+        for (ChatMessage chatMessage : archived) {
+            if (chatMessage.deletedAt != null) {
+                continue; // Unsent before it was archived
+            }
+            chatMessage.dateTime = getReadableDateTime(chatMessage.dateObject);
+            firstInserted = Math.min(firstInserted, messageList.add(chatMessage));
+            archivedBytes += DocumentSizes.of(messagesPath + chatMessage.id, chatMessage);
+        }
+        int inserted = messageList.size() - count;
+        if (inserted > 0) {
+            chatAdapter.notifyItemRangeInserted(firstInserted, inserted);
+            chatAdapter.updateSeenMessage();
+        }
+        // A short segment may still leave the top of the list on screen
+        binding.chatRecyclerView.post(this::loadOlderIfAtTop);
+    }
+
+    /**
+     * Archived messages scrolled into the chat, dropped while the chat is in the background.
+     * Scrolling back to the top loads them again, from the local cache where they still are.
+     */
+    private final Trimmable archivedHistory = new Trimmable() {
+        @Override
+        public long retainedBytes() {
+            return archivedBytes;
+        }
+
+        @Override
+        public void trim(MemoryPressure pressure) {
+            if (loadingArchive || getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+                return; // Never take history away from under the user
+            }
+            int count = 0;
+            while (count < messageList.size() && archive.contains(messageList.get(count))) {
+                count++;
+            }
+            if (count > 0) {
+                messageList.removeFirst(count);
+                chatAdapter.notifyItemRangeRemoved(0, count);
+            }
+            nextArchiveSegment = archive.segmentCount - 1;
+            archivedBytes = 0;
+        }
+    };
+
+    /**
+     * Listens for the read cursors of both participants.
+     */
+    private void listenReadCursors() {
+        readCursorRegistration = chatBackend.listenReadCursors(conversationId, new ReadCursorListener() {
+            @Override
+            public void onReadCursors(Map<String, Date> cursors) {
+                // The stored cursor of this user is never written again
+                readCursor.restore(cursors.get(sessionStore.get().userId));
+                chatAdapter.setReceiverReadUpTo(cursors.get(receiverUser.id));
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                // Without the receiver's cursor the chat simply shows no seen ticks
+            }
+        });
+    }
+
+    /**
+     * Listens for the receiver's typing and presence states.
+     */
+    private void listenReceiverStatus() {
+        typingRegistration = chatBackend.listenTyping(conversationId, receiverUser.id, new ExpiryListener() {
+            @Override
+            public void onExpiry(Date expiresAt) {
+                receiverTypingUntil = expiresAt;
+                updateStatus();
+            }
+
+            @Override
+            public void onError(Exception exception) {
+            }
+        });
+        presenceRegistration = chatBackend.listenPresence(receiverUser.id, new ExpiryListener() {
+            @Override
+            public void onExpiry(Date expiresAt) {
+                receiverOnlineUntil = expiresAt;
+                updateStatus();
+            }
+
+            @Override
+            public void onError(Exception exception) {
+            }
+        });
+    }
+
+    /**
+     * Shows "typing…" or "Online" under the receiver's name while the state has not expired,
+     * and checks again when it expires; expiry needs no write from the receiver.
+     */
+    private void updateStatus() {
+        binding.textStatus.removeCallbacks(updateStatus);
+        long now = System.currentTimeMillis();
+        long nextExpiry = Long.MAX_VALUE;
+        if (receiverTypingUntil != null && receiverTypingUntil.getTime() > now) {
+            binding.textStatus.setText(R.string.typing);
+            nextExpiry = receiverTypingUntil.getTime();
+        } else if (PresenceTracker.isOnline(receiverOnlineUntil)) {
+            binding.textStatus.setText(R.string.online);
+            nextExpiry = receiverOnlineUntil.getTime();
+        }
+        binding.textStatus.setVisibility(nextExpiry == Long.MAX_VALUE ? View.GONE : View.VISIBLE);
+        if (nextExpiry != Long.MAX_VALUE) {
+            binding.textStatus.postDelayed(updateStatus, nextExpiry - now);
+        }
+    }
+
+    /**
+     * MessageListener for monitoring changes in the conversation's messages.
+     * Changes are buffered and applied once per frame, however many snapshots arrive in between.
+     */
+    private final MessageListener messageListener = new MessageListener() {
+        @Override
+        public void onMessages(List<MessageChange> changes) {
+            if (changes.isEmpty()) {
+                showMessages(); // An empty conversation has nothing to wait for
+                binding.chatRecyclerView.post(ChatActivity.this::loadOlderIfAtTop);
+                return;
+            }
+            messageUpdates.addAll(changes);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            binding.progressBar.setVisibility(View.GONE); // Hide progress bar if listening failed
+        }
+    };
+
+    /**
+     * Applies the message changes buffered since the previous frame in a single adapter update.
+     * New messages are notified as one range; edits and removals each touch only their own row.
+     *
+     * @param changes The buffered changes, in arrival order.
+     * @param firstQueuedNanos When the oldest change arrived, from System.nanoTime().
+     */
+    private void applyMessageChanges(List<MessageChange> changes, long firstQueuedNanos) {
+        String currentUserId = sessionStore.get().userId;
+        boolean wasAtBottom = scroller.isAtBottom();
+        boolean sentByMe = false;
+        long tombstonesAfterMillis = System.currentTimeMillis() - MessageList.TOMBSTONE_RETENTION_MILLIS;
+        // A stored message takes the place of its pending row, which the outbox may not have dropped yet
+        for (MessageChange change : changes) {
+            int position = change.type == MessageChange.Type.ADDED ? messageList.indexOf(change.message.id) : -1;
+            if (position >= 0 && messageList.get(position).pending) {
+                messageList.remove(change.message.id);
+                chatAdapter.notifyItemRemoved(position);
+            }
+        }
+        int count = messageList.size();
+        int firstChanged = count;
+        for (MessageChange change : changes) {
+            if (change.type == MessageChange.Type.ADDED) {
+                ChatMessage chatMessage = change.message;
+                if (!sequenceTracker.accept(chatMessage.seq)) {
+                    continue; // Already shown, e.g. fetched again by a resync
+                }
+                if (chatMessage.deletedAt != null && chatMessage.deletedAt.getTime() < tombstonesAfterMillis) {
+                    continue; // An expired tombstone the TTL has not deleted yet
+                }
+                chatMessage.dateTime = getReadableDateTime(chatMessage.dateObject);
+                // Keep chat messages in sequence order without re-sorting the whole list
+                firstChanged = Math.min(firstChanged, messageList.add(chatMessage));
+                sentByMe |= currentUserId.equals(chatMessage.senderId);
+                if (receiverUser != null && receiverUser.id.equals(chatMessage.senderId)) {
+                    receiverTypingUntil = null; // Their message ends their typing
                 }
             }
-            // Sort chat messages by timestamp
-            Collections.sort(chatMessages, (obj1, obj2) -> obj1.dateObject.compareTo(obj2.dateObject));
-            if (count == 0) {
-                chatAdapter.notifyDataSetChanged();
-            } else {
-                chatAdapter.notifyItemRangeChanged(chatMessages.size(), chatMessages.size());
-                binding.chatRecyclerView.smoothScrollToPosition(chatMessages.size() - 1);
+        }
+        int inserted = messageList.size() - count;
+        MESSAGES_RECEIVED.add(inserted);
+        if (count == 0) {
+            chatAdapter.notifyDataSetChanged();
+            scroller.scrollToBottom();
+            // The live tail may not fill the screen, in which case archived history goes above it
+            binding.chatRecyclerView.post(this::loadOlderIfAtTop);
+        } else if (inserted > 0) {
+            if (firstChanged < count) {
+                chatAdapter.notifyItemRangeChanged(firstChanged, count - firstChanged);
+            }
+            chatAdapter.notifyItemRangeInserted(count, inserted);
+            // Follow new messages only if the user was not reading older ones, unless they just sent one
+            if (wasAtBottom || sentByMe) {
+                scroller.scrollToBottom();
+            }
+        }
+        // Edits and removals always follow the addition of their message, so they are applied afterwards
+        for (MessageChange change : changes) {
+            if (change.type == MessageChange.Type.MODIFIED) {
+                ChatMessage chatMessage = change.message;
+                chatMessage.dateTime = getReadableDateTime(chatMessage.dateObject);
+                int position = messageList.replace(chatMessage);
+                if (position >= 0) {
+                    chatAdapter.notifyItemChanged(position);
+                }
+            } else if (change.type == MessageChange.Type.REMOVED) {
+                int position = messageList.remove(change.message.id);
+                if (position >= 0) {
+                    chatAdapter.notifyItemRemoved(position);
+                }
+            }
+        }
+        if (messageList.getTombstoneCount() > 0) {
+            for (int position : messageList.compactTombstones(tombstonesAfterMillis)) {
+                chatAdapter.notifyItemRemoved(position);
             }
-            binding.chatRecyclerView.setVisibility(View.VISIBLE); // Show chat RecyclerView
         }
+        if (sequenceTracker.hasGap() && !resyncing) {
+            binding.getRoot().removeCallbacks(resyncIfGap);
+            binding.getRoot().postDelayed(resyncIfGap, GAP_GRACE_MILLIS);
+        }
+        updateStatus();
+        chatAdapter.updateSeenMessage();
+        // Messages the user does not scroll to are not read yet
+        if (count == 0 || wasAtBottom || sentByMe) {
+            advanceReadCursor();
+        }
+        showMessages();
+        SNAPSHOT_TO_NOTIFY.record(System.nanoTime() - firstQueuedNanos);
+        FrameTimer.recordNextFrame(binding.chatRecyclerView, SNAPSHOT_TO_DRAW, firstQueuedNanos);
+    }
+
+    /**
+     * Fetches every message after the last contiguous sequence number, if a gap is still open.
+     * The fetched messages go through the same path as snapshots; those already shown are skipped.
+     * Numbers the fetch does not find belong to deleted messages, e.g. tombstones removed by the TTL
+     * policy; they count as received from then on, so such a gap is fetched once, not every second.
+     */
+    private void resyncIfGap() {
+        if (!sequenceTracker.hasGap() || resyncing) {
+            return;
+        }
+        resyncing = true;
+        SequenceTracker tracker = sequenceTracker;
+        long upTo = tracker.getHighest();
+        chatBackend.getMessagesAfter(conversationId, tracker.getContiguous(),
+                new Callback<List<ChatMessage>>() {
+                    @Override
+                    public void onSuccess(List<ChatMessage> result) {
+                        resyncing = false;
+                        List<MessageChange> changes = new ArrayList<>(result.size());
+                        Set<Long> fetched = new HashSet<>();
+                        for (ChatMessage chatMessage : result) {
+                            changes.add(new MessageChange(MessageChange.Type.ADDED, chatMessage));
+                            fetched.add(chatMessage.seq);
+                        }
+                        tracker.resynced(upTo, fetched);
+                        messageUpdates.addAll(changes);
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        resyncing = false; // The next snapshot with a gap tries again
+                    }
+                });
+    }
+
+    /**
+     * Shows the chat list in place of the progress bar, followed by the messages still waiting to be sent.
+     */
+    private void showMessages() {
+        binding.chatRecyclerView.setVisibility(View.VISIBLE); // Show chat RecyclerView
         binding.progressBar.setVisibility(View.GONE); // Hide progress bar after loading messages
-    });
+        if (!messagesShown) {
+            messagesShown = true;
+            syncPendingMessages();
+        }
+    }
 
     /**
-     * Converts an encoded image string to a Bitmap.
+     * Brings the pending rows in line with the outbox: queued messages get a row below the stored ones,
+     * rows whose message was given up or queued again are updated, and rows the outbox dropped are removed.
+     * A row dropped because its message was sent is replaced once the stored copy arrives, if it is not already.
+     */
+    private void syncPendingMessages() {
+        if (!messagesShown) {
+            return;
+        }
+        List<ChatMessage> queued = OutboxProvider.get().messages(conversationId);
+        Set<String> queuedIds = new HashSet<>();
+        for (ChatMessage chatMessage : queued) {
+            queuedIds.add(chatMessage.id);
+        }
+        // Pending rows are always the last ones
+        for (int position = messageList.size() - 1; position >= 0 && messageList.get(position).pending; position--) {
+            if (!queuedIds.contains(messageList.get(position).id)) {
+                messageList.remove(messageList.get(position).id);
+                chatAdapter.notifyItemRemoved(position);
+            }
+        }
+        boolean added = false;
+        for (ChatMessage chatMessage : queued) {
+            int position = messageList.indexOf(chatMessage.id);
+            if (position >= 0) {
+                ChatMessage shown = messageList.get(position);
+                if (!shown.pending || (shown.failed == chatMessage.failed
+                        && shown.dateObject.equals(chatMessage.dateObject))) {
+                    continue; // Stored already, or unchanged
+                }
+                messageList.remove(chatMessage.id);
+                chatAdapter.notifyItemRemoved(position);
+            } else {
+                added = true;
+            }
+            // Queued as it is to be stored, so possibly encrypted
+            chatMessage.message = DeviceKeys.readable(this, conversationId, chatMessage.senderId, chatMessage.message);
+            chatMessage.dateTime = getReadableDateTime(chatMessage.dateObject);
+            chatAdapter.notifyItemInserted(messageList.add(chatMessage));
+        }
+        if (added) {
+            scroller.scrollToBottom();
+        }
+    }
+
+    /**
+     * Displays a Toast message.
      *
-     * @param encodedImage The Base64 encoded string representing the image.
-     * @return The decoded Bitmap image.
+     * @param message The message to be displayed in the Toast.
      */
-    private Bitmap getBitmapFromEncodedString(String encodedImage) {
-        byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+    private void showToast(String message) {
+        Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show();
     }
 
     /**
-     * Loads details of the receiver user from the intent.
-     * Sets the receiver's name in the UI.
+     * Loads details of the receiver user, or of the group, from the intent.
+     * Sets the receiver's or the group's name in the UI.
      */
     private void loadReceiverDetails() {
+        group = (Group) getIntent().getSerializableExtra(Constants.KEY_GROUP);
+        if (group != null) {
+            binding.textName.setText(group.name); // Set group's name in the TextView
+            return;
+        }
         receiverUser = (User) getIntent().getSerializableExtra(Constants.KEY_USER);
+        senders.put(receiverUser.id, receiverUser);
         binding.textName.setText(receiverUser.name); // Set receiver's name in the TextView
     }
 
+    /**
+     * Resolves the members of the group, so their messages show names and avatars.
+     * The user list is usually cached by the user screen already, so this rarely costs a server read.
+     */
+    private void loadGroupMembers() {
+        chatBackend.getUsers(ReadPolicy.CACHE_THEN_SERVER, new Callback<List<User>>() {
+            @Override
+            public void onSuccess(List<User> result) {
+                HashSet<String> members = new HashSet<>(group.members);
+                for (User user : result) {
+                    if (members.contains(user.id)) {
+                        senders.put(user.id, user);
+                    }
+                }
+                chatAdapter.sendersChanged();
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                // Group messages still show, only without names and avatars
+            }
+        });
+    }
+
     /**
      * Sets click listeners for UI components.
      * Allows user to navigate back or send a message.
@@ -199,6 +1054,10 @@ public class ChatActivity extends AppCompatActivity {
         binding.imageBack.setOnClickListener(v -> onBackPressed());
         // Listener for send button
         binding.layoutSend.setOnClickListener(v -> sendMessages());
+        // Announce typing while the user edits a message; nobody listens for it in a group
+        if (group == null) {
+            binding.inputMessage.addTextChangedListener(typingWatcher);
+        }
     }
 
     /**
@@ -208,6 +1067,6 @@ public class ChatActivity extends AppCompatActivity {
      * @return A formatted string representing the date and time.
      */
     private String getReadableDateTime(Date date) {
-        return new SimpleDateFormat("MMM dd, yyyy - hh:mm a", Locale.getDefault()).format(date);
+        return ReadableDateFormat.format(date);
     }
 }
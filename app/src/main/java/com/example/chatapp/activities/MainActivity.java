@@ -5,36 +5,44 @@
  */
 package com.example.chatapp.activities;
 
+import android.Manifest;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
-import android.util.Base64;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
 
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackendProvider;
 import com.example.chatapp.databinding.ActivityMainBinding;
-import com.example.chatapp.utilities.Constants;
-import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.FieldValue;
-import com.google.firebase.firestore.FirebaseFirestore;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.session.Session;
+import com.example.chatapp.session.SessionStore;
+import com.example.chatapp.session.SessionStoreProvider;
+import com.example.chatapp.utilities.AvatarCache;
+import com.example.chatapp.utilities.DeviceKeys;
 import com.google.firebase.messaging.FirebaseMessaging;
 
-import java.util.HashMap;
-
 public class MainActivity extends AppCompatActivity {
 
+    /**
+     * Request code of the notification permission request.
+     */
+    private static final int REQUEST_NOTIFICATIONS = 1;
+
     /**
      * Binding object for accessing views in the activity_main.xml layout.
      */
     private ActivityMainBinding binding;
 
     /**
-     * PreferenceManager object to manage shared preferences for user session data.
+     * Store of the signed-in user's session.
      */
-    private PreferenceManager preferenceManager;
+    private SessionStore sessionStore;
 
     /**
      * Called when the activity is first created.
@@ -48,8 +56,8 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         binding = ActivityMainBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
-        preferenceManager = new PreferenceManager(getApplicationContext());
-        loadUserDetails();  // Load user details from shared preferences
+        sessionStore = SessionStoreProvider.get();
+        loadUserDetails();  // Load user details from the session
         getToken();  // Retrieve FCM token for notifications
         setListener();  // Set event listeners for UI components
     }
@@ -66,15 +74,29 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Loads user details such as name and profile image from shared preferences.
+     * Loads user details such as name and profile image from the session.
+     * The profile image is kept apart from the session, so it is read and decoded in the background.
      */
     private void loadUserDetails() {
-        // Set user name from shared preferences
-        binding.textName.setText(preferenceManager.getString(Constants.KEY_NAME));
-        // Decode profile image from Base64 string and set it to ImageView
-        byte[] bytes = Base64.decode(preferenceManager.getString(Constants.KEY_IMAGE), Base64.DEFAULT);
-        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-        binding.imageProfile.setImageBitmap(bitmap);
+        Session session = sessionStore.get();
+        binding.textName.setText(session.name);
+        sessionStore.readAvatar(new Callback<String>() {
+            @Override
+            public void onSuccess(String avatar) {
+                if (isDestroyed()) {
+                    return;
+                }
+                User user = new User();
+                user.id = session.userId;
+                user.image = avatar;
+                AvatarCache.into(user, binding.imageProfile);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                // Keep the placeholder; the avatar is shown again on the next start
+            }
+        });
     }
 
     /**
@@ -88,45 +110,61 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * Retrieves the FCM token for push notifications.
+     * From Android 13 on, notifications also need the user's permission, which is asked for here.
      */
     private void getToken() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this,
+                    new String[]{Manifest.permission.POST_NOTIFICATIONS}, REQUEST_NOTIFICATIONS);
+        }
         // Get FCM token and update it in Firestore
         FirebaseMessaging.getInstance().getToken().addOnSuccessListener(this::updateToken);
+        // Let others encrypt their conversations with this user to this device
+        DeviceKeys.publish(this, ChatBackendProvider.get(), sessionStore.get().userId);
     }
 
     /**
-     * Updates the FCM token in Firestore for the logged-in user.
+     * Updates the FCM token in the chat backend for the logged-in user.
      *
      * @param token The FCM token to be updated.
      */
     private void updateToken(String token) {
-        // Get Firestore instance and update user token
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        DocumentReference documentReference = database.collection(Constants.KEY_COLLECTION_USERS)
-                .document(preferenceManager.getString(Constants.KEY_USER_ID));
-        documentReference.update(Constants.KEY_FCM_TOKEN, token)
-                .addOnSuccessListener(unused -> showToast("Token update successful"))
-                .addOnFailureListener(e -> showToast("Unable to update Token"));
+        ChatBackendProvider.get().updateToken(sessionStore.get().userId, token,
+                new Callback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                        showToast("Token update successful");
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        showToast("Unable to update Token");
+                    }
+                });
     }
 
     /**
-     * Signs out the user, deletes the FCM token, clears user data from preferences, and navigates to the sign-in screen.
+     * Signs out the user, deletes the FCM token, clears the session, and navigates to the sign-in screen.
      */
     private void signOut() {
         showToast("Signing Out ...");
-        // Get Firestore instance and update user token to delete
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        DocumentReference documentReference = database.collection(Constants.KEY_COLLECTION_USERS)
-                .document(preferenceManager.getString(Constants.KEY_USER_ID));
-
-        HashMap<String, Object> updates = new HashMap<>();
-        updates.put(Constants.KEY_FCM_TOKEN, FieldValue.delete());
-        documentReference.update(updates)
-                .addOnSuccessListener(unused -> {
-                    // Clear preferences and navigate to SignInActivity
-                    preferenceManager.clear();
-                    startActivity(new Intent(getApplicationContext(), SignInActivity.class));
-                    finish();
-                }).addOnFailureListener(e -> showToast("Unable to sign out"));
+        // Delete the user's token so no more notifications are sent to this device
+        ChatBackendProvider.get().updateToken(sessionStore.get().userId, null,
+                new Callback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                        // Clear the session and navigate to SignInActivity
+                        sessionStore.signOut();
+                        startActivity(new Intent(getApplicationContext(), SignInActivity.class));
+                        finish();
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        showToast("Unable to sign out");
+                    }
+                });
     }
 }
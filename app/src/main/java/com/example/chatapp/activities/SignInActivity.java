@@ -12,11 +12,14 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.chatapp.R;
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackendProvider;
+import com.example.chatapp.backend.ReadPolicy;
 import com.example.chatapp.databinding.ActivitySignInBinding;
-import com.example.chatapp.utilities.Constants;
-import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.session.Session;
+import com.example.chatapp.session.SessionStore;
+import com.example.chatapp.session.SessionStoreProvider;
 
 import java.util.HashMap;
 
@@ -28,9 +31,14 @@ public class SignInActivity extends AppCompatActivity {
     private ActivitySignInBinding binding;
 
     /**
-     * Manager for storing user preferences.
+     * Store of the signed-in user's session.
      */
-    private PreferenceManager preferenceManager;
+    private SessionStore sessionStore;
+
+    /**
+     * Whether a cached or server result has already signed the user in.
+     */
+    private boolean signedIn;
 
     /**
      * Initializes the activity and sets up bindings and listeners.
@@ -45,8 +53,8 @@ public class SignInActivity extends AppCompatActivity {
         binding = ActivitySignInBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
-        // Initialize the preference manager for storing user session data
-        preferenceManager = new PreferenceManager(getApplicationContext());
+        // The store the session is saved to once the user is signed in
+        sessionStore = SessionStoreProvider.get();
 
         // Set up listeners for UI interactions
         setListeners();
@@ -78,37 +86,45 @@ public class SignInActivity extends AppCompatActivity {
     }
 
     /**
-     * Handles the sign-in process with Firebase Firestore.
+     * Handles the sign-in process with the chat backend.
+     * Credentials seen before are checked against the local cache, so returning users
+     * get in immediately, even offline; the server's answer then confirms or revokes the session.
      */
     private void signIn() {
         // Show loading indicator while signing in
         loading(true);
 
-        // Get an instance of Firebase Firestore
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-
-        // Query the Firestore database for matching user credentials
-        database.collection(Constants.KEY_COLLECTION_USERS)
-                .whereEqualTo(Constants.KEY_EMAIL, binding.inputEmail.getText().toString())
-                .whereEqualTo(Constants.KEY_PASSWORD, binding.inputPassword.getText().toString())
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null && task.getResult().getDocuments().size() > 0) {
-                        // If credentials match, retrieve the user document
-                        DocumentSnapshot documentSnapshot = task.getResult().getDocuments().get(0);
-
-                        // Store user session data in preferences
-                        preferenceManager.putBoolean(Constants.KEY_IS_SIGNED_IN, true);
-                        preferenceManager.putString(Constants.KEY_USER_ID, documentSnapshot.getId());
-                        preferenceManager.putString(Constants.KEY_NAME, documentSnapshot.getString(Constants.KEY_NAME));
-                        preferenceManager.putString(Constants.KEY_IMAGE, documentSnapshot.getString(Constants.KEY_IMAGE));
+        // Ask the backend for the user matching the entered credentials
+        ChatBackendProvider.get().signIn(
+                binding.inputEmail.getText().toString(),
+                binding.inputPassword.getText().toString(),
+                ReadPolicy.CACHE_THEN_SERVER,
+                new Callback<User>() {
+                    @Override
+                    public void onSuccess(User user) {
+                        if (user == null) {
+                            if (signedIn) {
+                                revokeSession();  // The server rejected credentials the cache accepted
+                            } else {
+                                onFailure(null);
+                            }
+                            return;
+                        }
+                        // Save the session, written to disk in one go in the background
+                        sessionStore.signIn(new Session(user.id, user.name, user.lastName), user.image);
+                        if (signedIn) {
+                            return;  // The server confirmed the cached profile; it is already shown
+                        }
+                        signedIn = true;
 
                         // Navigate to the main activity and clear activity stack
                         Intent intent = new Intent(getApplicationContext(), MainActivity.class);
                         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
                         startActivity(intent);
+                    }
 
-                    } else {
+                    @Override
+                    public void onFailure(Exception exception) {
                         // If sign-in fails, hide loading and show error toast
                         loading(false);
                         showToast("Unable to Sign in");
@@ -116,6 +132,19 @@ public class SignInActivity extends AppCompatActivity {
                 });
     }
 
+    /**
+     * Signs the user out again after the server rejected credentials that matched the cache,
+     * e.g. because the password was changed on another device.
+     */
+    private void revokeSession() {
+        signedIn = false;
+        sessionStore.signOut();
+        showToast("Unable to Sign in");
+        Intent intent = new Intent(getApplicationContext(), SignInActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        startActivity(intent);
+    }
+
     /**
      * Controls visibility of the loading spinner and sign-in button.
      *
@@ -7,7 +7,6 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
-import com.example.chatapp.utilities.PreferenceManager;
 import android.provider.MediaStore;
 import android.util.Base64;
 import android.util.Patterns;
@@ -19,14 +18,17 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.chatapp.R;
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackendProvider;
 import com.example.chatapp.databinding.ActivitySignUpBinding;
-import com.example.chatapp.utilities.Constants;
-import com.google.firebase.firestore.FirebaseFirestore;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.session.Session;
+import com.example.chatapp.session.SessionStoreProvider;
+import com.example.chatapp.utilities.DeviceKeys;
 
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
-import java.util.HashMap;
 
 /**
  * Handles user registration and setting up a new user profile.
@@ -36,9 +38,6 @@ public class SignUpActivity extends AppCompatActivity {
     // Binding to access UI components in the sign-up layout
     private ActivitySignUpBinding binding;
 
-    // Manager for handling user preferences
-    private PreferenceManager preferenceManager;
-
     // Stores encoded image string of user profile picture
     private String encodeImage;
 
@@ -55,9 +54,6 @@ public class SignUpActivity extends AppCompatActivity {
         binding = ActivitySignUpBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
-        // Initialize preference manager
-        preferenceManager = new PreferenceManager(getApplicationContext());
-
         // Set up listeners for UI interactions
         setListeners();
     }
@@ -94,45 +90,46 @@ public class SignUpActivity extends AppCompatActivity {
     }
 
     /**
-     * Registers a new user in Firebase Firestore and handles success or failure.
+     * Registers a new user with the chat backend and handles success or failure.
      */
     private void signUp() {
         // Display loading indicator
         loading(true);
 
-        // Initialize Firebase Firestore
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-
         // Create a new user entry with the provided details
-        HashMap<String, String> user = new HashMap<>();
-        user.put(Constants.KEY_NAME, binding.inputName.getText().toString());
-        user.put(Constants.KEY_LAST_NAME, binding.lastName.getText().toString());
-        user.put(Constants.KEY_EMAIL, binding.inputEmail.getText().toString());
-        user.put(Constants.KEY_PASSWORD, binding.inputPassword.getText().toString());
-        user.put(Constants.KEY_IMAGE, encodeImage);
-
-        // Add user data to Firestore
-        database.collection(Constants.KEY_COLLECTION_USERS)
-                .add(user)
-                .addOnSuccessListener(documentReference -> {
-                    loading(false);
-
-                    // Save user session data in preferences
-                    preferenceManager.putBoolean(Constants.KEY_IS_SIGNED_IN, true);
-                    preferenceManager.putString(Constants.KEY_NAME, binding.inputName.getText().toString());
-                    preferenceManager.putString(Constants.KEY_LAST_NAME, binding.lastName.getText().toString());
-                    preferenceManager.putString(Constants.KEY_IMAGE, encodeImage);
-
-                    // Navigate to main activity and clear the back stack
-                    Intent intent = new Intent(getApplicationContext(), MainActivity.class);
-                    intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                    startActivity(intent);
-
-                }).addOnFailureListener(exception -> {
-                    // If sign-up fails, hide loading and show error message
-                    loading(false);
-                    showToast(exception.getMessage());
-                });
+        User user = new User();
+        user.name = binding.inputName.getText().toString();
+        user.lastName = binding.lastName.getText().toString();
+        user.email = binding.inputEmail.getText().toString();
+        user.image = encodeImage;
+        user.publicKey = DeviceKeys.publicKey(this); // Null where this device cannot encrypt
+
+        // Register the user with the backend
+        ChatBackendProvider.get().signUp(user, binding.inputPassword.getText().toString(), new Callback<User>() {
+            @Override
+            public void onSuccess(User registered) {
+                loading(false);
+
+                // Save the session, written to disk in one go in the background
+                SessionStoreProvider.get().signIn(
+                        new Session(registered.id, registered.name, registered.lastName), registered.image);
+                if (registered.publicKey != null) {
+                    DeviceKeys.markPublished(getApplicationContext(), registered.id);
+                }
+
+                // Navigate to main activity and clear the back stack
+                Intent intent = new Intent(getApplicationContext(), MainActivity.class);
+                intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                startActivity(intent);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                // If sign-up fails, hide loading and show error message
+                loading(false);
+                showToast(exception.getMessage());
+            }
+        });
     }
 
     /**
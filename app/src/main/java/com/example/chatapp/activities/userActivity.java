@@ -1,28 +1,45 @@
 /**
  * The UserActivity class handles displaying a list of users available for chatting.
  * Users can select a contact to start a chat.
+ * Contacts with unread messages are marked with the number of messages after the user's read cursor.
+ * The user's groups are listed above the contacts, and a new group can be created from the contacts.
  */
 package com.example.chatapp.activities;
 
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
+import android.widget.EditText;
+import android.widget.Toast;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.chatapp.R;
+import com.example.chatapp.adapters.GroupsAdapter;
 import com.example.chatapp.adapters.UsersAdapter;
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackendProvider;
+import com.example.chatapp.backend.ReadPolicy;
 import com.example.chatapp.databinding.ActivityUserBinding;
+import com.example.chatapp.listeners.GroupListener;
 import com.example.chatapp.listeners.UserListener;
+import com.example.chatapp.modules.Group;
 import com.example.chatapp.modules.User;
 import com.example.chatapp.utilities.Constants;
-import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.example.chatapp.utilities.ConversationIds;
+import com.example.chatapp.utilities.ConversationPrefetcher;
+import com.example.chatapp.utilities.GroupMembers;
+import com.example.chatapp.utilities.UserDirectory;
+import com.example.chatapp.session.SessionStore;
+import com.example.chatapp.session.SessionStoreProvider;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-public class userActivity extends AppCompatActivity implements UserListener {
+public class userActivity extends AppCompatActivity implements UserListener, GroupListener {
 
     /**
      * Binding for accessing UI elements in the activity_user layout.
@@ -30,9 +47,34 @@ public class userActivity extends AppCompatActivity implements UserListener {
     private ActivityUserBinding binding;
 
     /**
-     * Manager for storing user preferences.
+     * Store of the signed-in user's session.
      */
-    private PreferenceManager preferenceManager;
+    private SessionStore sessionStore;
+
+    /**
+     * Adapter of the user list; created by the first result, updated by later ones.
+     */
+    private UsersAdapter usersAdapter;
+
+    /**
+     * Adapter of the group list; created once the groups are loaded.
+     */
+    private GroupsAdapter groupsAdapter;
+
+    /**
+     * The contacts shown in the list, offered as members of a new group.
+     */
+    private List<User> contacts = new ArrayList<>();
+
+    /**
+     * The latest unread counts by conversation ID, kept for the groups loaded after them.
+     */
+    private Map<String, Long> unreadCounts;
+
+    /**
+     * Warms the conversations of visible and touched contacts before they are opened.
+     */
+    private ConversationPrefetcher conversationPrefetcher;
 
     /**
      * Initializes the activity and sets up bindings and listeners.
@@ -43,10 +85,22 @@ public class userActivity extends AppCompatActivity implements UserListener {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         binding = ActivityUserBinding.inflate(getLayoutInflater());
-        preferenceManager = new PreferenceManager(getApplicationContext());
+        sessionStore = SessionStoreProvider.get();
         setContentView(binding.getRoot());
+        conversationPrefetcher = new ConversationPrefetcher(ChatBackendProvider.get(),
+                sessionStore.get().userId);
         setListeners();  // Set up listeners for UI interactions
         getUser();  // Retrieve the list of users
+        getGroups();  // Retrieve the groups of the current user
+    }
+
+    /**
+     * Stops prefetching when the activity is destroyed.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        conversationPrefetcher.detach();
     }
 
     /**
@@ -55,46 +109,180 @@ public class userActivity extends AppCompatActivity implements UserListener {
     private void setListeners() {
         // Navigate back to the previous screen when back button is clicked
         binding.imageBack.setOnClickListener(view -> onBackPressed());
+        // Create a group from the contacts when the add button is clicked
+        binding.imageNewGroup.setOnClickListener(view -> chooseGroupMembers());
     }
 
     /**
-     * Retrieves a list of users from Firebase Firestore.
+     * Retrieves a list of users from the chat backend.
+     * The cached list is shown right away and reconciled once the server answers.
      */
     private void getUser() {
         loading(true);  // Show loading indicator while fetching users
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        database.collection(Constants.KEY_COLLECTION_USERS).get()
-                .addOnCompleteListener(task -> {
-                    loading(false);  // Hide loading indicator after fetching users
-                    String currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        List<User> users = new ArrayList<>();
-                        for (QueryDocumentSnapshot queryDocumentSnapshot : task.getResult()) {
-                            if (currentUserId.equals(queryDocumentSnapshot.getId())) {
-                                continue;  // Skip the current user
-                            }
-                            User user = new User();
-                            user.name = queryDocumentSnapshot.getString(Constants.KEY_NAME);
-                            user.email = queryDocumentSnapshot.getString(Constants.KEY_EMAIL);
-                            user.image = queryDocumentSnapshot.getString(Constants.KEY_IMAGE);
-                            user.token = queryDocumentSnapshot.getString(Constants.KEY_FCM_TOKEN);
-                            user.id = queryDocumentSnapshot.getId();
-                            users.add(user);  // Add user to the list
-                        }
+        ChatBackendProvider.get().getUsers(ReadPolicy.CACHE_THEN_SERVER, new Callback<List<User>>() {
+            @Override
+            public void onSuccess(List<User> result) {
+                loading(false);  // Hide loading indicator after fetching users
+                // Skip the current user
+                List<User> users = UserDirectory.contactsOf(result, sessionStore.get().userId);
+                contacts = users;
+
+                if (usersAdapter != null) {
+                    usersAdapter.setUsers(users);  // Reconcile the cached list with the fresh one
+                } else if (users.size() > 0) {
+                    usersAdapter = new UsersAdapter(users, userActivity.this);
+                    binding.userRecyclerView.setAdapter(usersAdapter);  // Set adapter for RecyclerView
+                    conversationPrefetcher.attach(binding.userRecyclerView, users);  // Warm visible conversations
+                    binding.userRecyclerView.setVisibility(View.VISIBLE);  // Show RecyclerView if users are available
+                    getUnreadCounts(users);  // Mark contacts with unread messages
+                } else {
+                    showErrorMessage();  // Show error message if no users are available
+                }
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                loading(false);  // Hide loading indicator after fetching users
+                showErrorMessage();  // Show error message if the request failed
+            }
+        });
+    }
+
+    /**
+     * Loads the unread message counts of the current user's conversations and shows them per contact.
+     *
+     * @param users The contacts shown in the list.
+     */
+    private void getUnreadCounts(List<User> users) {
+        String currentUserId = sessionStore.get().userId;
+        ChatBackendProvider.get().getUnreadCounts(currentUserId, new Callback<Map<String, Long>>() {
+            @Override
+            public void onSuccess(Map<String, Long> result) {
+                // Counts are keyed by conversation, the list by contact
+                Map<String, Long> byUser = new HashMap<>();
+                for (User user : users) {
+                    Long count = result.get(ConversationIds.of(currentUserId, user.id));
+                    if (count != null) {
+                        byUser.put(user.id, count);
+                    }
+                }
+                usersAdapter.setUnreadCounts(byUser);
+                // Groups are keyed by their conversation ID already
+                unreadCounts = result;
+                if (groupsAdapter != null) {
+                    groupsAdapter.setUnreadCounts(result);
+                }
+            }
 
-                        if (users.size() > 0) {
-                            UsersAdapter usersAdapter = new UsersAdapter(users, this);
-                            binding.userRecyclerView.setAdapter(usersAdapter);  // Set adapter for RecyclerView
-                            binding.userRecyclerView.setVisibility(View.VISIBLE);  // Show RecyclerView if users are available
-                        } else {
-                            showErrorMessage();  // Show error message if no users are available
+            @Override
+            public void onFailure(Exception exception) {
+                // Unread badges are optional; the list stays usable without them
+            }
+        });
+    }
+
+    /**
+     * Retrieves the groups of the current user and lists them above the contacts.
+     */
+    private void getGroups() {
+        ChatBackendProvider.get().getGroups(sessionStore.get().userId,
+                new Callback<List<Group>>() {
+                    @Override
+                    public void onSuccess(List<Group> result) {
+                        groupsAdapter = new GroupsAdapter(new ArrayList<>(result), userActivity.this);
+                        binding.groupRecyclerView.setAdapter(groupsAdapter);
+                        if (unreadCounts != null) {
+                            groupsAdapter.setUnreadCounts(unreadCounts);
                         }
-                    } else {
-                        showErrorMessage();  // Show error message if task is not successful
+                        binding.groupRecyclerView.setVisibility(result.isEmpty() ? View.GONE : View.VISIBLE);
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        // The contacts stay usable without the groups
                     }
                 });
     }
 
+    /**
+     * Lets the user pick the contacts of a new group, then asks for its name.
+     */
+    private void chooseGroupMembers() {
+        if (contacts.isEmpty()) {
+            return;
+        }
+        String[] names = new String[contacts.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = contacts.get(i).name;
+        }
+        boolean[] checked = new boolean[names.length];
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.new_group)
+                .setMultiChoiceItems(names, checked, (dialog, which, isChecked) -> checked[which] = isChecked)
+                .setPositiveButton(R.string.create, (dialog, which) -> {
+                    List<String> memberIds = new ArrayList<>();
+                    for (int i = 0; i < checked.length; i++) {
+                        if (checked[i]) {
+                            memberIds.add(contacts.get(i).id);
+                        }
+                    }
+                    if (!memberIds.isEmpty()) {
+                        nameGroup(memberIds);
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    /**
+     * Asks for the name of a new group and creates it.
+     *
+     * @param memberIds The IDs of the contacts picked as members.
+     */
+    private void nameGroup(List<String> memberIds) {
+        EditText input = new EditText(this);
+        input.setHint(R.string.group_name);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.new_group)
+                .setView(input)
+                .setPositiveButton(R.string.create, (dialog, which) -> {
+                    String name = input.getText().toString().trim();
+                    if (!name.isEmpty()) {
+                        createGroup(name, memberIds);
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    /**
+     * Creates a group with the current user and the given members, then opens it.
+     *
+     * @param name The name of the group.
+     * @param memberIds The IDs of the other members.
+     */
+    private void createGroup(String name, List<String> memberIds) {
+        Group group = new Group();
+        group.name = name;
+        try {
+            group.members = GroupMembers.of(sessionStore.get().userId, memberIds);
+        } catch (IllegalArgumentException exception) {
+            Toast.makeText(getApplicationContext(), exception.getMessage(), Toast.LENGTH_SHORT).show();
+            return;
+        }
+        ChatBackendProvider.get().createGroup(group, new Callback<Group>() {
+            @Override
+            public void onSuccess(Group result) {
+                onGroupClicked(result);  // Open the new group right away
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                Toast.makeText(getApplicationContext(), "Unable to create group", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
     /**
      * Displays an error message when no users are available.
      */
@@ -129,4 +317,17 @@ public class userActivity extends AppCompatActivity implements UserListener {
         startActivity(intent);  // Start the ChatActivity
         finish();  // Finish the current activity
     }
+
+    /**
+     * Handles the group click event and opens the group's chat.
+     *
+     * @param group the selected group
+     */
+    @Override
+    public void onGroupClicked(Group group) {
+        Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
+        intent.putExtra(Constants.KEY_GROUP, group);
+        startActivity(intent);  // Start the ChatActivity
+        finish();  // Finish the current activity
+    }
 }
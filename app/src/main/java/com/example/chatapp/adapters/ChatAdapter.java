@@ -1,28 +1,55 @@
 /**
  * The ChatAdapter class is responsible for managing the chat messages displayed in a RecyclerView.
  * It differentiates between sent and received messages and displays them accordingly.
+ * The newest sent message the receiver has read, according to their read cursor, is marked as seen.
+ * Edited messages are labelled as such, and unsent messages are shown as a placeholder until they are removed.
+ * Messages waiting in the outbox are labelled as waiting, or as not sent once the outbox gave them up.
+ * Received messages show their sender's avatar from the shared AvatarCache, so in a group
+ * every member's avatar is decoded once however many of their messages are on screen.
  */
 package com.example.chatapp.adapters;
 
-import android.graphics.Bitmap;
+import android.graphics.Typeface;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.chatapp.R;
 import com.example.chatapp.databinding.ItemContainerReceivedMessageBinding;
 import com.example.chatapp.databinding.ItemContainerSentMessageBinding;
+import com.example.chatapp.listeners.MessageActionListener;
+import com.example.chatapp.metrics.Histogram;
+import com.example.chatapp.metrics.MetricNames;
+import com.example.chatapp.metrics.MetricsRegistry;
 import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.utilities.AvatarCache;
+import com.example.chatapp.utilities.ReadReceipts;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
     /**
-     * Profile image of the receiver.
+     * Time to bind one message row.
      */
-    private Bitmap receiverProfileImage;
+    private static final Histogram ROW_BIND = MetricsRegistry.get().histogram(MetricNames.CHAT_ROW_BIND);
+
+    /**
+     * Senders of received messages by user ID: the receiver, or the members of a group.
+     */
+    private final Map<String, User> senders;
+
+    /**
+     * Whether received messages are labelled with their sender's name, as in a group.
+     */
+    private final boolean showSenderNames;
 
     /**
      * List of chat messages to be displayed.
@@ -45,16 +72,95 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private final String sendId;
 
     /**
-     * Constructor for initializing ChatAdapter with chat messages, receiver's profile image, and sender ID.
+     * Read cursor of the receiver, or null until it is known.
+     */
+    private Date receiverReadUpTo;
+
+    /**
+     * ID of the newest sent message covered by the receiver's read cursor, which carries the seen tick.
+     * Kept by ID, since an edit or an unsend replaces the message object in the list.
+     */
+    private String seenMessageId;
+
+    /**
+     * Listener for long presses on sent messages.
+     */
+    private final MessageActionListener messageActionListener;
+
+    /**
+     * Constructor for initializing ChatAdapter with chat messages, the senders of received messages, and sender ID.
      *
      * @param chatMessages List of chat messages.
-     * @param receiverProfileImage Profile image of the receiver.
+     * @param senders Senders of received messages by user ID; the adapter keeps the map, see {@link #sendersChanged()}.
+     * @param showSenderNames Whether received messages are labelled with their sender's name.
      * @param sendId ID of the sender.
+     * @param messageActionListener Listener for long presses on sent messages.
      */
-    public ChatAdapter(List<ChatMessage> chatMessages, Bitmap receiverProfileImage, String sendId) {
+    public ChatAdapter(List<ChatMessage> chatMessages, Map<String, User> senders, boolean showSenderNames,
+                       String sendId, MessageActionListener messageActionListener) {
         this.chatMessages = chatMessages;
-        this.receiverProfileImage = receiverProfileImage;
+        this.senders = senders;
+        this.showSenderNames = showSenderNames;
         this.sendId = sendId;
+        this.messageActionListener = messageActionListener;
+    }
+
+    /**
+     * Rebinds the received messages after senders were added to the map, e.g. once a group's members are loaded.
+     */
+    public void sendersChanged() {
+        for (int position = 0; position < chatMessages.size(); position++) {
+            if (!chatMessages.get(position).senderId.equals(sendId)) {
+                notifyItemChanged(position);
+            }
+        }
+    }
+
+    /**
+     * Sets the receiver's read cursor and moves the seen tick accordingly.
+     * Cursors only move forward, so older values are ignored.
+     *
+     * @param readUpTo The timestamp of the newest message the receiver has seen.
+     */
+    public void setReceiverReadUpTo(Date readUpTo) {
+        if (readUpTo == null || (receiverReadUpTo != null && !readUpTo.after(receiverReadUpTo))) {
+            return;
+        }
+        receiverReadUpTo = readUpTo;
+        updateSeenMessage();
+    }
+
+    /**
+     * Moves the seen tick to the newest sent message covered by the receiver's read cursor.
+     * Called after the cursor advanced or messages were inserted; only the rows whose tick changed are rebound.
+     */
+    public void updateSeenMessage() {
+        if (receiverReadUpTo == null) {
+            return;
+        }
+        int newPosition = RecyclerView.NO_POSITION;
+        int oldPosition = RecyclerView.NO_POSITION;
+        // The seen message can only move forward, so scanning back to the previous one is enough
+        for (int position = chatMessages.size() - 1; position >= 0; position--) {
+            ChatMessage chatMessage = chatMessages.get(position);
+            if (chatMessage.id != null && chatMessage.id.equals(seenMessageId)) {
+                oldPosition = position;
+                break;
+            }
+            // A pending message has not reached the receiver, whatever its device-clock date says
+            if (newPosition == RecyclerView.NO_POSITION && chatMessage.senderId.equals(sendId)
+                    && !chatMessage.pending && ReadReceipts.isSeen(chatMessage, receiverReadUpTo)) {
+                newPosition = position;
+            }
+        }
+        if (newPosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+        seenMessageId = chatMessages.get(newPosition).id;
+        if (oldPosition != RecyclerView.NO_POSITION) {
+            notifyItemChanged(oldPosition);
+        }
+        notifyItemChanged(newPosition);
     }
 
     /**
@@ -69,7 +175,7 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         if (viewType == VIEW_TYPE_SENT) {
             return new SentMessageViewHOlder(ItemContainerSentMessageBinding
-                    .inflate(LayoutInflater.from(parent.getContext()), parent, false));
+                    .inflate(LayoutInflater.from(parent.getContext()), parent, false), messageActionListener);
         } else {
             return new ReceiverMessageViewHolder(ItemContainerReceivedMessageBinding
                     .inflate(LayoutInflater.from(parent.getContext()), parent, false));
@@ -84,11 +190,17 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
      */
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        long bindStartNanos = System.nanoTime();
         if (getItemViewType(position) == VIEW_TYPE_SENT) {
-            ((SentMessageViewHOlder) holder).setData(chatMessages.get(position));
+            ChatMessage chatMessage = chatMessages.get(position);
+            ((SentMessageViewHOlder) holder).setData(chatMessage,
+                    chatMessage.id != null && chatMessage.id.equals(seenMessageId));
         } else {
-            ((ReceiverMessageViewHolder) holder).setData(chatMessages.get(position), receiverProfileImage);
+            ChatMessage chatMessage = chatMessages.get(position);
+            ((ReceiverMessageViewHolder) holder).setData(chatMessage, senders.get(chatMessage.senderId),
+                    showSenderNames);
         }
+        ROW_BIND.record(System.nanoTime() - bindStartNanos);
     }
 
     /**
@@ -116,6 +228,39 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
     }
 
+    /**
+     * Shows a message's text, or the unsent placeholder in italics if the message is a tombstone.
+     *
+     * @param textMessage The view showing the message text.
+     * @param chatMessage The chat message to be displayed.
+     */
+    private static void bindText(TextView textMessage, ChatMessage chatMessage) {
+        if (chatMessage.deletedAt != null) {
+            textMessage.setText(R.string.message_unsent);
+            textMessage.setTypeface(null, Typeface.ITALIC);
+        } else {
+            textMessage.setText(chatMessage.message);
+            textMessage.setTypeface(null, Typeface.NORMAL);
+        }
+    }
+
+    /**
+     * Shows a message's date and time, labelled if the message was edited,
+     * or in place of them whether a pending message is still waiting or was not sent.
+     *
+     * @param textDateTime The view showing the date and time.
+     * @param chatMessage The chat message to be displayed.
+     */
+    private static void bindDateTime(TextView textDateTime, ChatMessage chatMessage) {
+        if (chatMessage.pending) {
+            textDateTime.setText(chatMessage.failed ? R.string.message_not_sent : R.string.message_pending);
+        } else if (chatMessage.editedAt != null && chatMessage.deletedAt == null) {
+            textDateTime.setText(textDateTime.getContext().getString(R.string.message_edited, chatMessage.dateTime));
+        } else {
+            textDateTime.setText(chatMessage.dateTime);
+        }
+    }
+
     /**
      * ViewHolder class for sent messages.
      */
@@ -126,24 +271,43 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
          */
         private final ItemContainerSentMessageBinding binding;
 
+        /**
+         * The message currently bound to this row.
+         */
+        private ChatMessage chatMessage;
+
         /**
          * Constructor for initializing SentMessageViewHolder.
          *
          * @param itemContainerSentMessageBinding The binding for the sent message layout.
+         * @param messageActionListener Listener for long presses on the message.
          */
-        public SentMessageViewHOlder(ItemContainerSentMessageBinding itemContainerSentMessageBinding) {
+        public SentMessageViewHOlder(ItemContainerSentMessageBinding itemContainerSentMessageBinding,
+                                     MessageActionListener messageActionListener) {
             super(itemContainerSentMessageBinding.getRoot());
             binding = itemContainerSentMessageBinding;
+            binding.textMessage.setOnLongClickListener(v -> {
+                // Tombstones and messages still waiting to be sent cannot be changed; those given up can be sent again
+                if (chatMessage == null || chatMessage.deletedAt != null || chatMessage.id == null
+                        || (chatMessage.pending && !chatMessage.failed)) {
+                    return false;
+                }
+                messageActionListener.onMessageLongPressed(chatMessage, v);
+                return true;
+            });
         }
 
         /**
          * Sets the data for a sent message.
          *
          * @param chatMessage The chat message to be displayed.
+         * @param seen Whether this is the newest message the receiver has seen.
          */
-        void setData(ChatMessage chatMessage) {
-            binding.textMessage.setText(chatMessage.message);
-            binding.textDateTime.setText(chatMessage.dateTime);
+        void setData(ChatMessage chatMessage, boolean seen) {
+            this.chatMessage = chatMessage;
+            bindText(binding.textMessage, chatMessage);
+            bindDateTime(binding.textDateTime, chatMessage);
+            binding.textSeen.setVisibility(seen ? View.VISIBLE : View.GONE);
         }
     }
 
@@ -168,15 +332,22 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
 
         /**
-         * Sets the data for a received message, including the receiver's profile image.
+         * Sets the data for a received message, including the sender's profile image.
          *
          * @param chatMessage The chat message to be displayed.
-         * @param receiverProfileImage The profile image of the message receiver.
+         * @param sender The sender of the message, or null while it is not known yet.
+         * @param showSenderName Whether to label the message with the sender's name.
          */
-        void setData(ChatMessage chatMessage, Bitmap receiverProfileImage) {
-            binding.textMessage.setText(chatMessage.message);
-            binding.textDateTime.setText(chatMessage.dateTime);
-            binding.imageProfile.setImageBitmap(receiverProfileImage);
+        void setData(ChatMessage chatMessage, User sender, boolean showSenderName) {
+            bindText(binding.textMessage, chatMessage);
+            bindDateTime(binding.textDateTime, chatMessage);
+            AvatarCache.into(sender, binding.imageProfile);
+            if (showSenderName && sender != null) {
+                binding.textSenderName.setText(sender.name);
+                binding.textSenderName.setVisibility(View.VISIBLE);
+            } else {
+                binding.textSenderName.setVisibility(View.GONE);
+            }
         }
     }
 }
@@ -0,0 +1,157 @@
+/**
+ * The GroupsAdapter class is responsible for displaying the groups of the signed-in user in a RecyclerView.
+ * It reuses the user row layout, showing the group's name and member count, and manages click events to open a group chat.
+ * Groups with unread messages show the unread count in a badge.
+ */
+package com.example.chatapp.adapters;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.chatapp.R;
+import com.example.chatapp.databinding.ItemContainerUserBinding;
+import com.example.chatapp.listeners.GroupListener;
+import com.example.chatapp.modules.Group;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public class GroupsAdapter extends RecyclerView.Adapter<GroupsAdapter.GroupViewHolder> {
+
+    /**
+     * List of groups to be displayed.
+     */
+    private final List<Group> groups;
+
+    /**
+     * Listener for group click events.
+     */
+    private final GroupListener groupListener;
+
+    /**
+     * Unread message counts by group ID; groups without unread messages are missing.
+     */
+    private final Map<String, Long> unreadCounts = new HashMap<>();
+
+    /**
+     * Constructor for initializing GroupsAdapter with a list of groups and a click listener.
+     *
+     * @param groups List of groups to be displayed.
+     * @param groupListener Listener for handling group click events.
+     */
+    public GroupsAdapter(List<Group> groups, GroupListener groupListener) {
+        this.groups = groups;
+        this.groupListener = groupListener;
+    }
+
+    /**
+     * Adds a newly created group at the top of the list.
+     *
+     * @param group The new group.
+     */
+    public void addGroup(Group group) {
+        groups.add(0, group);
+        notifyItemInserted(0);
+    }
+
+    /**
+     * Replaces the unread counts, rebinding only the rows whose count changed.
+     *
+     * @param updated Unread message counts by conversation ID, which for a group is its ID.
+     */
+    public void setUnreadCounts(Map<String, Long> updated) {
+        for (int position = 0; position < groups.size(); position++) {
+            String groupId = groups.get(position).id;
+            if (!Objects.equals(unreadCounts.get(groupId), updated.get(groupId))) {
+                notifyItemChanged(position);
+            }
+        }
+        unreadCounts.clear();
+        unreadCounts.putAll(updated);
+    }
+
+    /**
+     * Creates and returns a GroupViewHolder for displaying group information.
+     *
+     * @param parent The parent ViewGroup.
+     * @param viewType The type of the view (not used here since all items are groups).
+     * @return A GroupViewHolder representing a group item.
+     */
+    @NonNull
+    @Override
+    public GroupViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new GroupViewHolder(ItemContainerUserBinding
+                .inflate(LayoutInflater.from(parent.getContext()), parent, false));
+    }
+
+    /**
+     * Binds the group data to the appropriate GroupViewHolder.
+     *
+     * @param holder The GroupViewHolder for the group.
+     * @param position The position of the group in the list.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull GroupViewHolder holder, int position) {
+        Group group = groups.get(position);
+        holder.setGroupData(group, unreadCounts.get(group.id));
+    }
+
+    /**
+     * Returns the total number of groups.
+     *
+     * @return The total count of groups.
+     */
+    @Override
+    public int getItemCount() {
+        return groups.size();
+    }
+
+    /**
+     * ViewHolder class for displaying group information.
+     */
+    class GroupViewHolder extends RecyclerView.ViewHolder {
+
+        /**
+         * Binding for accessing UI elements in the user item layout.
+         */
+        ItemContainerUserBinding binding;
+
+        /**
+         * Constructor for initializing GroupViewHolder.
+         *
+         * @param itemContainerUserBinding The binding for the user item layout.
+         */
+        public GroupViewHolder(ItemContainerUserBinding itemContainerUserBinding) {
+            super(itemContainerUserBinding.getRoot());
+            binding = itemContainerUserBinding;
+        }
+
+        /**
+         * Sets the group data to be displayed in the item.
+         *
+         * @param group The group whose data is to be displayed.
+         * @param unreadCount The number of unread messages in the group, or null if there are none.
+         */
+        void setGroupData(Group group, Long unreadCount) {
+            binding.textName.setText(group.name);
+            binding.textEmail.setText(binding.getRoot().getResources().getQuantityString(
+                    R.plurals.group_members, group.members.size(), group.members.size()));
+            binding.imageProfile.setImageBitmap(null);
+            if (unreadCount != null && unreadCount > 0) {
+                binding.textUnread.setText(String.valueOf(unreadCount));
+                binding.textUnread.setVisibility(View.VISIBLE);
+            } else {
+                binding.textUnread.setVisibility(View.GONE);
+            }
+
+            // Set an on-click listener for the group item to open its chat
+            binding.getRoot().setOnClickListener(v -> groupListener.onGroupClicked(group));
+        }
+    }
+}
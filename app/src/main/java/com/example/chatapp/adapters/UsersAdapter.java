@@ -1,26 +1,38 @@
 /**
  * The UsersAdapter class is responsible for displaying a list of users in a RecyclerView.
  * It binds user data to each item in the list and manages click events to initiate chats.
+ * Contacts with unread messages show the unread count in a badge.
  */
 package com.example.chatapp.adapters;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.chatapp.databinding.ItemContainerUserBinding;
 import com.example.chatapp.listeners.UserListener;
+import com.example.chatapp.metrics.Histogram;
+import com.example.chatapp.metrics.MetricNames;
+import com.example.chatapp.metrics.MetricsRegistry;
 import com.example.chatapp.modules.User;
+import com.example.chatapp.utilities.AvatarCache;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHolder> {
 
+    /**
+     * Time to bind one user row.
+     */
+    private static final Histogram ROW_BIND = MetricsRegistry.get().histogram(MetricNames.USER_ROW_BIND);
+
     /**
      * List of users to be displayed.
      */
@@ -31,6 +43,11 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
      */
     private final UserListener userListener;
 
+    /**
+     * Unread message counts by user ID; contacts without unread messages are missing.
+     */
+    private final Map<String, Long> unreadCounts = new HashMap<>();
+
     /**
      * Constructor for initializing UsersAdapter with a list of users and a click listener.
      *
@@ -42,6 +59,59 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
         this.userListener = userListener;
     }
 
+    /**
+     * Replaces the displayed users, rebinding only the rows that changed.
+     * Used when a refresh from the server follows a list painted from the cache.
+     *
+     * @param updated The new list of users.
+     */
+    public void setUsers(List<User> updated) {
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return users.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return updated.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return users.get(oldPosition).id.equals(updated.get(newPosition).id);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                User before = users.get(oldPosition);
+                User after = updated.get(newPosition);
+                return Objects.equals(before.name, after.name)
+                        && Objects.equals(before.email, after.email)
+                        && Objects.equals(before.image, after.image);
+            }
+        });
+        users.clear();
+        users.addAll(updated);
+        diff.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * Replaces the unread counts, rebinding only the rows whose count changed.
+     *
+     * @param updated Unread message counts by user ID.
+     */
+    public void setUnreadCounts(Map<String, Long> updated) {
+        for (int position = 0; position < users.size(); position++) {
+            String userId = users.get(position).id;
+            if (!Objects.equals(unreadCounts.get(userId), updated.get(userId))) {
+                notifyItemChanged(position);
+            }
+        }
+        unreadCounts.clear();
+        unreadCounts.putAll(updated);
+    }
+
     /**
      * Creates and returns a UserViewHolder for displaying user information.
      *
@@ -65,7 +135,10 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
      */
     @Override
     public void onBindViewHolder(@NonNull UserViewHolder holder, int position) {
-        holder.setUserData(users.get(position));
+        long bindStartNanos = System.nanoTime();
+        User user = users.get(position);
+        holder.setUserData(user, unreadCounts.get(user.id));
+        ROW_BIND.record(System.nanoTime() - bindStartNanos);
     }
 
     /**
@@ -88,39 +161,41 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
          */
         ItemContainerUserBinding binding;
 
+        /**
+         * The user currently bound to this row.
+         */
+        private User user;
+
         /**
          * Constructor for initializing UserViewHolder.
+         * The click listener is set once here, so binding a row allocates no listener.
          *
          * @param itemContainerUserBinding The binding for the user item layout.
          */
         public UserViewHolder(ItemContainerUserBinding itemContainerUserBinding) {
             super(itemContainerUserBinding.getRoot());
             binding = itemContainerUserBinding;
+            // Initiate a chat with whichever user the row shows at the time of the click
+            binding.getRoot().setOnClickListener(v -> userListener.onUserClicked(user));
         }
 
         /**
          * Sets the user data to be displayed in the user item.
          *
          * @param user The user whose data is to be displayed.
+         * @param unreadCount The number of unread messages from the user, or null if there are none.
          */
-        void setUserData(User user) {
+        void setUserData(User user, Long unreadCount) {
+            this.user = user;
             binding.textName.setText(user.name);
             binding.textEmail.setText(user.email);
-            binding.imageProfile.setImageBitmap(getUserImage(user.image));
-
-            // Set an on-click listener for the user item to initiate chat
-            binding.getRoot().setOnClickListener(v -> userListener.onUserClicked(user));
+            AvatarCache.into(user, binding.imageProfile);
+            if (unreadCount != null && unreadCount > 0) {
+                binding.textUnread.setText(String.valueOf(unreadCount));
+                binding.textUnread.setVisibility(View.VISIBLE);
+            } else {
+                binding.textUnread.setVisibility(View.GONE);
+            }
         }
     }
-
-    /**
-     * Decodes a Base64 encoded image string to a Bitmap.
-     *
-     * @param encodeImage The Base64 encoded image string.
-     * @return The decoded Bitmap image.
-     */
-    private Bitmap getUserImage(String encodeImage) {
-        byte[] bytes = Base64.decode(encodeImage, Base64.DEFAULT);
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-    }
 }
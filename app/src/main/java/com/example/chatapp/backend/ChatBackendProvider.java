@@ -0,0 +1,76 @@
+/**
+ * The ChatBackendProvider class hands out the ChatBackend used by every screen.
+ * It defaults to Firestore; tests and benchmarks can install another implementation.
+ * On devices that support it, message texts are end-to-end encrypted on top of it.
+ * Messages sent to Firestore while offline are queued in the Outbox and sent by the OutboxWorker.
+ */
+package com.example.chatapp.backend;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chatapp.crypto.ConversationKeys;
+import com.example.chatapp.utilities.DeviceKeys;
+import com.example.chatapp.utilities.OutboxWorker;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.concurrent.Executors;
+
+public final class ChatBackendProvider {
+
+    /**
+     * The backend shared by all activities, created on first use.
+     */
+    private static ChatBackend backend;
+
+    /**
+     * The application context, which holds the encryption keys.
+     */
+    private static Context appContext;
+
+    private ChatBackendProvider() {
+    }
+
+    /**
+     * Sets the context the backend is created with; called once when the app starts.
+     *
+     * @param context Any context of the app.
+     */
+    public static synchronized void init(Context context) {
+        appContext = context.getApplicationContext();
+    }
+
+    /**
+     * Returns the shared backend, creating the configured implementation on first use.
+     *
+     * @return The backend every screen should use.
+     */
+    public static synchronized ChatBackend get() {
+        if (backend == null) {
+            FirestoreChatBackend firestore = new FirestoreChatBackend(FirebaseFirestore.getInstance());
+            if (appContext != null) {
+                Context context = appContext;
+                firestore.setOutbox(OutboxProvider.get(), () -> OutboxWorker.schedule(context));
+            }
+            ConversationKeys keys = appContext == null ? null : DeviceKeys.get(appContext);
+            if (keys == null) {
+                backend = firestore;
+            } else {
+                Handler mainHandler = new Handler(Looper.getMainLooper());
+                backend = new EncryptingChatBackend(firestore, keys, Executors.newSingleThreadExecutor(),
+                        mainHandler::post);
+            }
+        }
+        return backend;
+    }
+
+    /**
+     * Replaces the shared backend, e.g. with an InMemoryChatBackend in tests.
+     *
+     * @param chatBackend The backend to use from now on.
+     */
+    public static synchronized void set(ChatBackend chatBackend) {
+        backend = chatBackend;
+    }
+}
@@ -0,0 +1,851 @@
+/**
+ * The FirestoreChatBackend class implements ChatBackend on top of Firebase Firestore.
+ * Users live in the Users collection and messages in per-conversation subcollections.
+ * Callbacks run on the main thread, as delivered by the Firestore SDK.
+ * Every read and write is metered against the screen that issued it.
+ * Typing and presence are single expiresAt timestamps in their own documents.
+ * Group messages are stored once, in the group's conversation, and every member listens there.
+ * Archived history comes from gzip-compressed data bundles: each segment is one document read,
+ * loaded into the local cache and read back through the query bundled with it.
+ * Sending needs the server; messages sent while offline are queued in the outbox, if there is one,
+ * and so are messages sent while older ones are still queued, so nothing overtakes them.
+ */
+package com.example.chatapp.backend;
+
+import com.example.chatapp.metrics.Usage;
+import com.example.chatapp.metrics.UsageMeter;
+import com.example.chatapp.modules.Archive;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.Group;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.repository.ConversationRepository;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.ConversationIds;
+import com.example.chatapp.utilities.GroupMembers;
+import com.example.chatapp.utilities.MessageList;
+import com.example.chatapp.utilities.ReadReceipts;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+public class FirestoreChatBackend implements ChatBackend {
+
+    /**
+     * Firebase Firestore database instance.
+     */
+    private final FirebaseFirestore database;
+
+    /**
+     * Data-access layer for conversations and their messages.
+     */
+    private final ConversationRepository conversationRepository;
+
+    /**
+     * Meter every read and write is attributed to.
+     */
+    private final UsageMeter usageMeter;
+
+    /**
+     * Keeps messages sent while offline, or null to report those sends as failed.
+     */
+    private Outbox outbox;
+
+    /**
+     * Starts sending the queued messages once the device is online.
+     */
+    private Runnable drain;
+
+    /**
+     * Constructor for initializing FirestoreChatBackend with a Firestore instance.
+     *
+     * @param database The Firestore database to read from and write to.
+     */
+    public FirestoreChatBackend(FirebaseFirestore database) {
+        this(database, UsageMeter.get());
+    }
+
+    /**
+     * Constructor for initializing FirestoreChatBackend with a Firestore instance and a usage meter.
+     *
+     * @param database The Firestore database to read from and write to.
+     * @param usageMeter Meter every read and write is attributed to.
+     */
+    public FirestoreChatBackend(FirebaseFirestore database, UsageMeter usageMeter) {
+        this.database = database;
+        this.usageMeter = usageMeter;
+        this.conversationRepository = new ConversationRepository(database);
+    }
+
+    @Override
+    public void signIn(String email, String password, ReadPolicy policy, Callback<User> callback) {
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS)
+                .whereEqualTo(Constants.KEY_EMAIL, email)
+                .whereEqualTo(Constants.KEY_PASSWORD, password);
+        get(query, policy, usageMeter.current(), new Callback<QuerySnapshot>() {
+            @Override
+            public void onSuccess(QuerySnapshot result) {
+                callback.onSuccess(result.isEmpty() ? null : toUser(result.getDocuments().get(0)));
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                callback.onFailure(exception);
+            }
+        });
+    }
+
+    @Override
+    public void signUp(User user, String password, Callback<User> callback) {
+        HashMap<String, Object> document = new HashMap<>();
+        document.put(Constants.KEY_NAME, user.name);
+        document.put(Constants.KEY_LAST_NAME, user.lastName);
+        document.put(Constants.KEY_EMAIL, user.email);
+        document.put(Constants.KEY_PASSWORD, password);
+        document.put(Constants.KEY_IMAGE, user.image);
+        if (user.publicKey != null) {
+            document.put(Constants.KEY_PUBLIC_KEY, user.publicKey);
+        }
+        document.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp());
+        Usage usage = usageMeter.current();
+        database.collection(Constants.KEY_COLLECTION_USERS)
+                .add(document)
+                .addOnSuccessListener(documentReference -> {
+                    usage.recordWrite(1, DocumentSizes.of(documentReference.getPath(), document));
+                    user.id = documentReference.getId();
+                    callback.onSuccess(user);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void getUsers(ReadPolicy policy, Callback<List<User>> callback) {
+        get(database.collection(Constants.KEY_COLLECTION_USERS), policy, usageMeter.current(),
+                new Callback<QuerySnapshot>() {
+                    @Override
+                    public void onSuccess(QuerySnapshot result) {
+                        List<User> users = new ArrayList<>(result.size());
+                        for (QueryDocumentSnapshot queryDocumentSnapshot : result) {
+                            users.add(toUser(queryDocumentSnapshot));
+                        }
+                        callback.onSuccess(users);
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        callback.onFailure(exception);
+                    }
+                });
+    }
+
+    @Override
+    public void getUsersUpdatedSince(Date since, Callback<List<User>> callback) {
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS);
+        if (since != null) {
+            // Users stored before updatedAt existed are fetched by the first, unfiltered sync
+            query = query.whereGreaterThan(Constants.KEY_UPDATED_AT, since);
+        }
+        get(query, ReadPolicy.SERVER, usageMeter.current(), new Callback<QuerySnapshot>() {
+            @Override
+            public void onSuccess(QuerySnapshot result) {
+                List<User> users = new ArrayList<>(result.size());
+                for (QueryDocumentSnapshot queryDocumentSnapshot : result) {
+                    users.add(toUser(queryDocumentSnapshot));
+                }
+                callback.onSuccess(users);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                callback.onFailure(exception);
+            }
+        });
+    }
+
+    @Override
+    public void updateToken(String userId, String token, Callback<Void> callback) {
+        HashMap<String, Object> updates = new HashMap<>();
+        updates.put(Constants.KEY_FCM_TOKEN, token == null ? FieldValue.delete() : token);
+        updates.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp());
+        Usage usage = usageMeter.current();
+        DocumentReference user = database.collection(Constants.KEY_COLLECTION_USERS).document(userId);
+        user.update(updates)
+                .addOnSuccessListener(result -> {
+                    usage.recordWrite(1, DocumentSizes.of(user.getPath(), updates));
+                    callback.onSuccess(result);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void updatePublicKey(String userId, String publicKey, Callback<Void> callback) {
+        HashMap<String, Object> updates = new HashMap<>();
+        updates.put(Constants.KEY_PUBLIC_KEY, publicKey);
+        updates.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp());
+        Usage usage = usageMeter.current();
+        DocumentReference user = database.collection(Constants.KEY_COLLECTION_USERS).document(userId);
+        user.update(updates)
+                .addOnSuccessListener(result -> {
+                    usage.recordWrite(1, DocumentSizes.of(user.getPath(), updates));
+                    callback.onSuccess(result);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void createGroup(Group group, Callback<Group> callback) {
+        try {
+            GroupMembers.check(group.members);
+        } catch (IllegalArgumentException exception) {
+            callback.onFailure(exception);
+            return;
+        }
+        conversationRepository.createGroup(group, usageMeter.current())
+                .addOnSuccessListener(result -> callback.onSuccess(group))
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void getGroups(String userId, Callback<List<Group>> callback) {
+        get(conversationRepository.groupsOf(userId), ReadPolicy.SERVER, usageMeter.current(),
+                new Callback<QuerySnapshot>() {
+                    @Override
+                    public void onSuccess(QuerySnapshot result) {
+                        List<Group> groups = new ArrayList<>(result.size());
+                        for (QueryDocumentSnapshot queryDocumentSnapshot : result) {
+                            groups.add(toGroup(queryDocumentSnapshot));
+                        }
+                        callback.onSuccess(groups);
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        callback.onFailure(exception);
+                    }
+                });
+    }
+
+    @Override
+    public void getRecentConversations(String userId, int limit, Callback<Map<String, Date>> callback) {
+        get(conversationRepository.recentConversationsOf(userId, limit), ReadPolicy.SERVER, usageMeter.current(),
+                new Callback<QuerySnapshot>() {
+                    @Override
+                    public void onSuccess(QuerySnapshot result) {
+                        Map<String, Date> conversations = new LinkedHashMap<>();
+                        for (QueryDocumentSnapshot queryDocumentSnapshot : result) {
+                            conversations.put(queryDocumentSnapshot.getId(),
+                                    queryDocumentSnapshot.getDate(Constants.KEY_TIMESTAMP));
+                        }
+                        callback.onSuccess(conversations);
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        callback.onFailure(exception);
+                    }
+                });
+    }
+
+    /**
+     * Sets where messages sent while offline are kept until they can be sent.
+     *
+     * @param outbox The outbox, or null to report those sends as failed.
+     * @param drain Starts sending the queued messages once the device is online.
+     */
+    public void setOutbox(Outbox outbox, Runnable drain) {
+        this.outbox = outbox;
+        this.drain = drain;
+    }
+
+    /**
+     * Sends a message. If the callback is a SendCallback and there is an outbox, a message sent
+     * while offline is queued there, and so is one sent while older messages are still queued;
+     * the callback then hears onQueued. Otherwise a failed send is reported as such.
+     */
+    @Override
+    public void sendMessage(ChatMessage message, Callback<Void> callback) {
+        String conversationId = ConversationIds.of(message);
+        String messageId = conversationRepository.messages(conversationId).document().getId();
+        boolean queueable = outbox != null && callback instanceof SendCallback;
+        if (queueable && outbox.hasUnsent()) {
+            queue(conversationId, messageId, message, (SendCallback) callback); // Behind the older ones
+            return;
+        }
+        conversationRepository.sendMessage(conversationId, messageId, message.senderId, message.receiverId,
+                        message.message, false, usageMeter.current())
+                .addOnSuccessListener(callback::onSuccess)
+                .addOnFailureListener(exception -> {
+                    if (queueable && isOffline(exception)) {
+                        queue(conversationId, messageId, message, (SendCallback) callback);
+                    } else {
+                        callback.onFailure(exception);
+                    }
+                });
+    }
+
+    /**
+     * Queues a message in the outbox under the ID it keeps once stored, and starts draining the outbox.
+     */
+    private void queue(String conversationId, String messageId, ChatMessage message, SendCallback callback) {
+        ChatMessage queued = message.copy();
+        queued.id = messageId;
+        queued.conversationId = conversationId;
+        queued.dateObject = null; // Stamped when queued
+        outbox.add(queued);
+        drain.run();
+        callback.onQueued(messageId);
+    }
+
+    /**
+     * Sends a message from the outbox again. If an earlier attempt went through after all,
+     * the message document exists already and nothing is written.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param messageId The ID the message document was given when it was queued.
+     * @param message The queued message.
+     * @param callback Notified once the message is stored.
+     */
+    public void resendMessage(String conversationId, String messageId, ChatMessage message,
+                              Callback<Void> callback) {
+        conversationRepository.sendMessage(conversationId, messageId, message.senderId, message.receiverId,
+                        message.message, true, usageMeter.current())
+                .addOnSuccessListener(callback::onSuccess)
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    /**
+     * Returns whether a request failed because the server could not be reached.
+     */
+    private static boolean isOffline(Exception exception) {
+        return exception instanceof FirebaseFirestoreException
+                && ((FirebaseFirestoreException) exception).getCode() == FirebaseFirestoreException.Code.UNAVAILABLE;
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, MessageListener listener) {
+        return listenMessages(conversationId, null, listener);
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, Date after, MessageListener listener) {
+        Usage usage = usageMeter.current();
+        boolean[] firstSnapshot = {true};
+        return conversationRepository.listenMessages(conversationId, after, (value, error) -> {
+            if (error != null) {
+                listener.onError(error);
+                return;
+            }
+            if (value == null) {
+                return;
+            }
+            List<MessageChange> changes = new ArrayList<>(value.getDocumentChanges().size());
+            long bytes = 0;
+            for (DocumentChange documentChange : value.getDocumentChanges()) {
+                changes.add(new MessageChange(toChangeType(documentChange.getType()),
+                        toChatMessage(conversationId, documentChange.getDocument())));
+                bytes += sizeOf(documentChange.getDocument());
+            }
+            // The first snapshot answers the query; later ones bill one read per changed document
+            boolean fromCache = value.getMetadata().isFromCache();
+            if (firstSnapshot[0]) {
+                usage.recordQuery(changes.size(), bytes, fromCache);
+                firstSnapshot[0] = false;
+            } else {
+                usage.recordRead(changes.size(), bytes, fromCache);
+            }
+            listener.onMessages(changes);
+        })::remove;
+    }
+
+    /**
+     * Reads the archive from the cached conversation document when there is one, which the
+     * conversation list usually left behind, so opening a chat does not wait for the server.
+     * A cached archive may be older than the stored one; the archiver keeps the message documents,
+     * so listening after an older archive only receives a few more messages, and misses none.
+     */
+    @Override
+    public void getArchive(String conversationId, Callback<Archive> callback) {
+        Usage usage = usageMeter.current();
+        DocumentReference conversation = conversationRepository.conversation(conversationId);
+        conversation.get(Source.CACHE).addOnCompleteListener(task -> {
+            if (task.isSuccessful() && task.getResult().exists()) {
+                callback.onSuccess(toArchive(task.getResult(), usage));
+                return;
+            }
+            conversation.get()
+                    .addOnSuccessListener(documentSnapshot -> callback.onSuccess(toArchive(documentSnapshot, usage)))
+                    .addOnFailureListener(callback::onFailure);
+        });
+    }
+
+    /**
+     * Reads the archive fields of a conversation document, recording the read.
+     */
+    private Archive toArchive(DocumentSnapshot documentSnapshot, Usage usage) {
+        usage.recordRead(1, sizeOf(documentSnapshot), documentSnapshot.getMetadata().isFromCache());
+        Long segments = documentSnapshot.getLong(Constants.KEY_ARCHIVE_SEGMENTS);
+        if (segments == null || segments == 0) {
+            return Archive.NONE;
+        }
+        Archive archive = new Archive();
+        archive.segmentCount = segments.intValue();
+        archive.until = documentSnapshot.getDate(Constants.KEY_ARCHIVED_UNTIL);
+        Long lastSeq = documentSnapshot.getLong(Constants.KEY_ARCHIVED_SEQ);
+        archive.lastSeq = lastSeq == null ? 0 : lastSeq;
+        return archive;
+    }
+
+    @Override
+    public void getArchivedMessages(String conversationId, int segment, Callback<List<ChatMessage>> callback) {
+        Usage usage = usageMeter.current();
+        // A segment loaded before is still known by its query name and read from the cache for free
+        database.getNamedQuery(Archive.queryName(conversationId, segment)).addOnCompleteListener(task -> {
+            Query query = task.isSuccessful() ? task.getResult() : null;
+            if (query == null) {
+                downloadArchiveSegment(conversationId, segment, usage, callback);
+            } else {
+                readArchiveSegment(conversationId, segment, query, true, usage, callback);
+            }
+        });
+    }
+
+    /**
+     * Reads an archive segment back from the local cache through its bundled query.
+     * If the cache has evicted its documents since, the segment is downloaded again.
+     */
+    private void readArchiveSegment(String conversationId, int segment, Query query, boolean downloadIfEvicted,
+                                    Usage usage, Callback<List<ChatMessage>> callback) {
+        query.get(Source.CACHE)
+                .addOnSuccessListener(result -> {
+                    if (result.isEmpty() && downloadIfEvicted) {
+                        downloadArchiveSegment(conversationId, segment, usage, callback);
+                        return;
+                    }
+                    recordQuery(usage, result);
+                    List<ChatMessage> messages = new ArrayList<>(result.size());
+                    for (DocumentSnapshot documentSnapshot : result.getDocuments()) {
+                        messages.add(toChatMessage(conversationId, documentSnapshot));
+                    }
+                    callback.onSuccess(messages);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    /**
+     * Downloads an archive segment in a single document read and loads its bundle into the local cache.
+     * The bundle is decompressed as the SDK reads it, off the main thread.
+     */
+    private void downloadArchiveSegment(String conversationId, int segment, Usage usage,
+                                        Callback<List<ChatMessage>> callback) {
+        conversationRepository.archiveSegment(conversationId, segment)
+                .get()
+                .addOnSuccessListener(documentSnapshot -> {
+                    Blob bundle = documentSnapshot.getBlob(Constants.KEY_BUNDLE);
+                    if (bundle == null) {
+                        callback.onFailure(new IllegalStateException("Missing archive segment " + segment));
+                        return;
+                    }
+                    byte[] compressed = bundle.toBytes();
+                    usage.recordRead(1, sizeOf(documentSnapshot) + compressed.length,
+                            documentSnapshot.getMetadata().isFromCache());
+                    InputStream bundleData;
+                    try {
+                        bundleData = new GZIPInputStream(new ByteArrayInputStream(compressed));
+                    } catch (IOException exception) {
+                        callback.onFailure(exception);
+                        return;
+                    }
+                    database.loadBundle(bundleData)
+                            .onSuccessTask(progress -> database.getNamedQuery(
+                                    Archive.queryName(conversationId, segment)))
+                            .addOnSuccessListener(query -> {
+                                if (query == null) {
+                                    callback.onFailure(new IllegalStateException(
+                                            "Archive segment " + segment + " has no bundled query"));
+                                } else {
+                                    readArchiveSegment(conversationId, segment, query, false, usage, callback);
+                                }
+                            })
+                            .addOnFailureListener(callback::onFailure);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void editMessage(ChatMessage message, String text, Callback<Void> callback) {
+        HashMap<String, Object> update = new HashMap<>();
+        update.put(Constants.KEY_MESSAGE, text);
+        update.put(Constants.KEY_EDITED_AT, FieldValue.serverTimestamp());
+        updateMessage(message, update, text, callback);
+    }
+
+    @Override
+    public void unsendMessage(ChatMessage message, Callback<Void> callback) {
+        HashMap<String, Object> update = new HashMap<>();
+        update.put(Constants.KEY_MESSAGE, "");
+        update.put(Constants.KEY_DELETED_AT, FieldValue.serverTimestamp());
+        // A TTL policy on expiresAt deletes the tombstone, which listeners then receive as REMOVED
+        update.put(Constants.KEY_EXPIRES_AT,
+                new Date(System.currentTimeMillis() + MessageList.TOMBSTONE_RETENTION_MILLIS));
+        updateMessage(message, update, "", callback);
+    }
+
+    private void updateMessage(ChatMessage message, HashMap<String, Object> update, String summaryText,
+                               Callback<Void> callback) {
+        conversationRepository.updateMessage(ConversationIds.of(message),
+                        message.id, message.seq, update, summaryText, usageMeter.current())
+                .addOnSuccessListener(callback::onSuccess)
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void getMessagesAfter(String conversationId, long afterSeq, Callback<List<ChatMessage>> callback) {
+        Usage usage = usageMeter.current();
+        conversationRepository.messagesAfterSeq(conversationId, afterSeq)
+                .get(Source.SERVER)
+                .addOnSuccessListener(result -> {
+                    recordQuery(usage, result);
+                    List<ChatMessage> messages = new ArrayList<>(result.size());
+                    for (DocumentSnapshot documentSnapshot : result.getDocuments()) {
+                        messages.add(toChatMessage(conversationId, documentSnapshot));
+                    }
+                    callback.onSuccess(messages);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void markRead(String conversationId, String userId, Date readUpTo, Callback<Void> callback) {
+        conversationRepository.markRead(conversationId, userId, readUpTo, usageMeter.current())
+                .addOnSuccessListener(callback::onSuccess)
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public Registration listenReadCursors(String conversationId, ReadCursorListener listener) {
+        Usage usage = usageMeter.current();
+        return conversationRepository.conversation(conversationId).addSnapshotListener((value, error) -> {
+            if (error != null) {
+                listener.onError(error);
+                return;
+            }
+            if (value == null) {
+                return;
+            }
+            usage.recordRead(1, sizeOf(value), value.getMetadata().isFromCache());
+            listener.onReadCursors(readCursors(value));
+        })::remove;
+    }
+
+    @Override
+    public void getUnreadCounts(String userId, Callback<Map<String, Long>> callback) {
+        Usage usage = usageMeter.current();
+        conversationRepository.conversationsOf(userId)
+                .get()
+                .addOnSuccessListener(result -> {
+                    recordQuery(usage, result);
+                    List<DocumentSnapshot> unread = new ArrayList<>();
+                    for (DocumentSnapshot summary : result.getDocuments()) {
+                        if (ReadReceipts.hasUnread(summary.getString(Constants.KEY_LAST_SENDER_ID),
+                                summary.getDate(Constants.KEY_TIMESTAMP), userId,
+                                readCursors(summary).get(userId))) {
+                            unread.add(summary);
+                        }
+                    }
+                    countUnread(unread, userId, usage, callback);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    /**
+     * Counts the messages from others after the user's read cursor in each of the given conversations.
+     * Each count is a server-side aggregation billed as one read, whatever it counts.
+     */
+    private void countUnread(List<DocumentSnapshot> summaries, String userId, Usage usage,
+                                    Callback<Map<String, Long>> callback) {
+        Map<String, Long> counts = new HashMap<>();
+        if (summaries.isEmpty()) {
+            callback.onSuccess(counts);
+            return;
+        }
+        // Every task completes on the main thread, so the shared state needs no locking
+        int[] remaining = {summaries.size()};
+        boolean[] failed = {false};
+        for (DocumentSnapshot summary : summaries) {
+            Query unread = conversationRepository.unreadMessages(summary.getId(), userId,
+                    readCursors(summary).get(userId));
+            unread.count().get(AggregateSource.SERVER).addOnCompleteListener(task -> {
+                if (failed[0]) {
+                    return;
+                }
+                if (!task.isSuccessful()) {
+                    failed[0] = true;
+                    callback.onFailure(task.getException());
+                    return;
+                }
+                usage.recordQuery(0, 0, false);
+                counts.put(summary.getId(), task.getResult().getCount());
+                if (--remaining[0] == 0) {
+                    callback.onSuccess(counts);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads the lastRead map of a conversation document.
+     */
+    private static Map<String, Date> readCursors(DocumentSnapshot summary) {
+        Map<String, Date> cursors = new HashMap<>();
+        Object lastRead = summary.get(Constants.KEY_LAST_READ);
+        if (lastRead instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) lastRead).entrySet()) {
+                if (entry.getValue() instanceof Timestamp) {
+                    cursors.put((String) entry.getKey(), ((Timestamp) entry.getValue()).toDate());
+                }
+            }
+        }
+        return cursors;
+    }
+
+    @Override
+    public void setTyping(String conversationId, String userId, Date expiresAt, Callback<Void> callback) {
+        setExpiry(conversationRepository.typing(conversationId, userId), expiresAt, callback);
+    }
+
+    @Override
+    public Registration listenTyping(String conversationId, String userId, ExpiryListener listener) {
+        return listenExpiry(conversationRepository.typing(conversationId, userId), listener);
+    }
+
+    @Override
+    public void setPresence(String userId, Date expiresAt, Callback<Void> callback) {
+        setExpiry(database.collection(Constants.KEY_COLLECTION_PRESENCE).document(userId), expiresAt, callback);
+    }
+
+    @Override
+    public Registration listenPresence(String userId, ExpiryListener listener) {
+        return listenExpiry(database.collection(Constants.KEY_COLLECTION_PRESENCE).document(userId), listener);
+    }
+
+    /**
+     * Overwrites the expiry of a typing or presence document.
+     */
+    private void setExpiry(DocumentReference document, Date expiresAt, Callback<Void> callback) {
+        HashMap<String, Object> expiry = new HashMap<>();
+        expiry.put(Constants.KEY_EXPIRES_AT, expiresAt);
+        Usage usage = usageMeter.current();
+        document.set(expiry)
+                .addOnSuccessListener(result -> {
+                    usage.recordWrite(1, DocumentSizes.of(document.getPath(), expiry));
+                    callback.onSuccess(result);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    /**
+     * Listens to the expiry of a typing or presence document.
+     */
+    private Registration listenExpiry(DocumentReference document, ExpiryListener listener) {
+        Usage usage = usageMeter.current();
+        return document.addSnapshotListener((value, error) -> {
+            if (error != null) {
+                listener.onError(error);
+                return;
+            }
+            if (value == null) {
+                return;
+            }
+            usage.recordRead(1, sizeOf(value), value.getMetadata().isFromCache());
+            listener.onExpiry(value.getDate(Constants.KEY_EXPIRES_AT));
+        })::remove;
+    }
+
+    @Override
+    public void prefetchMessages(String conversationId, int limit, Callback<Void> callback) {
+        Usage usage = usageMeter.current();
+        // Every document a query returns is kept in the persistent cache for the listener to reuse
+        conversationRepository.latestMessages(conversationId, limit)
+                .get()
+                .addOnSuccessListener(result -> {
+                    recordQuery(usage, result);
+                    callback.onSuccess(null);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    /**
+     * Runs a one-off query with the given read policy and records what it read.
+     * With CACHE_THEN_SERVER, the cache and the server are asked at the same time;
+     * a non-empty cached result is delivered unless the server has already answered,
+     * and a server failure is only reported when the cache had nothing to show.
+     */
+    private static void get(Query query, ReadPolicy policy, Usage usage, Callback<QuerySnapshot> callback) {
+        if (policy == ReadPolicy.SERVER) {
+            query.get()
+                    .addOnSuccessListener(result -> {
+                        recordQuery(usage, result);
+                        callback.onSuccess(result);
+                    })
+                    .addOnFailureListener(callback::onFailure);
+            return;
+        }
+        // Both tasks complete on the main thread, so the state needs no locking
+        CacheThenServer state = new CacheThenServer();
+        query.get(Source.CACHE).addOnCompleteListener(task -> {
+            state.cacheDone = true;
+            QuerySnapshot cached = task.isSuccessful() ? task.getResult() : null;
+            if (!state.serverSucceeded && cached != null && !cached.isEmpty()) {
+                state.cacheDelivered = true;
+                recordQuery(usage, cached);
+                callback.onSuccess(cached);
+            }
+            if (state.serverFailure != null && !state.cacheDelivered) {
+                callback.onFailure(state.serverFailure);
+            }
+        });
+        query.get(Source.SERVER)
+                .addOnSuccessListener(result -> {
+                    state.serverSucceeded = true;
+                    recordQuery(usage, result);
+                    callback.onSuccess(result);
+                })
+                .addOnFailureListener(exception -> {
+                    if (!state.cacheDone) {
+                        state.serverFailure = exception; // Decided once the cache has answered
+                    } else if (!state.cacheDelivered) {
+                        callback.onFailure(exception);
+                    }
+                });
+    }
+
+    /**
+     * Progress of a CACHE_THEN_SERVER read.
+     */
+    private static final class CacheThenServer {
+        boolean cacheDone;
+        boolean cacheDelivered;
+        boolean serverSucceeded;
+        Exception serverFailure;
+    }
+
+    /**
+     * Records the documents returned by a query.
+     */
+    private static void recordQuery(Usage usage, QuerySnapshot result) {
+        long bytes = 0;
+        for (DocumentSnapshot documentSnapshot : result.getDocuments()) {
+            bytes += sizeOf(documentSnapshot);
+        }
+        usage.recordQuery(result.size(), bytes, result.getMetadata().isFromCache());
+    }
+
+    /**
+     * Estimates the size of a document, which stands in for the bytes transferred.
+     */
+    private static long sizeOf(DocumentSnapshot documentSnapshot) {
+        return DocumentSizes.of(documentSnapshot.getReference().getPath(), documentSnapshot.getData());
+    }
+
+    /**
+     * Maps a user document to a User.
+     */
+    private static User toUser(DocumentSnapshot documentSnapshot) {
+        User user = new User();
+        user.name = documentSnapshot.getString(Constants.KEY_NAME);
+        user.lastName = documentSnapshot.getString(Constants.KEY_LAST_NAME);
+        user.email = documentSnapshot.getString(Constants.KEY_EMAIL);
+        user.image = documentSnapshot.getString(Constants.KEY_IMAGE);
+        user.token = documentSnapshot.getString(Constants.KEY_FCM_TOKEN);
+        user.publicKey = documentSnapshot.getString(Constants.KEY_PUBLIC_KEY);
+        user.id = documentSnapshot.getId();
+        return user;
+    }
+
+    /**
+     * Maps a group conversation document to a Group.
+     */
+    private static Group toGroup(DocumentSnapshot documentSnapshot) {
+        Group group = new Group();
+        group.id = documentSnapshot.getId();
+        group.name = documentSnapshot.getString(Constants.KEY_GROUP_NAME);
+        List<?> members = (List<?>) documentSnapshot.get(Constants.KEY_PARTICIPANTS);
+        if (members != null) {
+            for (Object member : members) {
+                group.members.add((String) member);
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Maps a message document of a conversation to a ChatMessage.
+     */
+    private static ChatMessage toChatMessage(String conversationId, DocumentSnapshot documentSnapshot) {
+        return MessageMapper.toChatMessage(conversationId, new SnapshotFields(documentSnapshot));
+    }
+
+    /**
+     * Exposes the fields of a Firestore document to the SDK-independent mappers.
+     */
+    private static final class SnapshotFields implements FieldSource {
+
+        private final DocumentSnapshot documentSnapshot;
+
+        SnapshotFields(DocumentSnapshot documentSnapshot) {
+            this.documentSnapshot = documentSnapshot;
+        }
+
+        @Override
+        public String getId() {
+            return documentSnapshot.getId();
+        }
+
+        @Override
+        public String getString(String key) {
+            return documentSnapshot.getString(key);
+        }
+
+        @Override
+        public Date getDate(String key) {
+            // A server timestamp not yet confirmed reads as the local estimate rather than null
+            return documentSnapshot.getDate(key, DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+        }
+
+        @Override
+        public Long getLong(String key) {
+            return documentSnapshot.getLong(key);
+        }
+    }
+
+    private static MessageChange.Type toChangeType(DocumentChange.Type type) {
+        switch (type) {
+            case MODIFIED:
+                return MessageChange.Type.MODIFIED;
+            case REMOVED:
+                return MessageChange.Type.REMOVED;
+            default:
+                return MessageChange.Type.ADDED;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * The OutboxProvider class hands out the Outbox shared by the whole app.
+ * The outbox keeps its file in the app's private storage and starts loading it when the app starts,
+ * so the first send, or the OutboxWorker after a restart, rarely waits for it.
+ */
+package com.example.chatapp.backend;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+
+public final class OutboxProvider {
+
+    /**
+     * The outbox shared by the whole app, created by init.
+     */
+    private static Outbox outbox;
+
+    private OutboxProvider() {
+    }
+
+    /**
+     * Creates the outbox and starts loading it in the background; called once when the app starts.
+     *
+     * @param context Any context of the app.
+     */
+    public static synchronized void init(Context context) {
+        Context appContext = context.getApplicationContext();
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        // Unlike getFilesDir(), getDataDir() does not touch the disk; the outbox creates its directory itself
+        outbox = new Outbox(new File(appContext.getDataDir(), "outbox"),
+                Executors.newSingleThreadExecutor(), mainHandler::post);
+        outbox.load();
+    }
+
+    /**
+     * Returns the shared outbox.
+     *
+     * @return The outbox every screen and worker should queue to and read from.
+     */
+    public static synchronized Outbox get() {
+        if (outbox == null) {
+            throw new IllegalStateException("OutboxProvider.init was not called");
+        }
+        return outbox;
+    }
+}
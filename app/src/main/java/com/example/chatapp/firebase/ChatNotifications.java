@@ -0,0 +1,209 @@
+/**
+ * The ChatNotifications class shows one notification per conversation, in messaging style,
+ * with an inline reply action. The reply goes to ReplyReceiver, which sends it without
+ * starting any activity; the notification is then updated in place with the reply appended.
+ * New messages of a conversation are appended to its notification rather than posted anew.
+ * A message the outbox gave up on gets a notification of its own, next to the conversation's.
+ */
+package com.example.chatapp.firebase;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.service.notification.StatusBarNotification;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.app.Person;
+import androidx.core.app.RemoteInput;
+
+import com.example.chatapp.R;
+import com.example.chatapp.activities.ChatActivity;
+import com.example.chatapp.activities.SignInActivity;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.utilities.Constants;
+
+public final class ChatNotifications {
+
+    /**
+     * ID of the notification channel for chat messages.
+     */
+    private static final String CHANNEL_ID = "messages";
+
+    /**
+     * Key of the text typed into the reply action.
+     */
+    static final String KEY_REPLY = "reply";
+
+    /**
+     * Tag of the notifications about messages that were not sent, which share their conversation's ID.
+     */
+    private static final String TAG_NOT_SENT = "notSent";
+
+    private ChatNotifications() {
+    }
+
+    /**
+     * Shows a received message, appended to its conversation's notification.
+     *
+     * @param context Any context of the app.
+     * @param conversationId The ID of the conversation.
+     * @param senderId The ID of the sender, who a one-to-one reply goes to.
+     * @param senderName The name of the sender.
+     * @param groupName The name of the group, or null in a one-to-one conversation.
+     * @param text The text of the message.
+     */
+    public static void showMessage(Context context, String conversationId, String senderId, String senderName,
+                                   String groupName, String text) {
+        NotificationCompat.MessagingStyle style = styleOf(context, conversationId);
+        style.addMessage(text, System.currentTimeMillis(),
+                new Person.Builder().setKey(senderId).setName(senderName).build());
+        if (groupName != null) {
+            style.setConversationTitle(groupName);
+            style.setGroupConversation(true);
+        }
+        String replyTo = groupName == null ? senderId : null;
+        post(context, conversationId, replyTo, senderName, style, true);
+    }
+
+    /**
+     * Appends the user's own reply to a conversation's notification, without alerting again.
+     *
+     * @param context Any context of the app.
+     * @param conversationId The ID of the conversation.
+     * @param replyTo The ID of the user replied to, or null in a group.
+     * @param title The name shown for the conversation.
+     * @param text The text of the reply, or a note that it failed.
+     */
+    static void showReply(Context context, String conversationId, String replyTo, String title, CharSequence text) {
+        NotificationCompat.MessagingStyle style = styleOf(context, conversationId);
+        style.addMessage(text, System.currentTimeMillis(), (Person) null); // Null stands for the user
+        post(context, conversationId, replyTo, title, style, false);
+    }
+
+    /**
+     * Tells the user that a queued message was given up; opening the conversation offers to send it again.
+     *
+     * @param context Any context of the app.
+     * @param conversationId The ID of the conversation.
+     * @param text The text of the message, or null if it cannot be shown.
+     */
+    public static void showNotSent(Context context, String conversationId, String text) {
+        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
+        if (!notificationManager.areNotificationsEnabled()) {
+            return;
+        }
+        ensureChannel(context);
+        Notification notification = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_send)
+                .setContentTitle(context.getString(R.string.message_not_sent))
+                .setContentText(text)
+                .setCategory(NotificationCompat.CATEGORY_ERROR)
+                .setAutoCancel(true)
+                .setContentIntent(openIntent(context, conversationId, null, null))
+                .build();
+        notificationManager.notify(TAG_NOT_SENT, notificationId(conversationId), notification);
+    }
+
+    /**
+     * Returns the style of the conversation's notification if it is still shown, or a new one.
+     */
+    private static NotificationCompat.MessagingStyle styleOf(Context context, String conversationId) {
+        NotificationManager notificationManager = context.getSystemService(NotificationManager.class);
+        for (StatusBarNotification active : notificationManager.getActiveNotifications()) {
+            if (active.getId() == notificationId(conversationId)) {
+                NotificationCompat.MessagingStyle style = NotificationCompat.MessagingStyle
+                        .extractMessagingStyleFromNotification(active.getNotification());
+                if (style != null) {
+                    return style;
+                }
+            }
+        }
+        return new NotificationCompat.MessagingStyle(
+                new Person.Builder().setName(context.getString(R.string.you)).build());
+    }
+
+    private static void post(Context context, String conversationId, String replyTo, String title,
+                             NotificationCompat.MessagingStyle style, boolean alert) {
+        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
+        if (!notificationManager.areNotificationsEnabled()) {
+            return;
+        }
+        ensureChannel(context);
+        Notification notification = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_send)
+                .setStyle(style)
+                .setCategory(NotificationCompat.CATEGORY_MESSAGE)
+                .setOnlyAlertOnce(!alert)
+                .setAutoCancel(true)
+                .setContentIntent(openIntent(context, conversationId, replyTo, title))
+                .addAction(replyAction(context, conversationId, replyTo, title))
+                .build();
+        notificationManager.notify(notificationId(conversationId), notification);
+    }
+
+    /**
+     * Builds the inline reply action. Each conversation gets its own request code, so actions do not overwrite each other.
+     * The PendingIntent must be mutable for the system to add the typed text.
+     */
+    private static NotificationCompat.Action replyAction(Context context, String conversationId, String replyTo,
+                                                        String title) {
+        Intent intent = new Intent(context, ReplyReceiver.class)
+                .putExtra(Constants.KEY_CONVERSATION_ID, conversationId)
+                .putExtra(Constants.KEY_RECEIVER_ID, replyTo)
+                .putExtra(Constants.KEY_SENDER_NAME, title);
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            flags |= PendingIntent.FLAG_MUTABLE;
+        }
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, notificationId(conversationId), intent, flags);
+        RemoteInput remoteInput = new RemoteInput.Builder(KEY_REPLY)
+                .setLabel(context.getString(R.string.reply))
+                .build();
+        return new NotificationCompat.Action.Builder(R.drawable.ic_send, context.getString(R.string.reply), pendingIntent)
+                .addRemoteInput(remoteInput)
+                .setSemanticAction(NotificationCompat.Action.SEMANTIC_ACTION_REPLY)
+                .setShowsUserInterface(false)
+                .build();
+    }
+
+    /**
+     * Opens a one-to-one chat directly; a group chat needs its member list, so the app opens as usual.
+     */
+    private static PendingIntent openIntent(Context context, String conversationId, String replyTo, String title) {
+        Intent intent;
+        if (replyTo != null) {
+            User receiver = new User();
+            receiver.id = replyTo;
+            receiver.name = title;
+            intent = new Intent(context, ChatActivity.class).putExtra(Constants.KEY_USER, receiver);
+        } else {
+            intent = new Intent(context, SignInActivity.class);
+        }
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        return PendingIntent.getActivity(context, notificationId(conversationId), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private static void ensureChannel(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationManager notificationManager = context.getSystemService(NotificationManager.class);
+        if (notificationManager.getNotificationChannel(CHANNEL_ID) == null) {
+            notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                    context.getString(R.string.messages), NotificationManager.IMPORTANCE_HIGH));
+        }
+    }
+
+    /**
+     * Returns the notification ID of a conversation.
+     */
+    static int notificationId(String conversationId) {
+        return conversationId.hashCode();
+    }
+}
@@ -1,22 +1,71 @@
-//package com.example.chatapp.firebase;
-//
-//import android.util.Log;
-//
-//import androidx.annotation.NonNull;
-//
-//import com.google.firebase.messaging.FirebaseMessagingService;
-//import com.google.firebase.messaging.RemoteMessage;
-//
-//public class MessagingService extends FirebaseMessagingService {
-//
-//    public void onNewToken(@NonNull String token){
-//        super.onNewToken(token);
-//        Log.d("FCM", "Token:  " + token);
-//    }
-//
-//    @Override
-//    public void onMessageReceived(@NonNull RemoteMessage message) {
-//        super.onMessageReceived(message);
-//        Log.d("FCM", "Message Received: " + message.getNotification().getBody());
-//    }
-//}
+/**
+ * The MessagingService class receives push messages and token updates from Firebase Cloud Messaging.
+ * A chat push carries its message in the data payload (conversationId, senderId, senderName,
+ * message and, for groups, groupName), so it is shown by ChatNotifications with an inline
+ * reply action whether the app is in the foreground or not. An end-to-end encrypted message
+ * is decrypted on the device before it is shown.
+ */
+package com.example.chatapp.firebase;
+
+import androidx.annotation.NonNull;
+
+import com.example.chatapp.R;
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackendProvider;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.DeviceKeys;
+import com.example.chatapp.session.SessionStoreProvider;
+import com.google.firebase.messaging.FirebaseMessagingService;
+import com.google.firebase.messaging.RemoteMessage;
+
+import java.util.Map;
+
+public class MessagingService extends FirebaseMessagingService {
+
+    /**
+     * Stores a refreshed token for the signed-in user, so pushes keep reaching this device.
+     *
+     * @param token The new FCM token.
+     */
+    @Override
+    public void onNewToken(@NonNull String token) {
+        super.onNewToken(token);
+        String userId = SessionStoreProvider.get().get().userId;
+        if (userId == null) {
+            return; // Signing in stores the token
+        }
+        ChatBackendProvider.get().updateToken(userId, token, new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                // The next sign-in stores the token again
+            }
+        });
+    }
+
+    /**
+     * Shows a received chat message as a notification with an inline reply action.
+     *
+     * @param message The push message.
+     */
+    @Override
+    public void onMessageReceived(@NonNull RemoteMessage message) {
+        super.onMessageReceived(message);
+        Map<String, String> data = message.getData();
+        String conversationId = data.get(Constants.KEY_CONVERSATION_ID);
+        String senderId = data.get(Constants.KEY_SENDER_ID);
+        String text = data.get(Constants.KEY_MESSAGE);
+        if (conversationId == null || senderId == null || text == null) {
+            return; // Not a chat message
+        }
+        String readable = DeviceKeys.readable(getApplicationContext(), conversationId, senderId, text);
+        if (readable == null) {
+            readable = getString(R.string.encrypted_message); // Encrypted to a key this device does not have
+        }
+        ChatNotifications.showMessage(getApplicationContext(), conversationId, senderId,
+                data.get(Constants.KEY_SENDER_NAME), data.get(Constants.KEY_GROUP_NAME), readable);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * The ReplyReceiver class sends a reply typed into a message notification.
+ * It goes through the same ChatBackend send path as ChatActivity, but inflates no activity:
+ * the receiver stays alive with goAsync() until the write is acknowledged, then the
+ * notification is updated in place with the reply, with a note that it is sent once online,
+ * or with a note that it was not sent.
+ */
+package com.example.chatapp.firebase;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+
+import androidx.core.app.RemoteInput;
+
+import com.example.chatapp.R;
+import com.example.chatapp.backend.SendCallback;
+import com.example.chatapp.backend.ChatBackendProvider;
+import com.example.chatapp.metrics.Histogram;
+import com.example.chatapp.metrics.MetricNames;
+import com.example.chatapp.metrics.MetricsRegistry;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.session.SessionStoreProvider;
+
+public class ReplyReceiver extends BroadcastReceiver {
+
+    /**
+     * Time from the reply arriving here to the server acknowledging it.
+     */
+    private static final Histogram REPLY_TO_ACK =
+            MetricsRegistry.get().histogram(MetricNames.NOTIFICATION_REPLY_TO_ACK);
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Bundle results = RemoteInput.getResultsFromIntent(intent);
+        CharSequence reply = results == null ? null : results.getCharSequence(ChatNotifications.KEY_REPLY);
+        String senderId = SessionStoreProvider.get().get().userId;
+        if (reply == null || reply.toString().trim().isEmpty() || senderId == null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        String conversationId = intent.getStringExtra(Constants.KEY_CONVERSATION_ID);
+        String receiverId = intent.getStringExtra(Constants.KEY_RECEIVER_ID);
+        String title = intent.getStringExtra(Constants.KEY_SENDER_NAME);
+
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.conversationId = conversationId;
+        chatMessage.senderId = senderId;
+        chatMessage.receiverId = receiverId; // Null for a group
+        chatMessage.message = reply.toString();
+
+        long startNanos = System.nanoTime();
+        PendingResult pendingResult = goAsync();
+        ChatBackendProvider.get().sendMessage(chatMessage, new SendCallback() {
+            @Override
+            public void onSuccess(Void result) {
+                REPLY_TO_ACK.record(System.nanoTime() - startNanos);
+                ChatNotifications.showReply(appContext, conversationId, receiverId, title, reply);
+                pendingResult.finish();
+            }
+
+            @Override
+            public void onQueued(String messageId) {
+                ChatNotifications.showReply(appContext, conversationId, receiverId, title,
+                        appContext.getString(R.string.reply_queued, reply));
+                pendingResult.finish();
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                ChatNotifications.showReply(appContext, conversationId, receiverId, title,
+                        appContext.getString(R.string.reply_not_sent, reply));
+                pendingResult.finish();
+            }
+        });
+    }
+}
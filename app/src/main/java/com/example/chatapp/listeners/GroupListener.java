@@ -0,0 +1,16 @@
+/**
+ * The GroupListener interface is used for handling group click events in the chat application.
+ * It defines a callback method that is triggered when a group is clicked.
+ */
+package com.example.chatapp.listeners;
+
+import com.example.chatapp.modules.Group;
+
+public interface GroupListener {
+    /**
+     * Callback method that is triggered when a group is clicked.
+     *
+     * @param group The group that was clicked.
+     */
+    void onGroupClicked(Group group);
+}
@@ -0,0 +1,19 @@
+/**
+ * The MessageActionListener interface is used for handling long presses on sent messages in the chat application.
+ * It defines a callback method that is triggered when a sent message is long pressed.
+ */
+package com.example.chatapp.listeners;
+
+import android.view.View;
+
+import com.example.chatapp.modules.ChatMessage;
+
+public interface MessageActionListener {
+    /**
+     * Callback method that is triggered when a sent message is long pressed.
+     *
+     * @param chatMessage The message that was long pressed.
+     * @param anchor The view of the message, to anchor a menu to.
+     */
+    void onMessageLongPressed(ChatMessage chatMessage, View anchor);
+}
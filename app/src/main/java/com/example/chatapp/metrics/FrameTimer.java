@@ -0,0 +1,37 @@
+/**
+ * The FrameTimer class records how long it takes until a view draws its next frame.
+ */
+package com.example.chatapp.metrics;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+public final class FrameTimer {
+
+    private FrameTimer() {
+    }
+
+    /**
+     * Records the time from startNanos until the view is about to draw its next frame.
+     *
+     * @param view The view whose next frame ends the measurement.
+     * @param histogram Where to record the duration, in nanoseconds.
+     * @param startNanos Start of the measurement, from System.nanoTime().
+     */
+    public static void recordNextFrame(View view, Histogram histogram, long startNanos) {
+        final ViewTreeObserver observer = view.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                histogram.record(System.nanoTime() - startNanos);
+                // The observer may have been replaced when the view was attached
+                if (observer.isAlive()) {
+                    observer.removeOnPreDrawListener(this);
+                } else {
+                    view.getViewTreeObserver().removeOnPreDrawListener(this);
+                }
+                return true;
+            }
+        });
+    }
+}
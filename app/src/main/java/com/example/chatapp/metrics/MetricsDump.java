@@ -0,0 +1,90 @@
+/**
+ * The MetricsDump class exports the metrics registry so it can be collected from field devices.
+ * The latest dump is kept in the app's files directory and can also be shared as text.
+ * It includes the memory held by each cache registered with the MemoryManager.
+ */
+package com.example.chatapp.metrics;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.chatapp.memory.MemoryManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+public final class MetricsDump {
+
+    private static final String TAG = "MetricsDump";
+
+    /**
+     * Name of the dump inside the app's files directory.
+     */
+    private static final String FILE_NAME = "metrics/metrics.json";
+
+    private MetricsDump() {
+    }
+
+    /**
+     * Writes the current metrics to the dump file, replacing the previous dump.
+     *
+     * @param context Any context of the app.
+     * @return The dump file, or null if it could not be written.
+     */
+    public static File write(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        File temporary = new File(file.getPath() + ".tmp");
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + directory);
+            return null;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temporary), StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write metrics", e);
+            return null;
+        }
+        // Replace the old dump in one step, so a reader never sees a partial file
+        return temporary.renameTo(file) ? file : null;
+    }
+
+    /**
+     * Opens the share sheet with the current metrics as text, e.g. to mail them from a test device.
+     *
+     * @param context The context to start the share sheet from.
+     */
+    public static void share(Context context) {
+        Intent send = new Intent(Intent.ACTION_SEND);
+        send.setType("application/json");
+        send.putExtra(Intent.EXTRA_SUBJECT, "ChatApp metrics");
+        send.putExtra(Intent.EXTRA_TEXT, toJson());
+        Intent chooser = Intent.createChooser(send, "Share metrics");
+        if (!(context instanceof Activity)) {
+            chooser.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        }
+        context.startActivity(chooser);
+    }
+
+    /**
+     * Returns the metrics and retained memory wrapped with the device they were recorded on.
+     */
+    private static String toJson() {
+        StringBuilder memory = new StringBuilder();
+        try {
+            MemoryManager.get().writeJson(memory);
+        } catch (IOException e) {
+            // StringBuilder never throws
+            throw new AssertionError(e);
+        }
+        return "{\"device\":\"" + Build.MANUFACTURER + " " + Build.MODEL + "\",\"sdk\":" + Build.VERSION.SDK_INT
+                + ",\"metrics\":" + MetricsRegistry.get().toJson() + ",\"memory\":" + memory + "}";
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * The MetricsOverlay class shows a live summary of the metrics registry on top of an activity.
+ * It is only attached in debuggable builds; a long press shares the full dump.
+ */
+package com.example.chatapp.metrics;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+public final class MetricsOverlay {
+
+    /**
+     * How often the summary is refreshed while the activity is visible.
+     */
+    private static final long REFRESH_INTERVAL_MILLIS = 1000;
+
+    private final TextView view;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            view.setText(MetricsRegistry.get().summary());
+            handler.postDelayed(this, REFRESH_INTERVAL_MILLIS);
+        }
+    };
+
+    private MetricsOverlay(TextView view) {
+        this.view = view;
+    }
+
+    /**
+     * Adds the overlay on top of the activity's content.
+     *
+     * @param activity The activity to show the overlay in; its content view must already be set.
+     * @return The overlay, or null if the activity has no content frame.
+     */
+    public static MetricsOverlay attach(Activity activity) {
+        ViewGroup content = activity.findViewById(android.R.id.content);
+        if (!(content instanceof FrameLayout)) {
+            return null;
+        }
+        TextView text = new TextView(activity);
+        text.setTextSize(TypedValue.COMPLEX_UNIT_SP, 9);
+        text.setTextColor(Color.WHITE);
+        text.setBackgroundColor(0x99000000);
+        text.setPadding(8, 4, 8, 4);
+        text.setOnLongClickListener(v -> {
+            MetricsDump.share(activity);
+            return true;
+        });
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT,
+                Gravity.BOTTOM | Gravity.START);
+        content.addView(text, params);
+        return new MetricsOverlay(text);
+    }
+
+    /**
+     * Starts refreshing the summary.
+     */
+    public void start() {
+        handler.removeCallbacks(refresh);
+        refresh.run();
+    }
+
+    /**
+     * Stops refreshing the summary.
+     */
+    public void stop() {
+        handler.removeCallbacks(refresh);
+    }
+}
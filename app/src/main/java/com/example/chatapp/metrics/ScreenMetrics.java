@@ -0,0 +1,114 @@
+/**
+ * The ScreenMetrics class records the open time of every screen, from creation to the
+ * first frame, attributes database usage to the screen in front, attaches the debug
+ * overlay and writes a metrics dump whenever the app goes to the background.
+ */
+package com.example.chatapp.metrics;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+public final class ScreenMetrics implements Application.ActivityLifecycleCallbacks {
+
+    private final Application application;
+
+    /**
+     * Writes dumps off the main thread.
+     */
+    private final Executor dumpExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Whether the debug overlay is shown; only in debuggable builds.
+     */
+    private final boolean showOverlay;
+
+    /**
+     * Overlays of the current activities.
+     */
+    private final Map<Activity, MetricsOverlay> overlays = new HashMap<>();
+
+    /**
+     * Number of started activities; zero means the app is in the background.
+     */
+    private int startedActivities;
+
+    private ScreenMetrics(Application application) {
+        this.application = application;
+        this.showOverlay = (application.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
+
+    /**
+     * Starts recording screen metrics for every activity of the app.
+     *
+     * @param application The application.
+     */
+    public static void register(Application application) {
+        application.registerActivityLifecycleCallbacks(new ScreenMetrics(application));
+    }
+
+    @Override
+    public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+        // Requests made from onCreate() belong to the screen being created
+        UsageMeter.get().enterScreen(screenName(activity));
+        // Called from the activity's super.onCreate(), before it inflates its layout
+        FrameTimer.recordNextFrame(activity.getWindow().getDecorView(),
+                MetricsRegistry.get().histogram(MetricNames.SCREEN_OPEN_PREFIX + screenName(activity)),
+                System.nanoTime());
+    }
+
+    @Override
+    public void onActivityStarted(@NonNull Activity activity) {
+        startedActivities++;
+        if (showOverlay && !overlays.containsKey(activity)) {
+            overlays.put(activity, MetricsOverlay.attach(activity));
+        }
+    }
+
+    @Override
+    public void onActivityResumed(@NonNull Activity activity) {
+        UsageMeter.get().enterScreen(screenName(activity));
+        MetricsOverlay overlay = overlays.get(activity);
+        if (overlay != null) {
+            overlay.start();
+        }
+    }
+
+    @Override
+    public void onActivityPaused(@NonNull Activity activity) {
+        MetricsOverlay overlay = overlays.get(activity);
+        if (overlay != null) {
+            overlay.stop();
+        }
+    }
+
+    @Override
+    public void onActivityStopped(@NonNull Activity activity) {
+        startedActivities--;
+        if (startedActivities == 0) {
+            dumpExecutor.execute(() -> MetricsDump.write(application));
+        }
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(@NonNull Activity activity) {
+        overlays.remove(activity);
+    }
+
+    private static String screenName(Activity activity) {
+        return activity.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * The StrictModeCollector class turns on StrictMode in debuggable builds and collects what it finds.
+ * Disk and network access on the main thread, slow calls reported by the app such as avatar
+ * decoding, and leaked resources are counted per kind in the metrics registry, so they show
+ * up in the overlay and in metrics dumps, and the most recent ones are kept with their stack
+ * traces for tests to assert on. Before Android 9 there is no listener, so violations are only logged.
+ */
+package com.example.chatapp.metrics;
+
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
+import android.os.Build;
+import android.os.StrictMode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+public final class StrictModeCollector {
+
+    /**
+     * Number of violations kept with their stack traces.
+     */
+    private static final int MAX_RECENT = 100;
+
+    private static final Deque<Throwable> RECENT = new ArrayDeque<>();
+
+    private StrictModeCollector() {
+    }
+
+    /**
+     * Turns on StrictMode for the main thread and the whole VM if the app is debuggable.
+     *
+     * @param application The application.
+     */
+    public static void install(Application application) {
+        if ((application.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            enable();
+        }
+    }
+
+    /**
+     * Turns on StrictMode for the calling thread and the whole VM, whatever the build.
+     */
+    public static void enable() {
+        StrictMode.ThreadPolicy.Builder threadPolicy = new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .detectCustomSlowCalls();
+        StrictMode.VmPolicy.Builder vmPolicy = new StrictMode.VmPolicy.Builder()
+                .detectLeakedClosableObjects()
+                .detectLeakedRegistrationObjects()
+                .detectActivityLeaks();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            // Recording is cheap, so violations are recorded on the thread that caused them
+            threadPolicy.penaltyListener(Runnable::run, StrictModeCollector::record);
+            vmPolicy.penaltyListener(Runnable::run, StrictModeCollector::record);
+        } else {
+            threadPolicy.penaltyLog();
+            vmPolicy.penaltyLog();
+        }
+        StrictMode.setThreadPolicy(threadPolicy.build());
+        StrictMode.setVmPolicy(vmPolicy.build());
+    }
+
+    /**
+     * Returns the most recent violations, oldest first; each one's stack trace shows where it happened.
+     */
+    public static synchronized List<Throwable> recent() {
+        return new ArrayList<>(RECENT);
+    }
+
+    /**
+     * Forgets the recent violations, e.g. before a test drives the screen it checks.
+     */
+    public static synchronized void clear() {
+        RECENT.clear();
+    }
+
+    private static void record(Throwable violation) {
+        MetricsRegistry.get().counter(MetricNames.STRICT_MODE_PREFIX + violation.getClass().getSimpleName())
+                .increment();
+        synchronized (StrictModeCollector.class) {
+            if (RECENT.size() == MAX_RECENT) {
+                RECENT.removeFirst();
+            }
+            RECENT.addLast(violation);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/**
+ * The ConversationRepository class is the data-access layer for chat messages.
+ * Messages are stored per conversation under conversations/{conversationId}/messages,
+ * so each conversation can be queried and written independently of all others.
+ * The conversation document also holds every participant's read cursor in its lastRead map.
+ * A group is a conversation document with a name and its member list in participants.
+ * Old messages may also be archived as compressed data bundles under conversations/{conversationId}/archive,
+ * in which case the conversation document records up to when.
+ */
+package com.example.chatapp.repository;
+
+import com.example.chatapp.backend.DocumentSizes;
+import com.example.chatapp.metrics.Usage;
+import com.example.chatapp.modules.Archive;
+import com.example.chatapp.modules.Group;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.ConversationIds;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+
+public class ConversationRepository {
+
+    /**
+     * Firebase Firestore database instance.
+     */
+    private final FirebaseFirestore database;
+
+    /**
+     * Constructor for initializing ConversationRepository with a Firestore instance.
+     *
+     * @param database The Firestore database to read from and write to.
+     */
+    public ConversationRepository(FirebaseFirestore database) {
+        this.database = database;
+    }
+
+    /**
+     * Returns the document holding the summary of a conversation.
+     *
+     * @param conversationId The ID of the conversation.
+     * @return The conversation document reference.
+     */
+    public DocumentReference conversation(String conversationId) {
+        return database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document(conversationId);
+    }
+
+    /**
+     * Returns the subcollection holding the messages of a conversation.
+     *
+     * @param conversationId The ID of the conversation.
+     * @return The messages collection reference.
+     */
+    public CollectionReference messages(String conversationId) {
+        return conversation(conversationId).collection(Constants.KEY_COLLECTION_MESSAGES);
+    }
+
+    /**
+     * Returns the document holding one archive segment of a conversation.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param segment The index of the segment.
+     * @return The archive segment document reference.
+     */
+    public DocumentReference archiveSegment(String conversationId, int segment) {
+        return conversation(conversationId).collection(Constants.KEY_COLLECTION_ARCHIVE)
+                .document(Archive.segmentId(segment));
+    }
+
+    /**
+     * Returns the document holding a participant's typing state in a conversation.
+     * Typing lives in its own subcollection, so keystrokes never touch the conversation summary.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param userId The ID of the participant.
+     * @return The typing document reference.
+     */
+    public DocumentReference typing(String conversationId, String userId) {
+        return conversation(conversationId).collection(Constants.KEY_COLLECTION_TYPING).document(userId);
+    }
+
+    /**
+     * Sends a message and updates the conversation summary in a single transaction.
+     * The transaction reads the summary's last sequence number and gives the message the next one,
+     * so concurrent senders are serialized and every message gets a distinct, gap-free number.
+     * Both timestamps are assigned by the server, so the sender's clock does not matter.
+     * Transactions need the server: offline, the send fails with UNAVAILABLE instead of being
+     * queued by Firestore, so callers keep such messages in an outbox and resend them.
+     * Every send of a conversation writes its summary document, which Firestore sustains at
+     * about one write per second; a large, busy group contends there and retries transactions.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param messageId The ID of the message document; the same for every attempt at the same message.
+     * @param senderId ID of the user sending the message.
+     * @param receiverId ID of the user receiving the message, or null for a group message.
+     * @param text The content of the message.
+     * @param resend Whether an earlier attempt may have gone through; the message document is read
+     *               first, and nothing is written if it exists.
+     * @param usage The usage the read documents and the two written documents are recorded into once committed.
+     * @return The task that completes once the transaction has been committed.
+     */
+    public Task<Void> sendMessage(String conversationId, String messageId, String senderId, String receiverId,
+                                  String text, boolean resend, Usage usage) {
+        DocumentReference messageReference = messages(conversationId).document(messageId);
+        DocumentReference conversationReference = conversation(conversationId);
+        long[] bytes = new long[2];
+        int[] reads = new int[1];
+        int[] writes = new int[1];
+        return database.runTransaction((Transaction.Function<Void>) transaction -> {
+            reads[0] = 1;
+            writes[0] = 0;
+            if (resend) {
+                reads[0]++;
+                if (transaction.get(messageReference).exists()) {
+                    bytes[0] = 0;
+                    bytes[1] = 0;
+                    return null; // Stored by an attempt whose answer was lost
+                }
+            }
+            DocumentSnapshot current = transaction.get(conversationReference);
+            Long lastSeq = current.getLong(Constants.KEY_LAST_SEQ);
+            long seq = (lastSeq == null ? 0 : lastSeq) + 1;
+
+            HashMap<String, Object> message = new HashMap<>();
+            message.put(Constants.KEY_SENDER_ID, senderId);
+            message.put(Constants.KEY_RECEIVER_ID, receiverId);
+            message.put(Constants.KEY_MESSAGE, text);
+            message.put(Constants.KEY_TIMESTAMP, FieldValue.serverTimestamp());
+            message.put(Constants.KEY_SEQ, seq);
+
+            HashMap<String, Object> summary = new HashMap<>();
+            if (receiverId != null) {
+                // A group's members are set when it is created
+                summary.put(Constants.KEY_PARTICIPANTS, Arrays.asList(senderId, receiverId));
+            }
+            summary.put(Constants.KEY_LAST_MESSAGE, text);
+            summary.put(Constants.KEY_LAST_SENDER_ID, senderId);
+            summary.put(Constants.KEY_TIMESTAMP, FieldValue.serverTimestamp());
+            summary.put(Constants.KEY_LAST_SEQ, seq);
+
+            transaction.set(messageReference, message);
+            transaction.set(conversationReference, summary, SetOptions.merge());
+            writes[0] = 2;
+            // The function may be retried; the sizes of the committed attempt win
+            bytes[0] = DocumentSizes.of(conversationReference.getPath(), current.getData());
+            bytes[1] = DocumentSizes.of(messageReference.getPath(), message)
+                    + DocumentSizes.of(conversationReference.getPath(), summary);
+            return null;
+        }).addOnSuccessListener(result -> {
+            usage.recordRead(reads[0], bytes[0], false);
+            if (writes[0] > 0) {
+                usage.recordWrite(writes[0], bytes[1]);
+            }
+        });
+    }
+
+    /**
+     * Creates the conversation document of a group. Its ID is assigned here.
+     *
+     * @param group The group to create; its ID is set before the write is issued.
+     * @param usage The usage the written document is recorded into once committed.
+     * @return The task that completes once the document has been written.
+     */
+    public Task<Void> createGroup(Group group, Usage usage) {
+        DocumentReference conversationReference = database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document();
+        group.id = conversationReference.getId();
+        HashMap<String, Object> document = new HashMap<>();
+        document.put(Constants.KEY_GROUP_NAME, group.name);
+        document.put(Constants.KEY_PARTICIPANTS, group.members);
+        document.put(Constants.KEY_TIMESTAMP, FieldValue.serverTimestamp());
+        return conversationReference.set(document)
+                .addOnSuccessListener(result ->
+                        usage.recordWrite(1, DocumentSizes.of(conversationReference.getPath(), document)));
+    }
+
+    /**
+     * Returns the query for the groups a user is a member of.
+     * Ordering by the group name leaves out one-to-one conversations, which have none;
+     * the query needs a composite index on participants (array) and groupName.
+     *
+     * @param userId The ID of the user.
+     * @return The query for the group conversation documents.
+     */
+    public Query groupsOf(String userId) {
+        return conversationsOf(userId).orderBy(Constants.KEY_GROUP_NAME);
+    }
+
+    /**
+     * Updates fields of a sent message in a transaction. If the message is the conversation's
+     * last one, the summary's last message text is replaced too, so an unsent text does not linger there.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param messageId The ID of the message.
+     * @param seq The sequence number of the message.
+     * @param update The fields to update.
+     * @param summaryText The text the summary shows if the message is the last one.
+     * @param usage The usage the read summary and the written documents are recorded into once committed.
+     * @return The task that completes once the transaction has been committed.
+     */
+    public Task<Void> updateMessage(String conversationId, String messageId, long seq,
+                                    HashMap<String, Object> update, String summaryText, Usage usage) {
+        DocumentReference messageReference = messages(conversationId).document(messageId);
+        DocumentReference conversationReference = conversation(conversationId);
+        long[] recorded = new long[3];
+        return database.runTransaction((Transaction.Function<Void>) transaction -> {
+            DocumentSnapshot current = transaction.get(conversationReference);
+            Long lastSeq = current.getLong(Constants.KEY_LAST_SEQ);
+            transaction.update(messageReference, update);
+            boolean last = lastSeq != null && lastSeq == seq;
+            if (last) {
+                transaction.update(conversationReference, Constants.KEY_LAST_MESSAGE, summaryText);
+            }
+            recorded[0] = DocumentSizes.of(conversationReference.getPath(), current.getData());
+            recorded[1] = last ? 2 : 1;
+            recorded[2] = DocumentSizes.of(messageReference.getPath(), update);
+            return null;
+        }).addOnSuccessListener(result -> {
+            usage.recordRead(1, recorded[0], false);
+            usage.recordWrite((int) recorded[1], recorded[2]);
+        });
+    }
+
+    /**
+     * Returns the query for the messages of a conversation after a sequence number, in sequence order.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param afterSeq Only messages with a higher sequence number match.
+     * @return The query for the messages.
+     */
+    public Query messagesAfterSeq(String conversationId, long afterSeq) {
+        return messages(conversationId)
+                .whereGreaterThan(Constants.KEY_SEQ, afterSeq)
+                .orderBy(Constants.KEY_SEQ, Query.Direction.ASCENDING);
+    }
+
+    /**
+     * Stores a participant's read cursor on the conversation document.
+     * The merge only touches the participant's own entry of the lastRead map.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param userId The ID of the reader.
+     * @param readUpTo The timestamp of the newest message the reader has seen.
+     * @param usage The usage the written document is recorded into once committed.
+     * @return The task that completes once the cursor has been written.
+     */
+    public Task<Void> markRead(String conversationId, String userId, Date readUpTo, Usage usage) {
+        HashMap<String, Object> update = new HashMap<>();
+        update.put(Constants.KEY_LAST_READ, Collections.singletonMap(userId, readUpTo));
+        DocumentReference conversationReference = conversation(conversationId);
+        return conversationReference.set(update, SetOptions.merge())
+                .addOnSuccessListener(result -> usage.recordWrite(1,
+                        DocumentSizes.of(conversationReference.getPath(), update)));
+    }
+
+    /**
+     * Returns the query for the summaries of every conversation a user takes part in.
+     *
+     * @param userId The ID of the user.
+     * @return The query for the conversation documents.
+     */
+    public Query conversationsOf(String userId) {
+        return database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                .whereArrayContains(Constants.KEY_PARTICIPANTS, userId);
+    }
+
+    /**
+     * Returns the query for the conversations a user takes part in, most recently active first.
+     *
+     * @param userId The ID of the user.
+     * @param limit The maximum number of conversations.
+     * @return The query for the recent conversations.
+     */
+    public Query recentConversationsOf(String userId, int limit) {
+        return conversationsOf(userId)
+                .orderBy(Constants.KEY_TIMESTAMP, Query.Direction.DESCENDING)
+                .limit(limit);
+    }
+
+    /**
+     * Returns the query for the messages of a conversation a user has not read: those from other
+     * participants newer than the user's read cursor. The user's own messages after the cursor,
+     * e.g. a reply sent from a notification, are not unread.
+     * With a cursor, the query needs a composite index on senderId and timeStamp.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param userId The ID of the reader.
+     * @param cursor The reader's read cursor, or null for every message.
+     * @return The query for the unread messages.
+     */
+    public Query unreadMessages(String conversationId, String userId, Date cursor) {
+        Query query = messages(conversationId).whereNotEqualTo(Constants.KEY_SENDER_ID, userId);
+        return cursor == null ? query : query.whereGreaterThan(Constants.KEY_TIMESTAMP, cursor);
+    }
+
+    /**
+     * Returns the query for the latest page of a conversation's messages, newest first.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param limit The number of messages in the page.
+     * @return The query for the page.
+     */
+    public Query latestMessages(String conversationId, int limit) {
+        return messages(conversationId)
+                .orderBy(Constants.KEY_TIMESTAMP, Query.Direction.DESCENDING)
+                .limit(limit);
+    }
+
+    /**
+     * Listens to the messages of a conversation in timestamp order.
+     * A single query on the conversation's own subcollection replaces the two
+     * sender/receiver equality queries needed on the flat collection.
+     * When the conversation is archived, only the tail after the archive is listened to.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param after Only messages with a later timestamp are listened to, or null for all messages.
+     * @param listener The listener notified with every snapshot.
+     * @return The registration used to stop listening.
+     */
+    public ListenerRegistration listenMessages(String conversationId, Date after,
+                                               EventListener<QuerySnapshot> listener) {
+        Query query = messages(conversationId);
+        if (after != null) {
+            query = query.whereGreaterThan(Constants.KEY_TIMESTAMP, after);
+        }
+        return query.orderBy(Constants.KEY_TIMESTAMP, Query.Direction.ASCENDING)
+                .addSnapshotListener(listener);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * The SessionStoreProvider class hands out the SessionStore of the signed-in user.
+ * The store keeps its files in the app's private storage and starts loading them when the
+ * app starts. Sessions saved by earlier versions of the app in SharedPreferences are moved
+ * into the store the first time it loads, so nobody is signed out by the update.
+ */
+package com.example.chatapp.session;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chatapp.utilities.Constants;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+
+public final class SessionStoreProvider {
+
+    /**
+     * The store shared by the whole app, created by init.
+     */
+    private static SessionStore store;
+
+    private SessionStoreProvider() {
+    }
+
+    /**
+     * Creates the store and starts loading the session in the background; called once when the app starts.
+     *
+     * @param context Any context of the app.
+     */
+    public static synchronized void init(Context context) {
+        Context appContext = context.getApplicationContext();
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        // Unlike getFilesDir(), getDataDir() does not touch the disk; the store creates its directory itself
+        store = new SessionStore(new File(appContext.getDataDir(), "session"),
+                Executors.newSingleThreadExecutor(), mainHandler::post);
+        store.load(new PreferencesLegacy(appContext));
+    }
+
+    /**
+     * Returns the shared store.
+     *
+     * @return The store every screen and service should read the session from.
+     */
+    public static synchronized SessionStore get() {
+        if (store == null) {
+            throw new IllegalStateException("SessionStoreProvider.init was not called");
+        }
+        return store;
+    }
+
+    /**
+     * The session as earlier versions of the app kept it: every field, the avatar included, in one preferences file.
+     */
+    private static final class PreferencesLegacy implements SessionStore.Legacy {
+
+        private final Context context;
+
+        PreferencesLegacy(Context context) {
+            this.context = context;
+        }
+
+        private SharedPreferences preferences() {
+            return context.getSharedPreferences(Constants.KEY_PREFERENCE_NAME, Context.MODE_PRIVATE);
+        }
+
+        @Override
+        public Session readSession() {
+            SharedPreferences preferences = preferences();
+            if (!preferences.getBoolean(Constants.KEY_IS_SIGNED_IN, false)) {
+                return null;
+            }
+            return new Session(preferences.getString(Constants.KEY_USER_ID, null),
+                    preferences.getString(Constants.KEY_NAME, null),
+                    preferences.getString(Constants.KEY_LAST_NAME, null));
+        }
+
+        @Override
+        public String readAvatar() {
+            return preferences().getString(Constants.KEY_IMAGE, null);
+        }
+
+        @Override
+        public void delete() {
+            context.deleteSharedPreferences(Constants.KEY_PREFERENCE_NAME);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * The AvatarCache class keeps decoded profile images in memory, so list rows and the
+ * chat header do not decode the same Base64 string again. Entries are keyed by user and
+ * image, so a changed avatar is decoded afresh, and the cache is bounded by bitmap bytes.
+ * Under memory pressure the cache shrinks by half, and empties once memory is low,
+ * since any avatar can be decoded again from its user.
+ * Views are filled through into(), which decodes a missing avatar in the background, so
+ * binding a row never decodes on the main thread; decoding is reported to StrictMode as slow.
+ */
+package com.example.chatapp.utilities;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.StrictMode;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.example.chatapp.memory.MemoryManager;
+import com.example.chatapp.memory.MemoryPressure;
+import com.example.chatapp.memory.Trimmable;
+import com.example.chatapp.modules.User;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class AvatarCache {
+
+    /**
+     * Share of the app's heap the decoded avatars may use.
+     */
+    private static final int HEAP_FRACTION = 16;
+
+    private static final LruCache<String, Bitmap> BITMAPS =
+            new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / HEAP_FRACTION)) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
+
+    /**
+     * Decodes avatars for prefetching, off the main thread.
+     */
+    private static final ExecutorService DECODER = Executors.newSingleThreadExecutor();
+
+    static {
+        MemoryManager.get().register("avatars", MemoryPressure.HIDDEN, new Trimmable() {
+            @Override
+            public long retainedBytes() {
+                return BITMAPS.size();
+            }
+
+            @Override
+            public void trim(MemoryPressure pressure) {
+                if (pressure.compareTo(MemoryPressure.LOW) >= 0) {
+                    BITMAPS.evictAll();
+                } else {
+                    BITMAPS.trimToSize(BITMAPS.size() / 2); // Least recently shown go first
+                }
+            }
+        });
+    }
+
+    private AvatarCache() {
+    }
+
+    /**
+     * Returns the decoded avatar of a user, decoding it on the calling thread if it is not cached.
+     *
+     * @param user The user whose avatar to return.
+     * @return The avatar, or null if the user has none or it cannot be decoded.
+     */
+    public static Bitmap get(User user) {
+        String key = keyOf(user);
+        if (key == null) {
+            return null;
+        }
+        Bitmap bitmap = BITMAPS.get(key);
+        if (bitmap == null) {
+            bitmap = decode(user.image);
+            if (bitmap != null) {
+                BITMAPS.put(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Shows the avatar of a user in a view, right away if it is cached and otherwise once it is
+     * decoded in the background. A view rebound to another user in the meantime is left alone.
+     *
+     * @param user The user whose avatar to show, or null to clear the view.
+     * @param view The view to show it in.
+     */
+    public static void into(User user, ImageView view) {
+        String key = user == null ? null : keyOf(user);
+        view.setTag(key);
+        Bitmap bitmap = key == null ? null : BITMAPS.get(key);
+        view.setImageBitmap(bitmap);
+        if (key == null || bitmap != null) {
+            return;
+        }
+        preload(user, () -> view.post(() -> {
+            if (key.equals(view.getTag())) {
+                view.setImageBitmap(BITMAPS.get(key));
+            }
+        }));
+    }
+
+    /**
+     * Decodes the avatar of a user in the background unless it is cached already.
+     *
+     * @param user The user whose avatar to decode.
+     * @param done Called on the decoder thread once the avatar is cached or failed to decode.
+     */
+    public static void preload(User user, Runnable done) {
+        String key = keyOf(user);
+        if (key == null || BITMAPS.get(key) != null) {
+            done.run();
+            return;
+        }
+        DECODER.execute(() -> {
+            try {
+                get(user);
+            } finally {
+                done.run();
+            }
+        });
+    }
+
+    private static String keyOf(User user) {
+        return user.image == null ? null : user.id + ":" + user.image.hashCode();
+    }
+
+    private static Bitmap decode(String encodedImage) {
+        StrictMode.noteSlowCall("AvatarCache.decode"); // Reported if it ever runs on the main thread again
+        byte[] bytes = AvatarCodec.decode(encodedImage);
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * The ConversationPrefetcher class warms the conversations behind the rows of the user list:
+ * the latest page of messages goes into the local cache and the contact's avatar into the
+ * AvatarCache. Visible rows are queued when scrolling settles, and a row that is touched
+ * down jumps the queue, so the tap that follows usually opens a warm chat.
+ */
+package com.example.chatapp.utilities;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackend;
+import com.example.chatapp.modules.User;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ConversationPrefetcher {
+
+    /**
+     * Number of latest messages warmed per conversation, about two screens of chat.
+     */
+    public static final int MESSAGE_PAGE_SIZE = 30;
+
+    /**
+     * Maximum number of conversations warmed at the same time.
+     */
+    private static final int MAX_CONCURRENT = 2;
+
+    /**
+     * Number of warmed conversations remembered, so they are not fetched twice.
+     */
+    private static final int WARM_CAPACITY = 100;
+
+    private final ChatBackend chatBackend;
+    private final String currentUserId;
+    private final Prefetcher prefetcher;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Contacts by conversation ID, for the loader.
+     */
+    private final Map<String, User> contacts = new HashMap<>();
+
+    private RecyclerView recyclerView;
+    private List<User> users;
+
+    private final RecyclerView.OnScrollListener scrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(@NonNull RecyclerView view, int newState) {
+            if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                requestVisible();
+            } else if (newState == RecyclerView.SCROLL_STATE_DRAGGING) {
+                prefetcher.cancelAll(); // Rows about to scroll away are not worth warming
+            }
+        }
+    };
+
+    private final RecyclerView.OnItemTouchListener touchListener = new RecyclerView.SimpleOnItemTouchListener() {
+        @Override
+        public boolean onInterceptTouchEvent(@NonNull RecyclerView view, @NonNull MotionEvent event) {
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                View child = view.findChildViewUnder(event.getX(), event.getY());
+                int position = child == null ? RecyclerView.NO_POSITION : view.getChildAdapterPosition(child);
+                if (position != RecyclerView.NO_POSITION && position < users.size()) {
+                    prefetcher.requestNow(conversationIdOf(users.get(position)));
+                }
+            }
+            return false; // Never consume the touch; the row still gets its click
+        }
+    };
+
+    /**
+     * Constructor for initializing the prefetcher for the signed-in user.
+     *
+     * @param chatBackend The backend messages are prefetched from.
+     * @param currentUserId The ID of the signed-in user.
+     */
+    public ConversationPrefetcher(ChatBackend chatBackend, String currentUserId) {
+        this.chatBackend = chatBackend;
+        this.currentUserId = currentUserId;
+        this.prefetcher = new Prefetcher(this::load, MAX_CONCURRENT, WARM_CAPACITY);
+    }
+
+    /**
+     * Starts prefetching for the rows of a user list.
+     *
+     * @param recyclerView The list showing the users, with a LinearLayoutManager.
+     * @param users The users shown in the list, in adapter order.
+     */
+    public void attach(RecyclerView recyclerView, List<User> users) {
+        detach();
+        this.recyclerView = recyclerView;
+        this.users = users;
+        recyclerView.addOnScrollListener(scrollListener);
+        recyclerView.addOnItemTouchListener(touchListener);
+        // Warm the first screen once it has been laid out
+        recyclerView.post(this::requestVisible);
+    }
+
+    /**
+     * Stops prefetching and drops every request that has not started.
+     */
+    public void detach() {
+        prefetcher.cancelAll();
+        if (recyclerView != null) {
+            recyclerView.removeOnScrollListener(scrollListener);
+            recyclerView.removeOnItemTouchListener(touchListener);
+            recyclerView = null;
+        }
+    }
+
+    /**
+     * Queues every visible row, top to bottom.
+     */
+    private void requestVisible() {
+        if (recyclerView == null || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = Math.min(layoutManager.findLastVisibleItemPosition(), users.size() - 1);
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        for (int position = first; position <= last; position++) {
+            prefetcher.request(conversationIdOf(users.get(position)));
+        }
+    }
+
+    private String conversationIdOf(User user) {
+        String conversationId = ConversationIds.of(currentUserId, user.id);
+        contacts.put(conversationId, user);
+        return conversationId;
+    }
+
+    /**
+     * Warms one conversation: its latest messages and the contact's avatar, in parallel.
+     */
+    private void load(String conversationId, Runnable done) {
+        User contact = contacts.get(conversationId);
+        int[] pending = {2};
+        Runnable partDone = () -> mainHandler.post(() -> {
+            if (--pending[0] == 0) {
+                done.run();
+            }
+        });
+        AvatarCache.preload(contact, partDone);
+        chatBackend.prefetchMessages(conversationId, MESSAGE_PAGE_SIZE, new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                partDone.run();
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                partDone.run(); // Opening the chat will simply load it cold
+            }
+        });
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * The DeviceKeys class keeps this device's end-to-end encryption keys.
+ * The X25519 key pair is created on first use and kept in app-private preferences, which are
+ * excluded from backups and device transfers, so the private key never leaves the device; its public
+ * key is published on the signed-in user's document. The peer keys of encrypted conversations
+ * are kept too, so a conversation once encrypted stays encrypted, e.g. for a reply sent from a
+ * notification before any chat screen has been opened. Keys are per device: a user signed in
+ * on another device publishes that device's key, and messages follow the key published last.
+ * Where X25519 is not available (before Android 13), every conversation stays unencrypted.
+ * The keys are loaded, or created, once per process on a background thread started with the app;
+ * the main thread only ever waits for that load, and never reads the preferences itself.
+ */
+package com.example.chatapp.utilities;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackend;
+import com.example.chatapp.crypto.ConversationKeys;
+import com.example.chatapp.crypto.IdentityKeys;
+import com.example.chatapp.crypto.MessageCipher;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.SecretKey;
+
+public final class DeviceKeys {
+
+    /**
+     * Name of the preferences file, excluded by res/xml/backup_rules.xml and data_extraction_rules.xml.
+     */
+    private static final String PREFERENCES_NAME = "chatAppKeys";
+    private static final String KEY_PRIVATE = "private";
+    private static final String KEY_PUBLISHED_FOR = "publishedFor";
+    private static final String PEER_PREFIX = "peer:";
+
+    private static final AtomicBoolean LOAD_STARTED = new AtomicBoolean();
+    private static final CountDownLatch LOADED = new CountDownLatch(1);
+
+    /**
+     * Set once by the load, before LOADED is counted down, and never changed afterwards.
+     */
+    private static ConversationKeys conversationKeys;
+    private static String publicKey;
+
+    private DeviceKeys() {
+    }
+
+    /**
+     * Starts loading the keys in the background, so they are in memory by the time the backend or
+     * a screen asks for them. Only the first call has any effect; called once when the app starts.
+     *
+     * @param context Any context of the app.
+     */
+    public static void load(Context context) {
+        if (!LOAD_STARTED.compareAndSet(false, true)) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        new Thread(() -> {
+            try {
+                read(appContext);
+            } finally {
+                LOADED.countDown();
+            }
+        }, "device-keys").start();
+    }
+
+    /**
+     * Returns the conversation keys of this device. Before the load has finished, waits for it;
+     * only creating the key pair on the first start takes noticeably long.
+     *
+     * @param context Any context of the app.
+     * @return The keys, or null if this device cannot encrypt.
+     */
+    public static ConversationKeys get(Context context) {
+        load(context);
+        try {
+            LOADED.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return conversationKeys;
+    }
+
+    /**
+     * Reads the key pair and the peer keys, creating the key pair if there is none yet.
+     */
+    private static void read(Context context) {
+        SharedPreferences preferences = preferences(context);
+        try {
+            String encodedPrivate = preferences.getString(KEY_PRIVATE, null);
+            KeyPair keyPair = null;
+            if (encodedPrivate == null) {
+                keyPair = IdentityKeys.generate();
+                encodedPrivate = IdentityKeys.encodePrivate(keyPair.getPrivate());
+                publicKey = IdentityKeys.encodePublic(keyPair.getPublic());
+                preferences.edit()
+                        .putString(KEY_PRIVATE, encodedPrivate)
+                        .putString(Constants.KEY_PUBLIC_KEY, publicKey)
+                        .apply();
+            } else {
+                publicKey = preferences.getString(Constants.KEY_PUBLIC_KEY, null);
+            }
+            ConversationKeys keys = new ConversationKeys(keyPair != null
+                    ? keyPair.getPrivate()
+                    : IdentityKeys.decodePrivate(encodedPrivate));
+            for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+                if (entry.getKey().startsWith(PEER_PREFIX)) {
+                    keys.setPeer(entry.getKey().substring(PEER_PREFIX.length()), (String) entry.getValue());
+                }
+            }
+            conversationKeys = keys;
+        } catch (GeneralSecurityException exception) {
+            publicKey = null; // No X25519 on this device
+        }
+    }
+
+    /**
+     * Returns the public key of this device, or null if it cannot encrypt.
+     *
+     * @param context Any context of the app.
+     */
+    public static String publicKey(Context context) {
+        return get(context) == null ? null : publicKey;
+    }
+
+    /**
+     * Encrypts a one-to-one conversation from now on, if the peer has published a key.
+     * A peer without a key leaves the conversation as it was.
+     *
+     * @param context Any context of the app.
+     * @param conversationId The ID of the conversation.
+     * @param peerPublicKey The public key the peer published, or null.
+     */
+    public static void setPeer(Context context, String conversationId, String peerPublicKey) {
+        ConversationKeys keys = get(context);
+        if (keys == null || peerPublicKey == null) {
+            return;
+        }
+        keys.setPeer(conversationId, peerPublicKey);
+        preferences(context).edit().putString(PEER_PREFIX + conversationId, peerPublicKey).apply();
+    }
+
+    /**
+     * Publishes this device's public key for the signed-in user, unless it already was.
+     *
+     * @param context Any context of the app.
+     * @param chatBackend The backend storing the key.
+     * @param userId The ID of the signed-in user.
+     */
+    public static void publish(Context context, ChatBackend chatBackend, String userId) {
+        String key = publicKey(context);
+        SharedPreferences preferences = preferences(context);
+        if (key == null || userId == null || userId.equals(preferences.getString(KEY_PUBLISHED_FOR, null))) {
+            return;
+        }
+        chatBackend.updatePublicKey(userId, key, new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                preferences.edit().putString(KEY_PUBLISHED_FOR, userId).apply();
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                // Published on the next start
+            }
+        });
+    }
+
+    /**
+     * Marks the key as published for a user whose sign-up stored it already.
+     */
+    public static void markPublished(Context context, String userId) {
+        preferences(context).edit().putString(KEY_PUBLISHED_FOR, userId).apply();
+    }
+
+    /**
+     * Decrypts a message text that arrived outside of a listener, e.g. in a push message.
+     *
+     * @param context Any context of the app.
+     * @param conversationId The ID of the conversation.
+     * @param senderId The ID of the sender.
+     * @param text The text as sent.
+     * @return The plaintext, or null if the text is encrypted and cannot be decrypted here.
+     */
+    public static String readable(Context context, String conversationId, String senderId, String text) {
+        if (!MessageCipher.isEncrypted(text)) {
+            return text;
+        }
+        ConversationKeys keys = get(context);
+        try {
+            SecretKey key = keys == null ? null : keys.keyFor(conversationId);
+            return key == null ? null : MessageCipher.decrypt(key, text, conversationId, senderId);
+        } catch (GeneralSecurityException exception) {
+            return null;
+        }
+    }
+
+    private static SharedPreferences preferences(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+}
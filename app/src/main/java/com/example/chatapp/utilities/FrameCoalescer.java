@@ -0,0 +1,92 @@
+/**
+ * The FrameCoalescer class buffers items that arrive in bursts, e.g. snapshot changes,
+ * and hands them over at most once per frame, just before the frame is drawn.
+ * However many batches arrive between two frames, the UI is updated once.
+ * Two buffers take turns, so a steady stream of batches allocates no new lists.
+ * Must be used from the main thread.
+ */
+package com.example.chatapp.utilities;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameCoalescer<T> {
+
+    /**
+     * Receives the items buffered since the previous frame.
+     */
+    public interface Sink<T> {
+        /**
+         * Applies the buffered items.
+         *
+         * @param items The items in arrival order; the list is reused once the call returns.
+         * @param firstQueuedNanos When the oldest item was queued, from System.nanoTime().
+         */
+        void onFrame(List<T> items, long firstQueuedNanos);
+    }
+
+    private final Sink<T> sink;
+    private final Choreographer choreographer = Choreographer.getInstance();
+
+    private List<T> pending = new ArrayList<>();
+
+    /**
+     * The buffer handed to the sink last, empty and ready to take over from pending.
+     */
+    private List<T> spare = new ArrayList<>();
+    private long firstQueuedNanos;
+    private boolean scheduled;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            scheduled = false;
+            List<T> items = pending;
+            pending = spare;
+            if (!items.isEmpty()) {
+                sink.onFrame(items, firstQueuedNanos);
+            }
+            items.clear();
+            spare = items;
+        }
+    };
+
+    /**
+     * Constructor for initializing the coalescer with the sink that applies buffered items.
+     *
+     * @param sink Receives the items buffered since the previous frame.
+     */
+    public FrameCoalescer(Sink<T> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Buffers items for the next frame.
+     *
+     * @param items The items to buffer.
+     */
+    public void addAll(List<T> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        if (pending.isEmpty()) {
+            firstQueuedNanos = System.nanoTime();
+        }
+        pending.addAll(items);
+        if (!scheduled) {
+            scheduled = true;
+            choreographer.postFrameCallback(frameCallback);
+        }
+    }
+
+    /**
+     * Drops the buffered items and the scheduled frame, e.g. when the screen is destroyed.
+     */
+    public void cancel() {
+        choreographer.removeFrameCallback(frameCallback);
+        scheduled = false;
+        pending.clear();
+    }
+}
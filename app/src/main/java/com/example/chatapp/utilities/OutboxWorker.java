@@ -0,0 +1,98 @@
+/**
+ * The OutboxWorker class sends the messages queued in the Outbox while the device was offline.
+ * A single unique work request drains the whole queue, oldest message first, once a network
+ * connection is available, so messages arrive in the order they were written. A message that may
+ * have been stored by an earlier attempt is not stored twice. A failed send is retried with exponential
+ * backoff by WorkManager; one that keeps failing is given up, marked as not sent in its conversation,
+ * and announced in a notification. Both the queue and the work survive restarts of the app and of the device.
+ */
+package com.example.chatapp.utilities;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.chatapp.backend.BlockingCalls;
+import com.example.chatapp.backend.FirestoreChatBackend;
+import com.example.chatapp.backend.Outbox;
+import com.example.chatapp.backend.OutboxProvider;
+import com.example.chatapp.firebase.ChatNotifications;
+import com.example.chatapp.modules.ChatMessage;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.concurrent.TimeUnit;
+
+public class OutboxWorker extends Worker {
+
+    /**
+     * A message is given up after this many failed attempts; going offline again does not count,
+     * since the work only runs while connected.
+     */
+    private static final int MAX_ATTEMPTS = 10;
+
+    /**
+     * How long a single send may take before it is retried later.
+     */
+    private static final long REQUEST_TIMEOUT_SECONDS = 60;
+
+    private static final String UNIQUE_WORK_NAME = "outbox";
+
+    public OutboxWorker(@NonNull Context context, @NonNull WorkerParameters workerParameters) {
+        super(context, workerParameters);
+    }
+
+    /**
+     * Makes sure the outbox is drained once the device is online. A drain already running
+     * finishes first; the one scheduled here then picks up whatever it left.
+     *
+     * @param context Any context of the app.
+     */
+    public static void schedule(Context context) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(OutboxWorker.class)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Outbox outbox = OutboxProvider.get();
+        FirestoreChatBackend backend = new FirestoreChatBackend(FirebaseFirestore.getInstance());
+        for (ChatMessage message = outbox.next(); message != null; message = outbox.next()) {
+            try {
+                resend(backend, message);
+                outbox.remove(message.id);
+            } catch (Exception exception) {
+                if (outbox.recordAttempt(message.id) < MAX_ATTEMPTS) {
+                    return Result.retry(); // The rest waits, so nothing overtakes this message
+                }
+                outbox.markFailed(message.id);
+                Context context = getApplicationContext();
+                ChatNotifications.showNotSent(context, message.conversationId,
+                        DeviceKeys.readable(context, message.conversationId, message.senderId, message.message));
+            }
+        }
+        return Result.success();
+    }
+
+    /**
+     * Sends the message and blocks this worker thread until the callback fires on the main thread.
+     */
+    private static void resend(FirestoreChatBackend backend, ChatMessage message) throws Exception {
+        BlockingCalls.<Void>await(callback -> backend.resendMessage(message.conversationId, message.id, message,
+                callback), REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
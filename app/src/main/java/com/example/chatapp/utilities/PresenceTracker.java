@@ -0,0 +1,141 @@
+/**
+ * The PresenceTracker class keeps the signed-in user's presence alive while the app is
+ * in the foreground. Every started screen and every heartbeat signals a Throttle, so
+ * navigation bursts and heartbeats are coalesced into at most one write per floor.
+ * Each write moves the presence expiry past the next heartbeat; going to the background
+ * writes nothing, and the user simply counts as offline once the expiry has passed.
+ */
+package com.example.chatapp.utilities;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackendProvider;
+import com.example.chatapp.metrics.Counter;
+import com.example.chatapp.metrics.MetricNames;
+import com.example.chatapp.metrics.MetricsRegistry;
+import com.example.chatapp.session.SessionStoreProvider;
+
+import java.util.Date;
+
+public final class PresenceTracker implements Application.ActivityLifecycleCallbacks {
+
+    private static final Counter PRESENCE_SIGNALS = MetricsRegistry.get().counter(MetricNames.PRESENCE_SIGNALS);
+    private static final Counter PRESENCE_WRITES = MetricsRegistry.get().counter(MetricNames.PRESENCE_WRITES);
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final long heartbeatMillis;
+    private final Throttle throttle;
+
+    /**
+     * Number of started activities; zero means the app is in the background.
+     */
+    private int startedActivities;
+
+    private final Runnable heartbeat = new Runnable() {
+        @Override
+        public void run() {
+            signal();
+            handler.postDelayed(this, heartbeatMillis);
+        }
+    };
+
+    private PresenceTracker(long heartbeatMillis) {
+        this.heartbeatMillis = heartbeatMillis;
+        this.throttle = new Throttle(heartbeatMillis, this::writePresence, handler::postDelayed);
+    }
+
+    /**
+     * Starts tracking the presence of the signed-in user.
+     *
+     * @param application The application.
+     * @param heartbeatMillis Interval between heartbeats, which is also the floor between two presence writes.
+     */
+    public static void register(Application application, long heartbeatMillis) {
+        application.registerActivityLifecycleCallbacks(new PresenceTracker(heartbeatMillis));
+    }
+
+    /**
+     * Returns whether a presence expiry means the user is online now.
+     *
+     * @param expiresAt The presence expiry, or null.
+     * @return true if the expiry has not passed yet.
+     */
+    public static boolean isOnline(Date expiresAt) {
+        return expiresAt != null && expiresAt.getTime() > System.currentTimeMillis();
+    }
+
+    @Override
+    public void onActivityStarted(@NonNull Activity activity) {
+        startedActivities++;
+        if (startedActivities == 1) {
+            handler.post(heartbeat); // Back in the foreground: announce right away, then keep alive
+        } else {
+            signal();
+        }
+    }
+
+    @Override
+    public void onActivityStopped(@NonNull Activity activity) {
+        startedActivities--;
+        if (startedActivities == 0) {
+            // No cleanup write: the expiry runs out on its own
+            handler.removeCallbacks(heartbeat);
+            throttle.cancel();
+        }
+    }
+
+    private void signal() {
+        PRESENCE_SIGNALS.increment();
+        throttle.signal();
+    }
+
+    /**
+     * Writes an expiry that outlives the next heartbeat, with one heartbeat of slack for late timers.
+     */
+    private void writePresence(long lastSignalAgeMillis) {
+        String userId = SessionStoreProvider.get().get().userId;
+        if (userId == null) {
+            return;
+        }
+        PRESENCE_WRITES.increment();
+        Date expiresAt = new Date(System.currentTimeMillis() - lastSignalAgeMillis + 2 * heartbeatMillis);
+        ChatBackendProvider.get().setPresence(userId, expiresAt, new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                // The next heartbeat tries again
+            }
+        });
+    }
+
+    @Override
+    public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(@NonNull Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(@NonNull Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(@NonNull Activity activity) {
+    }
+}
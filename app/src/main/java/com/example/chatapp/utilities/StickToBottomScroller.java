@@ -0,0 +1,64 @@
+/**
+ * The StickToBottomScroller class keeps a chat list pinned to its newest message.
+ * It only follows new messages while the user is already at the bottom, so reading
+ * older messages is never interrupted, and it jumps instead of animating when the
+ * bottom is far away, so long bursts do not queue up minutes of smooth scrolling.
+ */
+package com.example.chatapp.utilities;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+public class StickToBottomScroller {
+
+    /**
+     * Farthest distance, in rows, that is still scrolled smoothly.
+     */
+    private static final int MAX_SMOOTH_SCROLL_ROWS = 6;
+
+    private final RecyclerView recyclerView;
+
+    /**
+     * Constructor for initializing the scroller for a list with a LinearLayoutManager.
+     *
+     * @param recyclerView The chat list.
+     */
+    public StickToBottomScroller(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+    }
+
+    /**
+     * Returns whether the last row is visible. Call before notifying the adapter of new rows.
+     */
+    public boolean isAtBottom() {
+        RecyclerView.Adapter<?> adapter = recyclerView.getAdapter();
+        int lastVisible = lastVisiblePosition();
+        return adapter == null || lastVisible == RecyclerView.NO_POSITION
+                || lastVisible >= adapter.getItemCount() - 1;
+    }
+
+    /**
+     * Scrolls to the last row, smoothly when it is close and instantly when it is far away.
+     */
+    public void scrollToBottom() {
+        RecyclerView.Adapter<?> adapter = recyclerView.getAdapter();
+        if (adapter == null || adapter.getItemCount() == 0) {
+            return;
+        }
+        int target = adapter.getItemCount() - 1;
+        int lastVisible = lastVisiblePosition();
+        if (lastVisible == RecyclerView.NO_POSITION || target - lastVisible > MAX_SMOOTH_SCROLL_ROWS) {
+            recyclerView.stopScroll(); // A jump must not be undone by a running animation
+            recyclerView.scrollToPosition(target);
+        } else {
+            recyclerView.smoothScrollToPosition(target);
+        }
+    }
+
+    private int lastVisiblePosition() {
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        return layoutManager instanceof LinearLayoutManager
+                ? ((LinearLayoutManager) layoutManager).findLastVisibleItemPosition()
+                : RecyclerView.NO_POSITION;
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * The SyncWorker class warms the local cache in the background, so the next app open finds
+ * the user list and recent conversations on disk instead of waiting for the network.
+ * It runs only while the device is charging or on an unmetered network, fetches only what
+ * changed since the previous run (the users updated since then and the latest page of each
+ * conversation with newer messages), and stops once it has read a fixed number of bytes.
+ * Avatars are part of the user documents, so they land in the persistent cache with them.
+ * How often it runs adapts to how often it finds changes; failures are retried with
+ * exponential backoff by WorkManager.
+ */
+package com.example.chatapp.utilities;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.chatapp.backend.BlockingCalls;
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackend;
+import com.example.chatapp.backend.ChatBackendProvider;
+import com.example.chatapp.metrics.Usage;
+import com.example.chatapp.metrics.UsageMeter;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.session.SessionStoreProvider;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+public class SyncWorker extends Worker {
+
+    /**
+     * Bytes a single run may read before it stops; the rest is left for the next run.
+     */
+    static final long BYTE_BUDGET = 5L * 1024 * 1024;
+
+    /**
+     * Number of most recently active conversations kept warm.
+     */
+    static final int MAX_CONVERSATIONS = 20;
+
+    /**
+     * Runs after a failure are retried with exponential backoff, at most this many times per period.
+     */
+    private static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * How long a single request may take before the run is retried later.
+     */
+    private static final long REQUEST_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Server timestamps are compared with the device clock, so watermarks are moved back by this much.
+     */
+    private static final long CLOCK_SKEW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String PREFERENCES_NAME = "chatAppSync";
+    private static final String KEY_SYNCED_USER_ID = "syncedUserId";
+    private static final String KEY_LAST_SYNC = "lastSync";
+    private static final String KEY_INTERVAL = "interval";
+    private static final String KEY_USERS_SINCE = "usersSince";
+    private static final String KEY_MESSAGES_SINCE = "messagesSince";
+
+    /**
+     * The two periodic requests may become runnable together; only one of them syncs.
+     */
+    private static final AtomicBoolean RUNNING = new AtomicBoolean();
+
+    public SyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParameters) {
+        super(context, workerParameters);
+    }
+
+    /**
+     * Schedules the sync. WorkManager constraints can only all be required at once, so there is one
+     * periodic request for charging and one for unmetered networks; whichever runs first does the work.
+     * Existing requests are kept, so calling this on every start is cheap.
+     *
+     * @param context Any context of the app.
+     */
+    public static void schedule(Context context) {
+        WorkManager workManager = WorkManager.getInstance(context);
+        workManager.enqueueUniquePeriodicWork("sync-while-charging", ExistingPeriodicWorkPolicy.KEEP,
+                request(new Constraints.Builder()
+                        .setRequiresCharging(true)
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build()));
+        workManager.enqueueUniquePeriodicWork("sync-while-unmetered", ExistingPeriodicWorkPolicy.KEEP,
+                request(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.UNMETERED)
+                        .setRequiresBatteryNotLow(true)
+                        .build()));
+    }
+
+    private static PeriodicWorkRequest request(Constraints constraints) {
+        return new PeriodicWorkRequest.Builder(SyncWorker.class,
+                SyncSchedule.MIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 1, TimeUnit.MINUTES)
+                .build();
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String userId = SessionStoreProvider.get().get().userId;
+        if (userId == null || !RUNNING.compareAndSet(false, true)) {
+            return Result.success(); // Signed out, or the other request is already syncing
+        }
+        try {
+            sync(userId);
+            return Result.success();
+        } catch (Exception exception) {
+            return getRunAttemptCount() < MAX_ATTEMPTS ? Result.retry() : Result.failure();
+        } finally {
+            RUNNING.set(false);
+        }
+    }
+
+    /**
+     * Fetches what changed since the previous run, newest first, until the byte budget is spent.
+     * Bytes are measured on the session total, so foreground reads during a run count against it too.
+     */
+    private void sync(String userId) throws Exception {
+        SharedPreferences preferences = getApplicationContext()
+                .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        if (!userId.equals(preferences.getString(KEY_SYNCED_USER_ID, null))) {
+            preferences.edit().clear().putString(KEY_SYNCED_USER_ID, userId).apply(); // Another user signed in
+        }
+        long now = System.currentTimeMillis();
+        SyncSchedule schedule = new SyncSchedule(preferences.getLong(KEY_LAST_SYNC, 0),
+                preferences.getLong(KEY_INTERVAL, SyncSchedule.MIN_INTERVAL_MILLIS));
+        if (!schedule.isDue(now)) {
+            return;
+        }
+        ChatBackend chatBackend = ChatBackendProvider.get();
+        Usage session = UsageMeter.get().session();
+        long budgetEnd = session.getBytesRead() + BYTE_BUDGET;
+        long watermark = now - CLOCK_SKEW_MILLIS;
+
+        long usersSince = preferences.getLong(KEY_USERS_SINCE, 0);
+        List<User> users = await(callback ->
+                chatBackend.getUsersUpdatedSince(usersSince == 0 ? null : new Date(usersSince), callback));
+        for (User user : users) {
+            AvatarCache.preload(user, () -> { }); // Decoded ahead while the process lives
+        }
+        preferences.edit().putLong(KEY_USERS_SINCE, watermark).apply();
+        boolean changed = !users.isEmpty();
+
+        long messagesSince = preferences.getLong(KEY_MESSAGES_SINCE, 0);
+        Map<String, Date> conversations = await(callback ->
+                chatBackend.getRecentConversations(userId, MAX_CONVERSATIONS, callback));
+        boolean complete = true;
+        for (Map.Entry<String, Date> conversation : conversations.entrySet()) {
+            Date lastActivity = conversation.getValue();
+            if (lastActivity != null && lastActivity.getTime() <= messagesSince) {
+                break; // Most recently active first, so every remaining one is warm already
+            }
+            if (session.getBytesRead() >= budgetEnd) {
+                complete = false;
+                break;
+            }
+            await(callback -> chatBackend.prefetchMessages(conversation.getKey(),
+                    ConversationPrefetcher.MESSAGE_PAGE_SIZE, callback));
+            changed = true;
+        }
+        if (complete) {
+            // An incomplete run keeps the old watermark, so the next one picks up where it stopped
+            preferences.edit().putLong(KEY_MESSAGES_SINCE, watermark).apply();
+        }
+
+        schedule.onSynced(System.currentTimeMillis(), changed || !complete);
+        preferences.edit()
+                .putLong(KEY_LAST_SYNC, schedule.getLastSyncMillis())
+                .putLong(KEY_INTERVAL, schedule.getIntervalMillis())
+                .apply();
+    }
+
+    /**
+     * Runs a backend request and blocks this worker thread until its callback fires on the main thread.
+     */
+    private static <T> T await(Consumer<Callback<T>> request) throws Exception {
+        return BlockingCalls.await(request, REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * The TestChatApplication class stands in for ChatApplication in Robolectric tests.
+ * It installs no Firestore, presence or sync services; tests install a fake backend instead.
+ * The session store, the outbox and this device's keys are the real ones, loaded in the background like in the app.
+ * Firebase is initialized with placeholder options, since screens still ask it for a messaging token.
+ */
+package com.example.chatapp;
+
+import android.app.Application;
+
+import com.example.chatapp.backend.ChatBackendProvider;
+import com.example.chatapp.backend.InMemoryChatBackend;
+import com.example.chatapp.backend.OutboxProvider;
+import com.example.chatapp.session.SessionStoreProvider;
+import com.example.chatapp.utilities.DeviceKeys;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+
+public class TestChatApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        FirebaseApp.initializeApp(this, new FirebaseOptions.Builder()
+                .setApplicationId("1:1:android:1")
+                .setProjectId("chatapp-test")
+                .setApiKey("test")
+                .build());
+        SessionStoreProvider.init(this);
+        OutboxProvider.init(this);
+        DeviceKeys.load(this);
+        ChatBackendProvider.init(this);
+        ChatBackendProvider.set(new InMemoryChatBackend());
+    }
+}
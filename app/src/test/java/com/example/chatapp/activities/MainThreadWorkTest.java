@@ -0,0 +1,154 @@
+package com.example.chatapp.activities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+import android.widget.EditText;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.chatapp.R;
+import com.example.chatapp.TestChatApplication;
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackendProvider;
+import com.example.chatapp.backend.InMemoryChatBackend;
+import com.example.chatapp.metrics.StrictModeCollector;
+import com.example.chatapp.modules.User;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives sign-in, the user directory and a chat over an in-memory backend with StrictMode on,
+ * and fails on any violation StrictMode records on the main thread. Robolectric runs file I/O on
+ * the JVM, which does not go through BlockGuard, so plain file reads and writes are not caught;
+ * what fires are the explicit checks: SharedPreferences loads and calls reported with noteSlowCall,
+ * such as avatar decoding.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.UPSIDE_DOWN_CAKE, application = TestChatApplication.class)
+public class MainThreadWorkTest {
+
+    private static final String PASSWORD = "secret";
+
+    private final List<ActivityController<?>> controllers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        ChatBackendProvider.set(backend);
+        signUp(backend, "Alice", "alice@example.com");
+        signUp(backend, "Bob", "bob@example.com");
+        StrictModeCollector.enable();
+        StrictModeCollector.clear();
+    }
+
+    @After
+    public void tearDown() {
+        for (ActivityController<?> controller : controllers) {
+            controller.pause().stop().destroy();
+        }
+    }
+
+    @Test
+    public void signInDirectoryAndChatStayOffTheMainThread() {
+        SignInActivity signIn = start(SignInActivity.class, null);
+        ((EditText) signIn.findViewById(R.id.inputEmail)).setText("alice@example.com");
+        ((EditText) signIn.findViewById(R.id.inputPassword)).setText(PASSWORD);
+        signIn.findViewById(R.id.buttonSignIn).performClick();
+        settle();
+
+        MainActivity main = start(MainActivity.class, nextStarted(signIn, MainActivity.class));
+        main.findViewById(R.id.fabNewChat).performClick();
+        settle();
+
+        userActivity users = start(userActivity.class, nextStarted(main, userActivity.class));
+        RecyclerView userList = users.findViewById(R.id.userRecyclerView);
+        layOut(userList);
+        RecyclerView.ViewHolder bob = userList.findViewHolderForAdapterPosition(0);
+        assertNotNull("The directory shows no contacts", bob);
+        bob.itemView.performClick();
+        settle();
+
+        ChatActivity chat = start(ChatActivity.class, nextStarted(users, ChatActivity.class));
+        ((EditText) chat.findViewById(R.id.inputMessage)).setText("Hello Bob");
+        chat.findViewById(R.id.layoutSend).performClick();
+        settle();
+        layOut(chat.findViewById(R.id.chatRecyclerView));
+
+        assertNoViolations();
+    }
+
+    private static void signUp(InMemoryChatBackend backend, String name, String email) {
+        User user = new User();
+        user.name = name;
+        user.email = email;
+        user.image = "iVBORw0KGgo="; // Decoded in the background, whatever it holds
+        backend.signUp(user, PASSWORD, new Callback<User>() {
+            @Override
+            public void onSuccess(User result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                fail(exception.toString());
+            }
+        });
+    }
+
+    private <T extends Activity> T start(Class<T> activityClass, Intent intent) {
+        ActivityController<T> controller = Robolectric.buildActivity(activityClass, intent).setup();
+        controllers.add(controller);
+        settle();
+        return controller.get();
+    }
+
+    private static Intent nextStarted(Activity from, Class<?> expected) {
+        Intent intent = shadowOf(from).getNextStartedActivity();
+        assertNotNull("Nothing started from " + from.getClass().getSimpleName(), intent);
+        assertEquals(expected.getName(), intent.getComponent().getClassName());
+        return intent;
+    }
+
+    /**
+     * Runs the main thread's pending work, including a few frames' worth of delayed tasks.
+     */
+    private static void settle() {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(100));
+    }
+
+    private static void layOut(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, 1080, 1920);
+        settle();
+    }
+
+    private static void assertNoViolations() {
+        StringBuilder found = new StringBuilder();
+        for (Throwable violation : StrictModeCollector.recent()) {
+            found.append('\n').append(Log.getStackTraceString(violation));
+        }
+        if (found.length() > 0) {
+            fail("Main-thread work found:" + found);
+        }
+    }
+}
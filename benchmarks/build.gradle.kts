@@ -0,0 +1,34 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+dependencies {
+    jmh(project(":core"))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    // Short enough to run on every review, long enough for stable averages
+    fork.set(1)
+    warmupIterations.set(3)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("1s")
+    includes.set(listOfNotNull(providers.gradleProperty("jmhIncludes").orNull))
+}
+
+// Promotes the latest run to the committed baseline: ./gradlew :benchmarks:jmh :benchmarks:updateBaseline
+tasks.register<Copy>("updateBaseline") {
+    mustRunAfter("jmh")
+    from(layout.buildDirectory.file("results/jmh/results.json"))
+    into(layout.projectDirectory.dir("baselines"))
+    rename { "baseline.json" }
+}
@@ -0,0 +1,41 @@
+/**
+ * The AvatarDecodingBenchmark class measures decoding the Base64 avatars shown in the
+ * user list, comparing AvatarCodec with the JDK's MIME decoder.
+ */
+package com.example.chatapp.benchmarks;
+
+import com.example.chatapp.utilities.AvatarCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AvatarDecodingBenchmark {
+
+    private String encoded;
+
+    @Setup
+    public void setUp() {
+        encoded = Datasets.encodedAvatar();
+    }
+
+    @Benchmark
+    public byte[] avatarCodec() {
+        return AvatarCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] jdkMimeDecoder() {
+        return Base64.getMimeDecoder().decode(encoded);
+    }
+}
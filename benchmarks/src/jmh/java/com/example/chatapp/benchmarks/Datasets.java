@@ -0,0 +1,151 @@
+/**
+ * The Datasets class generates the synthetic conversations and users the benchmarks run on.
+ * Every dataset is seeded, so runs are comparable across machines and commits.
+ */
+package com.example.chatapp.benchmarks;
+
+import com.example.chatapp.backend.FieldSource;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.utilities.Constants;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+final class Datasets {
+
+    /**
+     * Timestamp of the first generated message.
+     */
+    static final long START_MILLIS = 1_700_000_000_000L;
+
+    /**
+     * Size of a typical compressed avatar, as produced by the sign-up screen.
+     */
+    static final int AVATAR_BYTES = 12 * 1024;
+
+    private static final long SEED = 42;
+
+    private Datasets() {
+    }
+
+    /**
+     * Returns message documents of a two-person conversation, oldest first,
+     * with a few seconds between messages on average.
+     */
+    static List<FieldSource> messageDocuments(int count) {
+        Random random = new Random(SEED);
+        List<FieldSource> documents = new ArrayList<>(count);
+        long millis = START_MILLIS;
+        for (int i = 0; i < count; i++) {
+            millis += 500 + random.nextInt(10_000);
+            Map<String, Object> fields = new HashMap<>();
+            boolean fromAlice = random.nextBoolean();
+            fields.put(Constants.KEY_SENDER_ID, fromAlice ? "alice" : "bob");
+            fields.put(Constants.KEY_RECEIVER_ID, fromAlice ? "bob" : "alice");
+            fields.put(Constants.KEY_MESSAGE, text(random));
+            fields.put(Constants.KEY_TIMESTAMP, new Date(millis));
+            fields.put(Constants.KEY_SEQ, (long) i + 1);
+            documents.add(new MapFieldSource("m" + i, fields));
+        }
+        return documents;
+    }
+
+    /**
+     * Returns messages of a two-person conversation, oldest first.
+     */
+    static List<ChatMessage> messages(int count) {
+        List<FieldSource> documents = messageDocuments(count);
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (FieldSource document : documents) {
+            ChatMessage message = new ChatMessage();
+            message.id = document.getId();
+            message.senderId = document.getString(Constants.KEY_SENDER_ID);
+            message.receiverId = document.getString(Constants.KEY_RECEIVER_ID);
+            message.message = document.getString(Constants.KEY_MESSAGE);
+            message.dateObject = document.getDate(Constants.KEY_TIMESTAMP);
+            message.seq = document.getLong(Constants.KEY_SEQ);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * Returns registered users without their avatars.
+     */
+    static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.id = "u" + i;
+            user.name = "User";
+            user.lastName = String.valueOf(i);
+            user.email = "user" + i + "@example.com";
+            users.add(user);
+        }
+        return users;
+    }
+
+    /**
+     * Returns a random avatar encoded the way android.util.Base64.DEFAULT does, with line breaks.
+     */
+    static String encodedAvatar() {
+        byte[] bytes = new byte[AVATAR_BYTES];
+        new Random(SEED).nextBytes(bytes);
+        return Base64.getMimeEncoder(76, new byte[]{'\n'}).encodeToString(bytes) + "\n";
+    }
+
+    private static String text(Random random) {
+        int words = 1 + random.nextInt(20);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append("word").append(random.nextInt(1000));
+        }
+        return text.toString();
+    }
+
+    /**
+     * A FieldSource backed by a map, standing in for a Firestore snapshot.
+     */
+    static final class MapFieldSource implements FieldSource {
+
+        private final String id;
+        private final Map<String, Object> fields;
+
+        MapFieldSource(String id, Map<String, Object> fields) {
+            this.id = id;
+            this.fields = fields;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getString(String key) {
+            Object value = fields.get(key);
+            return value instanceof String ? (String) value : null;
+        }
+
+        @Override
+        public Date getDate(String key) {
+            Object value = fields.get(key);
+            return value instanceof Date ? (Date) value : null;
+        }
+
+        @Override
+        public Long getLong(String key) {
+            Object value = fields.get(key);
+            return value instanceof Long ? (Long) value : null;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * The DateFormatBenchmark class measures formatting the display timestamps of a conversation,
+ * comparing ReadableDateFormat with creating a SimpleDateFormat for every message.
+ */
+package com.example.chatapp.benchmarks;
+
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.utilities.ReadableDateFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DateFormatBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int messages;
+
+    private Date[] dates;
+
+    @Setup
+    public void setUp() {
+        List<ChatMessage> conversation = Datasets.messages(messages);
+        dates = new Date[conversation.size()];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = conversation.get(i).dateObject;
+        }
+    }
+
+    @Benchmark
+    public void readableDateFormat(Blackhole blackhole) {
+        for (Date date : dates) {
+            blackhole.consume(ReadableDateFormat.format(date));
+        }
+    }
+
+    @Benchmark
+    public void simpleDateFormatPerCall(Blackhole blackhole) {
+        for (Date date : dates) {
+            blackhole.consume(new SimpleDateFormat(ReadableDateFormat.PATTERN, Locale.getDefault()).format(date));
+        }
+    }
+}
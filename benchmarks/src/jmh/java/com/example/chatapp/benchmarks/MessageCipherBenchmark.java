@@ -0,0 +1,96 @@
+/**
+ * The MessageCipherBenchmark class measures the end-to-end encryption path: encrypting a message,
+ * decrypting a conversation's history, and looking up a conversation key with and without the
+ * cache of derived keys.
+ */
+package com.example.chatapp.benchmarks;
+
+import com.example.chatapp.crypto.ConversationKeys;
+import com.example.chatapp.crypto.IdentityKeys;
+import com.example.chatapp.crypto.MessageCipher;
+import com.example.chatapp.modules.ChatMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageCipherBenchmark {
+
+    private static final String CONVERSATION_ID = "conversation";
+
+    @Param({"10", "1000"})
+    public int messages;
+
+    private PrivateKey privateKey;
+    private String peerPublicKey;
+    private ConversationKeys cachedKeys;
+    private SecretKey key;
+    private String[] plaintexts;
+    private String[] ciphertexts;
+    private String[] senders;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        KeyPair own = IdentityKeys.generate();
+        KeyPair peer = IdentityKeys.generate();
+        privateKey = own.getPrivate();
+        peerPublicKey = IdentityKeys.encodePublic(peer.getPublic());
+        cachedKeys = new ConversationKeys(privateKey);
+        cachedKeys.setPeer(CONVERSATION_ID, peerPublicKey);
+        key = cachedKeys.keyFor(CONVERSATION_ID);
+
+        List<ChatMessage> conversation = Datasets.messages(messages);
+        plaintexts = new String[conversation.size()];
+        ciphertexts = new String[conversation.size()];
+        senders = new String[conversation.size()];
+        for (int i = 0; i < plaintexts.length; i++) {
+            ChatMessage message = conversation.get(i);
+            plaintexts[i] = message.message;
+            senders[i] = message.senderId;
+            ciphertexts[i] = MessageCipher.encrypt(key, message.message, CONVERSATION_ID, message.senderId);
+        }
+    }
+
+    @Benchmark
+    public void encrypt(Blackhole blackhole) throws GeneralSecurityException {
+        for (int i = 0; i < plaintexts.length; i++) {
+            blackhole.consume(MessageCipher.encrypt(key, plaintexts[i], CONVERSATION_ID, senders[i]));
+        }
+    }
+
+    @Benchmark
+    public void decrypt(Blackhole blackhole) throws GeneralSecurityException {
+        for (int i = 0; i < ciphertexts.length; i++) {
+            blackhole.consume(MessageCipher.decrypt(key, ciphertexts[i], CONVERSATION_ID, senders[i]));
+        }
+    }
+
+    @Benchmark
+    public SecretKey cachedKey() throws GeneralSecurityException {
+        return cachedKeys.keyFor(CONVERSATION_ID);
+    }
+
+    @Benchmark
+    public SecretKey derivedKey() throws GeneralSecurityException {
+        ConversationKeys keys = new ConversationKeys(privateKey);
+        keys.setPeer(CONVERSATION_ID, peerPublicKey);
+        return keys.keyFor(CONVERSATION_ID);
+    }
+}
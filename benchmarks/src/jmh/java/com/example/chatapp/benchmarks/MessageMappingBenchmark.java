@@ -0,0 +1,47 @@
+/**
+ * The MessageMappingBenchmark class measures mapping a snapshot of message documents
+ * to ChatMessage objects, as the chat screen does for every listener event.
+ */
+package com.example.chatapp.benchmarks;
+
+import com.example.chatapp.backend.FieldSource;
+import com.example.chatapp.backend.MessageMapper;
+import com.example.chatapp.modules.ChatMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageMappingBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int messages;
+
+    private List<FieldSource> documents;
+
+    @Setup
+    public void setUp() {
+        documents = Datasets.messageDocuments(messages);
+    }
+
+    @Benchmark
+    public List<ChatMessage> mapSnapshot() {
+        List<ChatMessage> result = new ArrayList<>(documents.size());
+        for (FieldSource document : documents) {
+            result.add(MessageMapper.toChatMessage(document));
+        }
+        return result;
+    }
+}
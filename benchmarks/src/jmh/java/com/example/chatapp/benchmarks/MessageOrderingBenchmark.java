@@ -0,0 +1,86 @@
+/**
+ * The MessageOrderingBenchmark class measures merging newly received messages into a
+ * conversation, comparing MessageOrdering with the sort-everything approach the chat
+ * screen used before: append the batch, then Collections.sort the whole list.
+ * Every invocation works on a fresh copy of the history; both approaches pay for the copy.
+ */
+package com.example.chatapp.benchmarks;
+
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.utilities.MessageOrdering;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageOrderingBenchmark {
+
+    /**
+     * Messages delivered by one listener event after the initial load.
+     */
+    private static final int BATCH = 10;
+
+    @Param({"10", "1000", "100000"})
+    public int messages;
+
+    private List<ChatMessage> history;
+    private List<ChatMessage> inOrder;
+    private List<ChatMessage> late;
+
+    @Setup
+    public void setUp() {
+        List<ChatMessage> all = Datasets.messages(messages + BATCH);
+        history = new ArrayList<>(all.subList(0, messages));
+        inOrder = new ArrayList<>(all.subList(messages, messages + BATCH));
+        // Late arrivals land in the middle of the history, e.g. after an offline write syncs
+        late = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            late.add(all.get(messages / 2 + i * (messages / 2) / BATCH));
+        }
+    }
+
+    @Benchmark
+    public int mergeInOrder() {
+        return MessageOrdering.merge(copyOfHistory(), inOrder);
+    }
+
+    @Benchmark
+    public int mergeLate() {
+        return MessageOrdering.merge(copyOfHistory(), late);
+    }
+
+    @Benchmark
+    public int sortInOrder() {
+        List<ChatMessage> target = copyOfHistory();
+        target.addAll(inOrder);
+        Collections.sort(target, (first, second) -> first.dateObject.compareTo(second.dateObject));
+        return target.size();
+    }
+
+    @Benchmark
+    public int sortLate() {
+        List<ChatMessage> target = copyOfHistory();
+        target.addAll(late);
+        Collections.sort(target, (first, second) -> first.dateObject.compareTo(second.dateObject));
+        return target.size();
+    }
+
+    private List<ChatMessage> copyOfHistory() {
+        List<ChatMessage> copy = new ArrayList<>(history.size() + BATCH);
+        copy.addAll(history);
+        return copy;
+    }
+}
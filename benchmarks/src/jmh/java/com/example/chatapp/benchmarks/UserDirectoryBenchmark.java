@@ -0,0 +1,42 @@
+/**
+ * The UserDirectoryBenchmark class measures building the contact list from every registered user.
+ */
+package com.example.chatapp.benchmarks;
+
+import com.example.chatapp.modules.User;
+import com.example.chatapp.utilities.UserDirectory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserDirectoryBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int users;
+
+    private List<User> registered;
+    private String currentUserId;
+
+    @Setup
+    public void setUp() {
+        registered = Datasets.users(users);
+        currentUserId = registered.get(users / 2).id;
+    }
+
+    @Benchmark
+    public List<User> contactsOf() {
+        return UserDirectory.contactsOf(registered, currentUserId);
+    }
+}
@@ -0,0 +1,15 @@
+plugins {
+    `java-library`
+    // Tests every ChatBackend must pass, shared with the modules that implement one
+    `java-test-fixtures`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    testImplementation(libs.junit)
+    testFixturesApi(libs.junit)
+}
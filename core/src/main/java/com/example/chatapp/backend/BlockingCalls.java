@@ -0,0 +1,54 @@
+/**
+ * The BlockingCalls class turns a backend call that reports through a Callback into one that returns
+ * its result, for code running on a thread of its own, such as a background worker or a simulated
+ * client. Callbacks must be delivered on another thread, e.g. the main thread: called on that thread,
+ * the wait cannot end before the timeout.
+ */
+package com.example.chatapp.backend;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+public final class BlockingCalls {
+
+    private BlockingCalls() {
+    }
+
+    /**
+     * Starts a call and blocks until its callback fires.
+     *
+     * @param call Starts the call with the given callback.
+     * @param timeout How long to wait for the callback.
+     * @param unit The unit of the timeout.
+     * @return The result passed to onSuccess.
+     * @throws Exception The exception passed to onFailure, or a TimeoutException if neither was called in time.
+     */
+    public static <T> T await(Consumer<Callback<T>> call, long timeout, TimeUnit unit) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        Object[] outcome = new Object[1];
+        call.accept(new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                outcome[0] = result;
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                outcome[0] = exception;
+                done.countDown();
+            }
+        });
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("No callback within " + unit.toMillis(timeout) + " ms");
+        }
+        if (outcome[0] instanceof Exception) {
+            throw (Exception) outcome[0];
+        }
+        @SuppressWarnings("unchecked")
+        T result = (T) outcome[0];
+        return result;
+    }
+}
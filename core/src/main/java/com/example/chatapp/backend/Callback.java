@@ -0,0 +1,20 @@
+/**
+ * The Callback interface receives the result of an asynchronous ChatBackend operation.
+ */
+package com.example.chatapp.backend;
+
+public interface Callback<T> {
+    /**
+     * Called when the operation completed successfully.
+     *
+     * @param result The result of the operation, or null for operations without a result.
+     */
+    void onSuccess(T result);
+
+    /**
+     * Called when the operation failed.
+     *
+     * @param exception The cause of the failure.
+     */
+    void onFailure(Exception exception);
+}
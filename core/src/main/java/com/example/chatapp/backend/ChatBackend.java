@@ -0,0 +1,297 @@
+/**
+ * The ChatBackend interface is the single entry point the app uses to reach its data.
+ * Activities depend only on this interface, so the Firestore implementation can be
+ * replaced by an in-memory one in JVM tests, benchmarks and load tests.
+ */
+package com.example.chatapp.backend;
+
+import com.example.chatapp.modules.Archive;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.Group;
+import com.example.chatapp.modules.User;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public interface ChatBackend {
+
+    /**
+     * Looks up the user matching the given credentials.
+     *
+     * @param email The email address of the user.
+     * @param password The password of the user.
+     * @param callback Receives the signed-in user, or null when the credentials do not match.
+     */
+    default void signIn(String email, String password, Callback<User> callback) {
+        signIn(email, password, ReadPolicy.SERVER, callback);
+    }
+
+    /**
+     * Looks up the user matching the given credentials with the given read policy.
+     * With CACHE_THEN_SERVER only a cached match is delivered early; the server's answer always follows.
+     *
+     * @param email The email address of the user.
+     * @param password The password of the user.
+     * @param policy Where the lookup is served from.
+     * @param callback Receives the signed-in user, or null when the credentials do not match.
+     */
+    void signIn(String email, String password, ReadPolicy policy, Callback<User> callback);
+
+    /**
+     * Registers a new user.
+     *
+     * @param user The profile of the new user; its ID is assigned by the backend.
+     * @param password The password of the new user.
+     * @param callback Receives the registered user with its ID set.
+     */
+    void signUp(User user, String password, Callback<User> callback);
+
+    /**
+     * Loads every registered user.
+     *
+     * @param callback Receives the list of users.
+     */
+    default void getUsers(Callback<List<User>> callback) {
+        getUsers(ReadPolicy.SERVER, callback);
+    }
+
+    /**
+     * Loads every registered user with the given read policy.
+     *
+     * @param policy Where the users are served from.
+     * @param callback Receives the list of users; with CACHE_THEN_SERVER possibly twice.
+     */
+    void getUsers(ReadPolicy policy, Callback<List<User>> callback);
+
+    /**
+     * Loads the users that changed after a point in time, e.g. for a background sync of the user list.
+     * Backends that do not track changes load every user.
+     *
+     * @param since Only users updated later are loaded, or null for every user.
+     * @param callback Receives the changed users.
+     */
+    default void getUsersUpdatedSince(Date since, Callback<List<User>> callback) {
+        getUsers(ReadPolicy.SERVER, callback);
+    }
+
+    /**
+     * Stores or clears the push notification token of a user.
+     *
+     * @param userId The ID of the user.
+     * @param token The new token, or null to delete it.
+     * @param callback Notified once the token has been stored.
+     */
+    void updateToken(String userId, String token, Callback<Void> callback);
+
+    /**
+     * Publishes the public key others use to encrypt their conversations with a user.
+     * Backends that cannot store keys fail, and conversations with the user stay unencrypted.
+     *
+     * @param userId The ID of the user.
+     * @param publicKey The encoded public key.
+     * @param callback Notified once the key has been stored.
+     */
+    default void updatePublicKey(String userId, String publicKey, Callback<Void> callback) {
+        callback.onFailure(new UnsupportedOperationException("This backend cannot store public keys"));
+    }
+
+    /**
+     * Creates a group conversation. The member list is stored once, on the conversation document,
+     * and messages are never copied per member.
+     *
+     * @param group The group to create; its name and members must be set and its ID is assigned by the backend.
+     * @param callback Receives the created group with its ID set.
+     */
+    void createGroup(Group group, Callback<Group> callback);
+
+    /**
+     * Loads the groups a user is a member of.
+     *
+     * @param userId The ID of the user.
+     * @param callback Receives the groups.
+     */
+    void getGroups(String userId, Callback<List<Group>> callback);
+
+    /**
+     * Loads the conversations a user takes part in, most recently active first.
+     *
+     * @param userId The ID of the user.
+     * @param limit The maximum number of conversations.
+     * @param callback Receives the time of the last message of each conversation by conversation ID, in order.
+     */
+    void getRecentConversations(String userId, int limit, Callback<Map<String, Date>> callback);
+
+    /**
+     * Sends a message to its conversation.
+     * The backend assigns its timestamp and the next sequence number of the conversation.
+     * A backend with an outbox may keep a message it cannot send right now, if the callback is a
+     * {@link SendCallback}; it then calls onQueued instead, and sends the message in the background.
+     *
+     * @param message The message to send; sender and text must be set, and either the receiver
+     *                or, for a group message, the conversation ID.
+     * @param callback Notified once the backend has acknowledged the message, or queued it.
+     */
+    void sendMessage(ChatMessage message, Callback<Void> callback);
+
+    /**
+     * Replaces the text of a sent message. Listeners receive the message as MODIFIED.
+     *
+     * @param message The message to edit, as received from a listener; its ID, conversation and sequence number must be set.
+     * @param text The new text.
+     * @param callback Notified once the edit has been stored.
+     */
+    void editMessage(ChatMessage message, String text, Callback<Void> callback);
+
+    /**
+     * Unsends a sent message: its text is erased and it stays as a tombstone, received as MODIFIED,
+     * until it expires and is deleted, which listeners receive as REMOVED.
+     *
+     * @param message The message to unsend, as received from a listener; its ID, conversation and sequence number must be set.
+     * @param callback Notified once the tombstone has been stored.
+     */
+    void unsendMessage(ChatMessage message, Callback<Void> callback);
+
+    /**
+     * Listens to the messages of a conversation.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param listener Receives every change to the conversation's messages.
+     * @return The registration used to stop listening.
+     */
+    Registration listenMessages(String conversationId, MessageListener listener);
+
+    /**
+     * Listens to the messages of a conversation sent after a point in time, i.e. the live tail
+     * after its archive. Archived messages are loaded with {@link #getArchivedMessages} instead.
+     * Backends without an archive only support listening to every message.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param after Only messages with a later timestamp are delivered, or null for every message.
+     * @param listener Receives every change to those messages.
+     * @return The registration used to stop listening.
+     */
+    default Registration listenMessages(String conversationId, Date after, MessageListener listener) {
+        if (after != null) {
+            throw new UnsupportedOperationException("This backend has no archive");
+        }
+        return listenMessages(conversationId, listener);
+    }
+
+    /**
+     * Loads how much of a conversation's history is archived.
+     * Backends without an archive report {@link Archive#NONE}.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param callback Receives the archive of the conversation.
+     */
+    default void getArchive(String conversationId, Callback<Archive> callback) {
+        callback.onSuccess(Archive.NONE);
+    }
+
+    /**
+     * Loads the messages of one archive segment, in one read rather than one per message.
+     * A segment already loaded into the local cache costs no server read at all.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param segment The index of the segment, from 0 for the oldest.
+     * @param callback Receives the messages of the segment in timestamp order.
+     */
+    default void getArchivedMessages(String conversationId, int segment, Callback<List<ChatMessage>> callback) {
+        callback.onSuccess(new ArrayList<ChatMessage>());
+    }
+
+    /**
+     * Loads the messages of a conversation after a sequence number, e.g. to fill a gap after a reconnect.
+     * They come from the server, not a local cache, so a number missing from the result belongs to a
+     * message that was deleted; offline, the call fails.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param afterSeq Only messages with a higher sequence number are loaded.
+     * @param callback Receives the messages in sequence order.
+     */
+    void getMessagesAfter(String conversationId, long afterSeq, Callback<List<ChatMessage>> callback);
+
+    /**
+     * Advances a participant's read cursor: every message up to the given timestamp has been seen.
+     * The cursor lives on the conversation document, so this is a single write however many messages it covers.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param userId The ID of the reader.
+     * @param readUpTo The timestamp of the newest message the reader has seen.
+     * @param callback Notified once the cursor has been stored.
+     */
+    void markRead(String conversationId, String userId, Date readUpTo, Callback<Void> callback);
+
+    /**
+     * Listens to the read cursors of a conversation's participants.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param listener Receives the cursors and every change to them.
+     * @return The registration used to stop listening.
+     */
+    Registration listenReadCursors(String conversationId, ReadCursorListener listener);
+
+    /**
+     * Counts the unread messages of every conversation the user takes part in.
+     * Conversations are first checked against their summary, so only those with
+     * unread messages cost anything beyond the summary read.
+     *
+     * @param userId The ID of the reader.
+     * @param callback Receives the unread counts by conversation ID; conversations without unread messages are missing.
+     */
+    void getUnreadCounts(String userId, Callback<Map<String, Long>> callback);
+
+    /**
+     * Marks a participant as typing in a conversation until the given time.
+     * The state is never cleared explicitly; it is over once the time has passed.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param userId The ID of the typing user.
+     * @param expiresAt When the typing state ends unless renewed.
+     * @param callback Notified once the state has been stored.
+     */
+    void setTyping(String conversationId, String userId, Date expiresAt, Callback<Void> callback);
+
+    /**
+     * Listens to the typing state of a participant in a conversation.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param userId The ID of the participant.
+     * @param listener Receives when the participant's typing state ends.
+     * @return The registration used to stop listening.
+     */
+    Registration listenTyping(String conversationId, String userId, ExpiryListener listener);
+
+    /**
+     * Marks a user as online until the given time.
+     * The state is never cleared explicitly; it is over once the time has passed.
+     *
+     * @param userId The ID of the user.
+     * @param expiresAt When the user counts as offline unless renewed.
+     * @param callback Notified once the state has been stored.
+     */
+    void setPresence(String userId, Date expiresAt, Callback<Void> callback);
+
+    /**
+     * Listens to the presence of a user.
+     *
+     * @param userId The ID of the user.
+     * @param listener Receives when the user's online state ends.
+     * @return The registration used to stop listening.
+     */
+    Registration listenPresence(String userId, ExpiryListener listener);
+
+    /**
+     * Loads the latest messages of a conversation into the local cache, so opening it is fast.
+     * Backends without a local cache have nothing to warm and succeed right away.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param limit The number of latest messages to load.
+     * @param callback Notified once the messages are cached.
+     */
+    default void prefetchMessages(String conversationId, int limit, Callback<Void> callback) {
+        callback.onSuccess(null);
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * The DocumentSizes class estimates the size of stored documents, following Firestore's
+ * storage size rules: strings count their UTF-8 bytes plus one, numbers and timestamps
+ * eight bytes, and every document adds its name plus 32 bytes of overhead.
+ * The estimate stands in for the bytes transferred when a document is read or written.
+ * It runs for every document of every snapshot, so it counts bytes without allocating.
+ */
+package com.example.chatapp.backend;
+
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.utilities.Constants;
+
+import java.util.Collection;
+import java.util.Map;
+
+public final class DocumentSizes {
+
+    private static final int DOCUMENT_OVERHEAD = 32;
+    private static final int NAME_OVERHEAD = 16;
+
+    /**
+     * Size of values without a rule of their own, e.g. timestamps and numbers.
+     */
+    private static final int SCALAR_SIZE = 8;
+
+    private DocumentSizes() {
+    }
+
+    /**
+     * Estimates the size of a document.
+     *
+     * @param path The path of the document, e.g. "Users/abc".
+     * @param fields The fields of the document; may be null for a missing document.
+     * @return The estimated size in bytes.
+     */
+    public static long of(String path, Map<String, ?> fields) {
+        return nameSize(path) + (fields == null ? 0 : mapSize(fields));
+    }
+
+    /**
+     * Estimates the size of a message document.
+     *
+     * @param path The path of the message document.
+     * @param message The message.
+     * @return The estimated size in bytes.
+     */
+    public static long of(String path, ChatMessage message) {
+        return nameSize(path)
+                + field(Constants.KEY_SENDER_ID, message.senderId)
+                + field(Constants.KEY_RECEIVER_ID, message.receiverId)
+                + field(Constants.KEY_MESSAGE, message.message)
+                + stringSize(Constants.KEY_TIMESTAMP) + SCALAR_SIZE
+                + (message.seq == 0 ? 0 : stringSize(Constants.KEY_SEQ) + SCALAR_SIZE)
+                + (message.editedAt == null ? 0 : stringSize(Constants.KEY_EDITED_AT) + SCALAR_SIZE)
+                + (message.deletedAt == null ? 0 : stringSize(Constants.KEY_DELETED_AT) + SCALAR_SIZE);
+    }
+
+    /**
+     * Estimates the size of a user document.
+     *
+     * @param path The path of the user document.
+     * @param user The user.
+     * @return The estimated size in bytes.
+     */
+    public static long of(String path, User user) {
+        return nameSize(path)
+                + field(Constants.KEY_NAME, user.name)
+                + field(Constants.KEY_LAST_NAME, user.lastName)
+                + field(Constants.KEY_EMAIL, user.email)
+                + field(Constants.KEY_IMAGE, user.image)
+                + field(Constants.KEY_FCM_TOKEN, user.token)
+                + field(Constants.KEY_PUBLIC_KEY, user.publicKey);
+    }
+
+    private static long nameSize(String path) {
+        long size = NAME_OVERHEAD + DOCUMENT_OVERHEAD;
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', start)) {
+            size += utf8Length(path, start, slash) + 1;
+            start = slash + 1;
+        }
+        return size + utf8Length(path, start, path.length()) + 1;
+    }
+
+    private static long field(String key, String value) {
+        return value == null ? 0 : stringSize(key) + stringSize(value);
+    }
+
+    private static long mapSize(Map<String, ?> fields) {
+        long size = 0;
+        for (Map.Entry<String, ?> entry : fields.entrySet()) {
+            size += stringSize(entry.getKey()) + valueSize(entry.getValue());
+        }
+        return size;
+    }
+
+    private static long valueSize(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof String) {
+            return stringSize((String) value);
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof Collection) {
+            long size = 0;
+            for (Object element : (Collection<?>) value) {
+                size += valueSize(element);
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, ?> map = (Map<String, ?>) value;
+            return mapSize(map);
+        }
+        return SCALAR_SIZE;
+    }
+
+    private static long stringSize(String value) {
+        return utf8Length(value, 0, value.length()) + 1;
+    }
+
+    /**
+     * Returns the number of bytes a range of a string takes in UTF-8; an unpaired surrogate counts as '?'.
+     */
+    private static int utf8Length(String value, int start, int end) {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
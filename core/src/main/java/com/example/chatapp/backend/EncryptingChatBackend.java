@@ -0,0 +1,248 @@
+/**
+ * The EncryptingChatBackend class encrypts message texts end to end on top of another backend.
+ * Texts of conversations with a key are encrypted before they are sent or edited, and every
+ * encrypted text received is decrypted before it reaches the screen; the delegate only ever
+ * stores ciphertext, including in conversation summaries. Conversations without a key, and
+ * plaintext messages sent before encryption was turned on, pass through unchanged.
+ *
+ * Decrypting a message takes microseconds, so live batches are decrypted in place. Large batches,
+ * such as the first snapshot of a long conversation, are decrypted on the decrypt executor and
+ * delivered back on the callback executor; later batches of the same listener queue behind them,
+ * so changes keep their order. The delegate must deliver on the callback executor's thread.
+ */
+package com.example.chatapp.backend;
+
+import com.example.chatapp.crypto.ConversationKeys;
+import com.example.chatapp.crypto.MessageCipher;
+import com.example.chatapp.metrics.Histogram;
+import com.example.chatapp.metrics.MetricNames;
+import com.example.chatapp.metrics.MetricsRegistry;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.utilities.ConversationIds;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.crypto.SecretKey;
+
+public class EncryptingChatBackend extends ForwardingChatBackend {
+
+    /**
+     * Shown instead of a text that cannot be decrypted, e.g. one encrypted to an earlier key.
+     */
+    public static final String UNREADABLE = "This message could not be decrypted.";
+
+    /**
+     * Batches of at least this many messages are decrypted off the callback thread.
+     */
+    static final int OFF_THREAD_BATCH = 32;
+
+    private static final Histogram ENCRYPT = MetricsRegistry.get().histogram(MetricNames.MESSAGE_ENCRYPT);
+    private static final Histogram DECRYPT = MetricsRegistry.get().histogram(MetricNames.MESSAGE_DECRYPT);
+
+    private final ConversationKeys keys;
+    private final Executor decryptExecutor;
+    private final Executor callbackExecutor;
+
+    /**
+     * Creates a backend encrypting the conversations the given keys have a key for.
+     *
+     * @param delegate The backend storing the ciphertext.
+     * @param keys The keys of the signed-in user's conversations.
+     * @param decryptExecutor Executor large batches are decrypted on; it must run tasks in submission order.
+     * @param callbackExecutor Executor the delegate delivers on, e.g. the main thread.
+     */
+    public EncryptingChatBackend(ChatBackend delegate, ConversationKeys keys,
+                                 Executor decryptExecutor, Executor callbackExecutor) {
+        super(delegate);
+        this.keys = keys;
+        this.decryptExecutor = decryptExecutor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    @Override
+    public void sendMessage(ChatMessage message, Callback<Void> callback) {
+        String conversationId = ConversationIds.of(message);
+        try {
+            SecretKey key = keys.keyFor(conversationId);
+            if (key == null) {
+                delegate.sendMessage(message, callback);
+                return;
+            }
+            ChatMessage encrypted = message.copy(); // The caller keeps its plaintext
+            encrypted.message = encrypt(key, message.message, conversationId, message.senderId);
+            delegate.sendMessage(encrypted, callback);
+        } catch (GeneralSecurityException exception) {
+            callback.onFailure(exception);
+        }
+    }
+
+    @Override
+    public void editMessage(ChatMessage message, String text, Callback<Void> callback) {
+        String conversationId = ConversationIds.of(message);
+        try {
+            SecretKey key = keys.keyFor(conversationId);
+            delegate.editMessage(message, key == null ? text : encrypt(key, text, conversationId, message.senderId),
+                    callback);
+        } catch (GeneralSecurityException exception) {
+            callback.onFailure(exception);
+        }
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, MessageListener listener) {
+        DecryptingListener decrypting = new DecryptingListener(conversationId, listener);
+        Registration registration = delegate.listenMessages(conversationId, decrypting);
+        return decrypting.wrap(registration);
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, Date after, MessageListener listener) {
+        DecryptingListener decrypting = new DecryptingListener(conversationId, listener);
+        Registration registration = delegate.listenMessages(conversationId, after, decrypting);
+        return decrypting.wrap(registration);
+    }
+
+    @Override
+    public void getMessagesAfter(String conversationId, long afterSeq, Callback<List<ChatMessage>> callback) {
+        delegate.getMessagesAfter(conversationId, afterSeq, decrypting(conversationId, callback));
+    }
+
+    @Override
+    public void getArchivedMessages(String conversationId, int segment, Callback<List<ChatMessage>> callback) {
+        delegate.getArchivedMessages(conversationId, segment, decrypting(conversationId, callback));
+    }
+
+    private Callback<List<ChatMessage>> decrypting(String conversationId, Callback<List<ChatMessage>> callback) {
+        return new Callback<List<ChatMessage>>() {
+            @Override
+            public void onSuccess(List<ChatMessage> result) {
+                if (result.size() < OFF_THREAD_BATCH) {
+                    callback.onSuccess(decryptMessages(conversationId, result));
+                    return;
+                }
+                decryptExecutor.execute(() -> {
+                    List<ChatMessage> decrypted = decryptMessages(conversationId, result);
+                    callbackExecutor.execute(() -> callback.onSuccess(decrypted));
+                });
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                callback.onFailure(exception);
+            }
+        };
+    }
+
+    private static String encrypt(SecretKey key, String text, String conversationId, String senderId)
+            throws GeneralSecurityException {
+        long start = System.nanoTime();
+        String encrypted = MessageCipher.encrypt(key, text, conversationId, senderId);
+        ENCRYPT.record(System.nanoTime() - start);
+        return encrypted;
+    }
+
+    /**
+     * Returns the message with its text decrypted, or the message itself if its text is not encrypted.
+     * Messages may be shared with the delegate's cache, so a decrypted message is always a copy.
+     */
+    private ChatMessage decrypt(String conversationId, ChatMessage message) {
+        if (!MessageCipher.isEncrypted(message.message)) {
+            return message;
+        }
+        ChatMessage decrypted = message.copy();
+        long start = System.nanoTime();
+        try {
+            SecretKey key = keys.keyFor(conversationId);
+            decrypted.message = key == null
+                    ? UNREADABLE
+                    : MessageCipher.decrypt(key, message.message, conversationId, message.senderId);
+        } catch (GeneralSecurityException exception) {
+            decrypted.message = UNREADABLE;
+        }
+        DECRYPT.record(System.nanoTime() - start);
+        return decrypted;
+    }
+
+    private List<ChatMessage> decryptMessages(String conversationId, List<ChatMessage> messages) {
+        List<ChatMessage> decrypted = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            decrypted.add(decrypt(conversationId, message));
+        }
+        return decrypted;
+    }
+
+    private List<MessageChange> decryptChanges(String conversationId, List<MessageChange> changes) {
+        List<MessageChange> decrypted = new ArrayList<>(changes.size());
+        for (MessageChange change : changes) {
+            ChatMessage message = decrypt(conversationId, change.message);
+            decrypted.add(message == change.message ? change : new MessageChange(change.type, message));
+        }
+        return decrypted;
+    }
+
+    /**
+     * Decrypts the batches of one listener, in place or on the decrypt executor, in order.
+     */
+    private final class DecryptingListener implements MessageListener {
+
+        private final String conversationId;
+        private final MessageListener listener;
+
+        /**
+         * Number of batches on the decrypt executor; only touched on the callback thread.
+         */
+        private int queued;
+
+        private volatile boolean removed;
+
+        DecryptingListener(String conversationId, MessageListener listener) {
+            this.conversationId = conversationId;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onMessages(List<MessageChange> changes) {
+            if (queued == 0 && changes.size() < OFF_THREAD_BATCH) {
+                listener.onMessages(decryptChanges(conversationId, changes));
+                return;
+            }
+            queued++;
+            decryptExecutor.execute(() -> {
+                List<MessageChange> decrypted = decryptChanges(conversationId, changes);
+                callbackExecutor.execute(() -> {
+                    queued--;
+                    if (!removed) {
+                        listener.onMessages(decrypted);
+                    }
+                });
+            });
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            if (queued == 0) {
+                listener.onError(exception);
+                return;
+            }
+            queued++;
+            // Delivered after the batches before it
+            decryptExecutor.execute(() -> callbackExecutor.execute(() -> {
+                queued--;
+                if (!removed) {
+                    listener.onError(exception);
+                }
+            }));
+        }
+
+        Registration wrap(Registration registration) {
+            return () -> {
+                removed = true;
+                registration.remove();
+            };
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * The ExpiryListener interface receives a state that lasts until a timestamp, such as
+ * a user's presence or typing state. The state is over once the timestamp has passed,
+ * so it expires without anyone writing again.
+ */
+package com.example.chatapp.backend;
+
+import java.util.Date;
+
+public interface ExpiryListener {
+    /**
+     * Called with the current expiry and again whenever it is renewed.
+     *
+     * @param expiresAt When the state ends, or null if it was never set.
+     */
+    void onExpiry(Date expiresAt);
+
+    /**
+     * Called when the listener failed. No further events are delivered afterwards.
+     *
+     * @param exception The cause of the failure.
+     */
+    void onError(Exception exception);
+}
@@ -0,0 +1,29 @@
+/**
+ * The FieldSource interface exposes the fields of a stored document,
+ * so documents can be mapped to models without depending on a particular SDK.
+ */
+package com.example.chatapp.backend;
+
+import java.util.Date;
+
+public interface FieldSource {
+    /**
+     * Returns the ID of the document.
+     */
+    String getId();
+
+    /**
+     * Returns a string field, or null when it is missing.
+     */
+    String getString(String key);
+
+    /**
+     * Returns a timestamp field as a Date, or null when it is missing.
+     */
+    Date getDate(String key);
+
+    /**
+     * Returns an integer field, or null when it is missing.
+     */
+    Long getLong(String key);
+}
@@ -0,0 +1,151 @@
+/**
+ * The ForwardingChatBackend class passes every call on to another backend.
+ * Decorators extend it and override only the calls they change.
+ */
+package com.example.chatapp.backend;
+
+import com.example.chatapp.modules.Archive;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.Group;
+import com.example.chatapp.modules.User;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public abstract class ForwardingChatBackend implements ChatBackend {
+
+    /**
+     * The backend calls are passed on to.
+     */
+    protected final ChatBackend delegate;
+
+    protected ForwardingChatBackend(ChatBackend delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void signIn(String email, String password, ReadPolicy policy, Callback<User> callback) {
+        delegate.signIn(email, password, policy, callback);
+    }
+
+    @Override
+    public void signUp(User user, String password, Callback<User> callback) {
+        delegate.signUp(user, password, callback);
+    }
+
+    @Override
+    public void getUsers(ReadPolicy policy, Callback<List<User>> callback) {
+        delegate.getUsers(policy, callback);
+    }
+
+    @Override
+    public void getUsersUpdatedSince(Date since, Callback<List<User>> callback) {
+        delegate.getUsersUpdatedSince(since, callback);
+    }
+
+    @Override
+    public void updateToken(String userId, String token, Callback<Void> callback) {
+        delegate.updateToken(userId, token, callback);
+    }
+
+    @Override
+    public void updatePublicKey(String userId, String publicKey, Callback<Void> callback) {
+        delegate.updatePublicKey(userId, publicKey, callback);
+    }
+
+    @Override
+    public void createGroup(Group group, Callback<Group> callback) {
+        delegate.createGroup(group, callback);
+    }
+
+    @Override
+    public void getGroups(String userId, Callback<List<Group>> callback) {
+        delegate.getGroups(userId, callback);
+    }
+
+    @Override
+    public void getRecentConversations(String userId, int limit, Callback<Map<String, Date>> callback) {
+        delegate.getRecentConversations(userId, limit, callback);
+    }
+
+    @Override
+    public void sendMessage(ChatMessage message, Callback<Void> callback) {
+        delegate.sendMessage(message, callback);
+    }
+
+    @Override
+    public void editMessage(ChatMessage message, String text, Callback<Void> callback) {
+        delegate.editMessage(message, text, callback);
+    }
+
+    @Override
+    public void unsendMessage(ChatMessage message, Callback<Void> callback) {
+        delegate.unsendMessage(message, callback);
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, MessageListener listener) {
+        return delegate.listenMessages(conversationId, listener);
+    }
+
+    @Override
+    public void getMessagesAfter(String conversationId, long afterSeq, Callback<List<ChatMessage>> callback) {
+        delegate.getMessagesAfter(conversationId, afterSeq, callback);
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, Date after, MessageListener listener) {
+        return delegate.listenMessages(conversationId, after, listener);
+    }
+
+    @Override
+    public void getArchive(String conversationId, Callback<Archive> callback) {
+        delegate.getArchive(conversationId, callback);
+    }
+
+    @Override
+    public void getArchivedMessages(String conversationId, int segment, Callback<List<ChatMessage>> callback) {
+        delegate.getArchivedMessages(conversationId, segment, callback);
+    }
+
+    @Override
+    public void prefetchMessages(String conversationId, int limit, Callback<Void> callback) {
+        delegate.prefetchMessages(conversationId, limit, callback);
+    }
+
+    @Override
+    public void markRead(String conversationId, String userId, Date readUpTo, Callback<Void> callback) {
+        delegate.markRead(conversationId, userId, readUpTo, callback);
+    }
+
+    @Override
+    public Registration listenReadCursors(String conversationId, ReadCursorListener listener) {
+        return delegate.listenReadCursors(conversationId, listener);
+    }
+
+    @Override
+    public void getUnreadCounts(String userId, Callback<Map<String, Long>> callback) {
+        delegate.getUnreadCounts(userId, callback);
+    }
+
+    @Override
+    public void setTyping(String conversationId, String userId, Date expiresAt, Callback<Void> callback) {
+        delegate.setTyping(conversationId, userId, expiresAt, callback);
+    }
+
+    @Override
+    public Registration listenTyping(String conversationId, String userId, ExpiryListener listener) {
+        return delegate.listenTyping(conversationId, userId, listener);
+    }
+
+    @Override
+    public void setPresence(String userId, Date expiresAt, Callback<Void> callback) {
+        delegate.setPresence(userId, expiresAt, callback);
+    }
+
+    @Override
+    public Registration listenPresence(String userId, ExpiryListener listener) {
+        return delegate.listenPresence(userId, listener);
+    }
+}
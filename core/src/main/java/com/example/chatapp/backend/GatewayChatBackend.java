@@ -0,0 +1,87 @@
+/**
+ * The GatewayChatBackend class sends and listens to messages through a self-hosted WebSocket
+ * gateway instead of the delegate backend. The gateway keeps one connection per client,
+ * fans each write out to the subscribers of its conversation in batches, and needs no
+ * per-listener document reads. Everything else (users, groups, summaries, read cursors,
+ * unread counts, typing and presence) is still served by the delegate, so summaries and unread
+ * counts only stay current if the gateway stores messages where the delegate reads them.
+ * The gateway keeps no archive, so conversations are listened to in full and nothing is prefetched.
+ * It is used by the load test against a local gateway over the in-memory backend; the app does not
+ * use it, since the gateway neither persists messages nor authenticates its clients.
+ */
+package com.example.chatapp.backend;
+
+import com.example.chatapp.gateway.GatewayClient;
+import com.example.chatapp.modules.Archive;
+import com.example.chatapp.modules.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class GatewayChatBackend extends ForwardingChatBackend {
+
+    /**
+     * The connection messages go through.
+     */
+    private final GatewayClient gateway;
+
+    /**
+     * Creates a backend routing messages through the gateway.
+     *
+     * @param gateway The client of the gateway.
+     * @param delegate The backend serving everything but messages.
+     */
+    public GatewayChatBackend(GatewayClient gateway, ChatBackend delegate) {
+        super(delegate);
+        this.gateway = gateway;
+    }
+
+    @Override
+    public void sendMessage(ChatMessage message, Callback<Void> callback) {
+        gateway.sendMessage(message, callback);
+    }
+
+    @Override
+    public void editMessage(ChatMessage message, String text, Callback<Void> callback) {
+        gateway.editMessage(message, text, callback);
+    }
+
+    @Override
+    public void unsendMessage(ChatMessage message, Callback<Void> callback) {
+        gateway.unsendMessage(message, callback);
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, MessageListener listener) {
+        return gateway.listenMessages(conversationId, listener);
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, Date after, MessageListener listener) {
+        if (after != null) {
+            throw new UnsupportedOperationException("The gateway has no archive");
+        }
+        return gateway.listenMessages(conversationId, listener);
+    }
+
+    @Override
+    public void getMessagesAfter(String conversationId, long afterSeq, Callback<List<ChatMessage>> callback) {
+        gateway.getMessagesAfter(conversationId, afterSeq, callback);
+    }
+
+    @Override
+    public void getArchive(String conversationId, Callback<Archive> callback) {
+        callback.onSuccess(Archive.NONE);
+    }
+
+    @Override
+    public void getArchivedMessages(String conversationId, int segment, Callback<List<ChatMessage>> callback) {
+        callback.onSuccess(new ArrayList<ChatMessage>());
+    }
+
+    @Override
+    public void prefetchMessages(String conversationId, int limit, Callback<Void> callback) {
+        callback.onSuccess(null); // Nothing is cached locally
+    }
+}
@@ -0,0 +1,842 @@
+/**
+ * The InMemoryChatBackend class is a ChatBackend that keeps everything in memory.
+ * It mirrors the listener semantics of Firestore (an initial batch of ADDED changes,
+ * then one batch per write) and can inject a fixed latency plus random jitter in
+ * front of every callback, so hot paths can be tested and benchmarked on the JVM.
+ * Reads and writes are metered like their Firestore counterparts, so read budgets can be checked.
+ * There is no local cache, so every read policy is served like SERVER.
+ * Read cursors are stored on the conversation, like the lastRead map of the Firestore summary.
+ * Typing and presence states are single timestamps per path, like their Firestore documents.
+ * A group is a conversation with a name and a fixed member list; its messages are stored once.
+ */
+package com.example.chatapp.backend;
+
+import com.example.chatapp.metrics.Usage;
+import com.example.chatapp.metrics.UsageMeter;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.Group;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.ConversationIds;
+import com.example.chatapp.utilities.GroupMembers;
+import com.example.chatapp.utilities.MessageList;
+import com.example.chatapp.utilities.ReadReceipts;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InMemoryChatBackend implements ChatBackend {
+
+    /**
+     * Registered users by ID.
+     */
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+
+    /**
+     * Passwords by user ID.
+     */
+    private final Map<String, String> passwords = new ConcurrentHashMap<>();
+
+    /**
+     * Conversations by ID, created on first use.
+     */
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+
+    /**
+     * Typing and presence expiries by document path.
+     */
+    private final Map<String, ExpiryDocument> expiries = new ConcurrentHashMap<>();
+
+    /**
+     * Source of user and message IDs.
+     */
+    private final AtomicLong ids = new AtomicLong();
+
+    /**
+     * Executor every callback finally runs on, e.g. the main thread or a direct executor.
+     */
+    private final Executor callbackExecutor;
+
+    /**
+     * Fixed latency added in front of every callback, in microseconds.
+     */
+    private final long latencyMicros;
+
+    /**
+     * Upper bound of the random latency added on top of the fixed latency, in microseconds.
+     */
+    private final long jitterMicros;
+
+    /**
+     * Timer used to delay callbacks; only created when latency is injected.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Meter every read and write is attributed to.
+     */
+    private final UsageMeter usageMeter;
+
+    /**
+     * Creates a backend that runs callbacks immediately on the calling thread.
+     */
+    public InMemoryChatBackend() {
+        this(Runnable::run, 0, 0);
+    }
+
+    /**
+     * Creates a backend that delays every callback by the given latency.
+     *
+     * @param callbackExecutor Executor callbacks are run on. Without injected latency it must run tasks
+     *                         in submission order; with latency, listener batches are already serialized.
+     * @param latencyMicros Fixed latency added in front of every callback, in microseconds.
+     * @param jitterMicros Upper bound of the random latency added on top, in microseconds.
+     */
+    public InMemoryChatBackend(Executor callbackExecutor, long latencyMicros, long jitterMicros) {
+        this(callbackExecutor, latencyMicros, jitterMicros, UsageMeter.get());
+    }
+
+    /**
+     * Creates a backend that delays every callback by the given latency and meters into the given meter.
+     *
+     * @param callbackExecutor Executor callbacks are run on.
+     * @param latencyMicros Fixed latency added in front of every callback, in microseconds.
+     * @param jitterMicros Upper bound of the random latency added on top, in microseconds.
+     * @param usageMeter Meter every read and write is attributed to.
+     */
+    public InMemoryChatBackend(Executor callbackExecutor, long latencyMicros, long jitterMicros,
+                               UsageMeter usageMeter) {
+        this.usageMeter = usageMeter;
+        this.callbackExecutor = callbackExecutor;
+        this.latencyMicros = latencyMicros;
+        this.jitterMicros = jitterMicros;
+        if (latencyMicros > 0 || jitterMicros > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "in-memory-backend-latency");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Stops the latency timer. Callbacks that have not been delivered yet are dropped.
+     */
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public void signIn(String email, String password, ReadPolicy policy, Callback<User> callback) {
+        User match = null;
+        for (User user : users.values()) {
+            if (user.email != null && user.email.equals(email) && password.equals(passwords.get(user.id))) {
+                match = user;
+                break;
+            }
+        }
+        User result = match;
+        usageMeter.current().recordQuery(match == null ? 0 : 1, match == null ? 0 : userSize(match), false);
+        deliver(() -> callback.onSuccess(result));
+    }
+
+    @Override
+    public void signUp(User user, String password, Callback<User> callback) {
+        user.id = "u" + ids.incrementAndGet();
+        users.put(user.id, user);
+        passwords.put(user.id, password);
+        usageMeter.current().recordWrite(1, userSize(user));
+        deliver(() -> callback.onSuccess(user));
+    }
+
+    @Override
+    public void getUsers(ReadPolicy policy, Callback<List<User>> callback) {
+        List<User> result = new ArrayList<>(users.values());
+        long bytes = 0;
+        for (User user : result) {
+            bytes += userSize(user);
+        }
+        usageMeter.current().recordQuery(result.size(), bytes, false);
+        deliver(() -> callback.onSuccess(result));
+    }
+
+    @Override
+    public void updateToken(String userId, String token, Callback<Void> callback) {
+        User user = users.get(userId);
+        if (user == null) {
+            deliver(() -> callback.onFailure(new IllegalArgumentException("Unknown user: " + userId)));
+            return;
+        }
+        user.token = token;
+        usageMeter.current().recordWrite(1, DocumentSizes.of(userPath(userId),
+                Collections.singletonMap(Constants.KEY_FCM_TOKEN, token)));
+        deliver(() -> callback.onSuccess(null));
+    }
+
+    @Override
+    public void updatePublicKey(String userId, String publicKey, Callback<Void> callback) {
+        User user = users.get(userId);
+        if (user == null) {
+            deliver(() -> callback.onFailure(new IllegalArgumentException("Unknown user: " + userId)));
+            return;
+        }
+        user.publicKey = publicKey;
+        usageMeter.current().recordWrite(1, DocumentSizes.of(userPath(userId),
+                Collections.singletonMap(Constants.KEY_PUBLIC_KEY, publicKey)));
+        deliver(() -> callback.onSuccess(null));
+    }
+
+    @Override
+    public void createGroup(Group group, Callback<Group> callback) {
+        try {
+            GroupMembers.check(group.members);
+        } catch (IllegalArgumentException exception) {
+            deliver(() -> callback.onFailure(exception));
+            return;
+        }
+        group.id = "g" + ids.incrementAndGet();
+        conversation(group.id).makeGroup(group.name, group.members);
+        usageMeter.current().recordWrite(1, DocumentSizes.of(conversationPath(group.id), groupFields(group)));
+        deliver(() -> callback.onSuccess(group));
+    }
+
+    @Override
+    public void getGroups(String userId, Callback<List<Group>> callback) {
+        List<Group> result = new ArrayList<>();
+        long bytes = 0;
+        for (Conversation conversation : conversations.values()) {
+            synchronized (conversation) {
+                if (conversation.groupName == null || !conversation.participants.contains(userId)) {
+                    continue;
+                }
+                Group group = new Group();
+                group.id = conversation.id;
+                group.name = conversation.groupName;
+                group.members.addAll(conversation.participants);
+                result.add(group);
+                bytes += DocumentSizes.of(conversationPath(group.id), groupFields(group));
+            }
+        }
+        usageMeter.current().recordQuery(result.size(), bytes, false);
+        deliver(() -> callback.onSuccess(result));
+    }
+
+    @Override
+    public void getRecentConversations(String userId, int limit, Callback<Map<String, Date>> callback) {
+        Map<String, Date> lastActivity = new HashMap<>();
+        for (Conversation conversation : conversations.values()) {
+            synchronized (conversation) {
+                if (conversation.participants.contains(userId) && !conversation.messages.isEmpty()) {
+                    lastActivity.put(conversation.id,
+                            conversation.messages.get(conversation.messages.size() - 1).dateObject);
+                }
+            }
+        }
+        List<String> recent = new ArrayList<>(lastActivity.keySet());
+        Collections.sort(recent, (first, second) -> lastActivity.get(second).compareTo(lastActivity.get(first)));
+        Map<String, Date> result = new LinkedHashMap<>();
+        for (String conversationId : recent.subList(0, Math.min(limit, recent.size()))) {
+            result.put(conversationId, lastActivity.get(conversationId));
+        }
+        usageMeter.current().recordQuery(result.size(), 0, false);
+        deliver(() -> callback.onSuccess(result));
+    }
+
+    @Override
+    public void sendMessage(ChatMessage message, Callback<Void> callback) {
+        ChatMessage stored = copy(message);
+        stored.id = "m" + ids.incrementAndGet();
+        stored.dateObject = new Date(); // Server time, whatever the sender's clock says
+        String conversationId = ConversationIds.of(stored);
+        stored.conversationId = conversationId;
+        Map<String, Object> summary = new HashMap<>();
+        if (stored.receiverId != null) {
+            // A group's members are set when it is created
+            summary.put(Constants.KEY_PARTICIPANTS, Arrays.asList(stored.senderId, stored.receiverId));
+        }
+        summary.put(Constants.KEY_LAST_MESSAGE, stored.message);
+        summary.put(Constants.KEY_LAST_SENDER_ID, stored.senderId);
+        summary.put(Constants.KEY_TIMESTAMP, stored.dateObject);
+        summary.put(Constants.KEY_LAST_SEQ, 0L);
+        // As in Firestore, a transaction reads the summary for the last sequence number,
+        // then writes the message and the summary together
+        Usage usage = usageMeter.current();
+        usage.recordRead(1, DocumentSizes.of(conversationPath(conversationId), summary), false);
+        usage.recordWrite(2, DocumentSizes.of(messagePath(conversationId, stored.id), stored)
+                + DocumentSizes.of(conversationPath(conversationId), summary));
+        conversation(conversationId).append(stored);
+        deliver(() -> callback.onSuccess(null));
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, MessageListener listener) {
+        return conversation(conversationId).listen(listener, usageMeter.current());
+    }
+
+    @Override
+    public void editMessage(ChatMessage message, String text, Callback<Void> callback) {
+        modify(message, text, new Date(), null, callback);
+    }
+
+    @Override
+    public void unsendMessage(ChatMessage message, Callback<Void> callback) {
+        modify(message, "", null, new Date(), callback); // Like Firestore, unsending keeps the stored edit date
+    }
+
+    /**
+     * Replaces the text and dates of a stored message, like the transaction of the Firestore backend:
+     * the summary is read, the message written, and the summary too if the message is its last one.
+     * A null edit date keeps the stored one.
+     */
+    private void modify(ChatMessage message, String text, Date editedAt, Date deletedAt, Callback<Void> callback) {
+        String conversationId = ConversationIds.of(message);
+        Conversation conversation = conversation(conversationId);
+        boolean last = conversation.isLast(message.id);
+        ChatMessage before = conversation.modify(message.id, text, editedAt, deletedAt);
+        if (before == null) {
+            deliver(() -> callback.onFailure(new IllegalArgumentException("Unknown message: " + message.id)));
+            return;
+        }
+        Map<String, Object> summary = Collections.singletonMap(Constants.KEY_LAST_MESSAGE, text);
+        Usage usage = usageMeter.current();
+        usage.recordRead(1, DocumentSizes.of(conversationPath(conversationId), summary), false);
+        usage.recordWrite(last ? 2 : 1, DocumentSizes.of(messagePath(conversationId, message.id), before)
+                + (last ? DocumentSizes.of(conversationPath(conversationId), summary) : 0));
+        deliver(() -> callback.onSuccess(null));
+    }
+
+    /**
+     * Deletes the tombstones of messages unsent more than the retention period before a given time,
+     * like the TTL policy of the Firestore backend; listeners receive the deletions as removals.
+     *
+     * @param nowMillis The current time, in milliseconds since the epoch.
+     */
+    public void deleteExpiredTombstones(long nowMillis) {
+        long unsentBefore = nowMillis - MessageList.TOMBSTONE_RETENTION_MILLIS;
+        for (Conversation conversation : conversations.values()) {
+            conversation.deleteTombstones(unsentBefore);
+        }
+    }
+
+    @Override
+    public void getMessagesAfter(String conversationId, long afterSeq, Callback<List<ChatMessage>> callback) {
+        List<ChatMessage> result = conversation(conversationId).messagesAfter(afterSeq);
+        long bytes = 0;
+        for (ChatMessage message : result) {
+            bytes += DocumentSizes.of(messagePath(conversationId, message.id), message);
+        }
+        usageMeter.current().recordQuery(result.size(), bytes, false);
+        deliver(() -> callback.onSuccess(result));
+    }
+
+    @Override
+    public void markRead(String conversationId, String userId, Date readUpTo, Callback<Void> callback) {
+        usageMeter.current().recordWrite(1, DocumentSizes.of(conversationPath(conversationId),
+                Collections.singletonMap(Constants.KEY_LAST_READ, Collections.singletonMap(userId, readUpTo))));
+        conversation(conversationId).markRead(userId, readUpTo);
+        deliver(() -> callback.onSuccess(null));
+    }
+
+    @Override
+    public Registration listenReadCursors(String conversationId, ReadCursorListener listener) {
+        return conversation(conversationId).listenReadCursors(listener, usageMeter.current());
+    }
+
+    @Override
+    public void getUnreadCounts(String userId, Callback<Map<String, Long>> callback) {
+        Usage usage = usageMeter.current();
+        Map<String, Long> counts = new HashMap<>();
+        int summaries = 0;
+        for (Conversation conversation : conversations.values()) {
+            synchronized (conversation) {
+                if (!conversation.participants.contains(userId) || conversation.messages.isEmpty()) {
+                    continue;
+                }
+                summaries++;
+                Date cursor = conversation.lastRead.get(userId);
+                ChatMessage last = conversation.messages.get(conversation.messages.size() - 1);
+                if (!ReadReceipts.hasUnread(last.senderId, last.dateObject, userId, cursor)) {
+                    continue;
+                }
+                // A count aggregation bills one read, whatever it counts
+                usage.recordQuery(0, 0, false);
+                counts.put(conversation.id,
+                        (long) ReadReceipts.countUnread(conversation.messages, userId, cursor));
+            }
+        }
+        usage.recordQuery(summaries, 0, false);
+        deliver(() -> callback.onSuccess(counts));
+    }
+
+    @Override
+    public void setTyping(String conversationId, String userId, Date expiresAt, Callback<Void> callback) {
+        setExpiry(typingPath(conversationId, userId), expiresAt, callback);
+    }
+
+    @Override
+    public Registration listenTyping(String conversationId, String userId, ExpiryListener listener) {
+        return expiry(typingPath(conversationId, userId)).listen(listener, usageMeter.current());
+    }
+
+    @Override
+    public void setPresence(String userId, Date expiresAt, Callback<Void> callback) {
+        setExpiry(presencePath(userId), expiresAt, callback);
+    }
+
+    @Override
+    public Registration listenPresence(String userId, ExpiryListener listener) {
+        return expiry(presencePath(userId)).listen(listener, usageMeter.current());
+    }
+
+    private void setExpiry(String path, Date expiresAt, Callback<Void> callback) {
+        ExpiryDocument document = expiry(path);
+        usageMeter.current().recordWrite(1, document.size(expiresAt));
+        document.set(expiresAt);
+        deliver(() -> callback.onSuccess(null));
+    }
+
+    private ExpiryDocument expiry(String path) {
+        ExpiryDocument document = expiries.get(path);
+        if (document == null) {
+            document = new ExpiryDocument(path);
+            ExpiryDocument existing = expiries.putIfAbsent(path, document);
+            if (existing != null) {
+                document = existing;
+            }
+        }
+        return document;
+    }
+
+    private Conversation conversation(String conversationId) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            conversation = new Conversation(conversationId);
+            Conversation existing = conversations.putIfAbsent(conversationId, conversation);
+            if (existing != null) {
+                conversation = existing;
+            }
+        }
+        return conversation;
+    }
+
+    /**
+     * Runs a callback on the callback executor after the injected latency.
+     */
+    private void deliver(Runnable callback) {
+        deliverAt(System.nanoTime() + sampleLatencyNanos(), callback);
+    }
+
+    /**
+     * Runs a callback on the callback executor once the given System.nanoTime() deadline has passed.
+     * Callbacks with non-decreasing deadlines run in submission order.
+     */
+    private void deliverAt(long deadlineNanos, Runnable callback) {
+        if (scheduler == null) {
+            callbackExecutor.execute(callback);
+        } else {
+            long delay = Math.max(0, deadlineNanos - System.nanoTime());
+            scheduler.schedule(() -> callbackExecutor.execute(callback), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Draws the latency of one callback: the fixed latency plus a uniform jitter.
+     */
+    private long sampleLatencyNanos() {
+        long micros = latencyMicros;
+        if (jitterMicros > 0) {
+            micros += ThreadLocalRandom.current().nextLong(jitterMicros + 1);
+        }
+        return TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    private static Map<String, Object> groupFields(Group group) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(Constants.KEY_GROUP_NAME, group.name);
+        fields.put(Constants.KEY_PARTICIPANTS, group.members);
+        return fields;
+    }
+
+    private static String userPath(String userId) {
+        return Constants.KEY_COLLECTION_USERS + "/" + userId;
+    }
+
+    private static long userSize(User user) {
+        return DocumentSizes.of(userPath(user.id), user);
+    }
+
+    private static String typingPath(String conversationId, String userId) {
+        return conversationPath(conversationId) + "/" + Constants.KEY_COLLECTION_TYPING + "/" + userId;
+    }
+
+    private static String presencePath(String userId) {
+        return Constants.KEY_COLLECTION_PRESENCE + "/" + userId;
+    }
+
+    private static String conversationPath(String conversationId) {
+        return Constants.KEY_COLLECTION_CONVERSATIONS + "/" + conversationId;
+    }
+
+    private static String messagePath(String conversationId, String messageId) {
+        return conversationPath(conversationId) + "/" + Constants.KEY_COLLECTION_MESSAGES + "/" + messageId;
+    }
+
+    /**
+     * Returns an independent copy, so callers never share mutable messages with the store.
+     */
+    private static ChatMessage copy(ChatMessage message) {
+        return message.copy();
+    }
+
+    /**
+     * Messages, read cursors and listeners of one conversation.
+     */
+    private final class Conversation {
+
+        private final String id;
+        private final Set<String> participants = new LinkedHashSet<>();
+        private String groupName;
+        private final List<ChatMessage> messages = new ArrayList<>();
+        private final Map<String, Date> lastRead = new HashMap<>();
+        private long lastSeq;
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+        private final List<CursorListener> cursorListeners = new CopyOnWriteArrayList<>();
+
+        Conversation(String id) {
+            this.id = id;
+        }
+
+        /**
+         * Turns the conversation into a group: names it and adds its members, who stay participants for good.
+         */
+        synchronized void makeGroup(String name, List<String> members) {
+            groupName = name;
+            participants.addAll(members);
+        }
+
+        /**
+         * Appends a message and publishes it while holding the lock,
+         * so every listener observes messages in the same order.
+         */
+        synchronized void append(ChatMessage message) {
+            if (message.receiverId != null) {
+                participants.add(message.senderId);
+                participants.add(message.receiverId);
+            }
+            message.seq = ++lastSeq;
+            messages.add(message);
+            publish(new MessageChange(MessageChange.Type.ADDED, message));
+        }
+
+        /**
+         * Replaces a message with an edited copy and publishes the modification.
+         * Stored messages are never mutated, so queued batches keep the version they were published with.
+         *
+         * @return The stored message before the change, or null if there is no such message.
+         */
+        synchronized ChatMessage modify(String messageId, String text, Date editedAt, Date deletedAt) {
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                ChatMessage current = messages.get(i);
+                if (current.id.equals(messageId)) {
+                    ChatMessage modified = copy(current);
+                    modified.message = text;
+                    modified.editedAt = editedAt != null ? editedAt : current.editedAt;
+                    modified.deletedAt = deletedAt;
+                    messages.set(i, modified);
+                    publish(new MessageChange(MessageChange.Type.MODIFIED, modified));
+                    return current;
+                }
+            }
+            return null;
+        }
+
+        synchronized void deleteTombstones(long unsentBeforeMillis) {
+            Iterator<ChatMessage> iterator = messages.iterator();
+            while (iterator.hasNext()) {
+                ChatMessage message = iterator.next();
+                if (message.deletedAt != null && message.deletedAt.getTime() < unsentBeforeMillis) {
+                    iterator.remove();
+                    publish(new MessageChange(MessageChange.Type.REMOVED, message));
+                }
+            }
+        }
+
+        synchronized boolean isLast(String messageId) {
+            return !messages.isEmpty() && messages.get(messages.size() - 1).id.equals(messageId);
+        }
+
+        private void publish(MessageChange change) {
+            for (Listener listener : listeners) {
+                listener.publish(Collections.singletonList(change));
+            }
+        }
+
+        synchronized Registration listen(MessageListener messageListener, Usage usage) {
+            Listener listener = new Listener(id, messageListener, usage);
+            listeners.add(listener);
+            List<MessageChange> initial = new ArrayList<>(messages.size());
+            for (ChatMessage message : messages) {
+                initial.add(new MessageChange(MessageChange.Type.ADDED, message));
+            }
+            listener.publish(initial);
+            return () -> {
+                listener.removed = true;
+                listeners.remove(listener);
+            };
+        }
+
+        synchronized List<ChatMessage> messagesAfter(long afterSeq) {
+            List<ChatMessage> result = new ArrayList<>();
+            for (ChatMessage message : messages) {
+                if (message.seq > afterSeq) {
+                    result.add(copy(message));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Advances a read cursor; cursors never move backwards.
+         */
+        synchronized void markRead(String userId, Date readUpTo) {
+            Date current = lastRead.get(userId);
+            if (current != null && !readUpTo.after(current)) {
+                return;
+            }
+            lastRead.put(userId, readUpTo);
+            publishCursors();
+        }
+
+        synchronized Registration listenReadCursors(ReadCursorListener readCursorListener, Usage usage) {
+            CursorListener listener = new CursorListener(readCursorListener, usage);
+            cursorListeners.add(listener);
+            listener.publish(new HashMap<>(lastRead), summarySize(lastRead));
+            return () -> {
+                listener.removed = true;
+                cursorListeners.remove(listener);
+            };
+        }
+
+        private void publishCursors() {
+            Map<String, Date> cursors = new HashMap<>(lastRead);
+            long bytes = summarySize(cursors);
+            for (CursorListener listener : cursorListeners) {
+                listener.publish(cursors, bytes);
+            }
+        }
+
+        private long summarySize(Map<String, Date> cursors) {
+            return DocumentSizes.of(conversationPath(id),
+                    Collections.singletonMap(Constants.KEY_LAST_READ, cursors));
+        }
+    }
+
+    /**
+     * A typing or presence document: a single expiry and its listeners.
+     */
+    private final class ExpiryDocument {
+
+        private final String path;
+        private final List<ExpiryRegistration> listeners = new CopyOnWriteArrayList<>();
+        private Date expiresAt;
+
+        ExpiryDocument(String path) {
+            this.path = path;
+        }
+
+        long size(Date value) {
+            return DocumentSizes.of(path, Collections.singletonMap(Constants.KEY_EXPIRES_AT, value));
+        }
+
+        synchronized void set(Date value) {
+            expiresAt = value;
+            for (ExpiryRegistration listener : listeners) {
+                listener.publish(value, size(value));
+            }
+        }
+
+        synchronized Registration listen(ExpiryListener expiryListener, Usage usage) {
+            ExpiryRegistration listener = new ExpiryRegistration(expiryListener, usage);
+            listeners.add(listener);
+            listener.publish(expiresAt, size(expiresAt));
+            return () -> {
+                listener.removed = true;
+                listeners.remove(listener);
+            };
+        }
+    }
+
+    /**
+     * A registered expiry listener. Every snapshot reads the document again.
+     */
+    private final class ExpiryRegistration {
+
+        private final ExpiryListener expiryListener;
+        private final Usage usage;
+        private volatile boolean removed;
+
+        ExpiryRegistration(ExpiryListener expiryListener, Usage usage) {
+            this.expiryListener = expiryListener;
+            this.usage = usage;
+        }
+
+        void publish(Date expiresAt, long bytes) {
+            usage.recordRead(1, bytes, false);
+            deliver(() -> {
+                if (!removed) {
+                    expiryListener.onExpiry(expiresAt);
+                }
+            });
+        }
+    }
+
+    /**
+     * A registered read cursor listener. Every snapshot re-reads the conversation document.
+     */
+    private final class CursorListener {
+
+        private final ReadCursorListener readCursorListener;
+        private final Usage usage;
+        private volatile boolean removed;
+
+        CursorListener(ReadCursorListener readCursorListener, Usage usage) {
+            this.readCursorListener = readCursorListener;
+            this.usage = usage;
+        }
+
+        void publish(Map<String, Date> cursors, long bytes) {
+            usage.recordRead(1, bytes, false);
+            deliver(() -> {
+                if (!removed) {
+                    readCursorListener.onReadCursors(cursors);
+                }
+            });
+        }
+    }
+
+    /**
+     * A registered listener. Its batches wait in a FIFO queue with non-decreasing
+     * deadlines and are drained by a single task, so jitter never reorders the
+     * batches a single listener observes.
+     */
+    private final class Listener {
+
+        private final String conversationId;
+        private final MessageListener messageListener;
+
+        /**
+         * Usage of the screen that registered the listener; every delivered message is a read.
+         */
+        private final Usage usage;
+
+        private boolean delivered;
+        private final Queue<PendingBatch> pending = new ArrayDeque<>();
+        private long lastDeadlineNanos = Long.MIN_VALUE;
+        private boolean draining;
+        private volatile boolean removed;
+
+        Listener(String conversationId, MessageListener messageListener, Usage usage) {
+            this.conversationId = conversationId;
+            this.messageListener = messageListener;
+            this.usage = usage;
+        }
+
+        void publish(List<MessageChange> batch) {
+            if (scheduler == null) {
+                callbackExecutor.execute(() -> dispatch(batch));
+                return;
+            }
+            long deadline;
+            synchronized (this) {
+                deadline = Math.max(System.nanoTime() + sampleLatencyNanos(), lastDeadlineNanos);
+                lastDeadlineNanos = deadline;
+                pending.add(new PendingBatch(deadline, batch));
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            deliverAt(deadline, this::drain);
+        }
+
+        /**
+         * Dispatches every batch whose deadline has passed, then waits for the next one.
+         */
+        private void drain() {
+            long nextDeadline;
+            while (true) {
+                PendingBatch next;
+                synchronized (this) {
+                    next = pending.peek();
+                    if (next == null) {
+                        draining = false;
+                        return;
+                    }
+                    if (next.deadlineNanos > System.nanoTime()) {
+                        nextDeadline = next.deadlineNanos;
+                        break;
+                    }
+                    pending.poll();
+                }
+                dispatch(next.changes);
+            }
+            deliverAt(nextDeadline, this::drain);
+        }
+
+        private void dispatch(List<MessageChange> batch) {
+            if (removed) {
+                return;
+            }
+            List<MessageChange> changes = new ArrayList<>(batch.size());
+            long bytes = 0;
+            for (MessageChange change : batch) {
+                changes.add(new MessageChange(change.type, copy(change.message)));
+                bytes += DocumentSizes.of(messagePath(conversationId, change.message.id), change.message);
+            }
+            // The initial snapshot is a query; later updates bill one read per changed document
+            if (delivered) {
+                usage.recordRead(batch.size(), bytes, false);
+            } else {
+                usage.recordQuery(batch.size(), bytes, false);
+                delivered = true;
+            }
+            messageListener.onMessages(changes);
+        }
+    }
+
+    /**
+     * A batch waiting for its delivery deadline.
+     */
+    private static final class PendingBatch {
+        final long deadlineNanos;
+        final List<MessageChange> changes;
+
+        PendingBatch(long deadlineNanos, List<MessageChange> changes) {
+            this.deadlineNanos = deadlineNanos;
+            this.changes = changes;
+        }
+    }
+}
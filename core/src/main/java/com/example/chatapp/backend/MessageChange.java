@@ -0,0 +1,33 @@
+/**
+ * The MessageChange class describes one change to the messages of a conversation.
+ */
+package com.example.chatapp.backend;
+
+import com.example.chatapp.modules.ChatMessage;
+
+public final class MessageChange {
+
+    /**
+     * Kind of change applied to a message.
+     */
+    public enum Type {
+        ADDED,
+        MODIFIED,
+        REMOVED
+    }
+
+    /**
+     * Kind of change applied to the message.
+     */
+    public final Type type;
+
+    /**
+     * The message after the change.
+     */
+    public final ChatMessage message;
+
+    public MessageChange(Type type, ChatMessage message) {
+        this.type = type;
+        this.message = message;
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * The MessageListener interface receives the changes to the messages of a conversation.
+ */
+package com.example.chatapp.backend;
+
+import java.util.List;
+
+public interface MessageListener {
+    /**
+     * Called with every batch of changes. The first call contains every existing message as ADDED.
+     *
+     * @param changes The changes in the order they were applied.
+     */
+    void onMessages(List<MessageChange> changes);
+
+    /**
+     * Called when the listener failed. No further events are delivered afterwards.
+     *
+     * @param exception The cause of the failure.
+     */
+    void onError(Exception exception);
+}
@@ -0,0 +1,46 @@
+/**
+ * The MessageMapper class turns stored message documents into ChatMessage objects.
+ */
+package com.example.chatapp.backend;
+
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.utilities.Constants;
+
+public final class MessageMapper {
+
+    private MessageMapper() {
+    }
+
+    /**
+     * Maps a message document to a ChatMessage.
+     *
+     * @param document The fields of the message document.
+     * @return The mapped message; its display date is left for the UI to fill in.
+     */
+    public static ChatMessage toChatMessage(FieldSource document) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = document.getId();
+        chatMessage.senderId = document.getString(Constants.KEY_SENDER_ID);
+        chatMessage.receiverId = document.getString(Constants.KEY_RECEIVER_ID);
+        chatMessage.message = document.getString(Constants.KEY_MESSAGE);
+        chatMessage.dateObject = document.getDate(Constants.KEY_TIMESTAMP);
+        Long seq = document.getLong(Constants.KEY_SEQ);
+        chatMessage.seq = seq == null ? 0 : seq;
+        chatMessage.editedAt = document.getDate(Constants.KEY_EDITED_AT);
+        chatMessage.deletedAt = document.getDate(Constants.KEY_DELETED_AT);
+        return chatMessage;
+    }
+
+    /**
+     * Maps a message document of a known conversation to a ChatMessage.
+     *
+     * @param conversationId The ID of the conversation the document belongs to.
+     * @param document The fields of the message document.
+     * @return The mapped message with its conversation ID set.
+     */
+    public static ChatMessage toChatMessage(String conversationId, FieldSource document) {
+        ChatMessage chatMessage = toChatMessage(document);
+        chatMessage.conversationId = conversationId;
+        return chatMessage;
+    }
+}
@@ -0,0 +1,424 @@
+/**
+ * The Outbox class keeps messages that could not be sent, in the order they were written,
+ * until they are sent or given up. Like the SessionStore it holds its contents in memory and
+ * persists every change in the background, as one file that replaces the previous one atomically,
+ * so queued messages survive restarts of the app and of the device. It is loaded once per process,
+ * ideally while the app starts; every method waits for that load.
+ *
+ * Messages are kept as they are to be stored, i.e. encrypted where their conversation is, under the
+ * ID they keep once stored. A message given up for good stays, marked as failed, so its conversation
+ * can show it as not sent until the user sends it again or discards it. Listeners are told about
+ * every change on the callback executor.
+ */
+package com.example.chatapp.backend;
+
+import com.example.chatapp.modules.ChatMessage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class Outbox {
+
+    /**
+     * Name of the file holding the queue.
+     */
+    static final String FILE = "outbox";
+
+    /**
+     * Version of the file format, written first so the format can change later.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Receives changes of the outbox.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the callback executor after messages were queued, sent, given up or discarded.
+         */
+        void onOutboxChanged();
+    }
+
+    private final File directory;
+    private final Executor io;
+    private final Executor callbackExecutor;
+
+    private final AtomicBoolean loadStarted = new AtomicBoolean();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The queued messages, oldest first. Guarded by this.
+     */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Whether a write is scheduled that has not taken its snapshot yet. Guarded by this.
+     */
+    private boolean writeScheduled;
+
+    /**
+     * @param directory The directory the outbox keeps its file in; created when first written.
+     * @param io Runs the load and the writes one at a time, in order; typically a single background thread.
+     * @param callbackExecutor Delivers changes to listeners; typically the main thread.
+     */
+    public Outbox(File directory, Executor io, Executor callbackExecutor) {
+        this.directory = directory;
+        this.io = io;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Starts loading the queue in the background. Only the first call has any effect.
+     */
+    public void load() {
+        if (!loadStarted.compareAndSet(false, true)) {
+            return;
+        }
+        io.execute(() -> {
+            try {
+                List<Entry> stored = read();
+                synchronized (this) {
+                    entries.addAll(stored);
+                }
+            } finally {
+                loaded.countDown();
+            }
+            notifyListeners();
+        });
+    }
+
+    /**
+     * Queues a message behind the ones queued before it.
+     *
+     * @param message The message as it is to be stored, with its ID and conversation ID set.
+     */
+    public void add(ChatMessage message) {
+        awaitLoaded();
+        Entry entry = new Entry(message.copy());
+        entry.message.pending = true;
+        entry.message.failed = false;
+        if (entry.message.dateObject == null) {
+            entry.message.dateObject = new Date();
+        }
+        synchronized (this) {
+            entries.add(entry);
+        }
+        changed();
+    }
+
+    /**
+     * Returns whether a message is waiting to be sent; messages given up do not count.
+     */
+    public boolean hasUnsent() {
+        return next() != null;
+    }
+
+    /**
+     * Returns the oldest message waiting to be sent, or null if there is none.
+     */
+    public ChatMessage next() {
+        awaitLoaded();
+        synchronized (this) {
+            for (Entry entry : entries) {
+                if (!entry.message.failed) {
+                    return entry.message.copy();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the queued messages of a conversation, oldest first, those given up included.
+     *
+     * @param conversationId The ID of the conversation.
+     * @return Copies of the messages, each marked as pending.
+     */
+    public List<ChatMessage> messages(String conversationId) {
+        awaitLoaded();
+        List<ChatMessage> messages = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : entries) {
+                if (conversationId.equals(entry.message.conversationId)) {
+                    messages.add(entry.message.copy());
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Records a failed attempt to send a message.
+     *
+     * @param messageId The ID of the message.
+     * @return The number of failed attempts so far, or 0 if the message is not queued.
+     */
+    public int recordAttempt(String messageId) {
+        awaitLoaded();
+        int attempts;
+        synchronized (this) {
+            Entry entry = find(messageId);
+            if (entry == null) {
+                return 0;
+            }
+            attempts = ++entry.attempts;
+        }
+        changed();
+        return attempts;
+    }
+
+    /**
+     * Gives a message up: it is not sent again unless the user retries it.
+     *
+     * @param messageId The ID of the message.
+     */
+    public void markFailed(String messageId) {
+        awaitLoaded();
+        synchronized (this) {
+            Entry entry = find(messageId);
+            if (entry == null) {
+                return;
+            }
+            entry.message.failed = true;
+        }
+        changed();
+    }
+
+    /**
+     * Queues a message that was given up again, behind every other queued message.
+     *
+     * @param messageId The ID of the message.
+     */
+    public void retry(String messageId) {
+        awaitLoaded();
+        synchronized (this) {
+            Entry entry = find(messageId);
+            if (entry == null) {
+                return;
+            }
+            entries.remove(entry);
+            entry.message.failed = false;
+            entry.message.dateObject = new Date(); // Shown where it now is in the queue
+            entry.attempts = 0;
+            entries.add(entry);
+        }
+        changed();
+    }
+
+    /**
+     * Removes a message, once it was sent or when the user discards it.
+     *
+     * @param messageId The ID of the message.
+     */
+    public void remove(String messageId) {
+        awaitLoaded();
+        synchronized (this) {
+            Entry entry = find(messageId);
+            if (entry == null) {
+                return;
+            }
+            entries.remove(entry);
+        }
+        changed();
+    }
+
+    /**
+     * Starts telling a listener about changes.
+     *
+     * @param listener The listener.
+     * @return The registration used to stop listening.
+     */
+    public Registration listen(Listener listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    private Entry find(String messageId) {
+        for (Entry entry : entries) {
+            if (entry.message.id.equals(messageId)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void awaitLoaded() {
+        load();
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Schedules a write, unless one is scheduled already, and tells the listeners.
+     */
+    private void changed() {
+        boolean scheduled;
+        synchronized (this) {
+            scheduled = writeScheduled;
+            writeScheduled = true;
+        }
+        // One write is enough for any number of changes made before it runs
+        if (!scheduled) {
+            io.execute(this::write);
+        }
+        notifyListeners();
+    }
+
+    private void notifyListeners() {
+        for (Listener listener : listeners) {
+            callbackExecutor.execute(listener::onOutboxChanged);
+        }
+    }
+
+    private void write() {
+        byte[] content;
+        boolean empty;
+        synchronized (this) {
+            writeScheduled = false;
+            empty = entries.isEmpty();
+            content = empty ? null : encode(entries);
+        }
+        try {
+            if (empty) {
+                delete();
+            } else {
+                replace(content);
+            }
+        } catch (IOException e) {
+            // The queue in memory stays right; the next change tries again
+        }
+    }
+
+    private List<Entry> read() {
+        List<Entry> stored = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(directory, FILE))))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return stored;
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                ChatMessage message = new ChatMessage();
+                message.id = readString(in);
+                message.conversationId = readString(in);
+                message.senderId = readString(in);
+                message.receiverId = readString(in);
+                message.message = readString(in);
+                message.dateObject = new Date(in.readLong());
+                message.pending = true;
+                message.failed = in.readBoolean();
+                Entry entry = new Entry(message);
+                entry.attempts = in.readInt();
+                stored.add(entry);
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing queued
+        } catch (IOException e) {
+            // Written atomically, so only a file from a newer format or a broken disk ends up here
+            stored.clear();
+        }
+        return stored;
+    }
+
+    private static byte[] encode(List<Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                ChatMessage message = entry.message;
+                writeString(out, message.id);
+                writeString(out, message.conversationId);
+                writeString(out, message.senderId);
+                writeString(out, message.receiverId);
+                writeString(out, message.message);
+                out.writeLong(message.dateObject.getTime());
+                out.writeBoolean(message.failed);
+                out.writeInt(entry.attempts);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Writing to memory does not fail
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces the file atomically: the content goes to a temporary file, is flushed to the disk,
+     * and is then renamed over the old file.
+     */
+    private void replace(byte[] content) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File temporary = new File(directory, FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            out.write(content);
+            out.getFD().sync();
+        }
+        if (!temporary.renameTo(new File(directory, FILE))) {
+            throw new IOException("Cannot replace " + FILE);
+        }
+    }
+
+    private void delete() throws IOException {
+        File file = new File(directory, FILE);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + FILE);
+        }
+    }
+
+    /**
+     * Writes a string of any length, or null; writeUTF is limited to 64 KB, which a long message may exceed.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A queued message and the number of times sending it failed.
+     */
+    private static final class Entry {
+
+        final ChatMessage message;
+        int attempts;
+
+        Entry(ChatMessage message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * The ReadCursorListener interface receives the read cursors of a conversation's participants.
+ */
+package com.example.chatapp.backend;
+
+import java.util.Date;
+import java.util.Map;
+
+public interface ReadCursorListener {
+    /**
+     * Called with the current read cursors and again whenever one of them advances.
+     *
+     * @param cursors The timestamp of the newest message each participant has seen, by user ID.
+     *                Participants who have never opened the conversation are missing.
+     */
+    void onReadCursors(Map<String, Date> cursors);
+
+    /**
+     * Called when the listener failed. No further events are delivered afterwards.
+     *
+     * @param exception The cause of the failure.
+     */
+    void onError(Exception exception);
+}
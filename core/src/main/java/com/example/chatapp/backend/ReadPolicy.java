@@ -0,0 +1,18 @@
+/**
+ * The ReadPolicy enum chooses where a one-off read is served from.
+ */
+package com.example.chatapp.backend;
+
+public enum ReadPolicy {
+    /**
+     * Waits for the server, falling back to the local cache only when offline.
+     */
+    SERVER,
+
+    /**
+     * Delivers cached data first, if there is any, then refreshes from the server
+     * and delivers again. The callback may therefore succeed twice; a server
+     * failure after a cached result is not reported, so offline screens keep their data.
+     */
+    CACHE_THEN_SERVER
+}
@@ -0,0 +1,11 @@
+/**
+ * The Registration interface represents an active listener on a ChatBackend.
+ */
+package com.example.chatapp.backend;
+
+public interface Registration {
+    /**
+     * Stops the listener. No further events are delivered after this returns.
+     */
+    void remove();
+}
@@ -0,0 +1,16 @@
+/**
+ * The SendCallback interface receives the outcome of sending a message, including the one a plain
+ * Callback cannot tell apart from success: the message could not reach the backend and waits in
+ * its outbox, to be sent in the background. Backends without an outbox never call onQueued.
+ */
+package com.example.chatapp.backend;
+
+public interface SendCallback extends Callback<Void> {
+    /**
+     * Called instead of onSuccess or onFailure when the message was queued rather than sent.
+     * Whether it is sent later is told by the outbox, not by this callback.
+     *
+     * @param messageId The ID the message is queued under, which it keeps once it is stored.
+     */
+    void onQueued(String messageId);
+}
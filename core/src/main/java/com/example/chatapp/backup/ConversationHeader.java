@@ -0,0 +1,25 @@
+/**
+ * The ConversationHeader class is the record that opens a conversation in a history file.
+ * Every message record after it, up to the next header, belongs to that conversation.
+ */
+package com.example.chatapp.backup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ConversationHeader {
+    /**
+     * The ID of the conversation.
+     */
+    public String id;
+
+    /**
+     * IDs of the users taking part in the conversation.
+     */
+    public List<String> participants = new ArrayList<>();
+
+    /**
+     * The name of the group, or null for a one-to-one conversation.
+     */
+    public String groupName;
+}
@@ -0,0 +1,38 @@
+/**
+ * Holds the record layout of history files: gzip-compressed NDJSON, one record per line.
+ * A conversation record opens each conversation and is followed by its message records.
+ * Message fields reuse the Firestore field names; dates are epoch milliseconds.
+ */
+package com.example.chatapp.backup;
+
+final class HistoryFormat {
+
+    /**
+     * Key of the record type.
+     */
+    static final String KEY_TYPE = "type";
+
+    /**
+     * Record type opening a conversation.
+     */
+    static final String TYPE_CONVERSATION = "conversation";
+
+    /**
+     * Record type of a message.
+     */
+    static final String TYPE_MESSAGE = "message";
+
+    /**
+     * Key of a record's document ID.
+     */
+    static final String KEY_ID = "id";
+
+    /**
+     * Size of the buffers between the records and the file, in bytes.
+     * Together with the record being written or read, it bounds the memory a transfer needs.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private HistoryFormat() {
+    }
+}
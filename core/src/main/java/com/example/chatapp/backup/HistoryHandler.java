@@ -0,0 +1,25 @@
+/**
+ * The HistoryHandler interface receives the records of a history file in file order,
+ * one at a time, so a reader never holds more than a single record.
+ */
+package com.example.chatapp.backup;
+
+import com.example.chatapp.modules.ChatMessage;
+
+public interface HistoryHandler {
+    /**
+     * Called when a conversation starts.
+     *
+     * @param header The conversation's header.
+     * @throws Exception If the handler fails; reading stops.
+     */
+    void onConversation(ConversationHeader header) throws Exception;
+
+    /**
+     * Called for every message of the current conversation, in the order they were exported.
+     *
+     * @param message The message, with its conversation ID set.
+     * @throws Exception If the handler fails; reading stops.
+     */
+    void onMessage(ChatMessage message) throws Exception;
+}
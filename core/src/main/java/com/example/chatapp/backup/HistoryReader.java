@@ -0,0 +1,107 @@
+/**
+ * The HistoryReader class streams the records of a history file to a handler, one line at a time,
+ * so reading a history of any length takes the same memory.
+ */
+package com.example.chatapp.backup;
+
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.utilities.Constants;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+public final class HistoryReader implements Closeable {
+
+    private final BufferedReader reader;
+
+    /**
+     * Opens a history file on the given stream, which is closed with the reader.
+     *
+     * @param in The stream the compressed history is read from.
+     * @throws IOException If the stream is not gzip-compressed.
+     */
+    public HistoryReader(InputStream in) throws IOException {
+        reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(in, HistoryFormat.BUFFER_SIZE), StandardCharsets.UTF_8),
+                HistoryFormat.BUFFER_SIZE);
+    }
+
+    /**
+     * Reads every remaining record and hands it to the handler.
+     *
+     * @param handler Receives the records in file order.
+     * @throws IOException If the file is malformed, e.g. a message comes before any conversation.
+     * @throws Exception If the handler fails.
+     */
+    public void read(HistoryHandler handler) throws Exception {
+        String conversationId = null;
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty()) {
+                continue;
+            }
+            Map<String, Object> fields = JsonLines.parse(line);
+            Object type = fields.get(HistoryFormat.KEY_TYPE);
+            if (HistoryFormat.TYPE_CONVERSATION.equals(type)) {
+                ConversationHeader header = toHeader(fields);
+                conversationId = header.id;
+                handler.onConversation(header);
+            } else if (HistoryFormat.TYPE_MESSAGE.equals(type)) {
+                if (conversationId == null) {
+                    throw new IOException("Line " + lineNumber + ": message before any conversation");
+                }
+                handler.onMessage(toMessage(conversationId, fields));
+            } else {
+                throw new IOException("Line " + lineNumber + ": unknown record type " + type);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private static ConversationHeader toHeader(Map<String, Object> fields) {
+        ConversationHeader header = new ConversationHeader();
+        header.id = (String) fields.get(HistoryFormat.KEY_ID);
+        Object participants = fields.get(Constants.KEY_PARTICIPANTS);
+        if (participants instanceof List) {
+            for (Object participant : (List<?>) participants) {
+                header.participants.add((String) participant);
+            }
+        }
+        header.groupName = (String) fields.get(Constants.KEY_GROUP_NAME);
+        return header;
+    }
+
+    private static ChatMessage toMessage(String conversationId, Map<String, Object> fields) {
+        ChatMessage message = new ChatMessage();
+        message.conversationId = conversationId;
+        message.id = (String) fields.get(HistoryFormat.KEY_ID);
+        message.senderId = (String) fields.get(Constants.KEY_SENDER_ID);
+        message.receiverId = (String) fields.get(Constants.KEY_RECEIVER_ID);
+        message.message = (String) fields.get(Constants.KEY_MESSAGE);
+        message.dateObject = date(fields, Constants.KEY_TIMESTAMP);
+        Long seq = (Long) fields.get(Constants.KEY_SEQ);
+        message.seq = seq == null ? 0 : seq;
+        message.editedAt = date(fields, Constants.KEY_EDITED_AT);
+        message.deletedAt = date(fields, Constants.KEY_DELETED_AT);
+        return message;
+    }
+
+    private static Date date(Map<String, Object> fields, String key) {
+        Long millis = (Long) fields.get(key);
+        return millis == null ? null : new Date(millis);
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * The HistoryWriter class streams conversations into a history file.
+ * Records go through a fixed-size buffer into the gzip stream, so writing a history of
+ * any length takes the same memory; callers hand over one page of messages at a time.
+ */
+package com.example.chatapp.backup;
+
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.utilities.Constants;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+public final class HistoryWriter implements Closeable {
+
+    private final Writer writer;
+
+    /**
+     * Reused for every record, so writing allocates no buffer per line.
+     */
+    private final StringBuilder line = new StringBuilder(256);
+
+    private long conversations;
+    private long messages;
+
+    /**
+     * Starts a history file on the given stream, which is closed with the writer.
+     *
+     * @param out The stream the compressed history is written to.
+     * @throws IOException If the gzip header cannot be written.
+     */
+    public HistoryWriter(OutputStream out) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(out, HistoryFormat.BUFFER_SIZE), StandardCharsets.UTF_8),
+                HistoryFormat.BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a conversation; the messages written next belong to it.
+     *
+     * @param header The conversation's header.
+     * @throws IOException If writing fails.
+     */
+    public void writeConversation(ConversationHeader header) throws IOException {
+        writeLine(new JsonLines.Builder(line)
+                .string(HistoryFormat.KEY_TYPE, HistoryFormat.TYPE_CONVERSATION)
+                .string(HistoryFormat.KEY_ID, header.id)
+                .strings(Constants.KEY_PARTICIPANTS, header.participants)
+                .string(Constants.KEY_GROUP_NAME, header.groupName)
+                .end());
+        conversations++;
+    }
+
+    /**
+     * Writes a message of the current conversation.
+     *
+     * @param message The message.
+     * @throws IOException If writing fails.
+     */
+    public void writeMessage(ChatMessage message) throws IOException {
+        JsonLines.Builder builder = new JsonLines.Builder(line)
+                .string(HistoryFormat.KEY_TYPE, HistoryFormat.TYPE_MESSAGE)
+                .string(HistoryFormat.KEY_ID, message.id)
+                .string(Constants.KEY_SENDER_ID, message.senderId)
+                .string(Constants.KEY_RECEIVER_ID, message.receiverId)
+                .string(Constants.KEY_MESSAGE, message.message);
+        date(builder, Constants.KEY_TIMESTAMP, message.dateObject);
+        if (message.seq != 0) {
+            builder.number(Constants.KEY_SEQ, message.seq);
+        }
+        date(builder, Constants.KEY_EDITED_AT, message.editedAt);
+        date(builder, Constants.KEY_DELETED_AT, message.deletedAt);
+        writeLine(builder.end());
+        messages++;
+    }
+
+    /**
+     * Returns the number of conversations written so far.
+     */
+    public long getConversationCount() {
+        return conversations;
+    }
+
+    /**
+     * Returns the number of messages written so far.
+     */
+    public long getMessageCount() {
+        return messages;
+    }
+
+    /**
+     * Finishes the gzip stream and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private static void date(JsonLines.Builder builder, String key, Date date) {
+        if (date != null) {
+            builder.number(key, date.getTime());
+        }
+    }
+
+    private void writeLine(CharSequence record) throws IOException {
+        writer.append(record).append('\n');
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * The JsonLines class writes and parses the flat JSON objects of a history file: one object
+ * per line whose values are strings, whole numbers, null or arrays of strings. That is all the
+ * chat schema needs, so the format is kept free of a JSON library dependency.
+ */
+package com.example.chatapp.backup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class JsonLines {
+
+    private JsonLines() {
+    }
+
+    /**
+     * Builds one line, appending fields to a reused buffer.
+     */
+    static final class Builder {
+        private final StringBuilder line;
+        private boolean first = true;
+
+        Builder(StringBuilder line) {
+            this.line = line;
+            line.setLength(0);
+            line.append('{');
+        }
+
+        Builder string(String key, String value) {
+            if (value != null) {
+                key(key);
+                quote(line, value);
+            }
+            return this;
+        }
+
+        Builder number(String key, long value) {
+            key(key);
+            line.append(value);
+            return this;
+        }
+
+        Builder strings(String key, List<String> values) {
+            key(key);
+            line.append('[');
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                quote(line, values.get(i));
+            }
+            line.append(']');
+            return this;
+        }
+
+        StringBuilder end() {
+            return line.append('}');
+        }
+
+        private void key(String key) {
+            if (!first) {
+                line.append(',');
+            }
+            first = false;
+            quote(line, key);
+            line.append(':');
+        }
+    }
+
+    private static void quote(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': line.append("\\\""); break;
+                case '\\': line.append("\\\\"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                case '\t': line.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Parses one line into its fields. Strings map to String, numbers to Long and arrays to List of String.
+     *
+     * @param line The line, holding one flat JSON object.
+     * @return The fields; null values are left out.
+     * @throws IOException If the line is not a flat JSON object.
+     */
+    static Map<String, Object> parse(String line) throws IOException {
+        Parser parser = new Parser(line);
+        Map<String, Object> fields = new HashMap<>();
+        parser.expect('{');
+        if (!parser.consume('}')) {
+            do {
+                String key = parser.string();
+                parser.expect(':');
+                Object value = parser.value();
+                if (value != null) {
+                    fields.put(key, value);
+                }
+            } while (parser.consume(','));
+            parser.expect('}');
+        }
+        parser.end();
+        return fields;
+    }
+
+    private static final class Parser {
+        private final String line;
+        private int position;
+
+        Parser(String line) {
+            this.line = line;
+        }
+
+        Object value() throws IOException {
+            skipSpaces();
+            if (position >= line.length()) {
+                throw error("value expected");
+            }
+            char c = line.charAt(position);
+            if (c == '"') {
+                return string();
+            }
+            if (c == '[') {
+                position++;
+                List<String> values = new ArrayList<>();
+                if (!consume(']')) {
+                    do {
+                        values.add(string());
+                    } while (consume(','));
+                    expect(']');
+                }
+                return values;
+            }
+            if (line.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            int start = position;
+            if (c == '-') {
+                position++;
+            }
+            while (position < line.length() && Character.isDigit(line.charAt(position))) {
+                position++;
+            }
+            try {
+                return Long.parseLong(line.substring(start, position));
+            } catch (NumberFormatException exception) {
+                throw error("number expected");
+            }
+        }
+
+        String string() throws IOException {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < line.length()) {
+                char c = line.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= line.length()) {
+                    break;
+                }
+                char escaped = line.charAt(position++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (position + 4 > line.length()) {
+                            throw error("bad escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(line.substring(position, position + 4), 16));
+                        } catch (NumberFormatException exception) {
+                            throw error("bad escape");
+                        }
+                        position += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        void expect(char c) throws IOException {
+            if (!consume(c)) {
+                throw error("'" + c + "' expected");
+            }
+        }
+
+        boolean consume(char c) {
+            skipSpaces();
+            if (position < line.length() && line.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void end() throws IOException {
+            skipSpaces();
+            if (position != line.length()) {
+                throw error("end of line expected");
+            }
+        }
+
+        private void skipSpaces() {
+            while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IOException error(String message) {
+            return new IOException(message + " at column " + position + ": " + line);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * The ConversationKeys class holds the message key of every end-to-end encrypted conversation.
+ * A one-to-one conversation is encrypted once the peer's public key is known: both sides run
+ * X25519 with their own private key and the other's public key, and derive the same AES key
+ * from the shared secret with HKDF-SHA256, salted with the conversation ID.
+ * Key agreement costs far more than encrypting a message, so derived keys are cached,
+ * least recently used first out.
+ */
+package com.example.chatapp.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+public final class ConversationKeys {
+
+    /**
+     * Number of derived keys kept; more than any user has conversations open at once.
+     */
+    static final int MAX_CACHED = 64;
+
+    /**
+     * Binds derived keys to this use, so the shared secret cannot be reused for anything else.
+     */
+    private static final byte[] INFO = "chatapp message key v1".getBytes(StandardCharsets.UTF_8);
+
+    private final PrivateKey privateKey;
+
+    /**
+     * Encoded public key of the peer by conversation ID.
+     */
+    private final Map<String, String> peerKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Derived keys by conversation ID, in access order; guarded by itself.
+     */
+    private final Map<String, SecretKey> cache = new LinkedHashMap<String, SecretKey>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SecretKey> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    /**
+     * Creates the keys of a user.
+     *
+     * @param privateKey The user's own X25519 private key.
+     */
+    public ConversationKeys(PrivateKey privateKey) {
+        this.privateKey = privateKey;
+    }
+
+    /**
+     * Sets the public key of the other participant of a conversation, which turns its encryption on.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param peerPublicKey The peer's encoded public key, or null if the peer has none.
+     */
+    public void setPeer(String conversationId, String peerPublicKey) {
+        String previous = peerPublicKey == null
+                ? peerKeys.remove(conversationId)
+                : peerKeys.put(conversationId, peerPublicKey);
+        if (previous != null && !previous.equals(peerPublicKey)) {
+            synchronized (cache) {
+                cache.remove(conversationId); // The peer has a new key
+            }
+        }
+    }
+
+    /**
+     * Returns whether messages of a conversation are encrypted.
+     */
+    public boolean isEncrypted(String conversationId) {
+        return peerKeys.containsKey(conversationId);
+    }
+
+    /**
+     * Returns the message key of a conversation, deriving it on first use.
+     *
+     * @param conversationId The ID of the conversation.
+     * @return The key, or null if the conversation is not encrypted.
+     * @throws GeneralSecurityException If the peer's public key is malformed.
+     */
+    public SecretKey keyFor(String conversationId) throws GeneralSecurityException {
+        String peerKey = peerKeys.get(conversationId);
+        if (peerKey == null) {
+            return null;
+        }
+        synchronized (cache) {
+            SecretKey key = cache.get(conversationId);
+            if (key != null) {
+                return key;
+            }
+        }
+        // Derived outside the lock; two threads deriving the same key at once both get equal keys
+        SecretKey key = derive(privateKey, peerKey, conversationId);
+        synchronized (cache) {
+            cache.put(conversationId, key);
+        }
+        return key;
+    }
+
+    /**
+     * Runs X25519 and derives a 256-bit AES key with HKDF-SHA256 (RFC 5869).
+     */
+    static SecretKey derive(PrivateKey privateKey, String peerPublicKey, String conversationId)
+            throws GeneralSecurityException {
+        KeyAgreement agreement = IdentityKeys.agreement();
+        agreement.init(privateKey);
+        agreement.doPhase(IdentityKeys.decodePublic(peerPublicKey), true);
+        byte[] sharedSecret = agreement.generateSecret();
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(conversationId.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] pseudoRandomKey = mac.doFinal(sharedSecret);
+        mac.init(new SecretKeySpec(pseudoRandomKey, "HmacSHA256"));
+        mac.update(INFO);
+        mac.update((byte) 1);
+        byte[] keyBytes = mac.doFinal(); // One block of output is exactly 32 bytes
+        Arrays.fill(sharedSecret, (byte) 0);
+        Arrays.fill(pseudoRandomKey, (byte) 0);
+        return new SecretKeySpec(keyBytes, "AES");
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * The IdentityKeys class creates and encodes the X25519 key pair a user encrypts conversations with.
+ * The public key is published on the user document; the private key never leaves the device.
+ * Keys are encoded as Base64 of their standard encodings (X.509 for public, PKCS#8 for private keys).
+ * X25519 needs Java 11 or Android 13; elsewhere isSupported is false and conversations stay unencrypted.
+ */
+package com.example.chatapp.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+
+import javax.crypto.KeyAgreement;
+
+public final class IdentityKeys {
+
+    /**
+     * Names providers use for X25519, the specific one first.
+     */
+    private static final String[] ALGORITHMS = {"X25519", "XDH"};
+
+    private IdentityKeys() {
+    }
+
+    /**
+     * Returns whether this platform can agree on keys with X25519.
+     */
+    public static boolean isSupported() {
+        try {
+            agreement();
+            generator();
+            return true;
+        } catch (NoSuchAlgorithmException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a new key pair.
+     *
+     * @return The key pair.
+     * @throws GeneralSecurityException If X25519 is not supported.
+     */
+    public static KeyPair generate() throws GeneralSecurityException {
+        return generator().generateKeyPair();
+    }
+
+    public static String encodePublic(PublicKey publicKey) {
+        return Base64.getEncoder().encodeToString(publicKey.getEncoded());
+    }
+
+    public static String encodePrivate(PrivateKey privateKey) {
+        return Base64.getEncoder().encodeToString(privateKey.getEncoded());
+    }
+
+    /**
+     * Decodes a public key as published by {@link #encodePublic}.
+     *
+     * @throws GeneralSecurityException If the key is malformed.
+     */
+    public static PublicKey decodePublic(String encoded) throws GeneralSecurityException {
+        return keyFactory().generatePublic(new X509EncodedKeySpec(decode(encoded)));
+    }
+
+    /**
+     * Decodes a private key as stored by {@link #encodePrivate}.
+     *
+     * @throws GeneralSecurityException If the key is malformed.
+     */
+    public static PrivateKey decodePrivate(String encoded) throws GeneralSecurityException {
+        return keyFactory().generatePrivate(new PKCS8EncodedKeySpec(decode(encoded)));
+    }
+
+    static KeyAgreement agreement() throws NoSuchAlgorithmException {
+        for (String algorithm : ALGORITHMS) {
+            try {
+                return KeyAgreement.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException exception) {
+                // Try the next name
+            }
+        }
+        throw new NoSuchAlgorithmException("X25519 key agreement is not supported");
+    }
+
+    private static KeyPairGenerator generator() throws NoSuchAlgorithmException {
+        for (String algorithm : ALGORITHMS) {
+            try {
+                return KeyPairGenerator.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException exception) {
+                // Try the next name
+            }
+        }
+        throw new NoSuchAlgorithmException("X25519 keys are not supported");
+    }
+
+    private static KeyFactory keyFactory() throws NoSuchAlgorithmException {
+        for (String algorithm : ALGORITHMS) {
+            try {
+                return KeyFactory.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException exception) {
+                // Try the next name
+            }
+        }
+        throw new NoSuchAlgorithmException("X25519 keys are not supported");
+    }
+
+    private static byte[] decode(String encoded) throws GeneralSecurityException {
+        try {
+            return Base64.getDecoder().decode(encoded);
+        } catch (IllegalArgumentException exception) {
+            throw new GeneralSecurityException("Malformed key", exception);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * The MessageCipher class encrypts message texts with AES-256-GCM.
+ * An encrypted text is the prefix followed by Base64 of a random 96-bit nonce and the ciphertext
+ * with its tag, so it is still a string for every store and transport, and plaintext messages
+ * remain readable next to it. The conversation and sender are authenticated as associated data,
+ * so a ciphertext cannot be passed off as another sender's or moved to another conversation.
+ * Looking up a Cipher is slow compared to encrypting a short text, so each thread reuses one.
+ */
+package com.example.chatapp.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+public final class MessageCipher {
+
+    /**
+     * Marks an encrypted text and its format version.
+     */
+    public static final String PREFIX = "e2e1:";
+
+    private static final int NONCE_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * One cipher per thread; a Cipher is not thread-safe but can be initialized again for every message.
+     */
+    private static final ThreadLocal<Cipher> CIPHERS = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException exception) {
+                throw new IllegalStateException("AES-GCM is not available", exception);
+            }
+        }
+    };
+
+    private MessageCipher() {
+    }
+
+    /**
+     * Returns whether a text was produced by {@link #encrypt}.
+     */
+    public static boolean isEncrypted(String text) {
+        return text != null && text.startsWith(PREFIX);
+    }
+
+    /**
+     * Encrypts a message text.
+     *
+     * @param key The key of the conversation.
+     * @param plaintext The text.
+     * @param conversationId The ID of the conversation, authenticated with the text.
+     * @param senderId The ID of the sender, authenticated with the text.
+     * @return The encrypted text.
+     * @throws GeneralSecurityException If the key is unusable.
+     */
+    public static String encrypt(SecretKey key, String plaintext, String conversationId, String senderId)
+            throws GeneralSecurityException {
+        byte[] input = plaintext.getBytes(StandardCharsets.UTF_8);
+        byte[] nonce = new byte[NONCE_BYTES];
+        RANDOM.nextBytes(nonce);
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+        cipher.updateAAD(associatedData(conversationId, senderId));
+        byte[] output = new byte[NONCE_BYTES + cipher.getOutputSize(input.length)];
+        System.arraycopy(nonce, 0, output, 0, NONCE_BYTES);
+        cipher.doFinal(input, 0, input.length, output, NONCE_BYTES);
+        return PREFIX + Base64.getEncoder().encodeToString(output);
+    }
+
+    /**
+     * Decrypts a text produced by {@link #encrypt}.
+     *
+     * @param key The key of the conversation.
+     * @param text The encrypted text.
+     * @param conversationId The ID of the conversation it was encrypted for.
+     * @param senderId The ID of the sender it was encrypted by.
+     * @return The plaintext.
+     * @throws GeneralSecurityException If the text is malformed, was tampered with, or belongs elsewhere.
+     */
+    public static String decrypt(SecretKey key, String text, String conversationId, String senderId)
+            throws GeneralSecurityException {
+        byte[] input;
+        try {
+            input = Base64.getDecoder().decode(text.substring(PREFIX.length()));
+        } catch (IllegalArgumentException exception) {
+            throw new GeneralSecurityException("Malformed encrypted message", exception);
+        }
+        if (input.length < NONCE_BYTES + TAG_BITS / 8) {
+            throw new GeneralSecurityException("Truncated encrypted message");
+        }
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, input, 0, NONCE_BYTES));
+        cipher.updateAAD(associatedData(conversationId, senderId));
+        byte[] plaintext = cipher.doFinal(input, NONCE_BYTES, input.length - NONCE_BYTES);
+        return new String(plaintext, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] associatedData(String conversationId, String senderId) {
+        // IDs never contain a line break, so the pair is unambiguous
+        return (conversationId + '\n' + senderId).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,382 @@
+/**
+ * The GatewayClient class speaks the gateway protocol over any WebSocket transport.
+ * Requests are matched with their responses by ID, and subscriptions are remembered so they
+ * can be sent again after a reconnect, without the listener seeing old messages twice.
+ * The transport reports an open connection to onOpened, once it accepts frames, delivers incoming
+ * frames to onFrame and reports a lost connection to onClosed. Requests made while it is connecting
+ * wait for it, and requests still unanswered when a connection attempt fails or is lost fail with it.
+ * A request that gets no response within the request timeout fails too, whatever the connection does.
+ */
+package com.example.chatapp.gateway;
+
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.MessageChange;
+import com.example.chatapp.backend.MessageListener;
+import com.example.chatapp.backend.Registration;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.utilities.ConversationIds;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class GatewayClient {
+
+    /**
+     * How long a request may wait for its response by default, the wait for a connection included.
+     */
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * Timer shared by the clients that are not given one, created on first use.
+     */
+    private static ScheduledExecutorService sharedTimer;
+
+    /**
+     * The connection to the gateway, e.g. an OkHttp or java.net.http WebSocket.
+     */
+    public interface Transport {
+        /**
+         * Queues one frame as a binary message.
+         *
+         * @param frame The encoded frame.
+         * @return False if the connection is not open and the frame was dropped.
+         */
+        boolean send(byte[] frame);
+    }
+
+    /**
+     * The connection frames are sent over.
+     */
+    private final Transport transport;
+
+    /**
+     * Executor every callback and listener runs on, e.g. the main thread.
+     */
+    private final Executor callbackExecutor;
+
+    /**
+     * Source of request and subscription IDs.
+     */
+    private final AtomicLong ids = new AtomicLong();
+
+    /**
+     * Fails requests that got no response in time.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * How long a request may wait for its response.
+     */
+    private final long requestTimeoutMillis;
+
+    /**
+     * Requests waiting for their response, by request ID.
+     */
+    private final Map<Long, Request> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Requests that could not be sent yet, in order, with their request ID.
+     */
+    private final Queue<Map.Entry<Long, byte[]>> unsent = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Held while a request is sent or queued, and while onOpened sends the queued ones,
+     * so no request is queued after the queue was drained for an open connection.
+     */
+    private final Object sendLock = new Object();
+
+    /**
+     * Active subscriptions by subscription ID.
+     */
+    private final Map<Long, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a client sending over the given transport.
+     *
+     * @param transport The connection to the gateway.
+     * @param callbackExecutor Executor callbacks and listeners run on; it must run tasks in submission order.
+     */
+    public GatewayClient(Transport transport, Executor callbackExecutor) {
+        this(transport, callbackExecutor, sharedTimer(), DEFAULT_REQUEST_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a client sending over the given transport, with its own request timeout.
+     *
+     * @param transport The connection to the gateway.
+     * @param callbackExecutor Executor callbacks and listeners run on; it must run tasks in submission order.
+     * @param timer Fails requests that got no response in time.
+     * @param requestTimeoutMillis How long a request may wait for its response.
+     */
+    public GatewayClient(Transport transport, Executor callbackExecutor, ScheduledExecutorService timer,
+                         long requestTimeoutMillis) {
+        this.transport = transport;
+        this.callbackExecutor = callbackExecutor;
+        this.timer = timer;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    private static synchronized ScheduledExecutorService sharedTimer() {
+        if (sharedTimer == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "gateway-timeouts");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true); // Most requests are answered long before they time out
+            sharedTimer = executor;
+        }
+        return sharedTimer;
+    }
+
+    /**
+     * Sends a message; the gateway assigns its ID, timestamp and sequence number.
+     */
+    public void sendMessage(ChatMessage message, Callback<Void> callback) {
+        long requestId = ids.incrementAndGet();
+        request(requestId, GatewayFrame.send(requestId, message), callback);
+    }
+
+    /**
+     * Replaces the text of a sent message.
+     */
+    public void editMessage(ChatMessage message, String text, Callback<Void> callback) {
+        long requestId = ids.incrementAndGet();
+        request(requestId, GatewayFrame.edit(requestId, ConversationIds.of(message), message.id, text), callback);
+    }
+
+    /**
+     * Unsends a sent message.
+     */
+    public void unsendMessage(ChatMessage message, Callback<Void> callback) {
+        long requestId = ids.incrementAndGet();
+        request(requestId, GatewayFrame.unsend(requestId, ConversationIds.of(message), message.id), callback);
+    }
+
+    /**
+     * Loads the messages of a conversation after a sequence number.
+     */
+    public void getMessagesAfter(String conversationId, long afterSeq, Callback<List<ChatMessage>> callback) {
+        long requestId = ids.incrementAndGet();
+        request(requestId, GatewayFrame.fetchAfter(requestId, conversationId, afterSeq), callback);
+    }
+
+    /**
+     * Subscribes to the messages of a conversation. If the connection is not open, the subscription
+     * is sent once it is; the first batch then holds every message, as after any subscribe.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param listener Receives the changes, batched by the gateway.
+     * @return The registration used to unsubscribe.
+     */
+    public Registration listenMessages(String conversationId, MessageListener listener) {
+        long subscriptionId = ids.incrementAndGet();
+        subscriptions.put(subscriptionId, new Subscription(conversationId, listener));
+        transport.send(GatewayFrame.subscribe(subscriptionId, conversationId).encode());
+        return () -> {
+            if (subscriptions.remove(subscriptionId) != null) {
+                transport.send(GatewayFrame.unsubscribe(subscriptionId).encode());
+            }
+        };
+    }
+
+    /**
+     * Sends every active subscription again, then the requests made while connecting;
+     * called by the transport once it has (re)connected.
+     */
+    public void onOpened() {
+        for (Map.Entry<Long, Subscription> entry : subscriptions.entrySet()) {
+            transport.send(GatewayFrame.subscribe(entry.getKey(), entry.getValue().conversationId).encode());
+        }
+        synchronized (sendLock) {
+            Map.Entry<Long, byte[]> request;
+            while ((request = unsent.poll()) != null) {
+                if (pending.containsKey(request.getKey()) && !transport.send(request.getValue())) {
+                    unsent.add(request); // Lost again already; it fails with onClosed
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles one binary message received from the gateway.
+     *
+     * @param payload The payload of the message.
+     */
+    @SuppressWarnings("unchecked")
+    public void onFrame(byte[] payload) {
+        GatewayFrame frame;
+        try {
+            frame = GatewayFrame.decode(payload);
+        } catch (IOException exception) {
+            return; // A corrupt frame cannot be matched with anything
+        }
+        if (frame.type == GatewayFrame.CHANGES) {
+            Subscription subscription = subscriptions.get(frame.id);
+            if (subscription != null) {
+                callbackExecutor.execute(() -> {
+                    if (subscriptions.containsKey(frame.id)) { // Not removed in the meantime
+                        subscription.listener.onMessages(subscription.resume(frame.changes));
+                    }
+                });
+            }
+            return;
+        }
+        if (frame.type == GatewayFrame.ERROR) {
+            Subscription failed = subscriptions.remove(frame.id);
+            if (failed != null) {
+                callbackExecutor.execute(() -> failed.listener.onError(new IOException(frame.text)));
+                return;
+            }
+        }
+        Request request = pending.remove(frame.id);
+        if (request == null) {
+            return; // Answered after it timed out
+        }
+        request.cancelTimeout();
+        Callback<Object> callback = (Callback<Object>) request.callback;
+        switch (frame.type) {
+            case GatewayFrame.ACK:
+                callbackExecutor.execute(() -> callback.onSuccess(null));
+                break;
+            case GatewayFrame.MESSAGES:
+                callbackExecutor.execute(() -> callback.onSuccess(frame.messages));
+                break;
+            default:
+                callbackExecutor.execute(() -> callback.onFailure(new IOException(frame.text)));
+                break;
+        }
+    }
+
+    /**
+     * Fails every request waiting for a response; called by the transport when a connection attempt
+     * fails or the connection is lost. Subscriptions stay registered and are sent again by onOpened.
+     *
+     * @param cause Why the connection was lost.
+     */
+    public void onClosed(Exception cause) {
+        synchronized (sendLock) {
+            unsent.clear();
+        }
+        List<Long> requestIds = new ArrayList<>(pending.keySet());
+        for (Long requestId : requestIds) {
+            fail(requestId, cause);
+        }
+    }
+
+    /**
+     * Fails every subscription for good, e.g. when the client is shut down.
+     *
+     * @param cause Why the subscriptions ended.
+     */
+    public void close(Exception cause) {
+        onClosed(cause);
+        List<Subscription> ended = new ArrayList<>(subscriptions.values());
+        subscriptions.clear();
+        for (Subscription subscription : ended) {
+            callbackExecutor.execute(() -> subscription.listener.onError(cause));
+        }
+    }
+
+    private void request(long requestId, GatewayFrame frame, Callback<?> callback) {
+        Request request = new Request(callback);
+        pending.put(requestId, request);
+        request.timeout = timer.schedule(
+                () -> fail(requestId, new TimeoutException("No response from the gateway")),
+                requestTimeoutMillis, TimeUnit.MILLISECONDS);
+        byte[] encoded = frame.encode();
+        synchronized (sendLock) {
+            // Not open yet means onOpened has not drained the queue yet, since the lock is held
+            if (!transport.send(encoded)) {
+                unsent.add(new AbstractMap.SimpleImmutableEntry<>(requestId, encoded));
+            }
+        }
+    }
+
+    /**
+     * Fails a request, unless it was answered or failed already.
+     */
+    private void fail(long requestId, Exception cause) {
+        Request request = pending.remove(requestId);
+        if (request != null) {
+            request.cancelTimeout();
+            callbackExecutor.execute(() -> request.callback.onFailure(cause));
+        }
+    }
+
+    /**
+     * A request waiting for its response: who to tell, and the timer that fails it if none comes.
+     */
+    private static final class Request {
+        final Callback<?> callback;
+
+        /**
+         * Set right after the request is registered, so a response may arrive before it is.
+         */
+        volatile ScheduledFuture<?> timeout;
+
+        Request(Callback<?> callback) {
+            this.callback = callback;
+        }
+
+        void cancelTimeout() {
+            ScheduledFuture<?> scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * An active subscription: the conversation, who receives its changes, and how far it has got.
+     */
+    private static final class Subscription {
+        final String conversationId;
+        final MessageListener listener;
+
+        /**
+         * Highest sequence number delivered so far; only touched on the callback executor.
+         */
+        long lastSeq;
+
+        Subscription(String conversationId, MessageListener listener) {
+            this.conversationId = conversationId;
+            this.listener = listener;
+        }
+
+        /**
+         * After a resubscribe the first batch holds every message again as ADDED. Sequence numbers
+         * only grow, so an ADDED message at or below the last one delivered has been seen before;
+         * it is passed on as MODIFIED, which also brings in edits made while disconnected.
+         */
+        List<MessageChange> resume(List<MessageChange> changes) {
+            List<MessageChange> resumed = changes;
+            for (int i = 0; i < changes.size(); i++) {
+                MessageChange change = changes.get(i);
+                long seq = change.message.seq;
+                if (change.type == MessageChange.Type.ADDED && seq > 0 && seq <= lastSeq) {
+                    if (resumed == changes) {
+                        resumed = new ArrayList<>(changes);
+                    }
+                    resumed.set(i, new MessageChange(MessageChange.Type.MODIFIED, change.message));
+                }
+                lastSeq = Math.max(lastSeq, seq);
+            }
+            return resumed;
+        }
+    }
+}
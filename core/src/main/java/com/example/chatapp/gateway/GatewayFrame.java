@@ -0,0 +1,336 @@
+/**
+ * The GatewayFrame class is one frame of the gateway protocol, carried in a binary WebSocket message.
+ * A frame starts with its type and an ID: the request ID of a request and of its response,
+ * or the subscription ID of SUBSCRIBE, UNSUBSCRIBE and CHANGES. The rest depends on the type.
+ * Strings are length-prefixed UTF-8 and dates are epoch milliseconds, with -1 for null.
+ */
+package com.example.chatapp.gateway;
+
+import com.example.chatapp.backend.MessageChange;
+import com.example.chatapp.modules.ChatMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public final class GatewayFrame {
+
+    // Client to server
+    public static final byte SUBSCRIBE = 1;
+    public static final byte UNSUBSCRIBE = 2;
+    public static final byte SEND = 3;
+    public static final byte EDIT = 4;
+    public static final byte UNSEND = 5;
+    public static final byte FETCH_AFTER = 6;
+
+    // Server to client
+    public static final byte ACK = 20;
+    public static final byte ERROR = 21;
+    public static final byte MESSAGES = 22;
+    public static final byte CHANGES = 23;
+
+    /**
+     * Type of the frame, one of the constants above.
+     */
+    public byte type;
+
+    /**
+     * Request ID, or subscription ID for subscription frames.
+     */
+    public long id;
+
+    /**
+     * Conversation of SUBSCRIBE, EDIT, UNSEND and FETCH_AFTER.
+     */
+    public String conversationId;
+
+    /**
+     * Message of EDIT and UNSEND.
+     */
+    public String messageId;
+
+    /**
+     * New text of EDIT, or the description of an ERROR.
+     */
+    public String text;
+
+    /**
+     * Sequence number after which FETCH_AFTER loads messages.
+     */
+    public long afterSeq;
+
+    /**
+     * Message to SEND.
+     */
+    public ChatMessage message;
+
+    /**
+     * Messages answering FETCH_AFTER.
+     */
+    public List<ChatMessage> messages;
+
+    /**
+     * Changes delivered to a subscription, in order.
+     */
+    public List<MessageChange> changes;
+
+    public static GatewayFrame subscribe(long subscriptionId, String conversationId) {
+        GatewayFrame frame = of(SUBSCRIBE, subscriptionId);
+        frame.conversationId = conversationId;
+        return frame;
+    }
+
+    public static GatewayFrame unsubscribe(long subscriptionId) {
+        return of(UNSUBSCRIBE, subscriptionId);
+    }
+
+    public static GatewayFrame send(long requestId, ChatMessage message) {
+        GatewayFrame frame = of(SEND, requestId);
+        frame.message = message;
+        return frame;
+    }
+
+    public static GatewayFrame edit(long requestId, String conversationId, String messageId, String text) {
+        GatewayFrame frame = of(EDIT, requestId);
+        frame.conversationId = conversationId;
+        frame.messageId = messageId;
+        frame.text = text;
+        return frame;
+    }
+
+    public static GatewayFrame unsend(long requestId, String conversationId, String messageId) {
+        GatewayFrame frame = of(UNSEND, requestId);
+        frame.conversationId = conversationId;
+        frame.messageId = messageId;
+        return frame;
+    }
+
+    public static GatewayFrame fetchAfter(long requestId, String conversationId, long afterSeq) {
+        GatewayFrame frame = of(FETCH_AFTER, requestId);
+        frame.conversationId = conversationId;
+        frame.afterSeq = afterSeq;
+        return frame;
+    }
+
+    public static GatewayFrame ack(long requestId) {
+        return of(ACK, requestId);
+    }
+
+    public static GatewayFrame error(long requestId, String text) {
+        GatewayFrame frame = of(ERROR, requestId);
+        frame.text = text;
+        return frame;
+    }
+
+    public static GatewayFrame messages(long requestId, List<ChatMessage> messages) {
+        GatewayFrame frame = of(MESSAGES, requestId);
+        frame.messages = messages;
+        return frame;
+    }
+
+    public static GatewayFrame changes(long subscriptionId, List<MessageChange> changes) {
+        GatewayFrame frame = of(CHANGES, subscriptionId);
+        frame.changes = changes;
+        return frame;
+    }
+
+    private static GatewayFrame of(byte type, long id) {
+        GatewayFrame frame = new GatewayFrame();
+        frame.type = type;
+        frame.id = id;
+        return frame;
+    }
+
+    /**
+     * Encodes the frame into the payload of one binary WebSocket message.
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(type);
+            out.writeLong(id);
+            switch (type) {
+                case SUBSCRIBE:
+                    writeString(out, conversationId);
+                    break;
+                case SEND:
+                    writeMessage(out, message);
+                    break;
+                case EDIT:
+                    writeString(out, conversationId);
+                    writeString(out, messageId);
+                    writeString(out, text);
+                    break;
+                case UNSEND:
+                    writeString(out, conversationId);
+                    writeString(out, messageId);
+                    break;
+                case FETCH_AFTER:
+                    writeString(out, conversationId);
+                    out.writeLong(afterSeq);
+                    break;
+                case ERROR:
+                    writeString(out, text);
+                    break;
+                case MESSAGES:
+                    out.writeInt(messages.size());
+                    for (ChatMessage chatMessage : messages) {
+                        writeMessage(out, chatMessage);
+                    }
+                    break;
+                case CHANGES:
+                    out.writeInt(changes.size());
+                    for (MessageChange change : changes) {
+                        out.writeByte(change.type.ordinal());
+                        writeMessage(out, change.message);
+                    }
+                    break;
+                default:
+                    // UNSUBSCRIBE and ACK carry nothing but their ID
+                    break;
+            }
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception); // A byte array stream does not fail
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes the payload of one binary WebSocket message.
+     *
+     * @param payload The payload.
+     * @return The frame.
+     * @throws IOException If the payload is truncated or of an unknown type.
+     */
+    public static GatewayFrame decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        GatewayFrame frame = of(in.readByte(), in.readLong());
+        switch (frame.type) {
+            case SUBSCRIBE:
+                frame.conversationId = readString(in);
+                break;
+            case SEND:
+                frame.message = readMessage(in);
+                break;
+            case EDIT:
+                frame.conversationId = readString(in);
+                frame.messageId = readString(in);
+                frame.text = readString(in);
+                break;
+            case UNSEND:
+                frame.conversationId = readString(in);
+                frame.messageId = readString(in);
+                break;
+            case FETCH_AFTER:
+                frame.conversationId = readString(in);
+                frame.afterSeq = in.readLong();
+                break;
+            case ERROR:
+                frame.text = readString(in);
+                break;
+            case MESSAGES: {
+                int count = checkCount(in);
+                frame.messages = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    frame.messages.add(readMessage(in));
+                }
+                break;
+            }
+            case CHANGES: {
+                int count = checkCount(in);
+                MessageChange.Type[] types = MessageChange.Type.values();
+                frame.changes = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int ordinal = in.readByte();
+                    if (ordinal < 0 || ordinal >= types.length) {
+                        throw new IOException("Unknown change type " + ordinal);
+                    }
+                    frame.changes.add(new MessageChange(types[ordinal], readMessage(in)));
+                }
+                break;
+            }
+            case UNSUBSCRIBE:
+            case ACK:
+                break;
+            default:
+                throw new IOException("Unknown frame type " + frame.type);
+        }
+        return frame;
+    }
+
+    /**
+     * Reads a message count, rejecting one the rest of the payload could not possibly hold.
+     */
+    private static int checkCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available()) {
+            throw new IOException("Bad message count " + count);
+        }
+        return count;
+    }
+
+    private static void writeMessage(DataOutputStream out, ChatMessage message) throws IOException {
+        writeString(out, message.id);
+        writeString(out, message.conversationId);
+        writeString(out, message.senderId);
+        writeString(out, message.receiverId);
+        writeString(out, message.message);
+        out.writeLong(message.seq);
+        writeDate(out, message.dateObject);
+        writeDate(out, message.editedAt);
+        writeDate(out, message.deletedAt);
+    }
+
+    private static ChatMessage readMessage(DataInputStream in) throws IOException {
+        ChatMessage message = new ChatMessage();
+        message.id = readString(in);
+        message.conversationId = readString(in);
+        message.senderId = readString(in);
+        message.receiverId = readString(in);
+        message.message = readString(in);
+        message.seq = in.readLong();
+        message.dateObject = readDate(in);
+        message.editedAt = readDate(in);
+        message.deletedAt = readDate(in);
+        return message;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Truncated frame");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDate(DataOutputStream out, Date date) throws IOException {
+        out.writeLong(date == null ? -1 : date.getTime());
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        long millis = in.readLong();
+        return millis < 0 ? null : new Date(millis);
+    }
+}
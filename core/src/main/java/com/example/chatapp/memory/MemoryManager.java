@@ -0,0 +1,141 @@
+/**
+ * The MemoryManager class is where every cache and pool of the app registers, so memory
+ * pressure reaches all of them from one place. Each component names the pressure from which
+ * it starts giving memory back: what is cheap to rebuild goes first, what would cost a
+ * network round trip or a visible reload only when the process is at risk of being killed.
+ * On every pressure signal the eligible components are trimmed in that order, and the memory
+ * they released is counted, so field metrics show whether trimming keeps the app alive.
+ */
+package com.example.chatapp.memory;
+
+import com.example.chatapp.metrics.Counter;
+import com.example.chatapp.metrics.MetricNames;
+import com.example.chatapp.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public final class MemoryManager {
+
+    private static final MemoryManager DEFAULT = new MemoryManager();
+
+    private final Counter trims = MetricsRegistry.get().counter(MetricNames.MEMORY_TRIMS);
+    private final Counter releasedBytes = MetricsRegistry.get().counter(MetricNames.MEMORY_RELEASED_BYTES);
+
+    /**
+     * Registered components in registration order; registering may happen on any thread.
+     */
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+    /**
+     * Returns the process-wide manager.
+     */
+    public static MemoryManager get() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers a component to be trimmed under memory pressure.
+     *
+     * @param name The name the component is reported under.
+     * @param trimFrom The lowest pressure at which the component is trimmed.
+     * @param component The component.
+     */
+    public void register(String name, MemoryPressure trimFrom, Trimmable component) {
+        entries.add(new Entry(name, trimFrom, component));
+    }
+
+    /**
+     * Unregisters a component, e.g. one owned by a screen that is being destroyed.
+     *
+     * @param component The component as registered.
+     */
+    public void unregister(Trimmable component) {
+        for (Entry entry : entries) {
+            if (entry.component == component) {
+                entries.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Trims every component registered for the given pressure or a lower one, earliest to go first.
+     *
+     * @param pressure The current memory pressure.
+     * @return The number of bytes released, as estimated by the components.
+     */
+    public long onPressure(MemoryPressure pressure) {
+        long released = 0;
+        for (Entry entry : inTrimOrder()) {
+            if (entry.trimFrom.compareTo(pressure) > 0) {
+                break;
+            }
+            long before = entry.component.retainedBytes();
+            entry.component.trim(pressure);
+            released += Math.max(0, before - entry.component.retainedBytes());
+        }
+        trims.increment();
+        releasedBytes.add(released);
+        return released;
+    }
+
+    /**
+     * Returns the memory held by each component, in bytes, earliest to be trimmed first.
+     * Components registered under the same name are added up.
+     */
+    public Map<String, Long> retained() {
+        Map<String, Long> retained = new LinkedHashMap<>();
+        for (Entry entry : inTrimOrder()) {
+            Long sum = retained.get(entry.name);
+            retained.put(entry.name, (sum == null ? 0 : sum) + entry.component.retainedBytes());
+        }
+        return retained;
+    }
+
+    /**
+     * Writes the memory held by each component as a JSON object of byte counts.
+     *
+     * @param out Where to write the JSON.
+     * @throws IOException If writing fails.
+     */
+    public void writeJson(Appendable out) throws IOException {
+        out.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : retained().entrySet()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            // Component names are plain identifiers, chosen in code
+            out.append('"').append(entry.getKey()).append("\":").append(Long.toString(entry.getValue()));
+        }
+        out.append('}');
+    }
+
+    /**
+     * Returns the registered components sorted by the pressure they are trimmed from.
+     * The sort is stable, so components of the same pressure keep their registration order.
+     */
+    private List<Entry> inTrimOrder() {
+        List<Entry> sorted = new ArrayList<>(entries);
+        Collections.sort(sorted, (a, b) -> a.trimFrom.compareTo(b.trimFrom));
+        return sorted;
+    }
+
+    private static final class Entry {
+        final String name;
+        final MemoryPressure trimFrom;
+        final Trimmable component;
+
+        Entry(String name, MemoryPressure trimFrom, Trimmable component) {
+            this.name = name;
+            this.trimFrom = trimFrom;
+            this.component = component;
+        }
+    }
+}
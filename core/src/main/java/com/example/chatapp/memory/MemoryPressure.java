@@ -0,0 +1,27 @@
+/**
+ * The MemoryPressure enum orders how badly the system needs memory back, mildest first.
+ * The app maps the platform's trim levels onto it; components give back more as it rises.
+ */
+package com.example.chatapp.memory;
+
+public enum MemoryPressure {
+    /**
+     * The UI is no longer visible; memory that only speeds up drawing can go.
+     */
+    HIDDEN,
+
+    /**
+     * Memory is getting scarce, or the app has just entered the background.
+     */
+    MODERATE,
+
+    /**
+     * Memory is low; a background app holding on to caches is among the next to be killed.
+     */
+    LOW,
+
+    /**
+     * The process is about to be killed unless it releases everything it can.
+     */
+    CRITICAL
+}
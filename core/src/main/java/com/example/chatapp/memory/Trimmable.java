@@ -0,0 +1,18 @@
+/**
+ * The Trimmable interface is implemented by caches and pools that can give memory back on demand.
+ */
+package com.example.chatapp.memory;
+
+public interface Trimmable {
+    /**
+     * Returns an estimate of the memory the component currently holds, in bytes.
+     */
+    long retainedBytes();
+
+    /**
+     * Releases memory; the higher the pressure, the more. Called on the main thread.
+     *
+     * @param pressure The current memory pressure.
+     */
+    void trim(MemoryPressure pressure);
+}
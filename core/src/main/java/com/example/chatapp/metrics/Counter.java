@@ -0,0 +1,42 @@
+/**
+ * The Counter class is a lock-free, monotonically increasing event count.
+ * It is backed by a LongAdder, so contended increments from many threads stay cheap.
+ */
+package com.example.chatapp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * Adds the given amount to the counter.
+     *
+     * @param amount The amount to add.
+     */
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    /**
+     * Returns the current count.
+     */
+    public long get() {
+        return value.sum();
+    }
+
+    /**
+     * Sets the counter back to zero.
+     */
+    public void reset() {
+        value.reset();
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * The MetricNames class holds the names of the metrics recorded by the app.
+ * Histograms record durations in nanoseconds.
+ */
+package com.example.chatapp.metrics;
+
+public final class MetricNames {
+
+    /**
+     * Time from tapping send to the server acknowledging the write.
+     */
+    public static final String SEND_TO_ACK = "chat.send_to_ack";
+
+    /**
+     * Time from a reply being typed into a notification to the server acknowledging the write.
+     */
+    public static final String NOTIFICATION_REPLY_TO_ACK = "notification.reply_to_ack";
+
+    /**
+     * Time from a message snapshot arriving to the adapter being notified.
+     */
+    public static final String SNAPSHOT_TO_NOTIFY = "chat.snapshot_to_notify";
+
+    /**
+     * Time from a message snapshot arriving to the next frame being drawn.
+     */
+    public static final String SNAPSHOT_TO_DRAW = "chat.snapshot_to_draw";
+
+    /**
+     * Time to bind one row of the chat list.
+     */
+    public static final String CHAT_ROW_BIND = "chat.row_bind";
+
+    /**
+     * Time to bind one row of the user list.
+     */
+    public static final String USER_ROW_BIND = "users.row_bind";
+
+    /**
+     * Prefix of the per-screen open times, from creation to the first frame; followed by the screen name.
+     */
+    public static final String SCREEN_OPEN_PREFIX = "screen.open.";
+
+    /**
+     * Time to encrypt the text of one message.
+     */
+    public static final String MESSAGE_ENCRYPT = "crypto.encrypt";
+
+    /**
+     * Time to decrypt the text of one message.
+     */
+    public static final String MESSAGE_DECRYPT = "crypto.decrypt";
+
+    /**
+     * Number of messages sent successfully.
+     */
+    public static final String MESSAGES_SENT = "chat.messages_sent";
+
+    /**
+     * Number of messages queued in the outbox instead of being sent right away.
+     */
+    public static final String MESSAGES_QUEUED = "chat.messages_queued";
+
+    /**
+     * Number of messages that failed to send.
+     */
+    public static final String SEND_FAILURES = "chat.send_failures";
+
+    /**
+     * Number of messages received through snapshots.
+     */
+    public static final String MESSAGES_RECEIVED = "chat.messages_received";
+
+    /**
+     * Prefix of the database usage counters; followed by the screen name, or "session".
+     */
+    public static final String USAGE_PREFIX = "usage.";
+
+    /**
+     * Number of typing signals, i.e. edits of the message input.
+     */
+    public static final String TYPING_SIGNALS = "typing.signals";
+
+    /**
+     * Number of typing state writes; at most one per throttle floor, however fast the user types.
+     */
+    public static final String TYPING_WRITES = "typing.writes";
+
+    /**
+     * Number of presence signals, i.e. screens started and heartbeats.
+     */
+    public static final String PRESENCE_SIGNALS = "presence.signals";
+
+    /**
+     * Number of presence writes; at most one per heartbeat floor.
+     */
+    public static final String PRESENCE_WRITES = "presence.writes";
+
+    /**
+     * Number of memory pressure signals the app received.
+     */
+    public static final String MEMORY_TRIMS = "memory.trims";
+
+    /**
+     * Bytes released by trimming caches under memory pressure, as estimated by the caches.
+     */
+    public static final String MEMORY_RELEASED_BYTES = "memory.released_bytes";
+
+    /**
+     * Prefix of the StrictMode violation counters of debug builds; followed by the kind of violation.
+     */
+    public static final String STRICT_MODE_PREFIX = "strictmode.";
+
+    /**
+     * Time to load the session from disk, in nanoseconds.
+     */
+    public static final String SESSION_LOAD = "session.load";
+
+    /**
+     * Number of session writes to disk; a burst of changes is written once.
+     */
+    public static final String SESSION_WRITES = "session.writes";
+
+    private MetricNames() {
+    }
+}
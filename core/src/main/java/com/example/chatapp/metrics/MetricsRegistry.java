@@ -0,0 +1,158 @@
+/**
+ * The MetricsRegistry class holds the app's named counters and histograms.
+ * Metrics are created on first use and live for the whole process; looking one up
+ * is a single concurrent map read, and recording into it never locks or allocates.
+ */
+package com.example.chatapp.metrics;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public final class MetricsRegistry {
+
+    /**
+     * Percentiles reported for every histogram.
+     */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the process-wide registry.
+     */
+    public static MetricsRegistry get() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the counter with the given name, creating it on first use.
+     *
+     * @param name The name of the counter, e.g. one of MetricNames.
+     */
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it on first use.
+     *
+     * @param name The name of the histogram, e.g. one of MetricNames.
+     */
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Clears every counter and histogram.
+     */
+    public void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Writes every metric as a JSON object, sorted by name. Histogram values are in nanoseconds.
+     *
+     * @param out Where to write the JSON.
+     * @throws IOException If writing fails.
+     */
+    public void writeJson(Appendable out) throws IOException {
+        out.append("{\"counters\":{");
+        boolean first = true;
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            appendString(out, entry.getKey());
+            out.append(':').append(Long.toString(entry.getValue().get()));
+        }
+        out.append("},\"histograms\":{");
+        first = true;
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            Histogram histogram = entry.getValue();
+            appendString(out, entry.getKey());
+            out.append(":{\"count\":").append(Long.toString(histogram.getCount()))
+                    .append(",\"mean\":").append(Long.toString(Math.round(histogram.getMean())));
+            for (double percentile : PERCENTILES) {
+                out.append(",\"p").append(percentileLabel(percentile)).append("\":")
+                        .append(Long.toString(histogram.getPercentile(percentile)));
+            }
+            out.append(",\"max\":").append(Long.toString(histogram.getMax())).append('}');
+        }
+        out.append("}}");
+    }
+
+    /**
+     * Returns the metrics as JSON.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        try {
+            writeJson(json);
+        } catch (IOException e) {
+            // StringBuilder never throws
+            throw new AssertionError(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Returns a short human-readable summary, one metric per line, with durations in milliseconds.
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            summary.append(String.format(Locale.ROOT, "%s n=%d p50=%.1f p99=%.1f max=%.1f ms%n",
+                    entry.getKey(), histogram.getCount(), histogram.getPercentile(50) / 1e6,
+                    histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6));
+        }
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            summary.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        return summary.toString();
+    }
+
+    private static String percentileLabel(double percentile) {
+        // 50 -> "50", 99.9 -> "999"
+        return percentile == Math.rint(percentile)
+                ? Long.toString((long) percentile)
+                : Double.toString(percentile).replace(".", "");
+    }
+
+    private static void appendString(Appendable out, String value) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
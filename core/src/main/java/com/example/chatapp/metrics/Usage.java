@@ -0,0 +1,141 @@
+/**
+ * The Usage class accumulates the database cost of one screen or of the whole session:
+ * documents read and written, estimated bytes transferred, and how many reads were
+ * served from the local cache instead of the server. Only server reads are billed.
+ */
+package com.example.chatapp.metrics;
+
+public final class Usage {
+
+    private final String name;
+
+    /**
+     * Usage every recording is also added to, e.g. the session; null for the session itself.
+     */
+    private final Usage parent;
+
+    private final Counter documentsRead;
+    private final Counter cacheReads;
+    private final Counter bytesRead;
+    private final Counter documentsWritten;
+    private final Counter bytesWritten;
+
+    Usage(MetricsRegistry registry, String name, Usage parent) {
+        this.name = name;
+        this.parent = parent;
+        String prefix = MetricNames.USAGE_PREFIX + name + ".";
+        documentsRead = registry.counter(prefix + "documents_read");
+        cacheReads = registry.counter(prefix + "cache_reads");
+        bytesRead = registry.counter(prefix + "bytes_read");
+        documentsWritten = registry.counter(prefix + "documents_written");
+        bytesWritten = registry.counter(prefix + "bytes_written");
+    }
+
+    /**
+     * Records documents delivered by a listener update or a document get.
+     *
+     * @param documents Number of documents delivered.
+     * @param bytes Estimated size of the documents.
+     * @param fromCache Whether the documents came from the local cache.
+     */
+    public void recordRead(int documents, long bytes, boolean fromCache) {
+        documentsRead.add(documents);
+        bytesRead.add(bytes);
+        if (fromCache) {
+            cacheReads.add(documents);
+        }
+        if (parent != null) {
+            parent.recordRead(documents, bytes, fromCache);
+        }
+    }
+
+    /**
+     * Records the result of a query. A query answered by the server is billed
+     * at least one read, even when it matches no documents.
+     *
+     * @param documents Number of documents returned.
+     * @param bytes Estimated size of the documents.
+     * @param fromCache Whether the result came from the local cache.
+     */
+    public void recordQuery(int documents, long bytes, boolean fromCache) {
+        recordRead(fromCache ? documents : Math.max(1, documents), bytes, fromCache);
+    }
+
+    /**
+     * Records written documents.
+     *
+     * @param documents Number of documents written.
+     * @param bytes Estimated size of the written documents.
+     */
+    public void recordWrite(int documents, long bytes) {
+        documentsWritten.add(documents);
+        bytesWritten.add(bytes);
+        if (parent != null) {
+            parent.recordWrite(documents, bytes);
+        }
+    }
+
+    /**
+     * Returns the screen name, or "session".
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of documents read, from the server and the cache.
+     */
+    public long getDocumentsRead() {
+        return documentsRead.get();
+    }
+
+    /**
+     * Returns the number of documents read from the server, i.e. the billed reads.
+     */
+    public long getServerReads() {
+        return documentsRead.get() - cacheReads.get();
+    }
+
+    /**
+     * Returns the number of documents read from the local cache.
+     */
+    public long getCacheReads() {
+        return cacheReads.get();
+    }
+
+    /**
+     * Returns the estimated number of bytes read.
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Returns the number of documents written.
+     */
+    public long getDocumentsWritten() {
+        return documentsWritten.get();
+    }
+
+    /**
+     * Returns the estimated number of bytes written.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    void reset() {
+        documentsRead.reset();
+        cacheReads.reset();
+        bytesRead.reset();
+        documentsWritten.reset();
+        bytesWritten.reset();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + getServerReads() + " server reads, " + getCacheReads() + " cache reads, "
+                + getDocumentsWritten() + " writes, " + getBytesRead() + " bytes read, "
+                + getBytesWritten() + " bytes written";
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * The UsageMeter class attributes database reads and writes to the screen that caused them.
+ * Backends take the current screen's Usage when a request starts and record its results
+ * into it, so results that arrive after the user has moved on still count for the right screen.
+ * Every screen's usage is also added to the session total. The counters live in the
+ * MetricsRegistry, so they show up in the debug overlay and the metrics dump.
+ */
+package com.example.chatapp.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public final class UsageMeter {
+
+    /**
+     * Name of the usage recorded before any screen was entered, e.g. by background work.
+     */
+    public static final String NO_SCREEN = "background";
+
+    private static final UsageMeter DEFAULT = new UsageMeter(MetricsRegistry.get());
+
+    private final MetricsRegistry registry;
+    private final Usage session;
+    private final ConcurrentMap<String, Usage> screens = new ConcurrentHashMap<>();
+    private volatile Usage current;
+
+    /**
+     * Creates a meter that keeps its counters in the given registry.
+     *
+     * @param registry The registry holding the usage counters.
+     */
+    public UsageMeter(MetricsRegistry registry) {
+        this.registry = registry;
+        this.session = new Usage(registry, "session", null);
+        this.current = screen(NO_SCREEN);
+    }
+
+    /**
+     * Returns the process-wide meter.
+     */
+    public static UsageMeter get() {
+        return DEFAULT;
+    }
+
+    /**
+     * Attributes the following requests to the given screen.
+     *
+     * @param screen The name of the screen, e.g. the activity's class name.
+     */
+    public void enterScreen(String screen) {
+        current = screen(screen);
+    }
+
+    /**
+     * Returns the usage of the screen currently shown.
+     */
+    public Usage current() {
+        return current;
+    }
+
+    /**
+     * Returns the usage of the given screen during this session.
+     *
+     * @param screen The name of the screen.
+     */
+    public Usage screen(String screen) {
+        Usage usage = screens.get(screen);
+        return usage != null ? usage : screens.computeIfAbsent(screen, name -> new Usage(registry, name, session));
+    }
+
+    /**
+     * Returns the usage of all screens during this session.
+     */
+    public Usage session() {
+        return session;
+    }
+
+    /**
+     * Starts a new session, clearing the usage of every screen.
+     */
+    public void startSession() {
+        session.reset();
+        for (Usage usage : screens.values()) {
+            usage.reset();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * The Archive class describes how much of a conversation's history has been archived.
+ * Old messages are compacted into numbered segments, each a compressed data bundle that the
+ * client loads into its local cache in one read; only messages after the archive are queried live.
+ * Segment 0 holds the oldest messages and the last segment the newest archived ones.
+ */
+package com.example.chatapp.modules;
+
+import java.util.Date;
+import java.util.Locale;
+
+public class Archive {
+    /**
+     * An archive with no segments, for conversations that have never been archived.
+     */
+    public static final Archive NONE = new Archive();
+
+    /**
+     * The timestamp of the newest archived message, or null if nothing is archived.
+     */
+    public Date until;
+
+    /**
+     * The highest sequence number among the archived messages, or zero if none has one.
+     */
+    public long lastSeq;
+
+    /**
+     * The number of archive segments.
+     */
+    public int segmentCount;
+
+    /**
+     * Returns whether any message of the conversation is archived.
+     */
+    public boolean isEmpty() {
+        return segmentCount == 0;
+    }
+
+    /**
+     * Returns whether a message is part of the archive, so it can no longer be edited or unsent.
+     *
+     * @param message The message to check.
+     */
+    public boolean contains(ChatMessage message) {
+        return until != null && message.dateObject != null && !message.dateObject.after(until);
+    }
+
+    /**
+     * Returns the document ID of an archive segment; zero-padded so IDs sort in segment order.
+     *
+     * @param segment The index of the segment.
+     */
+    public static String segmentId(int segment) {
+        return String.format(Locale.ROOT, "%06d", segment);
+    }
+
+    /**
+     * Returns the name of the query bundled with an archive segment, which reads its messages from the cache.
+     *
+     * @param conversationId The ID of the conversation.
+     * @param segment The index of the segment.
+     */
+    public static String queryName(String conversationId, int segment) {
+        return "archive-" + conversationId + "-" + segmentId(segment);
+    }
+}
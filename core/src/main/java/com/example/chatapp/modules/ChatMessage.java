@@ -0,0 +1,94 @@
+/**
+ * The ChatMessage class represents a message exchanged between users in the chat application.
+ * It contains information about the sender, receiver, content of the message, and the timestamp.
+ */
+package com.example.chatapp.modules;
+
+import java.util.Date;
+
+public class ChatMessage {
+    /**
+     * ID of the message document, unique within its conversation.
+     */
+    public String id;
+
+    /**
+     * ID of the conversation the message belongs to, or null for a one-to-one message that is
+     * identified by its sender and receiver. Not stored in the message; it comes from the document's path.
+     */
+    public String conversationId;
+
+    /**
+     * ID of the user who sent the message.
+     */
+    public String senderId;
+
+    /**
+     * ID of the user who received the message, or null for a group message.
+     */
+    public String receiverId;
+
+    /**
+     * The content of the message.
+     */
+    public String message;
+
+    /**
+     * Position of the message in its conversation, assigned by the backend: 1 for the first message,
+     * then one more for each message. Zero for messages stored before sequence numbers existed.
+     */
+    public long seq;
+
+    /**
+     * When the sender last edited the message, or null if it was never edited.
+     */
+    public Date editedAt;
+
+    /**
+     * When the sender unsent the message, or null. An unsent message is a tombstone:
+     * its text is gone and it only stays to tell the other side it was unsent.
+     */
+    public Date deletedAt;
+
+    /**
+     * Whether the message is waiting in the outbox to be sent. It has no sequence number yet,
+     * and its date is when it was queued, taken from the device's clock.
+     */
+    public boolean pending;
+
+    /**
+     * Whether sending a pending message was given up; it is shown as not sent until it is sent again or discarded.
+     */
+    public boolean failed;
+
+    /**
+     * The date and time when the message was sent, represented as a String.
+     */
+    public String dateTime;
+
+    /**
+     * The date and time when the message was sent, represented as a Date object.
+     * Assigned by the server, so it does not depend on the sender's clock.
+     */
+    public Date dateObject;
+
+    /**
+     * Returns a copy of the message; dates are immutable by convention and shared.
+     */
+    public ChatMessage copy() {
+        ChatMessage copy = new ChatMessage();
+        copy.id = id;
+        copy.conversationId = conversationId;
+        copy.senderId = senderId;
+        copy.receiverId = receiverId;
+        copy.message = message;
+        copy.dateTime = dateTime;
+        copy.dateObject = dateObject;
+        copy.seq = seq;
+        copy.editedAt = editedAt;
+        copy.deletedAt = deletedAt;
+        copy.pending = pending;
+        copy.failed = failed;
+        return copy;
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * The Group class represents a group conversation in the chat application.
+ * A group is a conversation document with a name and a member list; its messages are
+ * stored once, in the group's messages subcollection, and every member listens to them there.
+ * Implements Serializable to allow group objects to be passed between activities.
+ */
+package com.example.chatapp.modules;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+public class Group implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Largest number of members a group may have.
+     */
+    public static final int MAX_MEMBERS = 500;
+
+    /**
+     * The unique ID of the group, which is also the ID of its conversation.
+     */
+    public String id;
+
+    /**
+     * The name of the group.
+     */
+    public String name;
+
+    /**
+     * IDs of the members of the group, including its creator.
+     */
+    public ArrayList<String> members = new ArrayList<>();
+}
@@ -33,6 +33,11 @@ public class User implements Serializable {
      */
     public String token;
 
+    /**
+     * The public key others encrypt conversations with this user to, or null if the user never published one.
+     */
+    public String publicKey;
+
     /**
      * The unique ID of the user.
      */
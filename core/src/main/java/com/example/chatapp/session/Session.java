@@ -0,0 +1,45 @@
+/**
+ * The Session class is an immutable snapshot of who is signed in on this device.
+ * It holds only the small, typed fields that screens read on the main thread;
+ * the user's avatar is kept apart by the SessionStore, so loading a session never
+ * has to parse it.
+ */
+package com.example.chatapp.session;
+
+public final class Session {
+
+    /**
+     * The session of a device nobody is signed in on.
+     */
+    public static final Session SIGNED_OUT = new Session(null, null, null);
+
+    /**
+     * ID of the signed-in user, or null if nobody is signed in.
+     */
+    public final String userId;
+
+    /**
+     * First name of the signed-in user.
+     */
+    public final String name;
+
+    /**
+     * Last name of the signed-in user, or null if it was never given.
+     */
+    public final String lastName;
+
+    /**
+     * @param userId ID of the signed-in user, or null if nobody is signed in.
+     * @param name First name of the user.
+     * @param lastName Last name of the user, or null.
+     */
+    public Session(String userId, String name, String lastName) {
+        this.userId = userId;
+        this.name = name;
+        this.lastName = lastName;
+    }
+
+    public boolean isSignedIn() {
+        return userId != null;
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * The SessionStore class keeps the signed-in session as an immutable snapshot in memory
+ * and persists it in the background. Reads never touch the disk once the session is loaded,
+ * which happens once per process, on the store's thread, ideally while the app starts.
+ *
+ * A change replaces the snapshot at once and schedules a write; changes made before that write
+ * runs are written together, as one file that replaces the previous one atomically, so a crash
+ * leaves either the old session or the new one on disk. The user's avatar is a large Base64 blob
+ * that only one screen shows, so it lives in a file of its own that loading the session does not
+ * read; that screen reads it in the background.
+ */
+package com.example.chatapp.session;
+
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.metrics.Counter;
+import com.example.chatapp.metrics.Histogram;
+import com.example.chatapp.metrics.MetricNames;
+import com.example.chatapp.metrics.MetricsRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class SessionStore {
+
+    /**
+     * Name of the file holding the session's fields.
+     */
+    static final String SESSION_FILE = "session";
+
+    /**
+     * Name of the file holding the user's avatar.
+     */
+    static final String AVATAR_FILE = "avatar";
+
+    /**
+     * Version of the session file format, written first so the format can change later.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Histogram LOAD = MetricsRegistry.get().histogram(MetricNames.SESSION_LOAD);
+    private static final Counter WRITES = MetricsRegistry.get().counter(MetricNames.SESSION_WRITES);
+
+    /**
+     * A session stored elsewhere by an earlier version of the app, moved into the store on its first load.
+     */
+    public interface Legacy {
+
+        /**
+         * Returns the stored session, or null if there is none.
+         */
+        Session readSession();
+
+        /**
+         * Returns the stored avatar, or null if there is none.
+         */
+        String readAvatar();
+
+        /**
+         * Deletes the old storage once the session has been moved.
+         */
+        void delete();
+    }
+
+    private final File directory;
+    private final Executor io;
+    private final Executor callbackExecutor;
+
+    private final AtomicBoolean loadStarted = new AtomicBoolean();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+
+    /**
+     * The current session; replaced as a whole, never changed.
+     */
+    private volatile Session current = Session.SIGNED_OUT;
+
+    /**
+     * Session waiting to be written, or null if the disk is up to date. Guarded by this.
+     */
+    private Session unwritten;
+
+    /**
+     * Avatar to be written with it. Guarded by this.
+     */
+    private String unwrittenAvatar;
+
+    /**
+     * @param directory The directory the store keeps its files in; created when first written.
+     * @param io Runs loads and writes one at a time, in order; typically a single background thread.
+     * @param callbackExecutor Delivers avatars read from disk; typically the main thread.
+     */
+    public SessionStore(File directory, Executor io, Executor callbackExecutor) {
+        this.directory = directory;
+        this.io = io;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Starts loading the session in the background, so it is in memory by the time a screen asks for it.
+     * Only the first call has any effect.
+     *
+     * @param legacy Where an earlier version of the app kept the session, or null.
+     */
+    public void load(Legacy legacy) {
+        if (!loadStarted.compareAndSet(false, true)) {
+            return;
+        }
+        io.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                Session session = read(legacy);
+                synchronized (this) {
+                    // A change made while loading is newer than what was on disk
+                    if (unwritten == null) {
+                        current = session;
+                    }
+                }
+            } finally {
+                LOAD.record(System.nanoTime() - start);
+                loaded.countDown();
+            }
+        });
+    }
+
+    /**
+     * Returns the current session. Before the first load has finished, waits for it; the
+     * session file is small, so the wait is short even when a screen asks right at startup.
+     */
+    public Session get() {
+        load(null);
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return current;
+    }
+
+    /**
+     * Signs a user in: the new session is visible at once, and written together with the avatar in the background.
+     *
+     * @param session The session of the user.
+     * @param avatar The user's avatar, Base64 encoded, or null.
+     */
+    public void signIn(Session session, String avatar) {
+        update(session, avatar);
+    }
+
+    /**
+     * Signs the user out, deleting the stored session and avatar.
+     */
+    public void signOut() {
+        update(Session.SIGNED_OUT, null);
+    }
+
+    /**
+     * Reads the user's avatar in the background.
+     *
+     * @param callback Receives the avatar, Base64 encoded, or null if there is none, on the callback executor.
+     */
+    public void readAvatar(Callback<String> callback) {
+        io.execute(() -> {
+            String avatar;
+            try {
+                avatar = readAvatarFile();
+            } catch (IOException e) {
+                callbackExecutor.execute(() -> callback.onFailure(e));
+                return;
+            }
+            callbackExecutor.execute(() -> callback.onSuccess(avatar));
+        });
+    }
+
+    private void update(Session session, String avatar) {
+        boolean scheduled;
+        synchronized (this) {
+            current = session;
+            scheduled = unwritten != null;
+            unwritten = session;
+            unwrittenAvatar = avatar;
+        }
+        // One write is enough for any number of changes made before it runs
+        if (!scheduled) {
+            io.execute(this::write);
+        }
+    }
+
+    private void write() {
+        Session session;
+        String avatar;
+        synchronized (this) {
+            session = unwritten;
+            avatar = unwrittenAvatar;
+            unwritten = null;
+            unwrittenAvatar = null;
+        }
+        WRITES.increment();
+        try {
+            // The avatar first, so a session on disk never refers to the avatar of the previous user
+            if (avatar == null) {
+                delete(AVATAR_FILE);
+            } else {
+                replace(AVATAR_FILE, avatar.getBytes(StandardCharsets.UTF_8));
+            }
+            if (session.isSignedIn()) {
+                replace(SESSION_FILE, encode(session));
+            } else {
+                delete(SESSION_FILE);
+            }
+        } catch (IOException e) {
+            // The snapshot in memory stays right; the next change tries again
+        }
+    }
+
+    private Session read(Legacy legacy) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(directory, SESSION_FILE))))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return Session.SIGNED_OUT;
+            }
+            return new Session(readNullable(in), readNullable(in), readNullable(in));
+        } catch (FileNotFoundException e) {
+            return migrate(legacy);
+        } catch (IOException e) {
+            // Written atomically, so only a file from a newer format or a broken disk ends up here
+            return Session.SIGNED_OUT;
+        }
+    }
+
+    /**
+     * Moves a session kept by an earlier version of the app into the store's files.
+     */
+    private Session migrate(Legacy legacy) {
+        if (legacy == null) {
+            return Session.SIGNED_OUT;
+        }
+        Session session = legacy.readSession();
+        if (session == null || !session.isSignedIn()) {
+            return Session.SIGNED_OUT;
+        }
+        try {
+            String avatar = legacy.readAvatar();
+            if (avatar != null) {
+                replace(AVATAR_FILE, avatar.getBytes(StandardCharsets.UTF_8));
+            }
+            replace(SESSION_FILE, encode(session));
+            legacy.delete();
+        } catch (IOException e) {
+            // Keep the old storage; the move is tried again on the next start
+        }
+        return session;
+    }
+
+    private String readAvatarFile() throws IOException {
+        File file = new File(directory, AVATAR_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(bytes);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(Session session) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            writeNullable(out, session.userId);
+            writeNullable(out, session.name);
+            writeNullable(out, session.lastName);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces a file atomically: the content goes to a temporary file, is flushed to the disk,
+     * and is then renamed over the old file.
+     */
+    private void replace(String name, byte[] content) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File temporary = new File(directory, name + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            out.write(content);
+            out.getFD().sync();
+        }
+        if (!temporary.renameTo(new File(directory, name))) {
+            throw new IOException("Cannot replace " + name);
+        }
+    }
+
+    private void delete(String name) throws IOException {
+        File file = new File(directory, name);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + name);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
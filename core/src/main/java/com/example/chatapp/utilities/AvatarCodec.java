@@ -0,0 +1,80 @@
+/**
+ * The AvatarCodec class decodes the Base64 profile images stored with every user.
+ * It accepts the MIME-style output of android.util.Base64.DEFAULT (line breaks every
+ * 76 characters) and decodes with a lookup table into a single exactly-sized array.
+ */
+package com.example.chatapp.utilities;
+
+import java.util.Arrays;
+
+public final class AvatarCodec {
+
+    private static final int WHITESPACE = -2;
+    private static final int INVALID = -1;
+
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, INVALID);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = i;
+        }
+        // URL-safe characters are accepted as well
+        DECODE['-'] = 62;
+        DECODE['_'] = 63;
+        DECODE['\n'] = WHITESPACE;
+        DECODE['\r'] = WHITESPACE;
+        DECODE[' '] = WHITESPACE;
+        DECODE['\t'] = WHITESPACE;
+    }
+
+    private AvatarCodec() {
+    }
+
+    /**
+     * Decodes a Base64 encoded image string into its raw bytes.
+     *
+     * @param encodedImage The Base64 encoded image, possibly with line breaks and padding.
+     * @return The decoded bytes, or an empty array for null input.
+     * @throws IllegalArgumentException If the string contains characters outside the Base64 alphabet.
+     */
+    public static byte[] decode(String encodedImage) {
+        if (encodedImage == null) {
+            return new byte[0];
+        }
+        int length = encodedImage.length();
+        int symbols = 0;
+        for (int i = 0; i < length; i++) {
+            char c = encodedImage.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            if (c >= 128 || DECODE[c] == INVALID) {
+                throw new IllegalArgumentException("Invalid Base64 character at " + i);
+            }
+            if (DECODE[c] != WHITESPACE) {
+                symbols++;
+            }
+        }
+
+        byte[] bytes = new byte[symbols * 3 / 4];
+        int accumulator = 0;
+        int bits = 0;
+        int out = 0;
+        for (int i = 0; i < length && out < bytes.length; i++) {
+            char c = encodedImage.charAt(i);
+            int value = DECODE[c];
+            if (value == WHITESPACE) {
+                continue;
+            }
+            accumulator = (accumulator << 6) | value;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                bytes[out++] = (byte) (accumulator >> bits);
+            }
+        }
+        return bytes;
+    }
+}
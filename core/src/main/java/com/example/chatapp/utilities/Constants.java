@@ -0,0 +1,218 @@
+/**
+ * Holds constant values used across the chat app.
+ * These constants act as keys for accessing values in Firebase Firestore and SharedPreferences.
+ */
+package com.example.chatapp.utilities;
+
+public class Constants {
+
+    /**
+     * Firebase Firestore collection name for storing user details.
+     */
+    public static final String KEY_COLLECTION_USERS = "Users";
+
+    /**
+     * Key for storing and retrieving the user's first name.
+     */
+    public static final String KEY_NAME = "name";
+
+    /**
+     * Key for storing and retrieving the user's last name.
+     */
+    public static final String KEY_LAST_NAME = "lastName";
+
+    /**
+     * Key for storing and retrieving the user's email address.
+     */
+    public static final String KEY_EMAIL = "email";
+
+    /**
+     * Key for storing and retrieving the user's password.
+     */
+    public static final String KEY_PASSWORD = "password";
+
+    /**
+     * Key for storing and retrieving the unique user ID.
+     */
+    public static final String KEY_USER_ID = "Userid";
+
+    /**
+     * Key indicating whether the user is signed in, in the SharedPreferences of earlier versions of the app.
+     */
+    public static final String KEY_IS_SIGNED_IN = "isSignedIn";
+
+    /**
+     * Name of the SharedPreferences file earlier versions of the app kept the session in; moved into the SessionStore.
+     */
+    public static final String KEY_PREFERENCE_NAME = "chatAppPreference";
+
+    /**
+     * Key for storing and retrieving the user's profile image (Base64 encoded).
+     */
+    public static final String KEY_IMAGE = "image";
+
+    /**
+     * Key for storing and retrieving the user's FCM token (used for push notifications).
+     */
+    public static final String KEY_FCM_TOKEN = "fcmToken";
+
+    /**
+     * Key of the user's public key for end-to-end encrypted conversations (Base64, X.509 encoded X25519).
+     */
+    public static final String KEY_PUBLIC_KEY = "publicKey";
+
+    /**
+     * Key for storing and retrieving user objects.
+     */
+    public static final String KEY_USER = "user";
+
+    /**
+     * Key for storing and retrieving group objects.
+     */
+    public static final String KEY_GROUP = "group";
+
+    /**
+     * Legacy flat Firebase Firestore collection that held every chat message.
+     * New messages are stored under {@link #KEY_COLLECTION_CONVERSATIONS}; this name is kept for migration.
+     */
+    public static final String KEY_COLLECTION_CHAT = "chat";
+
+    /**
+     * Firebase Firestore collection name for storing one document per conversation.
+     */
+    public static final String KEY_COLLECTION_CONVERSATIONS = "conversations";
+
+    /**
+     * Name of the subcollection under each conversation document that holds its messages.
+     */
+    public static final String KEY_COLLECTION_MESSAGES = "messages";
+
+    /**
+     * Key for storing and retrieving the list of user IDs taking part in a conversation.
+     */
+    public static final String KEY_PARTICIPANTS = "participants";
+
+    /**
+     * Key for storing and retrieving the name of a group conversation; one-to-one conversations have none.
+     */
+    public static final String KEY_GROUP_NAME = "groupName";
+
+    /**
+     * Key for storing and retrieving the last message text of a conversation summary.
+     */
+    public static final String KEY_LAST_MESSAGE = "lastMessage";
+
+    /**
+     * Key for storing and retrieving when a user document last changed, so a sync only fetches the changes.
+     */
+    public static final String KEY_UPDATED_AT = "updatedAt";
+
+    /**
+     * Key for storing and retrieving the ID of the user who sent the last message of a conversation.
+     */
+    public static final String KEY_LAST_SENDER_ID = "lastSenderId";
+
+    /**
+     * Key for storing and retrieving the read cursors of a conversation: for every participant,
+     * the timestamp of the newest message they have seen.
+     */
+    public static final String KEY_LAST_READ = "lastRead";
+
+    /**
+     * Key for storing and retrieving the sequence number of the last message of a conversation summary.
+     */
+    public static final String KEY_LAST_SEQ = "lastSeq";
+
+    /**
+     * Key for storing and retrieving the sequence number of a chat message within its conversation.
+     */
+    public static final String KEY_SEQ = "seq";
+
+    /**
+     * Key for storing and retrieving when a chat message was last edited.
+     */
+    public static final String KEY_EDITED_AT = "editedAt";
+
+    /**
+     * Key for storing and retrieving when a chat message was unsent, which turns it into a tombstone.
+     */
+    public static final String KEY_DELETED_AT = "deletedAt";
+
+    /**
+     * Key for passing the ID of a conversation, e.g. in a push message or a notification action.
+     */
+    public static final String KEY_CONVERSATION_ID = "conversationId";
+
+    /**
+     * Key for passing the display name of a message's sender in a push message.
+     */
+    public static final String KEY_SENDER_NAME = "senderName";
+
+    /**
+     * Key for storing and retrieving the sender's user ID in a chat message.
+     */
+    public static final String KEY_SENDER_ID = "senderId";
+
+    /**
+     * Key for storing and retrieving the receiver's user ID in a chat message.
+     */
+    public static final String KEY_RECEIVER_ID = "receiverId";
+
+    /**
+     * Key for storing and retrieving the content of a chat message.
+     */
+    public static final String KEY_MESSAGE = "message";
+
+    /**
+     * Key for storing and retrieving the timestamp of a chat message.
+     */
+    public static final String KEY_TIMESTAMP = "timeStamp";
+
+    /**
+     * Firebase Firestore collection name for storing one presence document per user.
+     */
+    public static final String KEY_COLLECTION_PRESENCE = "presence";
+
+    /**
+     * Name of the subcollection under each conversation document that holds one typing document per participant.
+     */
+    public static final String KEY_COLLECTION_TYPING = "typing";
+
+    /**
+     * Key for storing and retrieving when a presence or typing state, or a message tombstone, ends.
+     * A Firestore TTL policy on this field deletes documents that have long expired.
+     */
+    public static final String KEY_EXPIRES_AT = "expiresAt";
+
+    /**
+     * Name of the subcollection under each conversation document that holds its archive segments:
+     * compressed data bundles of old messages, loaded into the local cache in one read each.
+     */
+    public static final String KEY_COLLECTION_ARCHIVE = "archive";
+
+    /**
+     * Key for storing and retrieving the gzip-compressed data bundle of an archive segment.
+     */
+    public static final String KEY_BUNDLE = "bundle";
+
+    /**
+     * Key for storing and retrieving the number of messages in an archive segment.
+     */
+    public static final String KEY_MESSAGE_COUNT = "messageCount";
+
+    /**
+     * Key for storing and retrieving the timestamp of the newest archived message of a conversation.
+     * Only messages after it are queried live.
+     */
+    public static final String KEY_ARCHIVED_UNTIL = "archivedUntil";
+
+    /**
+     * Key for storing and retrieving the highest sequence number among the archived messages of a conversation.
+     */
+    public static final String KEY_ARCHIVED_SEQ = "archivedSeq";
+
+    /**
+     * Key for storing and retrieving the number of archive segments of a conversation.
+     */
+    public static final String KEY_ARCHIVE_SEGMENTS = "archiveSegments";
+}
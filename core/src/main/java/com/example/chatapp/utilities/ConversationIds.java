@@ -0,0 +1,47 @@
+/**
+ * Builds conversation IDs shared by the app and the JVM tools.
+ * A one-to-one conversation is identified by the sorted pair of its participant IDs;
+ * a group conversation by the ID the backend assigned to the group.
+ */
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.modules.ChatMessage;
+
+public final class ConversationIds {
+
+    /**
+     * Separator placed between the two participant IDs.
+     */
+    private static final char SEPARATOR = '_';
+
+    private ConversationIds() {
+    }
+
+    /**
+     * Builds the ID of the conversation between two users.
+     * The ID does not depend on who sends first, so both participants resolve the same conversation.
+     *
+     * @param firstUserId ID of one participant.
+     * @param secondUserId ID of the other participant.
+     * @return The conversation ID shared by both users.
+     */
+    public static String of(String firstUserId, String secondUserId) {
+        if (firstUserId.compareTo(secondUserId) < 0) {
+            return firstUserId + SEPARATOR + secondUserId;
+        }
+        return secondUserId + SEPARATOR + firstUserId;
+    }
+
+    /**
+     * Returns the ID of the conversation a message belongs to.
+     *
+     * @param message A message with its conversation ID set, or with its sender and receiver set.
+     * @return The conversation ID of the message.
+     */
+    public static String of(ChatMessage message) {
+        if (message.conversationId != null) {
+            return message.conversationId;
+        }
+        return of(message.senderId, message.receiverId);
+    }
+}
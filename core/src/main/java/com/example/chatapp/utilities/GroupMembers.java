@@ -0,0 +1,49 @@
+/**
+ * Builds and checks the member lists of group conversations.
+ * The list is stored once, on the group's conversation document, so its size is bounded
+ * to keep that document small enough to be read with every group listing.
+ */
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.modules.Group;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public final class GroupMembers {
+
+    private GroupMembers() {
+    }
+
+    /**
+     * Builds the member list of a new group: the creator first, then every other member once.
+     *
+     * @param creatorId The ID of the user creating the group.
+     * @param memberIds The IDs of the users added to the group; may contain the creator and duplicates.
+     * @return The member list.
+     * @throws IllegalArgumentException If the group would have more than {@link Group#MAX_MEMBERS} members.
+     */
+    public static ArrayList<String> of(String creatorId, Collection<String> memberIds) {
+        Set<String> members = new LinkedHashSet<>();
+        members.add(creatorId);
+        members.addAll(memberIds);
+        ArrayList<String> result = new ArrayList<>(members);
+        check(result);
+        return result;
+    }
+
+    /**
+     * Checks that a member list can be stored.
+     *
+     * @param memberIds The IDs of the members.
+     * @throws IllegalArgumentException If the list is empty or longer than {@link Group#MAX_MEMBERS}.
+     */
+    public static void check(Collection<String> memberIds) {
+        if (memberIds.isEmpty() || memberIds.size() > Group.MAX_MEMBERS) {
+            throw new IllegalArgumentException("A group has between 1 and " + Group.MAX_MEMBERS
+                    + " members, not " + memberIds.size());
+        }
+    }
+}
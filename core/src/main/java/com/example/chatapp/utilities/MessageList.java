@@ -0,0 +1,182 @@
+/**
+ * The MessageList class holds a conversation's rendered messages in sequence order,
+ * together with an index from message ID to position. An edit or an unsend finds its
+ * row in O(1), so exactly one row is rebound, without scanning the list. Appends keep
+ * the index current in O(1); the rare insert or removal in the middle re-indexes only
+ * the rows after it.
+ *
+ * Tombstones (unsent messages) are tracked separately, so compacting them away costs
+ * time proportional to the number of tombstones rather than to the whole conversation.
+ * Not thread-safe; it is meant to be used from the main thread.
+ */
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.modules.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public final class MessageList {
+
+    /**
+     * How long a tombstone is kept after the unsend, locally and in the database.
+     */
+    public static final long TOMBSTONE_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final List<ChatMessage> messages = new ArrayList<>();
+    private final List<ChatMessage> view = Collections.unmodifiableList(messages);
+
+    /**
+     * Position of every message by ID.
+     */
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /**
+     * Tombstones by ID.
+     */
+    private final Map<String, ChatMessage> tombstones = new HashMap<>();
+
+    /**
+     * Returns a read-only view of the messages in order, e.g. for an adapter.
+     */
+    public List<ChatMessage> asList() {
+        return view;
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    public ChatMessage get(int position) {
+        return messages.get(position);
+    }
+
+    /**
+     * Returns the position of a message, or -1 if it is not in the list.
+     *
+     * @param id The ID of the message.
+     */
+    public int indexOf(String id) {
+        Integer position = positions.get(id);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Inserts a message at its place in sequence order.
+     *
+     * @param message The message; a message with the same ID must not be in the list.
+     * @return The position the message was inserted at.
+     */
+    public int add(ChatMessage message) {
+        int position = MessageOrdering.insert(messages, message);
+        reindexFrom(position);
+        trackTombstone(message);
+        return position;
+    }
+
+    /**
+     * Replaces a message with a newer version of itself, e.g. after an edit or an unsend.
+     *
+     * @param message The new version of the message.
+     * @return The position of the replaced message, or -1 if it is not in the list.
+     */
+    public int replace(ChatMessage message) {
+        int position = indexOf(message.id);
+        if (position < 0) {
+            return -1;
+        }
+        messages.set(position, message);
+        trackTombstone(message);
+        return position;
+    }
+
+    /**
+     * Removes a message.
+     *
+     * @param id The ID of the message.
+     * @return The position the message was removed from, or -1 if it is not in the list.
+     */
+    public int remove(String id) {
+        Integer position = positions.remove(id);
+        if (position == null) {
+            return -1;
+        }
+        messages.remove((int) position);
+        tombstones.remove(id);
+        reindexFrom(position);
+        return position;
+    }
+
+    /**
+     * Removes the first messages, e.g. older history that can be loaded again when scrolled to.
+     *
+     * @param count The number of messages to remove from the start of the list.
+     */
+    public void removeFirst(int count) {
+        List<ChatMessage> removed = messages.subList(0, count);
+        for (ChatMessage message : removed) {
+            positions.remove(message.id);
+            tombstones.remove(message.id);
+        }
+        removed.clear();
+        reindexFrom(0);
+    }
+
+    /**
+     * Removes the tombstones unsent before the given time.
+     *
+     * @param unsentBeforeMillis Tombstones unsent before this time, in epoch milliseconds, are removed.
+     * @return The positions removed, highest first, so they can be notified one by one.
+     */
+    public List<Integer> compactTombstones(long unsentBeforeMillis) {
+        List<String> expired = new ArrayList<>();
+        for (ChatMessage tombstone : tombstones.values()) {
+            if (tombstone.deletedAt.getTime() < unsentBeforeMillis) {
+                expired.add(tombstone.id);
+            }
+        }
+        List<Integer> removed = new ArrayList<>(expired.size());
+        for (String id : expired) {
+            removed.add(positions.get(id));
+        }
+        Collections.sort(removed, Collections.reverseOrder());
+        // Remove from the end, so earlier positions stay valid, then re-index once
+        for (int position : removed) {
+            positions.remove(messages.remove(position).id);
+        }
+        for (String id : expired) {
+            tombstones.remove(id);
+        }
+        if (!removed.isEmpty()) {
+            reindexFrom(removed.get(removed.size() - 1));
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the number of tombstones in the list.
+     */
+    public int getTombstoneCount() {
+        return tombstones.size();
+    }
+
+    private void trackTombstone(ChatMessage message) {
+        if (message.deletedAt != null) {
+            tombstones.put(message.id, message);
+        }
+    }
+
+    private void reindexFrom(int position) {
+        for (int i = position; i < messages.size(); i++) {
+            positions.put(messages.get(i).id, i);
+        }
+    }
+}
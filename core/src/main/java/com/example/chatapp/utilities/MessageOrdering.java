@@ -0,0 +1,92 @@
+/**
+ * The MessageOrdering class keeps a conversation's messages in conversation order:
+ * by their server-assigned sequence number, so the order is the same on every device
+ * whatever their clocks say. Messages stored before sequence numbers existed come first,
+ * by timestamp, and messages still waiting in the outbox come last, in the order they were queued. New messages almost always arrive in order, so merging appends in O(1) and
+ * only falls back to a binary-search insert for late arrivals, instead of
+ * re-sorting the whole list on every snapshot.
+ */
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.modules.ChatMessage;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+public final class MessageOrdering {
+
+    /**
+     * Orders messages by sequence number. Stored messages without one sort first, by timestamp;
+     * pending messages sort last, by the time they were queued.
+     */
+    public static final Comparator<ChatMessage> BY_SEQUENCE = (first, second) -> {
+        if (first.pending || second.pending) {
+            if (first.pending != second.pending) {
+                return first.pending ? 1 : -1;
+            }
+            return compare(first.dateObject, second.dateObject);
+        }
+        if (first.seq != 0 && second.seq != 0) {
+            return Long.compare(first.seq, second.seq);
+        }
+        if (first.seq != 0 || second.seq != 0) {
+            return first.seq == 0 ? -1 : 1;
+        }
+        return compare(first.dateObject, second.dateObject);
+    };
+
+    private MessageOrdering() {
+    }
+
+    /**
+     * Inserts a message into a sorted list, keeping it sorted.
+     * Messages that compare equal keep their arrival order.
+     *
+     * @param messages The sorted list of messages.
+     * @param message The message to insert.
+     * @return The position the message was inserted at.
+     */
+    public static int insert(List<ChatMessage> messages, ChatMessage message) {
+        int size = messages.size();
+        if (size == 0 || BY_SEQUENCE.compare(messages.get(size - 1), message) <= 0) {
+            messages.add(message);
+            return size;
+        }
+        // Find the first message strictly after the new one
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (BY_SEQUENCE.compare(messages.get(middle), message) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        messages.add(low, message);
+        return low;
+    }
+
+    /**
+     * Merges a batch of messages into a sorted list.
+     *
+     * @param messages The sorted list of messages.
+     * @param incoming The messages to add, in any order.
+     * @return The lowest position that changed, or the list size when nothing was added.
+     */
+    public static int merge(List<ChatMessage> messages, List<ChatMessage> incoming) {
+        int firstChanged = messages.size();
+        for (ChatMessage message : incoming) {
+            firstChanged = Math.min(firstChanged, insert(messages, message));
+        }
+        return firstChanged;
+    }
+
+    private static int compare(Date first, Date second) {
+        if (first == null) {
+            return second == null ? 0 : 1;
+        }
+        return second == null ? -1 : first.compareTo(second);
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * The Prefetcher class warms data ahead of use, e.g. the conversations behind the rows of
+ * the user list. Requests are deduplicated, at most a fixed number of loads run at once,
+ * and the most recent urgent request runs first. Requests that have not started yet can
+ * be cancelled; a load that already started is left to finish, but nothing new is queued.
+ */
+package com.example.chatapp.utilities;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class Prefetcher {
+
+    /**
+     * Loads the data behind a key.
+     */
+    public interface Loader {
+        /**
+         * Starts loading. Must call done exactly once, from any thread, when the load has finished or failed.
+         *
+         * @param key The key to load.
+         * @param done Called when the load is over.
+         */
+        void load(String key, Runnable done);
+    }
+
+    private final Loader loader;
+    private final int maxConcurrent;
+
+    private final Deque<String> queue = new ArrayDeque<>();
+    private final Set<String> running = new HashSet<>();
+
+    /**
+     * Keys loaded recently, least recently used first.
+     */
+    private final Map<String, Boolean> warm;
+
+    /**
+     * Creates a prefetcher.
+     *
+     * @param loader Loads the data behind a key.
+     * @param maxConcurrent Maximum number of loads running at the same time.
+     * @param warmCapacity Number of loaded keys remembered, so they are not loaded again.
+     */
+    public Prefetcher(Loader loader, int maxConcurrent, int warmCapacity) {
+        this.loader = loader;
+        this.maxConcurrent = maxConcurrent;
+        this.warm = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > warmCapacity;
+            }
+        };
+    }
+
+    /**
+     * Queues a key behind the already queued ones, e.g. for a row that became visible.
+     *
+     * @param key The key to prefetch.
+     */
+    public void request(String key) {
+        enqueue(key, false);
+    }
+
+    /**
+     * Queues a key ahead of every other one, e.g. for a row the user touched.
+     *
+     * @param key The key to prefetch.
+     */
+    public void requestNow(String key) {
+        enqueue(key, true);
+    }
+
+    /**
+     * Drops a queued key, e.g. for a row that scrolled out of view.
+     *
+     * @param key The key to drop.
+     */
+    public synchronized void cancel(String key) {
+        queue.remove(key);
+    }
+
+    /**
+     * Drops every queued key.
+     */
+    public synchronized void cancelAll() {
+        queue.clear();
+    }
+
+    /**
+     * Returns whether the key has been loaded recently.
+     *
+     * @param key The key to check.
+     */
+    public synchronized boolean isWarm(String key) {
+        return warm.containsKey(key);
+    }
+
+    /**
+     * Returns the number of queued keys that have not started loading.
+     */
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    private void enqueue(String key, boolean urgent) {
+        synchronized (this) {
+            if (warm.containsKey(key) || running.contains(key)) {
+                return;
+            }
+            if (urgent) {
+                queue.remove(key);
+                queue.addFirst(key);
+            } else if (!queue.contains(key)) {
+                queue.addLast(key);
+            }
+        }
+        pump();
+    }
+
+    /**
+     * Starts queued loads while there is capacity. Loads are started outside the lock,
+     * so loaders that complete synchronously can call back into the prefetcher.
+     */
+    private void pump() {
+        List<String> started = new ArrayList<>();
+        synchronized (this) {
+            while (running.size() < maxConcurrent && !queue.isEmpty()) {
+                String key = queue.pollFirst();
+                running.add(key);
+                started.add(key);
+            }
+        }
+        for (String key : started) {
+            loader.load(key, () -> finish(key));
+        }
+    }
+
+    private void finish(String key) {
+        synchronized (this) {
+            if (!running.remove(key)) {
+                return; // done was called twice
+            }
+            warm.put(key, Boolean.TRUE);
+        }
+        pump();
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * The ReadCursor class throttles the writes of a participant's read cursor.
+ * While a conversation is visible the cursor follows the newest message on screen,
+ * but it is written at most once per interval; the newest value seen in between is
+ * kept pending and written by the next due advance, by flushIfDue() or by flush()
+ * when the conversation is left. A visit therefore costs a constant number of writes,
+ * however many messages arrive during it.
+ *
+ * Not thread-safe; it is meant to be driven from the main thread.
+ */
+package com.example.chatapp.utilities;
+
+import java.util.Date;
+import java.util.function.LongSupplier;
+
+public final class ReadCursor {
+
+    /**
+     * Default minimum time between two writes of the cursor.
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 5000;
+
+    /**
+     * Persists a new value of the cursor.
+     */
+    public interface Writer {
+        /**
+         * Writes the cursor.
+         *
+         * @param readUpTo The timestamp of the newest seen message.
+         */
+        void write(Date readUpTo);
+    }
+
+    private final Writer writer;
+    private final long intervalMillis;
+    private final LongSupplier clockMillis;
+
+    /**
+     * The newest value written, or known to be stored.
+     */
+    private Date written;
+
+    /**
+     * The newest value seen but not written yet, or null.
+     */
+    private Date pending;
+
+    /**
+     * When the cursor was last written, from the clock; MIN_VALUE if never.
+     */
+    private long lastWriteMillis = Long.MIN_VALUE;
+
+    /**
+     * Creates a cursor written at most once per interval, timed by the uptime clock.
+     *
+     * @param writer Persists new values of the cursor.
+     * @param intervalMillis Minimum time between two writes.
+     */
+    public ReadCursor(Writer writer, long intervalMillis) {
+        this(writer, intervalMillis, () -> System.nanoTime() / 1_000_000);
+    }
+
+    /**
+     * Creates a cursor written at most once per interval, timed by the given clock.
+     *
+     * @param writer Persists new values of the cursor.
+     * @param intervalMillis Minimum time between two writes.
+     * @param clockMillis Monotonic clock in milliseconds.
+     */
+    public ReadCursor(Writer writer, long intervalMillis, LongSupplier clockMillis) {
+        this.writer = writer;
+        this.intervalMillis = intervalMillis;
+        this.clockMillis = clockMillis;
+    }
+
+    /**
+     * Sets the value already stored by the backend, so it is never written again.
+     *
+     * @param stored The stored cursor, or null.
+     */
+    public void restore(Date stored) {
+        if (isNewer(stored, written)) {
+            written = stored;
+        }
+        if (pending != null && !isNewer(pending, written)) {
+            pending = null;
+        }
+    }
+
+    /**
+     * Moves the cursor forward to a newly seen message. Older values are ignored.
+     *
+     * @param seenUpTo The timestamp of the newest message on screen.
+     * @return 0 if the cursor was written, the milliseconds until the pending value
+     *         is due if it was held back, or -1 if there was nothing new.
+     */
+    public long advance(Date seenUpTo) {
+        if (!isNewer(seenUpTo, pending == null ? written : pending)) {
+            return -1;
+        }
+        pending = seenUpTo;
+        long remaining = remainingMillis();
+        if (remaining > 0) {
+            return remaining;
+        }
+        flush();
+        return 0;
+    }
+
+    /**
+     * Writes the pending value if the interval since the last write has passed.
+     *
+     * @return true if a value was written.
+     */
+    public boolean flushIfDue() {
+        if (pending == null || remainingMillis() > 0) {
+            return false;
+        }
+        flush();
+        return true;
+    }
+
+    /**
+     * Writes the pending value right away, e.g. when the conversation is left.
+     */
+    public void flush() {
+        if (pending == null) {
+            return;
+        }
+        written = pending;
+        pending = null;
+        lastWriteMillis = clockMillis.getAsLong();
+        writer.write(written);
+    }
+
+    /**
+     * Returns the newest value seen, written or not.
+     */
+    public Date get() {
+        return pending != null ? pending : written;
+    }
+
+    private long remainingMillis() {
+        if (lastWriteMillis == Long.MIN_VALUE) {
+            return 0;
+        }
+        return lastWriteMillis + intervalMillis - clockMillis.getAsLong();
+    }
+
+    private static boolean isNewer(Date candidate, Date current) {
+        return candidate != null && (current == null || candidate.after(current));
+    }
+}
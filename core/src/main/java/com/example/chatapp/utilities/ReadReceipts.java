@@ -0,0 +1,62 @@
+/**
+ * The ReadReceipts class derives "seen" ticks and unread counts from read cursors.
+ * A read cursor is the timestamp of the newest message a participant has seen, so
+ * a message is read exactly when it is not newer than the reader's cursor.
+ */
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.modules.ChatMessage;
+
+import java.util.Date;
+import java.util.List;
+
+public final class ReadReceipts {
+
+    private ReadReceipts() {
+    }
+
+    /**
+     * Returns whether a message has been seen by the reader with the given cursor.
+     *
+     * @param message The message.
+     * @param readerCursor The reader's read cursor, or null if they never opened the conversation.
+     * @return true if the message is covered by the cursor.
+     */
+    public static boolean isSeen(ChatMessage message, Date readerCursor) {
+        return readerCursor != null && message.dateObject != null && !message.dateObject.after(readerCursor);
+    }
+
+    /**
+     * Counts the messages from other participants that the user has not seen yet.
+     *
+     * @param messages The messages of the conversation.
+     * @param userId The ID of the reader.
+     * @param cursor The reader's read cursor, or null if they never opened the conversation.
+     * @return The number of unread messages.
+     */
+    public static int countUnread(List<ChatMessage> messages, String userId, Date cursor) {
+        int unread = 0;
+        for (ChatMessage message : messages) {
+            if (!userId.equals(message.senderId) && !isSeen(message, cursor)) {
+                unread++;
+            }
+        }
+        return unread;
+    }
+
+    /**
+     * Returns whether a conversation has unread messages, from its summary alone.
+     *
+     * @param lastSenderId The ID of the user who sent the last message.
+     * @param lastTimestamp The timestamp of the last message.
+     * @param userId The ID of the reader.
+     * @param cursor The reader's read cursor, or null if they never opened the conversation.
+     * @return true if the last message came from someone else and is newer than the cursor.
+     */
+    public static boolean hasUnread(String lastSenderId, Date lastTimestamp, String userId, Date cursor) {
+        if (lastSenderId == null || lastTimestamp == null || lastSenderId.equals(userId)) {
+            return false;
+        }
+        return cursor == null || lastTimestamp.after(cursor);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * The ReadableDateFormat class formats message timestamps for display.
+ * The pattern only has minute resolution, so the last formatted minute is cached
+ * per thread and consecutive messages from the same minute reuse its string.
+ */
+package com.example.chatapp.utilities;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+public final class ReadableDateFormat {
+
+    /**
+     * Display pattern of message timestamps.
+     */
+    public static final String PATTERN = "MMM dd, yyyy - hh:mm a";
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    private static final ThreadLocal<ReadableDateFormat> FORMATS = new ThreadLocal<ReadableDateFormat>() {
+        @Override
+        protected ReadableDateFormat initialValue() {
+            return new ReadableDateFormat();
+        }
+    };
+
+    private SimpleDateFormat format;
+    private Locale locale;
+    private long cachedMinute = Long.MIN_VALUE;
+    private String cachedText;
+
+    private ReadableDateFormat() {
+    }
+
+    /**
+     * Formats a Date object to a readable date-time string in the default locale.
+     *
+     * @param date The Date object to be formatted.
+     * @return A formatted string representing the date and time, or an empty string for null.
+     */
+    public static String format(Date date) {
+        return date == null ? "" : FORMATS.get().formatMinute(date);
+    }
+
+    private String formatMinute(Date date) {
+        Locale current = Locale.getDefault();
+        if (format == null || !current.equals(locale)) {
+            format = new SimpleDateFormat(PATTERN, current);
+            locale = current;
+            cachedMinute = Long.MIN_VALUE;
+        }
+        long minute = Math.floorDiv(date.getTime(), MILLIS_PER_MINUTE);
+        if (minute != cachedMinute) {
+            cachedText = format.format(date);
+            cachedMinute = minute;
+        }
+        return cachedText;
+    }
+}
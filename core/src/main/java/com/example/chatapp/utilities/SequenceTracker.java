@@ -0,0 +1,104 @@
+/**
+ * The SequenceTracker class follows the sequence numbers received for one conversation.
+ * It knows the highest number up to which nothing is missing, so a gap is detected
+ * in O(1) as soon as a number arrives ahead of it, and a resync only needs to fetch
+ * the messages after that number. Numbers received ahead of a gap are remembered,
+ * so duplicates are recognised and the gap closes as soon as the missing ones arrive.
+ * Messages can also be deleted for good, e.g. tombstones removed by a TTL policy; a number
+ * a resync did not find again is one of those, and counts as received from then on.
+ */
+package com.example.chatapp.utilities;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+public final class SequenceTracker {
+
+    /**
+     * Every sequence number up to this one has been received.
+     */
+    private long contiguous;
+
+    /**
+     * Sequence numbers received beyond a gap.
+     */
+    private final TreeSet<Long> ahead = new TreeSet<>();
+
+    /**
+     * Creates a tracker for a conversation received from its first message on.
+     */
+    public SequenceTracker() {
+        this(0);
+    }
+
+    /**
+     * Creates a tracker for a conversation whose messages up to a sequence number are already known.
+     *
+     * @param contiguous Every sequence number up to this one counts as received.
+     */
+    public SequenceTracker(long contiguous) {
+        this.contiguous = contiguous;
+    }
+
+    /**
+     * Records a received sequence number.
+     *
+     * @param seq The sequence number; zero (no sequence number) is always accepted and not tracked.
+     * @return false if the number had already been received.
+     */
+    public boolean accept(long seq) {
+        if (seq == 0) {
+            return true;
+        }
+        if (seq <= contiguous || ahead.contains(seq)) {
+            return false;
+        }
+        if (seq == contiguous + 1) {
+            contiguous = seq;
+            // Received numbers beyond a closed gap become contiguous
+            while (!ahead.isEmpty() && ahead.first() == contiguous + 1) {
+                contiguous = ahead.pollFirst();
+            }
+        } else {
+            ahead.add(seq);
+        }
+        return true;
+    }
+
+    /**
+     * Records the result of a resync that fetched every message still stored after the contiguous number.
+     * Numbers up to the given one that it did not find belong to deleted messages, so they count as
+     * received, and the gaps they left close for good; the fetched numbers are still accepted as usual.
+     *
+     * @param upTo The highest number received when the resync was requested; later numbers may still be on their way.
+     * @param fetched The numbers the resync found.
+     */
+    public void resynced(long upTo, Set<Long> fetched) {
+        for (long seq = contiguous + 1; seq <= upTo; seq++) {
+            if (!fetched.contains(seq)) {
+                accept(seq);
+            }
+        }
+    }
+
+    /**
+     * Returns whether some sequence numbers below the highest received one are missing.
+     */
+    public boolean hasGap() {
+        return !ahead.isEmpty();
+    }
+
+    /**
+     * Returns the number up to which nothing is missing; a resync fetches everything after it.
+     */
+    public long getContiguous() {
+        return contiguous;
+    }
+
+    /**
+     * Returns the highest sequence number received.
+     */
+    public long getHighest() {
+        return ahead.isEmpty() ? contiguous : ahead.last();
+    }
+}
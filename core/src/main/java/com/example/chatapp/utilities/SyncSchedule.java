@@ -0,0 +1,71 @@
+/**
+ * The SyncSchedule class decides when the background sync should run again.
+ * A run that found changes keeps the interval at its minimum; every run that found nothing
+ * doubles it, up to a maximum, so an idle account is synced rarely and a busy one often.
+ * A run cut short by its byte budget counts as a change, so the rest follows soon.
+ */
+package com.example.chatapp.utilities;
+
+import java.util.concurrent.TimeUnit;
+
+public final class SyncSchedule {
+
+    /**
+     * Shortest time between two syncs.
+     */
+    public static final long MIN_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Longest time between two syncs, however long nothing has changed.
+     */
+    public static final long MAX_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private long lastSyncMillis;
+    private long intervalMillis;
+
+    /**
+     * Restores a schedule, e.g. from preferences.
+     *
+     * @param lastSyncMillis When the last sync finished, or 0 if it never ran.
+     * @param intervalMillis The current interval; out-of-range values are clamped.
+     */
+    public SyncSchedule(long lastSyncMillis, long intervalMillis) {
+        this.lastSyncMillis = lastSyncMillis;
+        this.intervalMillis = Math.max(MIN_INTERVAL_MILLIS, Math.min(MAX_INTERVAL_MILLIS, intervalMillis));
+    }
+
+    /**
+     * Returns whether a sync should run now: always before the first one, and otherwise once the interval
+     * has passed. A clock that moved back before the last sync makes it due, rather than never.
+     *
+     * @param nowMillis The current time.
+     */
+    public boolean isDue(long nowMillis) {
+        return lastSyncMillis == 0 || nowMillis < lastSyncMillis || nowMillis - lastSyncMillis >= intervalMillis;
+    }
+
+    /**
+     * Records a finished sync and adapts the interval to what it found.
+     *
+     * @param nowMillis When the sync finished.
+     * @param changed Whether the sync fetched anything new or ran out of budget.
+     */
+    public void onSynced(long nowMillis, boolean changed) {
+        lastSyncMillis = nowMillis;
+        intervalMillis = changed ? MIN_INTERVAL_MILLIS : Math.min(MAX_INTERVAL_MILLIS, intervalMillis * 2);
+    }
+
+    /**
+     * Returns when the last sync finished, or 0 if it never ran.
+     */
+    public long getLastSyncMillis() {
+        return lastSyncMillis;
+    }
+
+    /**
+     * Returns the current interval between two syncs.
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * The Throttle class coalesces bursts of signals, e.g. keystrokes or lifecycle events,
+ * into writes spaced at least a floor interval apart. The first signal after a quiet
+ * period fires right away (leading edge); signals inside the floor are folded into a
+ * single trailing fire once the floor has passed (trailing edge). However fast signals
+ * arrive, the action runs at most once per floor.
+ *
+ * Not thread-safe; signals and timer tasks must arrive on the same thread, e.g. the main thread.
+ */
+package com.example.chatapp.utilities;
+
+import java.util.function.LongSupplier;
+
+public final class Throttle {
+
+    /**
+     * The throttled action.
+     */
+    public interface Action {
+        /**
+         * Runs the action for the signals received since the previous run.
+         *
+         * @param lastSignalAgeMillis How long ago the newest of those signals arrived.
+         */
+        void run(long lastSignalAgeMillis);
+    }
+
+    /**
+     * Runs delayed tasks, e.g. a Handler on the main thread.
+     */
+    public interface Timer {
+        /**
+         * Runs a task after a delay, on the thread signals arrive on.
+         *
+         * @param task The task to run.
+         * @param delayMillis The delay in milliseconds.
+         */
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    private final long floorMillis;
+    private final Action action;
+    private final Timer timer;
+    private final LongSupplier clockMillis;
+
+    private long lastFireMillis = Long.MIN_VALUE;
+    private long lastSignalMillis = Long.MIN_VALUE;
+    private boolean trailingPending;
+
+    /**
+     * Incremented by cancel(), so a trailing task scheduled before it does nothing.
+     */
+    private int generation;
+
+    /**
+     * Creates a throttle timed by the uptime clock.
+     *
+     * @param floorMillis Minimum time between two runs of the action.
+     * @param action The throttled action.
+     * @param timer Runs the trailing edge.
+     */
+    public Throttle(long floorMillis, Action action, Timer timer) {
+        this(floorMillis, action, timer, () -> System.nanoTime() / 1_000_000);
+    }
+
+    /**
+     * Creates a throttle timed by the given clock.
+     *
+     * @param floorMillis Minimum time between two runs of the action.
+     * @param action The throttled action.
+     * @param timer Runs the trailing edge.
+     * @param clockMillis Monotonic clock in milliseconds.
+     */
+    public Throttle(long floorMillis, Action action, Timer timer, LongSupplier clockMillis) {
+        this.floorMillis = floorMillis;
+        this.action = action;
+        this.timer = timer;
+        this.clockMillis = clockMillis;
+    }
+
+    /**
+     * Signals an event. Runs the action now if the floor has passed, otherwise once it has.
+     */
+    public void signal() {
+        long now = clockMillis.getAsLong();
+        lastSignalMillis = now;
+        if (trailingPending) {
+            return; // Folded into the scheduled trailing run
+        }
+        long remaining = lastFireMillis == Long.MIN_VALUE ? 0 : lastFireMillis + floorMillis - now;
+        if (remaining <= 0) {
+            fire(now);
+            return;
+        }
+        trailingPending = true;
+        int scheduledGeneration = generation;
+        timer.schedule(() -> {
+            if (scheduledGeneration == generation) {
+                trailingPending = false;
+                fire(clockMillis.getAsLong());
+            }
+        }, remaining);
+    }
+
+    /**
+     * Drops a pending trailing run, e.g. when what was signalled is over.
+     * The floor still applies to the next signal.
+     */
+    public void cancel() {
+        generation++;
+        trailingPending = false;
+    }
+
+    private void fire(long now) {
+        lastFireMillis = now;
+        action.run(now - lastSignalMillis);
+    }
+}
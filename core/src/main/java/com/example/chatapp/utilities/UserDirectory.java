@@ -0,0 +1,32 @@
+/**
+ * The UserDirectory class builds the list of contacts shown on the user screen.
+ */
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.modules.User;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class UserDirectory {
+
+    private UserDirectory() {
+    }
+
+    /**
+     * Returns every user except the signed-in one, keeping the backend order.
+     *
+     * @param users All registered users.
+     * @param currentUserId The ID of the signed-in user.
+     * @return The contacts the signed-in user can chat with.
+     */
+    public static List<User> contactsOf(List<User> users, String currentUserId) {
+        List<User> contacts = new ArrayList<>(users.size());
+        for (User user : users) {
+            if (!user.id.equals(currentUserId)) {
+                contacts.add(user);
+            }
+        }
+        return contacts;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.chatapp.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.example.chatapp.crypto.ConversationKeys;
+import com.example.chatapp.crypto.IdentityKeys;
+import com.example.chatapp.crypto.MessageCipher;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.utilities.ConversationIds;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import javax.crypto.SecretKey;
+
+public class EncryptingChatBackendTest {
+
+    private final InMemoryChatBackend store = new InMemoryChatBackend();
+
+    /**
+     * Tasks handed to the decrypt executor, run when the test says so.
+     */
+    private final Queue<Runnable> decryptTasks = new ArrayDeque<>();
+
+    private ConversationKeys aliceConversations;
+    private ChatBackend alice;
+    private ChatBackend bob;
+    private String conversationId;
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        KeyPair aliceKeys = IdentityKeys.generate();
+        KeyPair bobKeys = IdentityKeys.generate();
+        conversationId = ConversationIds.of("alice", "bob");
+        aliceConversations = new ConversationKeys(
+                IdentityKeys.decodePrivate(IdentityKeys.encodePrivate(aliceKeys.getPrivate())));
+        aliceConversations.setPeer(conversationId, IdentityKeys.encodePublic(bobKeys.getPublic()));
+        ConversationKeys bobConversations = new ConversationKeys(bobKeys.getPrivate());
+        bobConversations.setPeer(conversationId, IdentityKeys.encodePublic(aliceKeys.getPublic()));
+        alice = new EncryptingChatBackend(store, aliceConversations, decryptTasks::add, Runnable::run);
+        bob = new EncryptingChatBackend(store, bobConversations, decryptTasks::add, Runnable::run);
+    }
+
+    @Test
+    public void storeOnlySeesCiphertext() {
+        ChatMessage message = send(alice, "alice", "meet at noon");
+        assertEquals("meet at noon", message.message); // The caller's message is left alone
+
+        List<String> stored = texts(store);
+        assertEquals(1, stored.size());
+        assertTrue(MessageCipher.isEncrypted(stored.get(0)));
+        assertFalse(stored.get(0).contains("noon"));
+        assertEquals("meet at noon", texts(bob).get(0));
+    }
+
+    @Test
+    public void editsAreEncryptedToo() {
+        send(alice, "alice", "draft");
+        List<MessageChange> received = new ArrayList<>();
+        bob.listenMessages(conversationId, recording(received));
+        alice.editMessage(received.get(0).message, "final", failOnError());
+        assertEquals(MessageChange.Type.MODIFIED, received.get(1).type);
+        assertEquals("final", received.get(1).message.message);
+        assertTrue(MessageCipher.isEncrypted(texts(store).get(0)));
+    }
+
+    @Test
+    public void plaintextPassesAndForgedCiphertextIsUnreadable() throws GeneralSecurityException {
+        send(store, "bob", "sent before encryption");
+        // Encrypted by alice under the right key, then passed off as bob's
+        ChatMessage forged = new ChatMessage();
+        forged.senderId = "bob";
+        forged.receiverId = "alice";
+        SecretKey key = aliceConversations.keyFor(conversationId);
+        forged.message = MessageCipher.encrypt(key, "forged", conversationId, "alice");
+        store.sendMessage(forged, failOnError());
+
+        List<String> texts = texts(alice);
+        assertEquals("sent before encryption", texts.get(0));
+        assertEquals(EncryptingChatBackend.UNREADABLE, texts.get(1));
+    }
+
+    @Test
+    public void largeBatchesAreDecryptedOffThreadInOrder() {
+        for (int i = 0; i < EncryptingChatBackend.OFF_THREAD_BATCH; i++) {
+            send(alice, "alice", "message " + i);
+        }
+        List<MessageChange> received = new ArrayList<>();
+        bob.listenMessages(conversationId, recording(received));
+        send(alice, "alice", "live"); // Queues behind the initial batch instead of overtaking it
+        assertTrue(received.isEmpty());
+        assertEquals(2, decryptTasks.size());
+
+        while (!decryptTasks.isEmpty()) {
+            decryptTasks.poll().run();
+        }
+        assertEquals(EncryptingChatBackend.OFF_THREAD_BATCH + 1, received.size());
+        assertEquals("message 0", received.get(0).message.message);
+        assertEquals("live", received.get(received.size() - 1).message.message);
+    }
+
+    private static ChatMessage send(ChatBackend backend, String senderId, String text) {
+        ChatMessage message = new ChatMessage();
+        message.senderId = senderId;
+        message.receiverId = senderId.equals("alice") ? "bob" : "alice";
+        message.message = text;
+        backend.sendMessage(message, failOnError());
+        return message;
+    }
+
+    private List<String> texts(ChatBackend backend) {
+        List<MessageChange> changes = new ArrayList<>();
+        backend.listenMessages(conversationId, recording(changes)).remove();
+        List<String> texts = new ArrayList<>();
+        for (MessageChange change : changes) {
+            texts.add(change.message.message);
+        }
+        return texts;
+    }
+
+    private static MessageListener recording(List<MessageChange> changes) {
+        return new MessageListener() {
+            @Override
+            public void onMessages(List<MessageChange> batch) {
+                changes.addAll(batch);
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                fail(exception.toString());
+            }
+        };
+    }
+
+    private static Callback<Void> failOnError() {
+        return new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                fail(exception.toString());
+            }
+        };
+    }
+}
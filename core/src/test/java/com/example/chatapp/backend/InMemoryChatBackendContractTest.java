@@ -0,0 +1,9 @@
+package com.example.chatapp.backend;
+
+public class InMemoryChatBackendContractTest extends ChatBackendContract {
+
+    @Override
+    protected ChatBackend createBackend() {
+        return new InMemoryChatBackend();
+    }
+}
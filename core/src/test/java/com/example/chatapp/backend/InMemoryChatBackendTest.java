@@ -0,0 +1,315 @@
+package com.example.chatapp.backend;
+
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.Group;
+import com.example.chatapp.utilities.ConversationIds;
+import com.example.chatapp.utilities.MessageList;
+import com.example.chatapp.utilities.SequenceTracker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryChatBackendTest {
+
+    @Test
+    public void listenerSeesHistoryThenNewMessagesInOrderDespiteJitter() throws Exception {
+        InMemoryChatBackend backend = new InMemoryChatBackend(Executors.newSingleThreadExecutor(), 200, 2000);
+        send(backend, "history");
+
+        int sent = 50;
+        List<String> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(sent + 1);
+        backend.listenMessages(ConversationIds.of("alice", "bob"), new MessageListener() {
+            @Override
+            public void onMessages(List<MessageChange> changes) {
+                for (MessageChange change : changes) {
+                    received.add(change.message.message);
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onError(Exception exception) {
+            }
+        });
+        for (int i = 0; i < sent; i++) {
+            send(backend, "message " + i);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("history", received.get(0));
+        for (int i = 0; i < sent; i++) {
+            assertEquals("message " + i, received.get(i + 1));
+        }
+        backend.shutdown();
+    }
+
+    @Test
+    public void assignsSequenceNumbersAndFetchesRanges() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        for (int i = 0; i < 5; i++) {
+            send(backend, "message " + i);
+        }
+        List<ChatMessage> after = new ArrayList<>();
+        backend.getMessagesAfter(ConversationIds.of("alice", "bob"), 3, new Callback<List<ChatMessage>>() {
+            @Override
+            public void onSuccess(List<ChatMessage> result) {
+                after.addAll(result);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+            }
+        });
+        assertEquals(2, after.size());
+        assertEquals(4, after.get(0).seq);
+        assertEquals("message 4", after.get(1).message);
+    }
+
+    @Test
+    public void editsAndUnsendsArriveAsModifiedMessages() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        send(backend, "first");
+        send(backend, "second");
+        List<MessageChange> received = new ArrayList<>();
+        backend.listenMessages(ConversationIds.of("alice", "bob"), new MessageListener() {
+            @Override
+            public void onMessages(List<MessageChange> changes) {
+                received.addAll(changes);
+            }
+
+            @Override
+            public void onError(Exception exception) {
+            }
+        });
+        Callback<Void> ignore = new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+            }
+        };
+        backend.editMessage(received.get(0).message, "first, edited", ignore);
+        backend.unsendMessage(received.get(1).message, ignore);
+
+        assertEquals(4, received.size());
+        MessageChange edit = received.get(2);
+        assertEquals(MessageChange.Type.MODIFIED, edit.type);
+        assertEquals(received.get(0).message.id, edit.message.id);
+        assertEquals("first, edited", edit.message.message);
+        assertTrue(edit.message.editedAt != null);
+        MessageChange unsend = received.get(3);
+        assertEquals(MessageChange.Type.MODIFIED, unsend.type);
+        assertEquals("", unsend.message.message);
+        assertTrue(unsend.message.deletedAt != null);
+
+        // Unsending keeps the edit date of the stored message, whatever the caller passes, as the gateway does
+        ChatMessage target = new ChatMessage();
+        target.id = edit.message.id;
+        target.conversationId = ConversationIds.of(edit.message);
+        backend.unsendMessage(target, ignore);
+        assertEquals(edit.message.editedAt, received.get(4).message.editedAt);
+    }
+
+    @Test
+    public void resyncClosesTheGapLeftByADeletedTombstone() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        String conversationId = ConversationIds.of("alice", "bob");
+        send(backend, "first");
+        send(backend, "unsent");
+        send(backend, "third");
+        List<ChatMessage> stored = messagesAfter(backend, conversationId, 0);
+        backend.unsendMessage(stored.get(1), new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+            }
+        });
+        backend.deleteExpiredTombstones(System.currentTimeMillis() + MessageList.TOMBSTONE_RETENTION_MILLIS + 1);
+
+        // A client that opens the conversation now never receives sequence number 2
+        SequenceTracker tracker = new SequenceTracker();
+        for (ChatMessage message : messagesAfter(backend, conversationId, 0)) {
+            tracker.accept(message.seq);
+        }
+        assertTrue(tracker.hasGap());
+
+        long upTo = tracker.getHighest();
+        Set<Long> fetched = new HashSet<>();
+        for (ChatMessage message : messagesAfter(backend, conversationId, tracker.getContiguous())) {
+            fetched.add(message.seq);
+        }
+        tracker.resynced(upTo, fetched);
+        assertFalse(tracker.hasGap()); // So no further resync is scheduled
+        assertEquals(3, tracker.getContiguous());
+    }
+
+    @Test
+    public void everyGroupMemberReceivesTheSingleStoredMessage() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        Group group = new Group();
+        group.name = "everyone";
+        for (int i = 0; i < Group.MAX_MEMBERS; i++) {
+            group.members.add("member" + i);
+        }
+        List<Group> created = new ArrayList<>();
+        backend.createGroup(group, new Callback<Group>() {
+            @Override
+            public void onSuccess(Group result) {
+                created.add(result);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+            }
+        });
+        assertEquals(1, created.size());
+
+        int[] received = new int[Group.MAX_MEMBERS];
+        for (int i = 0; i < Group.MAX_MEMBERS; i++) {
+            int member = i;
+            backend.listenMessages(group.id, new MessageListener() {
+                @Override
+                public void onMessages(List<MessageChange> changes) {
+                    for (MessageChange change : changes) {
+                        assertEquals(group.id, change.message.conversationId);
+                        received[member]++;
+                    }
+                }
+
+                @Override
+                public void onError(Exception exception) {
+                }
+            });
+        }
+        ChatMessage message = new ChatMessage();
+        message.conversationId = group.id;
+        message.senderId = "member0";
+        message.message = "hello";
+        backend.sendMessage(message, new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+            }
+        });
+
+        for (int count : received) {
+            assertEquals(1, count);
+        }
+        List<Group> groups = new ArrayList<>();
+        backend.getGroups("member499", new Callback<List<Group>>() {
+            @Override
+            public void onSuccess(List<Group> result) {
+                groups.addAll(result);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+            }
+        });
+        assertEquals(1, groups.size());
+        assertEquals(Group.MAX_MEMBERS, groups.get(0).members.size());
+    }
+
+    @Test
+    public void unreadCountsFollowTheReadCursor() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        String conversationId = ConversationIds.of("alice", "bob");
+        send(backend, "first");
+        send(backend, "second");
+        assertEquals(Long.valueOf(2), unreadCounts(backend, "bob").get(conversationId));
+        assertTrue(unreadCounts(backend, "alice").isEmpty());
+
+        List<Date> bobCursors = new ArrayList<>();
+        backend.listenReadCursors(conversationId, new ReadCursorListener() {
+            @Override
+            public void onReadCursors(Map<String, Date> cursors) {
+                bobCursors.add(cursors.get("bob"));
+            }
+
+            @Override
+            public void onError(Exception exception) {
+            }
+        });
+        backend.markRead(conversationId, "bob", new Date(), new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+            }
+        });
+        assertTrue(unreadCounts(backend, "bob").isEmpty());
+        assertEquals(2, bobCursors.size());
+    }
+
+    private static List<ChatMessage> messagesAfter(ChatBackend backend, String conversationId, long afterSeq) {
+        List<ChatMessage> messages = new ArrayList<>();
+        backend.getMessagesAfter(conversationId, afterSeq, new Callback<List<ChatMessage>>() {
+            @Override
+            public void onSuccess(List<ChatMessage> result) {
+                messages.addAll(result);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+            }
+        });
+        return messages;
+    }
+
+    private static Map<String, Long> unreadCounts(ChatBackend backend, String userId) {
+        Map<String, Long> counts = new HashMap<>();
+        backend.getUnreadCounts(userId, new Callback<Map<String, Long>>() {
+            @Override
+            public void onSuccess(Map<String, Long> result) {
+                counts.putAll(result);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+            }
+        });
+        return counts;
+    }
+
+    private static void send(ChatBackend backend, String text) {
+        ChatMessage message = new ChatMessage();
+        message.senderId = "alice";
+        message.receiverId = "bob";
+        message.message = text;
+        backend.sendMessage(message, new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+            }
+        });
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.chatapp.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.chatapp.modules.ChatMessage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+public class OutboxTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tasks handed to the outbox's thread, run when the test says so.
+     */
+    private final Queue<Runnable> ioTasks = new ArrayDeque<>();
+
+    @Test
+    public void messagesAreSentInOrderAndSurviveARestart() {
+        Outbox outbox = open();
+        outbox.add(message("m1", "c1", "first"));
+        outbox.add(message("m2", "c2", "second"));
+        outbox.add(message("m3", "c1", "third"));
+        assertEquals(1, ioTasks.size()); // All three share one write
+        runIo();
+
+        Outbox reopened = open();
+        assertEquals("m1", reopened.next().id);
+        reopened.remove("m1");
+        assertEquals("m2", reopened.next().id);
+        List<ChatMessage> conversation = reopened.messages("c1");
+        assertEquals(1, conversation.size());
+        assertEquals("third", conversation.get(0).message);
+        assertTrue(conversation.get(0).pending);
+    }
+
+    @Test
+    public void givenUpMessagesStayUntilRetriedBehindTheRest() {
+        Outbox outbox = open();
+        outbox.add(message("m1", "c1", "first"));
+        outbox.add(message("m2", "c1", "second"));
+        assertEquals(1, outbox.recordAttempt("m1"));
+        outbox.markFailed("m1");
+        assertEquals("m2", outbox.next().id);
+        assertTrue(outbox.messages("c1").get(0).failed);
+
+        outbox.remove("m2");
+        assertFalse(outbox.hasUnsent()); // A given-up message does not hold new ones back
+        outbox.retry("m1");
+        assertEquals("m1", outbox.next().id);
+        runIo();
+        assertFalse(open().messages("c1").get(0).failed);
+    }
+
+    @Test
+    public void emptyOutboxLeavesNoFile() {
+        Outbox outbox = open();
+        outbox.add(message("m1", "c1", "first"));
+        runIo();
+        outbox.remove("m1");
+        runIo();
+        assertNull(open().next());
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void listenersHearEveryChange() {
+        Outbox outbox = open();
+        int[] changes = new int[1];
+        Registration registration = outbox.listen(() -> changes[0]++);
+        outbox.add(message("m1", "c1", "first"));
+        outbox.markFailed("m1");
+        registration.remove();
+        outbox.remove("m1");
+        assertEquals(2, changes[0]);
+    }
+
+    /**
+     * Creates an outbox and loads it, so its methods do not wait for a task nobody runs.
+     */
+    private Outbox open() {
+        Outbox outbox = new Outbox(folder.getRoot(), ioTasks::add, Runnable::run);
+        outbox.load();
+        runIo();
+        return outbox;
+    }
+
+    private void runIo() {
+        while (!ioTasks.isEmpty()) {
+            ioTasks.poll().run();
+        }
+    }
+
+    private static ChatMessage message(String id, String conversationId, String text) {
+        ChatMessage message = new ChatMessage();
+        message.id = id;
+        message.conversationId = conversationId;
+        message.senderId = "alice";
+        message.message = text;
+        return message;
+    }
+}
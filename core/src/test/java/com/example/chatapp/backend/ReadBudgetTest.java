@@ -0,0 +1,135 @@
+package com.example.chatapp.backend;
+
+import static com.example.chatapp.backend.ChatBackendContract.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.chatapp.metrics.MetricsRegistry;
+import com.example.chatapp.metrics.Usage;
+import com.example.chatapp.metrics.UsageMeter;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.utilities.ConversationIds;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays the backend calls each screen makes and fails when a screen reads more
+ * documents than its budget, e.g. because a change scans a whole collection.
+ */
+public class ReadBudgetTest {
+
+    private static final int USERS = 200;
+    private static final int MESSAGES_PER_CONVERSATION = 50;
+
+    /**
+     * Sign-in queries a single user by email and password.
+     */
+    private static final int SIGN_IN_BUDGET = 1;
+
+    /**
+     * The user list reads every registered user once.
+     */
+    private static final int USER_LIST_BUDGET = USERS;
+
+    /**
+     * Opening a chat reads only the messages of that conversation.
+     */
+    private static final int CHAT_OPEN_BUDGET = MESSAGES_PER_CONVERSATION;
+
+    private UsageMeter meter;
+    private InMemoryChatBackend backend;
+    private final List<User> users = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        meter = new UsageMeter(new MetricsRegistry());
+        backend = new InMemoryChatBackend(Runnable::run, 0, 0, meter);
+        meter.enterScreen("SignUpActivity");
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.name = "User " + i;
+            user.email = "user" + i + "@example.com";
+            users.add(await(callback -> backend.signUp(user, "password", callback)));
+        }
+        // Every user has a conversation with the next one, so other conversations exist too
+        for (int i = 0; i < USERS; i++) {
+            for (int m = 0; m < MESSAGES_PER_CONVERSATION; m++) {
+                ChatMessage message = new ChatMessage();
+                message.senderId = users.get(m % 2 == 0 ? i : (i + 1) % USERS).id;
+                message.receiverId = users.get(m % 2 == 0 ? (i + 1) % USERS : i).id;
+                message.message = "message " + m;
+                ChatBackendContract.<Void>await(callback -> backend.sendMessage(message, callback));
+            }
+        }
+        meter.startSession();
+    }
+
+    @Test
+    public void signInStaysWithinBudget() throws Exception {
+        meter.enterScreen("SignInActivity");
+        User user = await(callback -> backend.signIn("user7@example.com", "password", callback));
+        assertEquals(users.get(7).id, user.id);
+        assertWithinBudget(meter.screen("SignInActivity"), SIGN_IN_BUDGET);
+    }
+
+    @Test
+    public void failedSignInIsStillBilled() throws Exception {
+        meter.enterScreen("SignInActivity");
+        ChatBackendContract.<User>await(callback -> backend.signIn("user7@example.com", "wrong", callback));
+        assertEquals(1, meter.screen("SignInActivity").getServerReads());
+    }
+
+    @Test
+    public void userListStaysWithinBudget() throws Exception {
+        meter.enterScreen("userActivity");
+        List<User> all = await(backend::getUsers);
+        assertEquals(USERS, all.size());
+        assertWithinBudget(meter.screen("userActivity"), USER_LIST_BUDGET);
+    }
+
+    @Test
+    public void openingChatStaysWithinBudget() {
+        meter.enterScreen("ChatActivity");
+        List<MessageChange> received = new ArrayList<>();
+        Registration registration = backend.listenMessages(
+                ConversationIds.of(users.get(3).id, users.get(4).id), new MessageListener() {
+                    @Override
+                    public void onMessages(List<MessageChange> changes) {
+                        received.addAll(changes);
+                    }
+
+                    @Override
+                    public void onError(Exception exception) {
+                        throw new AssertionError(exception);
+                    }
+                });
+        registration.remove();
+        assertEquals(MESSAGES_PER_CONVERSATION, received.size());
+        assertWithinBudget(meter.screen("ChatActivity"), CHAT_OPEN_BUDGET);
+    }
+
+    @Test
+    public void sendingReadsSummaryThenWritesMessageAndSummary() throws Exception {
+        meter.enterScreen("ChatActivity");
+        ChatMessage message = new ChatMessage();
+        message.senderId = users.get(0).id;
+        message.receiverId = users.get(1).id;
+        message.message = "hello";
+        ChatBackendContract.<Void>await(callback -> backend.sendMessage(message, callback));
+        Usage usage = meter.screen("ChatActivity");
+        // The transaction reads the summary for the next sequence number
+        assertEquals(1, usage.getDocumentsRead());
+        assertEquals(2, usage.getDocumentsWritten());
+        assertEquals(2, meter.session().getDocumentsWritten());
+    }
+
+    private static void assertWithinBudget(Usage usage, int budget) {
+        assertTrue(usage + " exceeds its budget of " + budget + " reads", usage.getServerReads() <= budget);
+        assertTrue(usage.getBytesRead() > 0);
+    }
+}
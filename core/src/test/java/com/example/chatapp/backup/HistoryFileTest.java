@@ -0,0 +1,139 @@
+package com.example.chatapp.backup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.example.chatapp.modules.ChatMessage;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class HistoryFileTest {
+
+    @Test
+    public void roundTripsConversationsAndMessages() throws Exception {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (HistoryWriter writer = new HistoryWriter(file)) {
+            writer.writeConversation(header("a_b", null, "a", "b"));
+            ChatMessage edited = message("m1", "quote \" backslash \\ newline \n tab \t bell \u0007 emoji \ud83d\ude00", 1);
+            edited.editedAt = new Date(1_700_000_001_000L);
+            writer.writeMessage(edited);
+            ChatMessage unsent = message("m2", "", 2);
+            unsent.deletedAt = new Date(1_700_000_002_000L);
+            writer.writeMessage(unsent);
+            writer.writeConversation(header("g1", "friends", "a", "b", "c"));
+            ChatMessage legacy = message("m3", "no sequence number", 0);
+            legacy.receiverId = null;
+            writer.writeMessage(legacy);
+            assertEquals(2, writer.getConversationCount());
+            assertEquals(3, writer.getMessageCount());
+        }
+
+        List<ConversationHeader> headers = new ArrayList<>();
+        List<ChatMessage> messages = new ArrayList<>();
+        read(file.toByteArray(), headers, messages);
+
+        assertEquals(2, headers.size());
+        assertEquals(Arrays.asList("a", "b"), headers.get(0).participants);
+        assertNull(headers.get(0).groupName);
+        assertEquals("friends", headers.get(1).groupName);
+        assertEquals(3, messages.size());
+        ChatMessage first = messages.get(0);
+        assertEquals("a_b", first.conversationId);
+        assertEquals("quote \" backslash \\ newline \n tab \t bell \u0007 emoji \ud83d\ude00", first.message);
+        assertEquals(1, first.seq);
+        assertEquals(new Date(1_700_000_000_001L), first.dateObject);
+        assertEquals(new Date(1_700_000_001_000L), first.editedAt);
+        assertEquals(new Date(1_700_000_002_000L), messages.get(1).deletedAt);
+        assertEquals("g1", messages.get(2).conversationId);
+        assertNull(messages.get(2).receiverId);
+        assertEquals(0, messages.get(2).seq);
+    }
+
+    @Test
+    public void streamsLongHistories() throws Exception {
+        int count = 100_000;
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (HistoryWriter writer = new HistoryWriter(file)) {
+            writer.writeConversation(header("a_b", null, "a", "b"));
+            for (int i = 1; i <= count; i++) {
+                writer.writeMessage(message("m" + i, "message " + i, i));
+            }
+        }
+        long[] seen = new long[2];
+        try (HistoryReader reader = new HistoryReader(new ByteArrayInputStream(file.toByteArray()))) {
+            reader.read(new HistoryHandler() {
+                @Override
+                public void onConversation(ConversationHeader header) {
+                }
+
+                @Override
+                public void onMessage(ChatMessage message) {
+                    seen[0]++;
+                    seen[1] += message.seq;
+                }
+            });
+        }
+        assertEquals(count, seen[0]);
+        assertEquals((long) count * (count + 1) / 2, seen[1]);
+    }
+
+    @Test
+    public void rejectsMessagesOutsideAConversation() throws Exception {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(file)) {
+            out.write("{\"type\":\"message\",\"id\":\"m1\"}\n".getBytes("UTF-8"));
+        }
+        try {
+            read(file.toByteArray(), new ArrayList<>(), new ArrayList<>());
+            fail("A message before any conversation must be rejected");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    private static void read(byte[] file, List<ConversationHeader> headers, List<ChatMessage> messages)
+            throws Exception {
+        try (HistoryReader reader = new HistoryReader(new ByteArrayInputStream(file))) {
+            reader.read(new HistoryHandler() {
+                @Override
+                public void onConversation(ConversationHeader header) {
+                    headers.add(header);
+                }
+
+                @Override
+                public void onMessage(ChatMessage message) {
+                    messages.add(message);
+                }
+            });
+        }
+    }
+
+    private static ConversationHeader header(String id, String groupName, String... participants) {
+        ConversationHeader header = new ConversationHeader();
+        header.id = id;
+        header.groupName = groupName;
+        header.participants.addAll(Arrays.asList(participants));
+        return header;
+    }
+
+    private static ChatMessage message(String id, String text, long seq) {
+        ChatMessage message = new ChatMessage();
+        message.id = id;
+        message.senderId = "a";
+        message.receiverId = "b";
+        message.message = text;
+        message.seq = seq;
+        message.dateObject = new Date(1_700_000_000_000L + Math.max(seq, 1));
+        return message;
+    }
+}
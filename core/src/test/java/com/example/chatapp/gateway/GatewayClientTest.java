@@ -0,0 +1,221 @@
+package com.example.chatapp.gateway;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.MessageChange;
+import com.example.chatapp.backend.MessageListener;
+import com.example.chatapp.modules.ChatMessage;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class GatewayClientTest {
+
+    /**
+     * Records every frame sent; frames are dropped while disconnected.
+     */
+    private final List<GatewayFrame> sent = new ArrayList<>();
+    private boolean connected = true;
+    private final GatewayClient client = new GatewayClient(frame -> {
+        if (!connected) {
+            return false;
+        }
+        try {
+            sent.add(GatewayFrame.decode(frame));
+        } catch (IOException exception) {
+            throw new AssertionError(exception);
+        }
+        return true;
+    }, Runnable::run);
+
+    @Test
+    public void framesSurviveEncoding() throws IOException {
+        ChatMessage message = message(7, "h\u00e9llo \u2713");
+        message.editedAt = new Date(1234);
+        GatewayFrame frame = GatewayFrame.decode(GatewayFrame.changes(3,
+                Collections.singletonList(new MessageChange(MessageChange.Type.MODIFIED, message))).encode());
+        assertEquals(GatewayFrame.CHANGES, frame.type);
+        assertEquals(3, frame.id);
+        MessageChange change = frame.changes.get(0);
+        assertEquals(MessageChange.Type.MODIFIED, change.type);
+        assertEquals("h\u00e9llo \u2713", change.message.message);
+        assertEquals(7, change.message.seq);
+        assertEquals(new Date(1234), change.message.editedAt);
+        assertNull(change.message.deletedAt);
+        assertNull(change.message.receiverId);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFramesAreRejected() throws IOException {
+        byte[] frame = GatewayFrame.edit(1, "c", "m", "text").encode();
+        GatewayFrame.decode(Arrays.copyOf(frame, frame.length - 2));
+    }
+
+    @Test
+    public void responsesCompleteTheirRequest() {
+        List<Object> outcomes = new ArrayList<>();
+        client.sendMessage(message(0, "a"), recording(outcomes));
+        client.getMessagesAfter("c", 4, recording(outcomes));
+        GatewayFrame fetch = sent.get(1);
+        assertEquals(GatewayFrame.FETCH_AFTER, fetch.type);
+        assertEquals(4, fetch.afterSeq);
+
+        List<ChatMessage> missed = Collections.singletonList(message(5, "b"));
+        client.onFrame(GatewayFrame.messages(fetch.id, missed).encode());
+        client.onFrame(GatewayFrame.ack(sent.get(0).id).encode());
+        assertEquals(2, outcomes.size());
+        assertEquals("b", ((ChatMessage) ((List<?>) outcomes.get(0)).get(0)).message);
+        assertEquals("ok", outcomes.get(1));
+    }
+
+    @Test
+    public void requestsWaitForTheConnectionAndFailWithIt() {
+        List<Object> outcomes = new ArrayList<>();
+        connected = false;
+        client.sendMessage(message(0, "a"), recording(outcomes));
+        assertTrue(outcomes.isEmpty());
+        connected = true;
+        client.onOpened();
+        assertEquals(GatewayFrame.SEND, sent.get(0).type);
+
+        client.sendMessage(message(0, "b"), recording(outcomes));
+        client.onClosed(new IOException("lost"));
+        assertEquals(2, outcomes.size());
+        assertTrue(outcomes.get(0) instanceof IOException);
+        assertTrue(outcomes.get(1) instanceof IOException);
+    }
+
+    @Test
+    public void aRequestMadeWhileTheConnectionOpensIsNotLeftBehind() throws Exception {
+        List<byte[]> frames = new ArrayList<>();
+        GatewayClient[] opening = new GatewayClient[1];
+        boolean[] open = new boolean[1];
+        opening[0] = new GatewayClient(frame -> {
+            if (open[0]) {
+                frames.add(frame);
+                return true;
+            }
+            // The connection opens right after this send failed, before the request is queued
+            Thread opener = new Thread(() -> {
+                open[0] = true;
+                opening[0].onOpened();
+            });
+            opener.start();
+            try {
+                opener.join(200); // Without the lock onOpened finishes here, with an empty queue
+            } catch (InterruptedException exception) {
+                throw new AssertionError(exception);
+            }
+            return false;
+        }, Runnable::run);
+        opening[0].sendMessage(message(0, "a"), recording(new ArrayList<>()));
+        for (int i = 0; i < 100 && frames.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, frames.size());
+        assertEquals(GatewayFrame.SEND, GatewayFrame.decode(frames.get(0)).type);
+    }
+
+    @Test
+    public void unansweredRequestsTimeOut() throws Exception {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        GatewayClient timing = new GatewayClient(frame -> true, Runnable::run, timer, 50);
+        List<Object> outcomes = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        timing.sendMessage(message(0, "a"), new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                outcomes.add("ok");
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                outcomes.add(exception);
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        timing.onFrame(GatewayFrame.ack(1).encode()); // Too late; the callback was told already
+        assertEquals(1, outcomes.size());
+        assertTrue(outcomes.get(0) instanceof TimeoutException);
+        timer.shutdown();
+    }
+
+    @Test
+    public void resubscribingDoesNotAddMessagesTwice() {
+        List<MessageChange.Type> types = new ArrayList<>();
+        client.listenMessages("c", new MessageListener() {
+            @Override
+            public void onMessages(List<MessageChange> changes) {
+                for (MessageChange change : changes) {
+                    types.add(change.type);
+                }
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                throw new AssertionError(exception);
+            }
+        });
+        long subscriptionId = sent.get(0).id;
+        client.onFrame(GatewayFrame.changes(subscriptionId, added(message(1, "a"), message(2, "b"))).encode());
+
+        client.onClosed(new IOException("lost"));
+        client.onOpened();
+        assertEquals(GatewayFrame.SUBSCRIBE, sent.get(1).type);
+        assertEquals(subscriptionId, sent.get(1).id);
+        client.onFrame(GatewayFrame.changes(subscriptionId,
+                added(message(1, "a"), message(2, "b"), message(3, "c"))).encode());
+
+        assertEquals(Arrays.asList(MessageChange.Type.ADDED, MessageChange.Type.ADDED,
+                MessageChange.Type.MODIFIED, MessageChange.Type.MODIFIED, MessageChange.Type.ADDED), types);
+    }
+
+    private static List<MessageChange> added(ChatMessage... messages) {
+        List<MessageChange> changes = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            changes.add(new MessageChange(MessageChange.Type.ADDED, message));
+        }
+        return changes;
+    }
+
+    private static ChatMessage message(long seq, String text) {
+        ChatMessage message = new ChatMessage();
+        message.id = "m" + seq;
+        message.conversationId = "c";
+        message.senderId = "u1";
+        message.message = text;
+        message.seq = seq;
+        message.dateObject = new Date(1000 + seq);
+        return message;
+    }
+
+    private static <T> Callback<T> recording(List<Object> outcomes) {
+        return new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                outcomes.add(result == null ? "ok" : result);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                outcomes.add(exception);
+            }
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.chatapp.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MemoryManagerTest {
+
+    private final MemoryManager manager = new MemoryManager();
+
+    /**
+     * Names of the components in the order they were trimmed.
+     */
+    private final List<String> trimmed = new ArrayList<>();
+
+    @Test
+    public void trimsEligibleComponentsEarliestFirst() {
+        FakeCache messages = register("messages", MemoryPressure.LOW, 4000);
+        FakeCache avatars = register("avatars", MemoryPressure.HIDDEN, 1000);
+        FakeCache keys = register("keys", MemoryPressure.CRITICAL, 10);
+
+        assertEquals(500, manager.onPressure(MemoryPressure.HIDDEN));
+        assertEquals(Arrays.asList("avatars"), trimmed);
+
+        trimmed.clear();
+        manager.onPressure(MemoryPressure.LOW);
+        assertEquals(Arrays.asList("avatars", "messages"), trimmed);
+        assertEquals(10, keys.bytes);
+
+        trimmed.clear();
+        manager.onPressure(MemoryPressure.CRITICAL);
+        assertEquals(Arrays.asList("avatars", "messages", "keys"), trimmed);
+        assertEquals(0, avatars.bytes + messages.bytes + keys.bytes);
+    }
+
+    @Test
+    public void reportsRetainedSizePerComponent() throws Exception {
+        register("messages", MemoryPressure.LOW, 4000);
+        register("avatars", MemoryPressure.HIDDEN, 1000);
+        register("messages", MemoryPressure.LOW, 2000);
+
+        assertEquals(Arrays.asList("avatars", "messages"), new ArrayList<>(manager.retained().keySet()));
+        assertEquals(6000L, (long) manager.retained().get("messages"));
+        StringBuilder json = new StringBuilder();
+        manager.writeJson(json);
+        assertEquals("{\"avatars\":1000,\"messages\":6000}", json.toString());
+    }
+
+    @Test
+    public void unregisteredComponentsAreLeftAlone() {
+        FakeCache avatars = register("avatars", MemoryPressure.HIDDEN, 1000);
+        manager.unregister(avatars);
+        assertEquals(0, manager.onPressure(MemoryPressure.CRITICAL));
+        assertTrue(trimmed.isEmpty());
+        assertTrue(manager.retained().isEmpty());
+    }
+
+    private FakeCache register(String name, MemoryPressure trimFrom, long bytes) {
+        FakeCache cache = new FakeCache(name, bytes);
+        manager.register(name, trimFrom, cache);
+        return cache;
+    }
+
+    /**
+     * Halves below critical pressure and empties at it.
+     */
+    private final class FakeCache implements Trimmable {
+        final String name;
+        long bytes;
+
+        FakeCache(String name, long bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long retainedBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void trim(MemoryPressure pressure) {
+            trimmed.add(name);
+            bytes = pressure == MemoryPressure.CRITICAL ? 0 : bytes / 2;
+        }
+    }
+}
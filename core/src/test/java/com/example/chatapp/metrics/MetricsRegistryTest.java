@@ -0,0 +1,40 @@
+package com.example.chatapp.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void reusesMetricsByName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        assertSame(registry.counter("a"), registry.counter("a"));
+        assertSame(registry.histogram("b"), registry.histogram("b"));
+    }
+
+    @Test
+    public void percentilesStayWithinBucketPrecision() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(50_000_000, histogram.getPercentile(50), 50_000_000 * 0.016);
+        assertEquals(99_000_000, histogram.getPercentile(99), 99_000_000 * 0.016);
+        assertEquals(100_000_000, histogram.getMax());
+    }
+
+    @Test
+    public void writesJsonSortedByName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("sent").add(3);
+        registry.histogram("ack").record(100);
+        assertEquals("{\"counters\":{\"sent\":3},\"histograms\":{\"ack\":"
+                        + "{\"count\":1,\"mean\":100,\"p50\":100,\"p90\":100,\"p99\":100,\"p999\":100,\"max\":100}}}",
+                registry.toJson());
+        registry.reset();
+        assertTrue(registry.toJson().contains("\"sent\":0"));
+    }
+}
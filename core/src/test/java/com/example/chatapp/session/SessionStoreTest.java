@@ -0,0 +1,164 @@
+package com.example.chatapp.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.example.chatapp.backend.Callback;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SessionStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tasks handed to the store's thread, run when the test says so.
+     */
+    private final Queue<Runnable> ioTasks = new ArrayDeque<>();
+
+    @Test
+    public void changesAreVisibleAtOnceAndWrittenOnceInTheBackground() {
+        SessionStore store = open();
+        store.signIn(new Session("u1", "Ada", null), "first");
+        store.signIn(new Session("u2", "Grace", "Hopper"), "second");
+        assertEquals("u2", store.get().userId); // Before anything was written
+        assertEquals(1, ioTasks.size()); // Both changes share one write
+        runIo();
+
+        Session session = open().get();
+        assertEquals("u2", session.userId);
+        assertEquals("Grace", session.name);
+        assertEquals("Hopper", session.lastName);
+        assertEquals("second", readAvatar(open()));
+    }
+
+    @Test
+    public void avatarIsNotPartOfTheSessionFile() {
+        SessionStore store = open();
+        String avatar = new String(new char[100_000]).replace('\0', 'A');
+        store.signIn(new Session("u1", "Ada", "Lovelace"), avatar);
+        runIo();
+        assertTrue(new File(folder.getRoot(), SessionStore.SESSION_FILE).length() < 64);
+        assertEquals(avatar.length(), new File(folder.getRoot(), SessionStore.AVATAR_FILE).length());
+    }
+
+    @Test
+    public void signOutDeletesSessionAndAvatar() {
+        SessionStore store = open();
+        store.signIn(new Session("u1", "Ada", null), "avatar");
+        runIo();
+        store.signOut();
+        assertFalse(store.get().isSignedIn());
+        runIo();
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void legacySessionIsMovedOnFirstLoad() {
+        RecordingLegacy legacy = new RecordingLegacy(new Session("u1", "Ada", null), "avatar");
+        SessionStore store = create();
+        store.load(legacy);
+        runIo();
+        assertEquals("u1", store.get().userId);
+        assertTrue(legacy.deleted);
+
+        // The next start finds the store's own files and never asks the old storage again
+        SessionStore reopened = create();
+        reopened.load(new RecordingLegacy(null, null));
+        runIo();
+        assertEquals("u1", reopened.get().userId);
+        assertEquals("avatar", readAvatar(reopened));
+    }
+
+    @Test
+    public void signInDuringLoadWins() {
+        SessionStore store = open();
+        store.signIn(new Session("old", "Old", null), null);
+        runIo();
+
+        SessionStore reopened = create();
+        reopened.load(null);
+        reopened.signIn(new Session("new", "New", null), null);
+        runIo();
+        assertEquals("new", reopened.get().userId);
+    }
+
+    private SessionStore create() {
+        return new SessionStore(folder.getRoot(), ioTasks::add, Runnable::run);
+    }
+
+    /**
+     * Creates a store and loads it, so reading the session does not wait for a task nobody runs.
+     */
+    private SessionStore open() {
+        SessionStore store = create();
+        store.load(null);
+        runIo();
+        return store;
+    }
+
+    private void runIo() {
+        while (!ioTasks.isEmpty()) {
+            ioTasks.poll().run();
+        }
+    }
+
+    private String readAvatar(SessionStore store) {
+        AtomicReference<String> avatar = new AtomicReference<>();
+        store.readAvatar(new Callback<String>() {
+            @Override
+            public void onSuccess(String result) {
+                avatar.set(result);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                fail(exception.toString());
+            }
+        });
+        assertNull(avatar.get());
+        runIo();
+        return avatar.get();
+    }
+
+    private static final class RecordingLegacy implements SessionStore.Legacy {
+
+        private final Session session;
+        private final String avatar;
+        boolean deleted;
+
+        RecordingLegacy(Session session, String avatar) {
+            this.session = session;
+            this.avatar = avatar;
+        }
+
+        @Override
+        public Session readSession() {
+            if (deleted) {
+                fail("Read after it was moved");
+            }
+            return session;
+        }
+
+        @Override
+        public String readAvatar() {
+            return avatar;
+        }
+
+        @Override
+        public void delete() {
+            deleted = true;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.chatapp.utilities;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.example.chatapp.backend.DocumentSizes;
+import com.example.chatapp.backend.FieldSource;
+import com.example.chatapp.backend.MessageMapper;
+import com.example.chatapp.modules.ChatMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Checks the bytes allocated per message on the paths that run for every message of every
+ * snapshot and every bind against budgets, so an allocation regression fails the build.
+ * Allocations are counted per thread by the JVM; on a JVM that cannot count them, the tests are skipped.
+ */
+public class AllocationBudgetTest {
+
+    private static final String CONVERSATION_ID = "alice_bob";
+    private static final int MESSAGES = 10_000;
+
+    /**
+     * Bytes per message for mapping a snapshot document and adding it to the list: the ChatMessage,
+     * its index entry and boxed position, and the list's amortized growth. Strings and dates are shared.
+     */
+    private static final long SNAPSHOT_BUDGET_BYTES = 256;
+
+    /**
+     * Bytes per bind for what a row computes on binding, given its message is in the same minute as the last.
+     */
+    private static final long BIND_BUDGET_BYTES = 0;
+
+    /**
+     * Bytes for formatting the timestamp of a new minute, which creates its display string.
+     */
+    private static final long MINUTE_FORMAT_BUDGET_BYTES = 1536;
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final List<FieldSource> documents = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        assumeTrue("Allocation counting is not supported by this JVM", THREADS != null);
+        long start = 1_700_000_000_000L;
+        for (int i = 0; i < MESSAGES; i++) {
+            documents.add(new Document("m" + i, i % 2 == 0 ? "alice" : "bob", "Message " + i,
+                    new Date(start + i * 1000L), i + 1));
+        }
+    }
+
+    @Test
+    public void snapshotHandlingStaysWithinBudget() {
+        handleSnapshot(); // Warm up, so class loading and compilation are not counted
+        long bytes = allocatedBytes(this::handleSnapshot);
+        assertBudget("snapshot handling", bytes, SNAPSHOT_BUDGET_BYTES);
+    }
+
+    @Test
+    public void bindingStaysWithinBudget() {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (FieldSource document : documents) {
+            messages.add(MessageMapper.toChatMessage(CONVERSATION_ID, document));
+        }
+        Date readerCursor = new Date();
+        // Sixty messages a minute, so each minute is formatted once and reused for the rest of it
+        Runnable bindAll = () -> {
+            for (ChatMessage message : messages) {
+                ReadableDateFormat.format(message.dateObject);
+                ReadReceipts.isSeen(message, readerCursor);
+            }
+        };
+        bindAll.run();
+        long bytes = allocatedBytes(bindAll);
+        long minutes = MESSAGES / 60 + 1;
+        assertBudget("binding", Math.max(0, bytes - minutes * MINUTE_FORMAT_BUDGET_BYTES), BIND_BUDGET_BYTES);
+    }
+
+    @Test
+    public void meteringAllocatesNothing() {
+        String path = "conversations/" + CONVERSATION_ID + "/messages/m0";
+        ChatMessage message = ((Document) documents.get(0)).message;
+        Runnable meterOne = () -> {
+            for (int i = 0; i < MESSAGES; i++) {
+                DocumentSizes.of(path, message);
+            }
+        };
+        meterOne.run();
+        assertBudget("metering", allocatedBytes(meterOne), 0);
+    }
+
+    /**
+     * Maps every document of a snapshot and shows it, as the chat screen does for its first snapshot.
+     */
+    private void handleSnapshot() {
+        MessageList list = new MessageList();
+        SequenceTracker tracker = new SequenceTracker();
+        for (FieldSource document : documents) {
+            ChatMessage message = MessageMapper.toChatMessage(CONVERSATION_ID, document);
+            if (tracker.accept(message.seq)) {
+                message.dateTime = ReadableDateFormat.format(message.dateObject);
+                list.add(message);
+            }
+        }
+    }
+
+    private static void assertBudget(String path, long bytes, long budgetPerMessage) {
+        long perMessage = bytes / MESSAGES;
+        assertTrue(path + " allocated " + perMessage + " bytes per message, over its budget of " + budgetPerMessage,
+                perMessage <= budgetPerMessage);
+    }
+
+    private static long allocatedBytes(Runnable work) {
+        long threadId = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        work.run();
+        return THREADS.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            Object bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+                return null;
+            }
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (!threads.isThreadAllocatedMemorySupported()) {
+                return null;
+            }
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        } catch (LinkageError e) {
+            return null; // Not a HotSpot-based JVM
+        }
+    }
+
+    /**
+     * A message document whose field values are created once, as a snapshot holds them.
+     */
+    private static final class Document implements FieldSource {
+        final ChatMessage message = new ChatMessage();
+        final Long seq;
+
+        Document(String id, String senderId, String text, Date timestamp, long seq) {
+            message.id = id;
+            message.senderId = senderId;
+            message.receiverId = senderId.equals("alice") ? "bob" : "alice";
+            message.message = text;
+            message.dateObject = timestamp;
+            message.seq = seq;
+            this.seq = seq;
+        }
+
+        @Override
+        public String getId() {
+            return message.id;
+        }
+
+        @Override
+        public String getString(String key) {
+            switch (key) {
+                case Constants.KEY_SENDER_ID:
+                    return message.senderId;
+                case Constants.KEY_RECEIVER_ID:
+                    return message.receiverId;
+                case Constants.KEY_MESSAGE:
+                    return message.message;
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public Date getDate(String key) {
+            return Constants.KEY_TIMESTAMP.equals(key) ? message.dateObject : null;
+        }
+
+        @Override
+        public Long getLong(String key) {
+            return Constants.KEY_SEQ.equals(key) ? seq : null;
+        }
+    }
+}
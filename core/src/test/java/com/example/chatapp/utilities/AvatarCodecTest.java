@@ -0,0 +1,37 @@
+package com.example.chatapp.utilities;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Checks AvatarCodec against the JDK decoders.
+ */
+public class AvatarCodecTest {
+
+    @Test
+    public void decodesEveryLengthAndPadding() {
+        Random random = new Random(1);
+        for (int length = 0; length < 300; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            assertArrayEquals(bytes, AvatarCodec.decode(Base64.getEncoder().encodeToString(bytes)));
+            assertArrayEquals(bytes, AvatarCodec.decode(Base64.getMimeEncoder().encodeToString(bytes) + "\n"));
+            assertArrayEquals(bytes, AvatarCodec.decode(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes)));
+        }
+    }
+
+    @Test
+    public void decodesNullAsEmpty() {
+        assertEquals(0, AvatarCodec.decode(null).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidCharacters() {
+        AvatarCodec.decode("abc*");
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.chatapp.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.chatapp.modules.ChatMessage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+public class MessageListTest {
+
+    private final MessageList list = new MessageList();
+
+    @Test
+    public void indexFollowsInsertsAndRemovals() {
+        list.add(message("a", 1));
+        list.add(message("c", 3));
+        assertEquals(1, list.add(message("b", 2)));
+        assertEquals(2, list.indexOf("c"));
+
+        assertEquals(0, list.remove("a"));
+        assertEquals(0, list.indexOf("b"));
+        assertEquals(1, list.indexOf("c"));
+        assertEquals(-1, list.indexOf("a"));
+    }
+
+    @Test
+    public void replaceTouchesOnlyTheEditedRow() {
+        for (int i = 1; i <= 100; i++) {
+            list.add(message("m" + i, i));
+        }
+        ChatMessage edited = message("m42", 42);
+        edited.message = "edited";
+        assertEquals(41, list.replace(edited));
+        assertEquals("edited", list.get(41).message);
+        assertEquals(-1, list.replace(message("missing", 7)));
+    }
+
+    @Test
+    public void removesOldestHistory() {
+        for (int i = 1; i <= 5; i++) {
+            list.add(message("m" + i, i));
+        }
+        list.replace(tombstone("m2", 2, 1000));
+        list.removeFirst(3);
+        assertEquals(2, list.size());
+        assertEquals(-1, list.indexOf("m1"));
+        assertEquals(0, list.indexOf("m4"));
+        assertEquals(0, list.getTombstoneCount());
+    }
+
+    @Test
+    public void compactsExpiredTombstones() {
+        for (int i = 1; i <= 5; i++) {
+            list.add(message("m" + i, i));
+        }
+        list.replace(tombstone("m2", 2, 1000));
+        list.replace(tombstone("m4", 4, 5000));
+        assertEquals(2, list.getTombstoneCount());
+
+        assertEquals(Collections.singletonList(1), list.compactTombstones(2000));
+        assertEquals(Arrays.asList(2), list.compactTombstones(6000));
+        assertEquals(3, list.size());
+        assertEquals(0, list.getTombstoneCount());
+        assertEquals(2, list.indexOf("m5"));
+        assertTrue(list.compactTombstones(10_000).isEmpty());
+    }
+
+    @Test
+    public void pendingMessagesStayBelowStoredOnes() {
+        list.add(message("m1", 1));
+        ChatMessage pending = message("p1", 0);
+        pending.pending = true;
+        pending.dateObject = new Date(1000);
+        list.add(pending);
+        assertEquals(1, list.add(message("m2", 2))); // Stored while the pending one waited
+        ChatMessage later = message("p2", 0);
+        later.pending = true;
+        later.dateObject = new Date(2000);
+        assertEquals(3, list.add(later));
+        assertEquals(2, list.indexOf("p1"));
+    }
+
+    private static ChatMessage message(String id, long seq) {
+        ChatMessage message = new ChatMessage();
+        message.id = id;
+        message.seq = seq;
+        message.message = id;
+        return message;
+    }
+
+    private static ChatMessage tombstone(String id, long seq, long deletedAtMillis) {
+        ChatMessage message = message(id, seq);
+        message.message = "";
+        message.deletedAt = new Date(deletedAtMillis);
+        return message;
+    }
+}
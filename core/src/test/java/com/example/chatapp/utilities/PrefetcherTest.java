@@ -0,0 +1,74 @@
+package com.example.chatapp.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PrefetcherTest {
+
+    /**
+     * Records started loads and lets the test finish them.
+     */
+    private final Map<String, Runnable> inFlight = new LinkedHashMap<>();
+    private final List<String> started = new ArrayList<>();
+
+    private final Prefetcher prefetcher = new Prefetcher((key, done) -> {
+        started.add(key);
+        inFlight.put(key, done);
+    }, 2, 10);
+
+    @Test
+    public void capsConcurrentLoads() {
+        prefetcher.request("a");
+        prefetcher.request("b");
+        prefetcher.request("c");
+        assertEquals(Arrays.asList("a", "b"), started);
+        assertEquals(1, prefetcher.getQueuedCount());
+
+        inFlight.remove("a").run();
+        assertEquals(Arrays.asList("a", "b", "c"), started);
+        assertTrue(prefetcher.isWarm("a"));
+    }
+
+    @Test
+    public void urgentRequestsJumpTheQueue() {
+        prefetcher.request("a");
+        prefetcher.request("b");
+        prefetcher.request("c");
+        prefetcher.request("d");
+        prefetcher.requestNow("d");
+        inFlight.remove("a").run();
+        assertEquals("d", started.get(2));
+    }
+
+    @Test
+    public void cancelledKeysNeverStart() {
+        prefetcher.request("a");
+        prefetcher.request("b");
+        prefetcher.request("c");
+        prefetcher.request("d");
+        prefetcher.cancel("c");
+        prefetcher.cancelAll();
+        inFlight.remove("a").run();
+        inFlight.remove("b").run();
+        assertEquals(Arrays.asList("a", "b"), started);
+    }
+
+    @Test
+    public void warmAndRunningKeysAreNotLoadedAgain() {
+        prefetcher.request("a");
+        prefetcher.requestNow("a");
+        inFlight.remove("a").run();
+        prefetcher.request("a");
+        assertEquals(Arrays.asList("a"), started);
+        assertFalse(prefetcher.isWarm("b"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.chatapp.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class ReadCursorTest {
+
+    private final List<Date> writes = new ArrayList<>();
+    private long nowMillis = 1000;
+    private final ReadCursor cursor = new ReadCursor(writes::add, 5000, () -> nowMillis);
+
+    @Test
+    public void writesOncePerIntervalHoweverManyMessagesArrive() {
+        for (int i = 1; i <= 100; i++) {
+            cursor.advance(new Date(i));
+            nowMillis += 10;
+        }
+        assertEquals(1, writes.size());
+        assertEquals(new Date(100), cursor.get());
+
+        cursor.flush();
+        assertEquals(2, writes.size());
+        assertEquals(new Date(100), writes.get(1));
+    }
+
+    @Test
+    public void heldBackValueIsWrittenOnceDue() {
+        assertEquals(0, cursor.advance(new Date(1)));
+        nowMillis += 2000;
+        assertEquals(3000, cursor.advance(new Date(2)));
+        assertFalse(cursor.flushIfDue());
+
+        nowMillis += 3000;
+        assertTrue(cursor.flushIfDue());
+        assertEquals(new Date(2), writes.get(1));
+    }
+
+    @Test
+    public void ignoresValuesThatAreNotNewer() {
+        cursor.restore(new Date(50));
+        assertEquals(-1, cursor.advance(new Date(50)));
+        assertEquals(-1, cursor.advance(new Date(10)));
+        cursor.flush();
+        assertTrue(writes.isEmpty());
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.chatapp.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class SequenceTrackerTest {
+
+    private final SequenceTracker tracker = new SequenceTracker();
+
+    @Test
+    public void inOrderNumbersLeaveNoGap() {
+        for (long seq = 1; seq <= 100; seq++) {
+            assertTrue(tracker.accept(seq));
+        }
+        assertFalse(tracker.hasGap());
+        assertEquals(100, tracker.getContiguous());
+    }
+
+    @Test
+    public void detectsAndClosesGaps() {
+        tracker.accept(1);
+        tracker.accept(2);
+        tracker.accept(5);
+        assertTrue(tracker.hasGap());
+        assertEquals(2, tracker.getContiguous());
+        assertEquals(5, tracker.getHighest());
+
+        // A resync fetches everything after 2, including 5 again
+        tracker.accept(3);
+        tracker.accept(4);
+        assertFalse(tracker.accept(5));
+        assertFalse(tracker.hasGap());
+        assertEquals(5, tracker.getContiguous());
+    }
+
+    @Test
+    public void numbersMissingFromAResyncAreDeletedForGood() {
+        tracker.accept(1);
+        tracker.accept(4);
+        tracker.accept(6);
+        // 2 and 5 were deleted; 3 is fetched, but applied after the resync's result is recorded
+        tracker.resynced(6, new HashSet<>(Arrays.asList(3L, 4L, 6L)));
+        assertTrue(tracker.hasGap());
+        assertTrue(tracker.accept(3));
+        assertFalse(tracker.accept(4));
+        assertFalse(tracker.hasGap());
+        assertEquals(6, tracker.getContiguous());
+    }
+
+    @Test
+    public void rejectsDuplicatesAndIgnoresUnsequencedMessages() {
+        tracker.accept(1);
+        assertFalse(tracker.accept(1));
+        assertTrue(tracker.accept(0));
+        assertTrue(tracker.accept(0));
+        assertEquals(1, tracker.getContiguous());
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.chatapp.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SyncScheduleTest {
+
+    private static final long HOUR = SyncSchedule.MIN_INTERVAL_MILLIS;
+
+    @Test
+    public void neverSyncedIsDue() {
+        assertTrue(new SyncSchedule(0, 0).isDue(1000));
+    }
+
+    @Test
+    public void idleRunsDoubleTheIntervalUpToTheMaximum() {
+        SyncSchedule schedule = new SyncSchedule(0, 0);
+        long now = 0;
+        for (int run = 0; run < 10; run++) {
+            now += schedule.getIntervalMillis();
+            assertTrue(schedule.isDue(now));
+            schedule.onSynced(now, false);
+            assertFalse(schedule.isDue(now + HOUR - 1));
+        }
+        assertEquals(SyncSchedule.MAX_INTERVAL_MILLIS, schedule.getIntervalMillis());
+    }
+
+    @Test
+    public void aChangeResetsTheInterval() {
+        SyncSchedule schedule = new SyncSchedule(0, SyncSchedule.MAX_INTERVAL_MILLIS);
+        schedule.onSynced(5 * HOUR, true);
+        assertEquals(HOUR, schedule.getIntervalMillis());
+        assertTrue(schedule.isDue(6 * HOUR));
+    }
+
+    @Test
+    public void clockMovingBackMakesItDue() {
+        SyncSchedule schedule = new SyncSchedule(10 * HOUR, HOUR);
+        assertTrue(schedule.isDue(9 * HOUR));
+    }
+}
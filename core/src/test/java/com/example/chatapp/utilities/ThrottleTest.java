@@ -0,0 +1,76 @@
+package com.example.chatapp.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class ThrottleTest {
+
+    private long nowMillis;
+    private final List<Long> fires = new ArrayList<>();
+
+    /**
+     * Timer tasks ordered by due time; run by advancing the fake clock.
+     */
+    private final PriorityQueue<long[]> due = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private final Throttle throttle = new Throttle(5000, age -> fires.add(nowMillis),
+            (task, delayMillis) -> {
+                tasks.add(task);
+                due.add(new long[]{nowMillis + delayMillis, tasks.size() - 1});
+            }, () -> nowMillis);
+
+    @Test
+    public void keystrokeFloodWritesAtMostOncePerFloor() {
+        // Ten keystrokes per second for a minute
+        for (int i = 0; i < 600; i++) {
+            throttle.signal();
+            advance(100);
+        }
+        advance(10_000);
+        assertTrue(fires.size() <= 60_000 / 5000 + 1);
+        for (int i = 1; i < fires.size(); i++) {
+            assertTrue(fires.get(i) - fires.get(i - 1) >= 5000);
+        }
+    }
+
+    @Test
+    public void leadingEdgeFiresRightAwayAndTrailingEdgeOnce() {
+        throttle.signal();
+        assertEquals(1, fires.size());
+        advance(1000);
+        throttle.signal();
+        throttle.signal();
+        assertEquals(1, fires.size());
+        advance(4000);
+        assertEquals(2, fires.size());
+        advance(20_000);
+        assertEquals(2, fires.size());
+    }
+
+    @Test
+    public void cancelDropsTheTrailingEdge() {
+        throttle.signal();
+        advance(1000);
+        throttle.signal();
+        throttle.cancel();
+        advance(10_000);
+        assertEquals(1, fires.size());
+    }
+
+    private void advance(long millis) {
+        long target = nowMillis + millis;
+        while (!due.isEmpty() && due.peek()[0] <= target) {
+            long[] next = due.poll();
+            nowMillis = next[0];
+            tasks.get((int) next[1]).run();
+        }
+        nowMillis = target;
+    }
+}
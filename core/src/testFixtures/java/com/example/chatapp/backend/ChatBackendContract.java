@@ -0,0 +1,104 @@
+/**
+ * The ChatBackendContract class holds the tests every ChatBackend must pass, so the in-memory
+ * backend and the Firestore-backed ones cannot drift apart. A module tests its backend by
+ * extending this class. Calls are awaited, so backends that answer on another thread work too.
+ */
+package com.example.chatapp.backend;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.utilities.ConversationIds;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public abstract class ChatBackendContract {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    protected ChatBackend backend;
+
+    /**
+     * User IDs unique to the test, so runs against a shared emulator do not see each other's data.
+     */
+    protected String alice;
+    protected String bob;
+
+    /**
+     * Returns the backend under test.
+     */
+    protected abstract ChatBackend createBackend() throws Exception;
+
+    @Before
+    public void setUpBackend() throws Exception {
+        backend = createBackend();
+        String run = Long.toString(System.nanoTime(), 36);
+        alice = "alice-" + run;
+        bob = "bob-" + run;
+    }
+
+    @Test
+    public void ownMessagesAfterTheReadCursorAreNotUnread() throws Exception {
+        String conversationId = ConversationIds.of(alice, bob);
+        send(alice, bob, "question");
+        Date readUpTo = newestTimestamp(conversationId);
+        ChatBackendContract.<Void>await(callback -> backend.markRead(conversationId, bob, readUpTo, callback));
+        send(bob, alice, "reply from the notification");
+        send(alice, bob, "follow-up");
+
+        Map<String, Long> counts = await(callback -> backend.getUnreadCounts(bob, callback));
+        assertEquals(Long.valueOf(1), counts.get(conversationId));
+    }
+
+    protected void send(String senderId, String receiverId, String text) throws Exception {
+        ChatMessage message = new ChatMessage();
+        message.senderId = senderId;
+        message.receiverId = receiverId;
+        message.message = text;
+        ChatBackendContract.<Void>await(callback -> backend.sendMessage(message, callback));
+        Thread.sleep(2); // Keeps timestamps apart on backends with millisecond clocks
+    }
+
+    /**
+     * Returns the timestamp of the newest message of a conversation.
+     */
+    protected Date newestTimestamp(String conversationId) throws Exception {
+        CompletableFuture<List<MessageChange>> initial = new CompletableFuture<>();
+        Registration registration = backend.listenMessages(conversationId, new MessageListener() {
+            @Override
+            public void onMessages(List<MessageChange> changes) {
+                initial.complete(new ArrayList<>(changes));
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                initial.completeExceptionally(exception);
+            }
+        });
+        try {
+            List<MessageChange> changes = initial.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return changes.get(changes.size() - 1).message.dateObject;
+        } finally {
+            registration.remove();
+        }
+    }
+
+    /**
+     * Makes a call and waits for its callback.
+     *
+     * @param call Makes the call with the given callback.
+     * @return The result passed to the callback.
+     */
+    protected static <T> T await(Consumer<Callback<T>> call) throws Exception {
+        return BlockingCalls.await(call, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
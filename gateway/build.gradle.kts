@@ -0,0 +1,17 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+application {
+    mainClass.set("com.example.chatapp.gateway.server.GatewayServer")
+}
+
+dependencies {
+    implementation(project(":core"))
+    implementation(libs.netty.codec.http)
+}
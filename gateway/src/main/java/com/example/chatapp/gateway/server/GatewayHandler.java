@@ -0,0 +1,337 @@
+/**
+ * The GatewayHandler class serves one WebSocket connection. Requests are passed to the store and
+ * answered with ACK, MESSAGES or ERROR; subscriptions are store listeners whose changes are queued
+ * in the connection's outbox. Everything here runs on the connection's event loop: store callbacks
+ * are handed over to it, so no state of the connection is shared between threads.
+ *
+ * The outbox is flushed once per flush window: the changes queued for each subscription go out as
+ * one CHANGES frame, and all frames of the window as one socket flush. While the socket is not
+ * writable the outbox keeps coalescing instead, and the connection stops reading requests.
+ *
+ * Requests are not authenticated or checked against the sender and the members of a conversation;
+ * see GatewayServer for why that is acceptable for the benchmarks it serves.
+ */
+package com.example.chatapp.gateway.server;
+
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackend;
+import com.example.chatapp.backend.MessageChange;
+import com.example.chatapp.backend.MessageListener;
+import com.example.chatapp.backend.Registration;
+import com.example.chatapp.gateway.GatewayFrame;
+import com.example.chatapp.modules.ChatMessage;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketCloseStatus;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+final class GatewayHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
+
+    /**
+     * Requests a connection may have waiting for the store before it stops reading more.
+     */
+    private static final int MAX_IN_FLIGHT = 256;
+
+    private final ChatBackend store;
+    private final long flushMicros;
+    private final int maxPending;
+
+    /**
+     * Active subscriptions by the ID the client gave them.
+     */
+    private final Map<Long, Subscription> subscriptions = new HashMap<>();
+
+    /**
+     * Changes not yet written, by subscription, in the order the subscriptions first had one.
+     */
+    private final Map<Subscription, List<MessageChange>> outbox = new LinkedHashMap<>();
+
+    /**
+     * Number of changes in the outbox.
+     */
+    private int pendingChanges;
+
+    /**
+     * Whether a flush of the outbox is already scheduled.
+     */
+    private boolean flushScheduled;
+
+    /**
+     * Number of requests the store has not answered yet.
+     */
+    private int inFlight;
+
+    private ChannelHandlerContext ctx;
+
+    GatewayHandler(ChatBackend store, long flushMicros, int maxPending) {
+        this.store = store;
+        this.flushMicros = flushMicros;
+        this.maxPending = maxPending;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame webSocketFrame) {
+        if (!(webSocketFrame instanceof BinaryWebSocketFrame)) {
+            close(WebSocketCloseStatus.INVALID_MESSAGE_TYPE, "Binary frames only");
+            return;
+        }
+        GatewayFrame frame;
+        try {
+            frame = GatewayFrame.decode(ByteBufUtil.getBytes(webSocketFrame.content()));
+        } catch (IOException exception) {
+            close(WebSocketCloseStatus.INVALID_PAYLOAD_DATA, exception.getMessage());
+            return;
+        }
+        switch (frame.type) {
+            case GatewayFrame.SUBSCRIBE:
+                subscribe(frame.id, frame.conversationId);
+                break;
+            case GatewayFrame.UNSUBSCRIBE:
+                unsubscribe(frame.id);
+                break;
+            case GatewayFrame.SEND:
+                store.sendMessage(frame.message, acknowledge(frame.id));
+                break;
+            case GatewayFrame.EDIT:
+                store.editMessage(target(frame), frame.text, acknowledge(frame.id));
+                break;
+            case GatewayFrame.UNSEND:
+                store.unsendMessage(target(frame), acknowledge(frame.id));
+                break;
+            case GatewayFrame.FETCH_AFTER:
+                store.getMessagesAfter(frame.conversationId, frame.afterSeq, answer(frame.id));
+                break;
+            default:
+                close(WebSocketCloseStatus.POLICY_VIOLATION, "Unexpected frame type " + frame.type);
+                break;
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if (ctx.channel().isWritable()) {
+            flush(); // Everything queued while unwritable goes out coalesced
+        }
+        updateAutoRead();
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        for (Subscription subscription : subscriptions.values()) {
+            subscription.registration.remove();
+        }
+        subscriptions.clear();
+        outbox.clear();
+        pendingChanges = 0;
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        ctx.close();
+    }
+
+    private void subscribe(long subscriptionId, String conversationId) {
+        unsubscribe(subscriptionId); // A resent subscription replaces the old one
+        Subscription subscription = new Subscription(subscriptionId);
+        subscriptions.put(subscriptionId, subscription);
+        // The initial batch may be delivered right here, so the subscription is registered first
+        subscription.registration = store.listenMessages(conversationId, new MessageListener() {
+            @Override
+            public void onMessages(List<MessageChange> changes) {
+                onEventLoop(() -> enqueue(subscription, changes));
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                onEventLoop(() -> {
+                    if (subscriptions.remove(subscriptionId, subscription)) {
+                        dropQueued(subscription);
+                        write(GatewayFrame.error(subscriptionId, describe(exception)));
+                    }
+                });
+            }
+        });
+    }
+
+    private void unsubscribe(long subscriptionId) {
+        Subscription subscription = subscriptions.remove(subscriptionId);
+        if (subscription != null) {
+            subscription.registration.remove();
+            dropQueued(subscription);
+        }
+    }
+
+    private void dropQueued(Subscription subscription) {
+        List<MessageChange> dropped = outbox.remove(subscription);
+        if (dropped != null) {
+            pendingChanges -= dropped.size();
+        }
+    }
+
+    /**
+     * Queues changes for a subscription and makes sure a flush follows within the flush window.
+     * A subscriber this far behind would only fall further behind, so it is disconnected instead.
+     */
+    private void enqueue(Subscription subscription, List<MessageChange> changes) {
+        if (subscriptions.get(subscription.id) != subscription) {
+            return; // Unsubscribed while the changes were on their way
+        }
+        outbox.computeIfAbsent(subscription, key -> new ArrayList<>()).addAll(changes);
+        pendingChanges += changes.size();
+        if (pendingChanges > maxPending) {
+            close(WebSocketCloseStatus.TRY_AGAIN_LATER, "Too far behind");
+            return;
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        if (flushMicros == 0) {
+            ctx.executor().execute(this::flush); // Still coalesces everything queued by the current task
+        } else {
+            ctx.executor().schedule(this::flush, flushMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Writes one CHANGES frame per subscription with queued changes, then flushes the socket once.
+     * While the socket is not writable nothing is written; channelWritabilityChanged flushes later.
+     */
+    private void flush() {
+        flushScheduled = false;
+        if (!ctx.channel().isActive() || !ctx.channel().isWritable()) {
+            return;
+        }
+        for (Map.Entry<Subscription, List<MessageChange>> entry : outbox.entrySet()) {
+            ctx.write(binary(GatewayFrame.changes(entry.getKey().id, entry.getValue())));
+        }
+        outbox.clear();
+        pendingChanges = 0;
+        ctx.flush();
+    }
+
+    /**
+     * Writes a response; it goes out with the next flush of the outbox.
+     */
+    private void write(GatewayFrame frame) {
+        if (ctx.channel().isActive()) {
+            ctx.write(binary(frame));
+            scheduleFlush();
+        }
+    }
+
+    private Callback<Void> acknowledge(long requestId) {
+        started();
+        return new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                onEventLoop(() -> answered(GatewayFrame.ack(requestId)));
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                onEventLoop(() -> answered(GatewayFrame.error(requestId, describe(exception))));
+            }
+        };
+    }
+
+    private Callback<List<ChatMessage>> answer(long requestId) {
+        started();
+        return new Callback<List<ChatMessage>>() {
+            @Override
+            public void onSuccess(List<ChatMessage> result) {
+                onEventLoop(() -> answered(GatewayFrame.messages(requestId, result)));
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                onEventLoop(() -> answered(GatewayFrame.error(requestId, describe(exception))));
+            }
+        };
+    }
+
+    private void started() {
+        inFlight++;
+        updateAutoRead();
+    }
+
+    private void answered(GatewayFrame response) {
+        inFlight--;
+        updateAutoRead();
+        write(response);
+    }
+
+    /**
+     * Reads requests only while the store keeps up and the client reads its responses.
+     */
+    private void updateAutoRead() {
+        ctx.channel().config().setAutoRead(inFlight < MAX_IN_FLIGHT && ctx.channel().isWritable());
+    }
+
+    /**
+     * Runs a task on this connection's event loop; store callbacks may arrive on any thread.
+     * Tasks are queued even from the event loop itself and run in submission order, so changes
+     * keep the order the store delivered them in, whichever connection's write caused them.
+     */
+    private void onEventLoop(Runnable task) {
+        ctx.executor().execute(task);
+    }
+
+    private void close(WebSocketCloseStatus status, String reason) {
+        ctx.writeAndFlush(new CloseWebSocketFrame(status.code(), reason)).addListener(future -> ctx.close());
+    }
+
+    /**
+     * Returns the message a request refers to, by ID; the store keeps everything else, the edit date included.
+     */
+    private static ChatMessage target(GatewayFrame frame) {
+        ChatMessage message = new ChatMessage();
+        message.id = frame.messageId;
+        message.conversationId = frame.conversationId;
+        return message;
+    }
+
+    private static BinaryWebSocketFrame binary(GatewayFrame frame) {
+        return new BinaryWebSocketFrame(Unpooled.wrappedBuffer(frame.encode()));
+    }
+
+    private static String describe(Exception exception) {
+        return exception.getMessage() != null ? exception.getMessage() : exception.getClass().getSimpleName();
+    }
+
+    /**
+     * A subscription of this connection and its listener on the store.
+     */
+    private static final class Subscription {
+        final long id;
+        Registration registration;
+
+        Subscription(long id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * The GatewayServer class is a self-hostable WebSocket gateway for chat messages, an alternative
+ * to Firestore listeners as the message transport. Every client keeps a single WebSocket open and
+ * subscribes to its conversations over it; each write is fanned out to the subscribers of its
+ * conversation, coalesced per connection within a short flush window, so a busy conversation costs
+ * one frame and one flush per subscriber and window rather than one per message.
+ *
+ * Backpressure is applied in both directions: a connection whose socket buffer is above the high
+ * water mark gets no more writes and sends no more requests until it drains, and a subscriber that
+ * falls more than --max-pending changes behind is disconnected; it catches up after reconnecting.
+ *
+ * The server is a benchmark harness for the load test (--backend gateway), not a production
+ * transport: messages are kept by the in-memory backend and lost when it stops, and clients are not
+ * authenticated, so any connection may subscribe to, edit or unsend anything. It therefore listens
+ * on the loopback interface only, unless --host says otherwise.
+ *
+ * Usage: GatewayServer [--host address] [--port n] [--path /chat] [--flush-micros us] [--max-pending n]
+ */
+package com.example.chatapp.gateway.server;
+
+import com.example.chatapp.backend.ChatBackend;
+import com.example.chatapp.backend.InMemoryChatBackend;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+
+import java.util.Locale;
+
+public final class GatewayServer {
+
+    /**
+     * Largest frame accepted from a client; a single message is far smaller.
+     */
+    private static final int MAX_FRAME_BYTES = 1024 * 1024;
+
+    /**
+     * Socket buffer levels between which a connection turns unwritable and writable again.
+     */
+    private static final int LOW_WATER_MARK = 256 * 1024;
+    private static final int HIGH_WATER_MARK = 1024 * 1024;
+
+    private String host = "127.0.0.1";
+    private int port = 8080;
+    private String path = "/chat";
+    private long flushMicros = 1000;
+    private int maxPending = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        GatewayServer server = new GatewayServer();
+        server.parse(args);
+        server.run(new InMemoryChatBackend());
+    }
+
+    /**
+     * Serves the gateway until the process is stopped.
+     *
+     * @param store The backend messages are stored in and fanned out from.
+     */
+    void run(ChatBackend store) throws InterruptedException {
+        EventLoopGroup boss = new NioEventLoopGroup(1);
+        EventLoopGroup workers = new NioEventLoopGroup();
+        try {
+            ServerBootstrap bootstrap = new ServerBootstrap()
+                    .group(boss, workers)
+                    .channel(NioServerSocketChannel.class)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                            new WriteBufferWaterMark(LOW_WATER_MARK, HIGH_WATER_MARK))
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel channel) {
+                            channel.pipeline().addLast(
+                                    new HttpServerCodec(),
+                                    new HttpObjectAggregator(64 * 1024),
+                                    new WebSocketServerProtocolHandler(path, null, false, MAX_FRAME_BYTES),
+                                    new WebSocketFrameAggregator(MAX_FRAME_BYTES),
+                                    new GatewayHandler(store, flushMicros, maxPending));
+                        }
+                    });
+            Channel channel = bootstrap.bind(host, port).sync().channel();
+            System.out.println(String.format(Locale.ROOT,
+                    "gateway listening on ws://%s:%d%s (flush window %d us, max %d pending changes)",
+                    host, port, path, flushMicros, maxPending));
+            channel.closeFuture().sync();
+        } finally {
+            boss.shutdownGracefully();
+            workers.shutdownGracefully();
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--host" -> host = value;
+                case "--port" -> port = Integer.parseInt(value);
+                case "--path" -> path = value;
+                case "--flush-micros" -> flushMicros = Long.parseLong(value);
+                case "--max-pending" -> maxPending = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+        if (flushMicros < 0 || maxPending < 1) {
+            throw new IllegalArgumentException("--flush-micros must not be negative and --max-pending must be positive");
+        }
+    }
+}
@@ -0,0 +1,20 @@
+plugins {
+    application
+}
+
+java {
+    // Simulated clients run on virtual threads
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
+application {
+    mainClass.set("com.example.chatapp.loadtest.LoadTest")
+}
+
+dependencies {
+    implementation(project(":core"))
+    implementation(libs.google.cloud.firestore)
+    testImplementation(testFixtures(project(":core")))
+}
@@ -0,0 +1,430 @@
+/**
+ * The FirestoreEmulatorBackend class implements ChatBackend with the server-side Firestore
+ * client, issuing the same queries and writes as the app's FirestoreChatBackend so the
+ * load test exercises the real schema against the Firestore emulator.
+ * The server client keeps no local cache, so every read policy is served from the server.
+ */
+package com.example.chatapp.loadtest;
+
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackend;
+import com.example.chatapp.backend.ExpiryListener;
+import com.example.chatapp.backend.FieldSource;
+import com.example.chatapp.backend.MessageChange;
+import com.example.chatapp.backend.MessageListener;
+import com.example.chatapp.backend.MessageMapper;
+import com.example.chatapp.backend.ReadCursorListener;
+import com.example.chatapp.backend.ReadPolicy;
+import com.example.chatapp.backend.Registration;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.Group;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.ConversationIds;
+import com.example.chatapp.utilities.GroupMembers;
+import com.example.chatapp.utilities.MessageList;
+import com.example.chatapp.utilities.ReadReceipts;
+import com.google.cloud.Timestamp;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+final class FirestoreEmulatorBackend implements ChatBackend {
+
+    private final Firestore database;
+
+    FirestoreEmulatorBackend(Firestore database) {
+        this.database = database;
+    }
+
+    @Override
+    public void signIn(String email, String password, ReadPolicy policy, Callback<User> callback) {
+        complete(database.collection(Constants.KEY_COLLECTION_USERS)
+                .whereEqualTo(Constants.KEY_EMAIL, email)
+                .whereEqualTo(Constants.KEY_PASSWORD, password)
+                .get(), callback, result -> result.isEmpty() ? null : toUser(result.getDocuments().get(0)));
+    }
+
+    @Override
+    public void signUp(User user, String password, Callback<User> callback) {
+        Map<String, Object> document = new HashMap<>();
+        document.put(Constants.KEY_NAME, user.name);
+        document.put(Constants.KEY_LAST_NAME, user.lastName);
+        document.put(Constants.KEY_EMAIL, user.email);
+        document.put(Constants.KEY_PASSWORD, password);
+        document.put(Constants.KEY_IMAGE, user.image);
+        complete(database.collection(Constants.KEY_COLLECTION_USERS).add(document), callback,
+                (DocumentReference reference) -> {
+                    user.id = reference.getId();
+                    return user;
+                });
+    }
+
+    @Override
+    public void getUsers(ReadPolicy policy, Callback<List<User>> callback) {
+        complete(database.collection(Constants.KEY_COLLECTION_USERS).get(), callback, result -> {
+            List<User> users = new ArrayList<>(result.size());
+            for (QueryDocumentSnapshot document : result) {
+                users.add(toUser(document));
+            }
+            return users;
+        });
+    }
+
+    @Override
+    public void updateToken(String userId, String token, Callback<Void> callback) {
+        complete(database.collection(Constants.KEY_COLLECTION_USERS).document(userId)
+                        .update(Constants.KEY_FCM_TOKEN, token == null ? FieldValue.delete() : token),
+                callback, ignored -> null);
+    }
+
+    @Override
+    public void createGroup(Group group, Callback<Group> callback) {
+        try {
+            GroupMembers.check(group.members);
+        } catch (IllegalArgumentException exception) {
+            callback.onFailure(exception);
+            return;
+        }
+        DocumentReference conversation = database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document();
+        Map<String, Object> document = new HashMap<>();
+        document.put(Constants.KEY_GROUP_NAME, group.name);
+        document.put(Constants.KEY_PARTICIPANTS, group.members);
+        document.put(Constants.KEY_TIMESTAMP, FieldValue.serverTimestamp());
+        complete(conversation.set(document), callback, ignored -> {
+            group.id = conversation.getId();
+            return group;
+        });
+    }
+
+    @Override
+    public void getGroups(String userId, Callback<List<Group>> callback) {
+        // Ordering by the group name leaves out one-to-one conversations, which have none
+        complete(database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                .whereArrayContains(Constants.KEY_PARTICIPANTS, userId)
+                .orderBy(Constants.KEY_GROUP_NAME)
+                .get(), callback, result -> {
+                    List<Group> groups = new ArrayList<>(result.size());
+                    for (QueryDocumentSnapshot document : result) {
+                        Group group = new Group();
+                        group.id = document.getId();
+                        group.name = document.getString(Constants.KEY_GROUP_NAME);
+                        List<?> members = (List<?>) document.get(Constants.KEY_PARTICIPANTS);
+                        if (members != null) {
+                            for (Object member : members) {
+                                group.members.add((String) member);
+                            }
+                        }
+                        groups.add(group);
+                    }
+                    return groups;
+                });
+    }
+
+    @Override
+    public void getRecentConversations(String userId, int limit, Callback<Map<String, Date>> callback) {
+        complete(database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                .whereArrayContains(Constants.KEY_PARTICIPANTS, userId)
+                .orderBy(Constants.KEY_TIMESTAMP, Query.Direction.DESCENDING)
+                .limit(limit)
+                .get(), callback, result -> {
+                    Map<String, Date> conversations = new LinkedHashMap<>();
+                    for (QueryDocumentSnapshot document : result) {
+                        conversations.put(document.getId(), document.getDate(Constants.KEY_TIMESTAMP));
+                    }
+                    return conversations;
+                });
+    }
+
+    @Override
+    public void sendMessage(ChatMessage message, Callback<Void> callback) {
+        String conversationId = ConversationIds.of(message);
+        DocumentReference conversation = conversation(conversationId);
+        DocumentReference messageReference = conversation.collection(Constants.KEY_COLLECTION_MESSAGES).document();
+        complete(database.runTransaction(transaction -> {
+            // The summary holds the last sequence number; reading it serializes concurrent senders
+            Long lastSeq = transaction.get(conversation).get().getLong(Constants.KEY_LAST_SEQ);
+            long seq = (lastSeq == null ? 0 : lastSeq) + 1;
+
+            Map<String, Object> document = new HashMap<>();
+            document.put(Constants.KEY_SENDER_ID, message.senderId);
+            document.put(Constants.KEY_RECEIVER_ID, message.receiverId);
+            document.put(Constants.KEY_MESSAGE, message.message);
+            document.put(Constants.KEY_TIMESTAMP, FieldValue.serverTimestamp());
+            document.put(Constants.KEY_SEQ, seq);
+
+            Map<String, Object> summary = new HashMap<>();
+            if (message.receiverId != null) {
+                // A group's members are set when it is created
+                summary.put(Constants.KEY_PARTICIPANTS, Arrays.asList(message.senderId, message.receiverId));
+            }
+            summary.put(Constants.KEY_LAST_MESSAGE, message.message);
+            summary.put(Constants.KEY_LAST_SENDER_ID, message.senderId);
+            summary.put(Constants.KEY_TIMESTAMP, FieldValue.serverTimestamp());
+            summary.put(Constants.KEY_LAST_SEQ, seq);
+
+            transaction.set(messageReference, document);
+            transaction.set(conversation, summary, SetOptions.merge());
+            return null;
+        }), callback, ignored -> null);
+    }
+
+    @Override
+    public void editMessage(ChatMessage message, String text, Callback<Void> callback) {
+        Map<String, Object> update = new HashMap<>();
+        update.put(Constants.KEY_MESSAGE, text);
+        update.put(Constants.KEY_EDITED_AT, FieldValue.serverTimestamp());
+        modify(message, update, text, callback);
+    }
+
+    @Override
+    public void unsendMessage(ChatMessage message, Callback<Void> callback) {
+        Map<String, Object> update = new HashMap<>();
+        update.put(Constants.KEY_MESSAGE, "");
+        update.put(Constants.KEY_DELETED_AT, FieldValue.serverTimestamp());
+        update.put(Constants.KEY_EXPIRES_AT, new Date(System.currentTimeMillis() + MessageList.TOMBSTONE_RETENTION_MILLIS));
+        modify(message, update, "", callback);
+    }
+
+    private void modify(ChatMessage message, Map<String, Object> update, String summaryText, Callback<Void> callback) {
+        DocumentReference conversation = conversation(ConversationIds.of(message));
+        complete(database.runTransaction(transaction -> {
+            Long lastSeq = transaction.get(conversation).get().getLong(Constants.KEY_LAST_SEQ);
+            transaction.update(conversation.collection(Constants.KEY_COLLECTION_MESSAGES).document(message.id), update);
+            if (lastSeq != null && lastSeq == message.seq) {
+                transaction.update(conversation, Constants.KEY_LAST_MESSAGE, summaryText);
+            }
+            return null;
+        }), callback, ignored -> null);
+    }
+
+    @Override
+    public void getMessagesAfter(String conversationId, long afterSeq, Callback<List<ChatMessage>> callback) {
+        complete(conversation(conversationId).collection(Constants.KEY_COLLECTION_MESSAGES)
+                .whereGreaterThan(Constants.KEY_SEQ, afterSeq)
+                .orderBy(Constants.KEY_SEQ, Query.Direction.ASCENDING)
+                .get(), callback, result -> {
+                    List<ChatMessage> messages = new ArrayList<>(result.size());
+                    for (QueryDocumentSnapshot document : result) {
+                        messages.add(toChatMessage(conversationId, document));
+                    }
+                    return messages;
+                });
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, MessageListener listener) {
+        ListenerRegistration registration = database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                .document(conversationId)
+                .collection(Constants.KEY_COLLECTION_MESSAGES)
+                .orderBy(Constants.KEY_TIMESTAMP, Query.Direction.ASCENDING)
+                .addSnapshotListener((value, error) -> {
+                    if (error != null) {
+                        listener.onError(error);
+                        return;
+                    }
+                    if (value == null) {
+                        return;
+                    }
+                    List<MessageChange> changes = new ArrayList<>(value.getDocumentChanges().size());
+                    for (DocumentChange documentChange : value.getDocumentChanges()) {
+                        changes.add(new MessageChange(toChangeType(documentChange.getType()),
+                                toChatMessage(conversationId, documentChange.getDocument())));
+                    }
+                    listener.onMessages(changes);
+                });
+        return registration::remove;
+    }
+
+    @Override
+    public void markRead(String conversationId, String userId, Date readUpTo, Callback<Void> callback) {
+        Map<String, Object> document = new HashMap<>();
+        document.put(Constants.KEY_LAST_READ, Collections.singletonMap(userId, readUpTo));
+        complete(conversation(conversationId).set(document, SetOptions.merge()), callback, ignored -> null);
+    }
+
+    @Override
+    public Registration listenReadCursors(String conversationId, ReadCursorListener listener) {
+        ListenerRegistration registration = conversation(conversationId).addSnapshotListener((value, error) -> {
+            if (error != null) {
+                listener.onError(error);
+                return;
+            }
+            if (value != null) {
+                listener.onReadCursors(readCursors(value));
+            }
+        });
+        return registration::remove;
+    }
+
+    @Override
+    public void getUnreadCounts(String userId, Callback<Map<String, Long>> callback) {
+        complete(database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                .whereArrayContains(Constants.KEY_PARTICIPANTS, userId)
+                .get(), callback, result -> {
+                    Map<String, Long> counts = new HashMap<>();
+                    for (QueryDocumentSnapshot summary : result) {
+                        Date cursor = readCursors(summary).get(userId);
+                        if (!ReadReceipts.hasUnread(summary.getString(Constants.KEY_LAST_SENDER_ID),
+                                summary.getDate(Constants.KEY_TIMESTAMP), userId, cursor)) {
+                            continue;
+                        }
+                        // The reader's own messages after the cursor are not unread
+                        Query unread = summary.getReference().collection(Constants.KEY_COLLECTION_MESSAGES)
+                                .whereNotEqualTo(Constants.KEY_SENDER_ID, userId);
+                        if (cursor != null) {
+                            unread = unread.whereGreaterThan(Constants.KEY_TIMESTAMP, cursor);
+                        }
+                        try {
+                            // The load test runs on virtual threads, so blocking on the aggregation is cheap
+                            counts.put(summary.getId(), unread.count().get().get().getCount());
+                        } catch (Exception exception) {
+                            throw new IllegalStateException(exception);
+                        }
+                    }
+                    return counts;
+                });
+    }
+
+    @Override
+    public void setTyping(String conversationId, String userId, Date expiresAt, Callback<Void> callback) {
+        setExpiry(typing(conversationId, userId), expiresAt, callback);
+    }
+
+    @Override
+    public Registration listenTyping(String conversationId, String userId, ExpiryListener listener) {
+        return listenExpiry(typing(conversationId, userId), listener);
+    }
+
+    @Override
+    public void setPresence(String userId, Date expiresAt, Callback<Void> callback) {
+        setExpiry(database.collection(Constants.KEY_COLLECTION_PRESENCE).document(userId), expiresAt, callback);
+    }
+
+    @Override
+    public Registration listenPresence(String userId, ExpiryListener listener) {
+        return listenExpiry(database.collection(Constants.KEY_COLLECTION_PRESENCE).document(userId), listener);
+    }
+
+    private DocumentReference typing(String conversationId, String userId) {
+        return conversation(conversationId).collection(Constants.KEY_COLLECTION_TYPING).document(userId);
+    }
+
+    private static void setExpiry(DocumentReference document, Date expiresAt, Callback<Void> callback) {
+        complete(document.set(Collections.singletonMap(Constants.KEY_EXPIRES_AT, expiresAt)), callback,
+                ignored -> null);
+    }
+
+    private static Registration listenExpiry(DocumentReference document, ExpiryListener listener) {
+        ListenerRegistration registration = document.addSnapshotListener((value, error) -> {
+            if (error != null) {
+                listener.onError(error);
+                return;
+            }
+            if (value != null) {
+                listener.onExpiry(value.getDate(Constants.KEY_EXPIRES_AT));
+            }
+        });
+        return registration::remove;
+    }
+
+    private DocumentReference conversation(String conversationId) {
+        return database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document(conversationId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Date> readCursors(DocumentSnapshot summary) {
+        Map<String, Date> cursors = new HashMap<>();
+        Object lastRead = summary.get(Constants.KEY_LAST_READ);
+        if (lastRead instanceof Map) {
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) lastRead).entrySet()) {
+                if (entry.getValue() instanceof Timestamp) {
+                    cursors.put(entry.getKey(), ((Timestamp) entry.getValue()).toDate());
+                }
+            }
+        }
+        return cursors;
+    }
+
+    private static <S, T> void complete(ApiFuture<S> future, Callback<T> callback, Function<S, T> mapper) {
+        ApiFutures.addCallback(future, new ApiFutureCallback<S>() {
+            @Override
+            public void onFailure(Throwable throwable) {
+                callback.onFailure(throwable instanceof Exception
+                        ? (Exception) throwable : new RuntimeException(throwable));
+            }
+
+            @Override
+            public void onSuccess(S result) {
+                callback.onSuccess(mapper.apply(result));
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static User toUser(DocumentSnapshot document) {
+        User user = new User();
+        user.name = document.getString(Constants.KEY_NAME);
+        user.lastName = document.getString(Constants.KEY_LAST_NAME);
+        user.email = document.getString(Constants.KEY_EMAIL);
+        user.image = document.getString(Constants.KEY_IMAGE);
+        user.token = document.getString(Constants.KEY_FCM_TOKEN);
+        user.publicKey = document.getString(Constants.KEY_PUBLIC_KEY);
+        user.id = document.getId();
+        return user;
+    }
+
+    private static ChatMessage toChatMessage(String conversationId, DocumentSnapshot document) {
+        return MessageMapper.toChatMessage(conversationId, new FieldSource() {
+            @Override
+            public String getId() {
+                return document.getId();
+            }
+
+            @Override
+            public String getString(String key) {
+                return document.getString(key);
+            }
+
+            @Override
+            public Date getDate(String key) {
+                return document.getDate(key);
+            }
+
+            @Override
+            public Long getLong(String key) {
+                return document.getLong(key);
+            }
+        });
+    }
+
+    private static MessageChange.Type toChangeType(DocumentChange.Type type) {
+        switch (type) {
+            case MODIFIED:
+                return MessageChange.Type.MODIFIED;
+            case REMOVED:
+                return MessageChange.Type.REMOVED;
+            default:
+                return MessageChange.Type.ADDED;
+        }
+    }
+}
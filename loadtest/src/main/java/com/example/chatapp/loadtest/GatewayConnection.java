@@ -0,0 +1,105 @@
+/**
+ * The GatewayConnection class is one simulated client's WebSocket to the message gateway,
+ * built on java.net.http so the load test needs no extra dependency. Every client gets its
+ * own connection, like a phone would, so fan-out is measured across real sockets.
+ */
+package com.example.chatapp.loadtest;
+
+import com.example.chatapp.gateway.GatewayClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+final class GatewayConnection implements GatewayClient.Transport, WebSocket.Listener {
+
+    private final GatewayClient client = new GatewayClient(this, Runnable::run);
+
+    /**
+     * Collects the parts of a binary message until its last part arrives.
+     */
+    private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+
+    /**
+     * The latest send; a WebSocket accepts the next one only once it has completed.
+     */
+    private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+
+    private volatile WebSocket webSocket;
+
+    private GatewayConnection() {
+    }
+
+    /**
+     * Connects to the gateway and waits for the handshake.
+     *
+     * @param httpClient The client shared by every connection.
+     * @param uri The URI of the gateway, e.g. ws://localhost:8080/chat.
+     */
+    static GatewayConnection open(HttpClient httpClient, URI uri) {
+        GatewayConnection connection = new GatewayConnection();
+        connection.webSocket = httpClient.newWebSocketBuilder().buildAsync(uri, connection).join();
+        connection.client.onOpened();
+        return connection;
+    }
+
+    GatewayClient getClient() {
+        return client;
+    }
+
+    @Override
+    public synchronized boolean send(byte[] frame) {
+        WebSocket current = webSocket;
+        if (current == null || current.isOutputClosed()) {
+            return false;
+        }
+        lastSend = lastSend.handle((result, failure) -> null)
+                .thenCompose(ignored -> current.sendBinary(ByteBuffer.wrap(frame), true));
+        return true;
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        if (last && partial.size() == 0) {
+            client.onFrame(bytes);
+        } else {
+            partial.write(bytes, 0, bytes.length);
+            if (last) {
+                client.onFrame(partial.toByteArray());
+                partial.reset();
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        client.close(new IOException("Gateway closed the connection: " + statusCode + " " + reason));
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        client.close(new IOException(error));
+    }
+
+    void close() {
+        WebSocket current = webSocket;
+        if (current != null) {
+            current.sendClose(WebSocket.NORMAL_CLOSURE, "").exceptionally(failure -> null);
+        }
+    }
+}
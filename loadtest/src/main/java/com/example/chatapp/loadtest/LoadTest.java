@@ -0,0 +1,187 @@
+/**
+ * The LoadTest class starts thousands of simulated chat clients on virtual threads
+ * against the in-memory backend, the Firestore emulator or a message gateway and reports
+ * send-to-receive latency percentiles, listener fan-out cost and throughput.
+ * With --backend gateway every client opens its own WebSocket to a running GatewayServer and
+ * sends and listens through it; sign-in goes to an in-memory user directory.
+ *
+ * With --ramp-steps the offered rate doubles after every phase until deliveries fall
+ * behind or p99 latency exceeds --slo-ms, which locates the throughput ceiling.
+ *
+ * Usage: LoadTest [--backend memory|emulator|gateway] [--emulator-host host:port]
+ *        [--gateway-url ws://host:port/chat] [--clients n]
+ *        [--peers n] [--rate msgs/sec/client] [--duration seconds] [--ramp-steps n]
+ *        [--slo-ms ms] [--latency-us us] [--jitter-us us]
+ */
+package com.example.chatapp.loadtest;
+
+import com.example.chatapp.backend.ChatBackend;
+import com.example.chatapp.backend.GatewayChatBackend;
+import com.example.chatapp.backend.InMemoryChatBackend;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class LoadTest {
+
+    /**
+     * Deliveries below this share of the expected count mean the backend is falling behind.
+     */
+    private static final double MIN_DELIVERY_RATIO = 0.95;
+
+    private String backendName = "memory";
+    private String emulatorHost = System.getenv("FIRESTORE_EMULATOR_HOST");
+    private String gatewayUrl = "ws://localhost:8080/chat";
+    private int clients = 2000;
+    private int peers = 1;
+    private double rate = 0.5;
+    private long durationSeconds = 30;
+    private int rampSteps = 1;
+    private double sloMillis = 250;
+    private long latencyMicros = 2000;
+    private long jitterMicros = 3000;
+
+    public static void main(String[] args) throws Exception {
+        LoadTest loadTest = new LoadTest();
+        loadTest.parse(args);
+        loadTest.run();
+    }
+
+    private void run() throws Exception {
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+        Firestore firestore = null;
+        ChatBackend backend;
+        if ("emulator".equals(backendName)) {
+            if (emulatorHost == null) {
+                throw new IllegalArgumentException("--emulator-host or FIRESTORE_EMULATOR_HOST is required");
+            }
+            firestore = FirestoreOptions.getDefaultInstance().toBuilder()
+                    .setProjectId("demo-chatapp-loadtest")
+                    .setEmulatorHost(emulatorHost)
+                    .build()
+                    .getService();
+            backend = new FirestoreEmulatorBackend(firestore);
+        } else {
+            backend = new InMemoryChatBackend(threads, latencyMicros, jitterMicros);
+        }
+
+        AtomicReference<PhaseStats> stats = new AtomicReference<>(new PhaseStats());
+        List<SimulatedClient> simulated = new ArrayList<>(clients);
+        List<GatewayConnection> connections = new ArrayList<>();
+        HttpClient httpClient = "gateway".equals(backendName) ? HttpClient.newHttpClient() : null;
+        for (int i = 0; i < clients; i++) {
+            ChatBackend clientBackend = backend;
+            if (httpClient != null) {
+                GatewayConnection connection = GatewayConnection.open(httpClient, URI.create(gatewayUrl));
+                connections.add(connection);
+                clientBackend = new GatewayChatBackend(connection.getClient(), backend);
+            }
+            simulated.add(new SimulatedClient(clientBackend, i, stats));
+        }
+
+        long setupStart = System.nanoTime();
+        forEach(threads, simulated, SimulatedClient::register);
+        forEach(threads, simulated, SimulatedClient::signIn);
+        // Every client talks to its neighbours on a ring, so each conversation has exactly two listeners
+        for (int i = 0; i < clients; i++) {
+            for (int offset = 1; offset <= peers; offset++) {
+                simulated.get(i).openConversation(simulated.get(Math.floorMod(i + offset, clients)).getUserId());
+                simulated.get(i).openConversation(simulated.get(Math.floorMod(i - offset, clients)).getUserId());
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%d clients signed in with %d open conversations each in %.1f s",
+                clients, 2 * peers, (System.nanoTime() - setupStart) / 1e9));
+
+        double phaseRate = rate;
+        for (int step = 1; step <= rampSteps; step++) {
+            PhaseStats phase = new PhaseStats();
+            stats.set(phase);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+            double clientRate = phaseRate;
+            forEach(threads, simulated, client -> client.sendUntil(clientRate, deadline));
+            phase.finish();
+            // Let in-flight deliveries land before reporting
+            TimeUnit.SECONDS.sleep(2);
+
+            phase.print(System.out, String.format(Locale.ROOT, "phase %d: %d clients x %.2f msgs/sec (%.0f msgs/sec offered)",
+                    step, clients, clientRate, clients * clientRate), 1);
+            boolean saturated = phase.deliveryRatio(1) < MIN_DELIVERY_RATIO
+                    || phase.sendToReceiveNanos.getPercentile(99) / 1e6 > sloMillis;
+            if (saturated && rampSteps > 1) {
+                System.out.println(String.format(Locale.ROOT,
+                        "throughput ceiling reached at about %.0f msgs/sec offered", clients * clientRate));
+                break;
+            }
+            phaseRate *= 2;
+        }
+
+        for (SimulatedClient client : simulated) {
+            client.close();
+        }
+        for (GatewayConnection connection : connections) {
+            connection.close();
+        }
+        if (backend instanceof InMemoryChatBackend) {
+            ((InMemoryChatBackend) backend).shutdown();
+        }
+        if (firestore != null) {
+            firestore.close();
+        }
+        threads.shutdownNow();
+    }
+
+    private interface ClientTask {
+        void run(SimulatedClient client) throws Exception;
+    }
+
+    /**
+     * Runs a task for every client on its own virtual thread and waits for all of them.
+     */
+    private static void forEach(ExecutorService threads, List<SimulatedClient> clients, ClientTask task)
+            throws Exception {
+        List<Future<?>> futures = new ArrayList<>(clients.size());
+        for (SimulatedClient client : clients) {
+            futures.add(threads.submit(() -> {
+                task.run(client);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--backend" -> backendName = value;
+                case "--emulator-host" -> emulatorHost = value;
+                case "--gateway-url" -> gatewayUrl = value;
+                case "--clients" -> clients = Integer.parseInt(value);
+                case "--peers" -> peers = Integer.parseInt(value);
+                case "--rate" -> rate = Double.parseDouble(value);
+                case "--duration" -> durationSeconds = Long.parseLong(value);
+                case "--ramp-steps" -> rampSteps = Integer.parseInt(value);
+                case "--slo-ms" -> sloMillis = Double.parseDouble(value);
+                case "--latency-us" -> latencyMicros = Long.parseLong(value);
+                case "--jitter-us" -> jitterMicros = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+        if (clients < 2 || peers < 1 || 2 * peers >= clients) {
+            throw new IllegalArgumentException("--clients must be at least 2 and larger than twice --peers");
+        }
+    }
+}
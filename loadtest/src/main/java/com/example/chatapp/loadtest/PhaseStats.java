@@ -0,0 +1,76 @@
+/**
+ * The PhaseStats class collects the measurements of one load phase.
+ */
+package com.example.chatapp.loadtest;
+
+import com.example.chatapp.metrics.Histogram;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+final class PhaseStats {
+
+    /**
+     * Time from handing a message to the backend until a peer's listener receives it.
+     */
+    final Histogram sendToReceiveNanos = new Histogram();
+
+    /**
+     * Time from handing a message to the backend until the backend acknowledges the write.
+     */
+    final Histogram sendToAckNanos = new Histogram();
+
+    /**
+     * Time spent inside one listener callback, i.e. the client-side cost of fan-out.
+     */
+    final Histogram listenerCallbackNanos = new Histogram();
+
+    final LongAdder sent = new LongAdder();
+    final LongAdder acked = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder callbacks = new LongAdder();
+
+    final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    /**
+     * Marks the end of the sending window; throughput is computed over this window only.
+     */
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * Ratio of deliveries reaching peers to messages acknowledged; 1.0 means nothing is lagging behind.
+     */
+    double deliveryRatio(int listenersPerMessage) {
+        long expected = acked.sum() * listenersPerMessage;
+        return expected == 0 ? 1 : (double) delivered.sum() / expected;
+    }
+
+    void print(PrintStream out, String title, int listenersPerMessage) {
+        double seconds = ((endNanos == 0 ? System.nanoTime() : endNanos) - startNanos) / 1e9;
+        out.println("== " + title);
+        out.println(String.format(Locale.ROOT,
+                "sent %d, acked %d, failed %d, delivered %d (%.1f%% of expected)",
+                sent.sum(), acked.sum(), failed.sum(), delivered.sum(),
+                deliveryRatio(listenersPerMessage) * 100));
+        out.println(String.format(Locale.ROOT, "throughput: %.0f sends/sec, %.0f deliveries/sec",
+                acked.sum() / seconds, delivered.sum() / seconds));
+        printLatency(out, "send->receive", sendToReceiveNanos);
+        printLatency(out, "send->ack    ", sendToAckNanos);
+        out.println(String.format(Locale.ROOT,
+                "fan-out: %.2f deliveries/message, %.2f deliveries/callback, callback p50 %.1f us p99 %.1f us",
+                acked.sum() == 0 ? 0 : (double) delivered.sum() / acked.sum(),
+                callbacks.sum() == 0 ? 0 : (double) delivered.sum() / callbacks.sum(),
+                listenerCallbackNanos.getPercentile(50) / 1e3, listenerCallbackNanos.getPercentile(99) / 1e3));
+    }
+
+    private static void printLatency(PrintStream out, String name, Histogram histogram) {
+        out.println(String.format(Locale.ROOT, "%s p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms (n=%d)",
+                name, histogram.getPercentile(50) / 1e6, histogram.getPercentile(99) / 1e6,
+                histogram.getPercentile(99.9) / 1e6, histogram.getMax() / 1e6, histogram.getCount()));
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * The SimulatedClient class plays one chat user: it signs in, opens its conversations
+ * with the same listener the app's ChatActivity uses, and sends messages at a fixed rate.
+ * Every message carries its send time, so receivers can measure send-to-receive latency.
+ */
+package com.example.chatapp.loadtest;
+
+import com.example.chatapp.backend.BlockingCalls;
+import com.example.chatapp.backend.Callback;
+import com.example.chatapp.backend.ChatBackend;
+import com.example.chatapp.backend.MessageChange;
+import com.example.chatapp.backend.MessageListener;
+import com.example.chatapp.backend.Registration;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.modules.User;
+import com.example.chatapp.utilities.ConversationIds;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+final class SimulatedClient {
+
+    private static final String PREFIX = "lt:";
+
+    private final ChatBackend backend;
+    private final int index;
+    private final AtomicReference<PhaseStats> stats;
+    private final List<Registration> registrations = new ArrayList<>();
+    private final List<String> peerIds = new ArrayList<>();
+
+    private User user;
+
+    SimulatedClient(ChatBackend backend, int index, AtomicReference<PhaseStats> stats) {
+        this.backend = backend;
+        this.index = index;
+        this.stats = stats;
+    }
+
+    static String email(int index) {
+        return "client" + index + "@load.test";
+    }
+
+    static String password(int index) {
+        return "password" + index;
+    }
+
+    String getUserId() {
+        return user.id;
+    }
+
+    /**
+     * Registers the simulated user. Called once before the clients start.
+     */
+    void register() throws Exception {
+        User profile = new User();
+        profile.name = "Client " + index;
+        profile.email = email(index);
+        profile.image = "";
+        SimulatedClient.<User>await(callback -> backend.signUp(profile, password(index), callback));
+    }
+
+    /**
+     * Signs in with the registered credentials.
+     */
+    void signIn() throws Exception {
+        user = SimulatedClient.<User>await(callback -> backend.signIn(email(index), password(index), callback));
+        if (user == null) {
+            throw new IllegalStateException("Sign-in failed for " + email(index));
+        }
+    }
+
+    /**
+     * Opens the conversation with a peer, the way ChatActivity does when a chat screen opens.
+     */
+    void openConversation(String peerId) {
+        peerIds.add(peerId);
+        registrations.add(backend.listenMessages(ConversationIds.of(user.id, peerId), new MessageListener() {
+            @Override
+            public void onMessages(List<MessageChange> changes) {
+                long start = System.nanoTime();
+                PhaseStats current = stats.get();
+                current.callbacks.increment();
+                for (MessageChange change : changes) {
+                    ChatMessage message = change.message;
+                    if (change.type != MessageChange.Type.ADDED || user.id.equals(message.senderId)
+                            || message.message == null || !message.message.startsWith(PREFIX)) {
+                        continue;
+                    }
+                    long sentAt = Long.parseLong(message.message.substring(PREFIX.length()));
+                    if (sentAt >= current.startNanos) {
+                        current.sendToReceiveNanos.record(start - sentAt);
+                        current.delivered.increment();
+                    }
+                }
+                current.listenerCallbackNanos.record(System.nanoTime() - start);
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                stats.get().failed.increment();
+            }
+        }));
+    }
+
+    /**
+     * Sends to the open conversations in turn at the given rate until the deadline.
+     * Sends are paced against a fixed schedule, so a slow backend does not lower the offered load.
+     */
+    void sendUntil(double messagesPerSecond, long deadlineNanos) throws InterruptedException {
+        long intervalNanos = (long) (1e9 / messagesPerSecond);
+        long next = System.nanoTime() + (long) (Math.random() * intervalNanos);
+        int turn = 0;
+        while (next < deadlineNanos) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            send(peerIds.get(turn++ % peerIds.size()));
+            next += intervalNanos;
+        }
+    }
+
+    private void send(String peerId) {
+        PhaseStats current = stats.get();
+        long sentAt = System.nanoTime();
+        ChatMessage message = new ChatMessage();
+        message.senderId = user.id;
+        message.receiverId = peerId;
+        message.message = PREFIX + sentAt;
+        current.sent.increment();
+        backend.sendMessage(message, new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                current.sendToAckNanos.record(System.nanoTime() - sentAt);
+                current.acked.increment();
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                current.failed.increment();
+            }
+        });
+    }
+
+    void close() {
+        for (Registration registration : registrations) {
+            registration.remove();
+        }
+    }
+
+    private static <T> T await(Consumer<Callback<T>> call) throws Exception {
+        return BlockingCalls.await(call, 30, TimeUnit.SECONDS);
+    }
+}
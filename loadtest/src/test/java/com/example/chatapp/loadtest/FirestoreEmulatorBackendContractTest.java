@@ -0,0 +1,38 @@
+package com.example.chatapp.loadtest;
+
+import static org.junit.Assume.assumeTrue;
+
+import com.example.chatapp.backend.ChatBackend;
+import com.example.chatapp.backend.ChatBackendContract;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+
+import org.junit.After;
+
+/**
+ * Runs the ChatBackend contract against the Firestore emulator, with the same queries as the app.
+ * Skipped unless FIRESTORE_EMULATOR_HOST is set, e.g. by `firebase emulators:exec`.
+ */
+public class FirestoreEmulatorBackendContractTest extends ChatBackendContract {
+
+    private Firestore database;
+
+    @Override
+    protected ChatBackend createBackend() {
+        String host = System.getenv("FIRESTORE_EMULATOR_HOST");
+        assumeTrue("FIRESTORE_EMULATOR_HOST is not set", host != null && !host.isEmpty());
+        database = FirestoreOptions.getDefaultInstance().toBuilder()
+                .setProjectId("demo-chatapp-contract")
+                .setEmulatorHost(host)
+                .build()
+                .getService();
+        return new FirestoreEmulatorBackend(database);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (database != null) {
+            database.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+application {
+    mainClass.set("com.example.chatapp.migrator.ChatMigrator")
+}
+
+dependencies {
+    implementation(project(":core"))
+    implementation(libs.google.cloud.firestore)
+    testImplementation(libs.junit)
+}
+
+tasks.register<JavaExec>("history") {
+    group = "application"
+    description = "Exports or imports chat history; pass the arguments with --args."
+    mainClass.set("com.example.chatapp.migrator.ChatHistory")
+    classpath = sourceSets["main"].runtimeClasspath
+}
+
+tasks.register<JavaExec>("archive") {
+    group = "application"
+    description = "Compacts old chat history into archive segments; pass the arguments with --args."
+    mainClass.set("com.example.chatapp.migrator.ChatArchiver")
+    classpath = sourceSets["main"].runtimeClasspath
+}
@@ -0,0 +1,140 @@
+/**
+ * The BatchWriter class groups document writes into batched commits of a fixed size
+ * and keeps a bounded number of them in flight. It holds at most one open batch plus the
+ * in-flight commits, so writing any number of documents takes the same memory.
+ * The first failed commit is reported by the next call.
+ */
+package com.example.chatapp.migrator;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class BatchWriter {
+
+    private final Firestore database;
+    private final int batchSize;
+    private final int concurrency;
+
+    /**
+     * One permit per commit that may be in flight.
+     */
+    private final Semaphore inFlight;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong committed = new AtomicLong();
+
+    private WriteBatch batch;
+    private int operations;
+
+    /**
+     * Creates a writer.
+     *
+     * @param database The database to write to.
+     * @param batchSize Operations per commit, at most {@link ChatMigrator#MAX_BATCH_SIZE}.
+     * @param concurrency Commits that may be in flight at the same time.
+     */
+    public BatchWriter(Firestore database, int batchSize, int concurrency) {
+        this.database = database;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        this.inFlight = new Semaphore(concurrency);
+    }
+
+    /**
+     * Adds a write that replaces a document.
+     */
+    public void set(DocumentReference document, Map<String, Object> fields) throws Exception {
+        checkFailure();
+        batch().set(document, fields);
+        added();
+    }
+
+    /**
+     * Adds a write that merges fields into a document.
+     */
+    public void merge(DocumentReference document, Map<String, Object> fields) throws Exception {
+        checkFailure();
+        batch().set(document, fields, SetOptions.merge());
+        added();
+    }
+
+    /**
+     * Commits the open batch and waits until every commit has finished.
+     *
+     * @throws ExecutionException If a commit failed.
+     */
+    public void flush() throws Exception {
+        if (operations > 0) {
+            commit();
+        }
+        // Holding every permit means nothing is in flight any more
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+        checkFailure();
+    }
+
+    /**
+     * Returns the number of operations committed so far.
+     */
+    public long getCommitted() {
+        return committed.get();
+    }
+
+    private WriteBatch batch() {
+        if (batch == null) {
+            batch = database.batch();
+        }
+        return batch;
+    }
+
+    private void added() throws InterruptedException {
+        if (++operations == batchSize) {
+            commit();
+        }
+    }
+
+    /**
+     * Commits the open batch once a concurrency permit is available; the permit is returned when the commit finishes.
+     */
+    private void commit() throws InterruptedException {
+        int size = operations;
+        inFlight.acquire();
+        ApiFuture<List<WriteResult>> future = batch.commit();
+        batch = null;
+        operations = 0;
+        ApiFutures.addCallback(future, new ApiFutureCallback<List<WriteResult>>() {
+            @Override
+            public void onFailure(Throwable throwable) {
+                failure.compareAndSet(null, throwable);
+                inFlight.release();
+            }
+
+            @Override
+            public void onSuccess(List<WriteResult> results) {
+                committed.addAndGet(size);
+                inFlight.release();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void checkFailure() throws ExecutionException {
+        Throwable throwable = failure.get();
+        if (throwable != null) {
+            throw new ExecutionException("A batched write failed", throwable);
+        }
+    }
+}
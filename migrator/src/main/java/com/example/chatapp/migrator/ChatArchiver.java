@@ -0,0 +1,223 @@
+/**
+ * The ChatArchiver class compacts old, immutable history into per-conversation archive segments.
+ * Each segment is a Firestore data bundle of up to --segment-size messages, gzip-compressed
+ * into a single document under conversations/{conversationId}/archive, together with a named
+ * query the client uses to read the messages back from its local cache. Loading a segment
+ * costs one document read instead of one per message; only the tail after the archive stays live.
+ *
+ * Messages older than --older-than-days are archived; the message documents themselves are kept.
+ * Runs are incremental: each one appends segments after the previous archive, and the
+ * conversation document is updated after every segment, so a run can be stopped at any time.
+ *
+ * Usage: ChatArchiver --project id [--emulator-host host:port] [--conversation id]
+ *        [--older-than-days n] [--segment-size n] [--page-size n] [--report-interval s]
+ */
+package com.example.chatapp.migrator;
+
+import com.example.chatapp.modules.Archive;
+import com.example.chatapp.utilities.Constants;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.Blob;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+public final class ChatArchiver {
+
+    /**
+     * Largest compressed segment; a Firestore document holds at most 1 MiB including its field names.
+     */
+    static final int MAX_SEGMENT_BYTES = 1_000_000;
+
+    private final Firestore database;
+    private final Options options;
+
+    public ChatArchiver(Firestore database, Options options) {
+        this.database = database;
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        FirestoreOptions.Builder builder = FirestoreOptions.getDefaultInstance().toBuilder()
+                .setProjectId(options.projectId);
+        if (options.emulatorHost != null) {
+            builder.setEmulatorHost(options.emulatorHost);
+        }
+        // Closed explicitly: Firestore.close() throws InterruptedException, which try-with-resources warns about
+        Firestore database = builder.build().getService();
+        try {
+            new ChatArchiver(database, options).run();
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Archives one conversation, or every conversation one page at a time.
+     *
+     * @return The number of messages archived.
+     * @throws Exception If reading or writing fails.
+     */
+    public long run() throws Exception {
+        Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(options.olderThanDays));
+        long archived = 0;
+        try (ThroughputMeter meter = new ThroughputMeter(System.out, options.reportIntervalSeconds, "archived")) {
+            if (options.conversationId != null) {
+                DocumentSnapshot conversation = conversations().document(options.conversationId).get().get();
+                if (!conversation.exists()) {
+                    throw new IllegalArgumentException("Unknown conversation: " + options.conversationId);
+                }
+                archived += archive(conversation, cutoff, meter);
+            } else {
+                DocumentSnapshot last = null;
+                while (true) {
+                    Query query = conversations().orderBy(FieldPath.documentId()).limit(options.pageSize);
+                    if (last != null) {
+                        query = query.startAfter(last);
+                    }
+                    List<QueryDocumentSnapshot> page = query.get().get().getDocuments();
+                    if (page.isEmpty()) {
+                        break;
+                    }
+                    for (QueryDocumentSnapshot conversation : page) {
+                        archived += archive(conversation, cutoff, meter);
+                    }
+                    last = page.get(page.size() - 1);
+                }
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "archived %d messages older than %s", archived, cutoff));
+        return archived;
+    }
+
+    /**
+     * Appends segments to a conversation's archive until every message up to the cutoff is in one.
+     * Each segment is the result of a page query, which is also the query bundled with it,
+     * so the client reads back exactly the documents of the segment.
+     */
+    private long archive(DocumentSnapshot conversation, Date cutoff, ThroughputMeter meter) throws Exception {
+        String conversationId = conversation.getId();
+        Date archivedUntil = conversation.getDate(Constants.KEY_ARCHIVED_UNTIL);
+        Long archivedSeq = conversation.getLong(Constants.KEY_ARCHIVED_SEQ);
+        Long segments = conversation.getLong(Constants.KEY_ARCHIVE_SEGMENTS);
+        long lastSeq = archivedSeq == null ? 0 : archivedSeq;
+        int segment = segments == null ? 0 : segments.intValue();
+
+        CollectionReference messages = conversation.getReference().collection(Constants.KEY_COLLECTION_MESSAGES);
+        Query pending = messages.whereLessThanOrEqualTo(Constants.KEY_TIMESTAMP, cutoff);
+        if (archivedUntil != null) {
+            // Everything up to the previous cutoff is archived already
+            pending = pending.whereGreaterThan(Constants.KEY_TIMESTAMP, archivedUntil);
+        }
+        pending = pending.orderBy(Constants.KEY_TIMESTAMP).orderBy(FieldPath.documentId()).limit(options.segmentSize);
+
+        long archived = 0;
+        DocumentSnapshot last = null;
+        while (true) {
+            Query query = last == null ? pending : pending.startAfter(last);
+            QuerySnapshot page = query.get().get();
+            if (page.isEmpty()) {
+                return archived;
+            }
+            String queryName = Archive.queryName(conversationId, segment);
+            byte[] compressed = gzip(database.bundleBuilder(queryName).add(queryName, page).build().toByteBuffer());
+            if (compressed.length > MAX_SEGMENT_BYTES) {
+                throw new IllegalStateException(String.format(Locale.ROOT,
+                        "Segment %d of %s is %d bytes compressed; lower --segment-size",
+                        segment, conversationId, compressed.length));
+            }
+            for (QueryDocumentSnapshot document : page) {
+                Long seq = document.getLong(Constants.KEY_SEQ);
+                if (seq != null) {
+                    lastSeq = Math.max(lastSeq, seq);
+                }
+            }
+            last = page.getDocuments().get(page.size() - 1);
+
+            Map<String, Object> fields = new HashMap<>();
+            fields.put(Constants.KEY_BUNDLE, Blob.fromBytes(compressed));
+            fields.put(Constants.KEY_MESSAGE_COUNT, page.size());
+            conversation.getReference().collection(Constants.KEY_COLLECTION_ARCHIVE)
+                    .document(Archive.segmentId(segment)).set(fields).get();
+            segment++;
+
+            // The segment exists before the conversation points at it, so clients never see a missing one
+            Map<String, Object> summary = new HashMap<>();
+            summary.put(Constants.KEY_ARCHIVED_UNTIL, Timestamp.of(last.getDate(Constants.KEY_TIMESTAMP)));
+            summary.put(Constants.KEY_ARCHIVED_SEQ, lastSeq);
+            summary.put(Constants.KEY_ARCHIVE_SEGMENTS, segment);
+            conversation.getReference().update(summary).get();
+
+            archived += page.size();
+            meter.add(page.size());
+        }
+    }
+
+    private CollectionReference conversations() {
+        return database.collection(Constants.KEY_COLLECTION_CONVERSATIONS);
+    }
+
+    private static byte[] gzip(ByteBuffer bundle) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(bundle.remaining() / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            Channels.newChannel(out).write(bundle);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Command-line options of the archiver.
+     */
+    public static final class Options {
+        String projectId = "demo-chatapp";
+        String emulatorHost = System.getenv("FIRESTORE_EMULATOR_HOST");
+        String conversationId;
+        long olderThanDays = 30;
+        int segmentSize = 2000;
+        int pageSize = 500;
+        long reportIntervalSeconds = 5;
+
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--project": options.projectId = value; i++; break;
+                    case "--emulator-host": options.emulatorHost = value; i++; break;
+                    case "--conversation": options.conversationId = value; i++; break;
+                    case "--older-than-days": options.olderThanDays = Long.parseLong(value); i++; break;
+                    case "--segment-size": options.segmentSize = Integer.parseInt(value); i++; break;
+                    case "--page-size": options.pageSize = Integer.parseInt(value); i++; break;
+                    case "--report-interval": options.reportIntervalSeconds = Long.parseLong(value); i++; break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (options.olderThanDays < 1) {
+                // Recent messages can still be edited or unsent, which an archive would not show
+                throw new IllegalArgumentException("--older-than-days must be at least 1");
+            }
+            if (options.segmentSize < 1 || options.pageSize < 1) {
+                throw new IllegalArgumentException("--segment-size and --page-size must be positive");
+            }
+            return options;
+        }
+    }
+}
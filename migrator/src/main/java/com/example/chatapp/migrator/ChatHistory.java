@@ -0,0 +1,361 @@
+/**
+ * The ChatHistory class exports conversations to a history file and imports them back.
+ * A history file is gzip-compressed NDJSON (see HistoryWriter in core): a header per
+ * conversation followed by its messages in timestamp order.
+ *
+ * Export streams each conversation page by page straight into the file, and import replays
+ * the file through batched writes with bounded concurrency, so memory stays flat however
+ * long the history is. Message document IDs are kept, so importing the same file twice
+ * leaves the same documents. Progress is printed at a fixed interval.
+ *
+ * Usage: ChatHistory export|import --file path --project id [--emulator-host host:port]
+ *        [--conversation id] [--page-size n] [--batch-size n] [--concurrency n] [--report-interval s]
+ */
+package com.example.chatapp.migrator;
+
+import com.example.chatapp.backend.FieldSource;
+import com.example.chatapp.backend.MessageMapper;
+import com.example.chatapp.backup.ConversationHeader;
+import com.example.chatapp.backup.HistoryHandler;
+import com.example.chatapp.backup.HistoryReader;
+import com.example.chatapp.backup.HistoryWriter;
+import com.example.chatapp.modules.ChatMessage;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.MessageList;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.SetOptions;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public final class ChatHistory {
+
+    private final Firestore database;
+    private final Options options;
+
+    public ChatHistory(Firestore database, Options options) {
+        this.database = database;
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        FirestoreOptions.Builder builder = FirestoreOptions.getDefaultInstance().toBuilder()
+                .setProjectId(options.projectId);
+        if (options.emulatorHost != null) {
+            builder.setEmulatorHost(options.emulatorHost);
+        }
+        // Closed explicitly: Firestore.close() throws InterruptedException, which try-with-resources warns about
+        Firestore database = builder.build().getService();
+        try {
+            ChatHistory history = new ChatHistory(database, options);
+            if (options.export) {
+                history.export();
+            } else {
+                history.importHistory();
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Writes one conversation, or every conversation, to the history file.
+     * Only the current page of messages is held in memory.
+     *
+     * @return The number of messages exported.
+     * @throws Exception If reading or writing fails.
+     */
+    public long export() throws Exception {
+        try (OutputStream out = Files.newOutputStream(options.file);
+             HistoryWriter writer = new HistoryWriter(out);
+             ThroughputMeter meter = new ThroughputMeter(System.out, options.reportIntervalSeconds, "exported")) {
+            if (options.conversationId != null) {
+                DocumentSnapshot conversation = conversations().document(options.conversationId).get().get();
+                if (!conversation.exists()) {
+                    throw new IllegalArgumentException("Unknown conversation: " + options.conversationId);
+                }
+                exportConversation(conversation, writer, meter);
+            } else {
+                // Conversations are paged too, so their number does not matter either
+                DocumentSnapshot last = null;
+                while (true) {
+                    Query query = conversations().orderBy(FieldPath.documentId()).limit(options.pageSize);
+                    if (last != null) {
+                        query = query.startAfter(last);
+                    }
+                    List<QueryDocumentSnapshot> page = query.get().get().getDocuments();
+                    if (page.isEmpty()) {
+                        break;
+                    }
+                    for (QueryDocumentSnapshot conversation : page) {
+                        exportConversation(conversation, writer, meter);
+                    }
+                    last = page.get(page.size() - 1);
+                }
+            }
+            System.out.println(String.format(Locale.ROOT, "exported %d messages of %d conversations to %s",
+                    writer.getMessageCount(), writer.getConversationCount(), options.file));
+            return writer.getMessageCount();
+        }
+    }
+
+    /**
+     * Writes the header of a conversation, then its messages one page at a time.
+     * Ordering by timestamp and then document ID gives a stable cursor even when timestamps collide.
+     */
+    private void exportConversation(DocumentSnapshot conversation, HistoryWriter writer, ThroughputMeter meter)
+            throws Exception {
+        ConversationHeader header = new ConversationHeader();
+        header.id = conversation.getId();
+        List<?> participants = (List<?>) conversation.get(Constants.KEY_PARTICIPANTS);
+        if (participants != null) {
+            for (Object participant : participants) {
+                header.participants.add((String) participant);
+            }
+        }
+        header.groupName = conversation.getString(Constants.KEY_GROUP_NAME);
+        writer.writeConversation(header);
+
+        CollectionReference messages = conversation.getReference().collection(Constants.KEY_COLLECTION_MESSAGES);
+        DocumentSnapshot last = null;
+        while (true) {
+            Query query = messages.orderBy(Constants.KEY_TIMESTAMP)
+                    .orderBy(FieldPath.documentId())
+                    .limit(options.pageSize);
+            if (last != null) {
+                query = query.startAfter(last);
+            }
+            List<QueryDocumentSnapshot> page = query.get().get().getDocuments();
+            if (page.isEmpty()) {
+                return;
+            }
+            for (QueryDocumentSnapshot document : page) {
+                writer.writeMessage(MessageMapper.toChatMessage(header.id, new SnapshotFields(document)));
+            }
+            meter.add(page.size());
+            last = page.get(page.size() - 1);
+        }
+    }
+
+    /**
+     * Replays the history file into the database in batched writes.
+     * Each conversation's summary is updated after its last message, from that message alone,
+     * in a transaction that never moves it back to an older state than the stored one.
+     *
+     * @return The number of messages imported.
+     * @throws Exception If reading or writing fails.
+     */
+    public long importHistory() throws Exception {
+        BatchWriter batchWriter = new BatchWriter(database, options.batchSize, options.concurrency);
+        Importer importer = new Importer(batchWriter);
+        try (InputStream in = Files.newInputStream(options.file);
+             HistoryReader reader = new HistoryReader(in);
+             ThroughputMeter meter = new ThroughputMeter(System.out, options.reportIntervalSeconds, "imported")) {
+            importer.meter = meter;
+            reader.read(importer);
+            importer.finishConversation();
+            batchWriter.flush();
+        }
+        System.out.println(String.format(Locale.ROOT, "imported %d messages of %d conversations from %s",
+                importer.messages, importer.conversations, options.file));
+        return importer.messages;
+    }
+
+    /**
+     * Turns history records into writes. Only the current conversation's last message is remembered.
+     */
+    private final class Importer implements HistoryHandler {
+
+        private final BatchWriter batchWriter;
+        private ThroughputMeter meter;
+        private DocumentReference conversation;
+        private ChatMessage lastMessage;
+        private long lastSeq;
+        private long conversations;
+        private long messages;
+
+        Importer(BatchWriter batchWriter) {
+            this.batchWriter = batchWriter;
+        }
+
+        @Override
+        public void onConversation(ConversationHeader header) throws Exception {
+            finishConversation();
+            conversation = conversations().document(header.id);
+            Map<String, Object> fields = new HashMap<>();
+            fields.put(Constants.KEY_PARTICIPANTS, header.participants);
+            if (header.groupName != null) {
+                fields.put(Constants.KEY_GROUP_NAME, header.groupName);
+            }
+            batchWriter.merge(conversation, fields);
+            conversations++;
+        }
+
+        @Override
+        public void onMessage(ChatMessage message) throws Exception {
+            Map<String, Object> fields = new HashMap<>();
+            fields.put(Constants.KEY_SENDER_ID, message.senderId);
+            if (message.receiverId != null) {
+                fields.put(Constants.KEY_RECEIVER_ID, message.receiverId);
+            }
+            fields.put(Constants.KEY_MESSAGE, message.message);
+            fields.put(Constants.KEY_TIMESTAMP, timestamp(message.dateObject));
+            if (message.seq != 0) {
+                fields.put(Constants.KEY_SEQ, message.seq);
+            }
+            if (message.editedAt != null) {
+                fields.put(Constants.KEY_EDITED_AT, timestamp(message.editedAt));
+            }
+            if (message.deletedAt != null) {
+                fields.put(Constants.KEY_DELETED_AT, timestamp(message.deletedAt));
+                // Tombstones keep expiring on schedule
+                fields.put(Constants.KEY_EXPIRES_AT, timestamp(
+                        new Date(message.deletedAt.getTime() + MessageList.TOMBSTONE_RETENTION_MILLIS)));
+            }
+            batchWriter.set(conversation.collection(Constants.KEY_COLLECTION_MESSAGES).document(message.id), fields);
+            lastMessage = message;
+            lastSeq = Math.max(lastSeq, message.seq);
+            messages++;
+            meter.add(1);
+        }
+
+        /**
+         * Updates the summary of the current conversation from its last message, in a transaction.
+         * The conversation may have moved on since the export: its last sequence number only moves
+         * forward, so new sends never reuse a number, and a newer last message is kept. One round
+         * trip per conversation, which the message writes of the conversation outweigh.
+         */
+        void finishConversation() throws Exception {
+            if (conversation == null || lastMessage == null) {
+                return;
+            }
+            DocumentReference reference = conversation;
+            ChatMessage imported = lastMessage;
+            long importedSeq = lastSeq;
+            database.runTransaction(transaction -> {
+                DocumentSnapshot stored = transaction.get(reference).get();
+                Map<String, Object> summary = new HashMap<>();
+                Long storedSeq = stored.getLong(Constants.KEY_LAST_SEQ);
+                if (importedSeq > (storedSeq == null ? 0 : storedSeq)) {
+                    summary.put(Constants.KEY_LAST_SEQ, importedSeq);
+                }
+                Date storedDate = stored.getDate(Constants.KEY_TIMESTAMP);
+                if (storedDate == null || (imported.dateObject != null && imported.dateObject.after(storedDate))) {
+                    summary.put(Constants.KEY_LAST_MESSAGE, imported.message);
+                    summary.put(Constants.KEY_LAST_SENDER_ID, imported.senderId);
+                    summary.put(Constants.KEY_TIMESTAMP, timestamp(imported.dateObject));
+                }
+                if (!summary.isEmpty()) {
+                    transaction.set(reference, summary, SetOptions.merge());
+                }
+                return null;
+            }).get();
+            lastMessage = null;
+            lastSeq = 0;
+        }
+    }
+
+    private CollectionReference conversations() {
+        return database.collection(Constants.KEY_COLLECTION_CONVERSATIONS);
+    }
+
+    private static Timestamp timestamp(Date date) {
+        return date == null ? null : Timestamp.of(date);
+    }
+
+    /**
+     * Exposes the fields of a server-side document snapshot to the shared message mapper.
+     */
+    private static final class SnapshotFields implements FieldSource {
+
+        private final DocumentSnapshot document;
+
+        SnapshotFields(DocumentSnapshot document) {
+            this.document = document;
+        }
+
+        @Override
+        public String getId() {
+            return document.getId();
+        }
+
+        @Override
+        public String getString(String key) {
+            return document.getString(key);
+        }
+
+        @Override
+        public Date getDate(String key) {
+            return document.getDate(key);
+        }
+
+        @Override
+        public Long getLong(String key) {
+            return document.getLong(key);
+        }
+    }
+
+    /**
+     * Command-line options of the history tool.
+     */
+    public static final class Options {
+        boolean export;
+        Path file;
+        String projectId = "demo-chatapp";
+        String emulatorHost = System.getenv("FIRESTORE_EMULATOR_HOST");
+        String conversationId;
+        int pageSize = 1000;
+        int batchSize = ChatMigrator.MAX_BATCH_SIZE;
+        int concurrency = 4;
+        long reportIntervalSeconds = 5;
+
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            if (args.length == 0 || !(args[0].equals("export") || args[0].equals("import"))) {
+                throw new IllegalArgumentException("The first argument must be export or import");
+            }
+            options.export = args[0].equals("export");
+            for (int i = 1; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--file": options.file = Paths.get(value); i++; break;
+                    case "--project": options.projectId = value; i++; break;
+                    case "--emulator-host": options.emulatorHost = value; i++; break;
+                    case "--conversation": options.conversationId = value; i++; break;
+                    case "--page-size": options.pageSize = Integer.parseInt(value); i++; break;
+                    case "--batch-size": options.batchSize = Integer.parseInt(value); i++; break;
+                    case "--concurrency": options.concurrency = Integer.parseInt(value); i++; break;
+                    case "--report-interval": options.reportIntervalSeconds = Long.parseLong(value); i++; break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (options.file == null) {
+                throw new IllegalArgumentException("--file is required");
+            }
+            if (options.batchSize < 1 || options.batchSize > ChatMigrator.MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("--batch-size must be between 1 and " + ChatMigrator.MAX_BATCH_SIZE);
+            }
+            if (options.pageSize < 1 || options.concurrency < 1) {
+                throw new IllegalArgumentException("--page-size and --concurrency must be positive");
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/**
+ * The ChatMigrator class copies the legacy flat chat collection into the
+ * per-conversation layout (conversations/{conversationId}/messages).
+ * It streams the source in document ID order one page at a time, so legacy documents
+ * without a timestamp are copied too, writes each page in batches with bounded
+ * concurrency, and checkpoints after every committed page so it can be killed and
+ * resumed at any time.
+ *
+ * Usage: ChatMigrator --project <id> [--emulator-host host:port] [--checkpoint file]
+ *        [--page-size n] [--batch-size n] [--concurrency n] [--max-pages n]
+ */
+package com.example.chatapp.migrator;
+
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.ConversationIds;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+public final class ChatMigrator {
+
+    /**
+     * Firestore limits a single batched write to this many operations.
+     */
+    public static final int MAX_BATCH_SIZE = 500;
+
+    private final Firestore database;
+    private final Options options;
+
+    /**
+     * Limits the number of batches that are committing at the same time.
+     */
+    private final Semaphore inFlight;
+
+    public ChatMigrator(Firestore database, Options options) {
+        this.database = database;
+        this.options = options;
+        this.inFlight = new Semaphore(options.concurrency);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        FirestoreOptions.Builder builder = FirestoreOptions.getDefaultInstance().toBuilder()
+                .setProjectId(options.projectId);
+        if (options.emulatorHost != null) {
+            builder.setEmulatorHost(options.emulatorHost);
+        }
+        // Closed explicitly: Firestore.close() throws InterruptedException, which try-with-resources warns about
+        Firestore database = builder.build().getService();
+        try {
+            Checkpoint result = new ChatMigrator(database, options).run();
+            System.out.println(String.format(Locale.ROOT, "done: %d migrated, %d skipped",
+                    result.getMigrated(), result.getSkipped()));
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Runs the migration from the stored checkpoint until the source is exhausted
+     * or the configured page limit is reached.
+     *
+     * @return The checkpoint after the last committed page.
+     * @throws Exception If reading, writing or checkpointing fails.
+     */
+    public Checkpoint run() throws Exception {
+        Checkpoint checkpoint = Checkpoint.load(options.checkpointFile);
+        if (checkpoint.isStarted()) {
+            System.out.println(String.format(Locale.ROOT, "resuming after %s (%d already migrated)",
+                    checkpoint.getLastDocumentId(), checkpoint.getMigrated()));
+        }
+        try (ThroughputMeter meter = new ThroughputMeter(System.out, options.reportIntervalSeconds)) {
+            int pages = 0;
+            while (options.maxPages <= 0 || pages < options.maxPages) {
+                List<QueryDocumentSnapshot> page = nextPage(checkpoint).get().getDocuments();
+                if (page.isEmpty()) {
+                    break;
+                }
+                long migrated = migratePage(page);
+                meter.add(migrated);
+
+                QueryDocumentSnapshot last = page.get(page.size() - 1);
+                checkpoint = checkpoint.advance(last.getId(), migrated, page.size() - migrated);
+                checkpoint.save(options.checkpointFile);
+                pages++;
+            }
+            System.out.println(String.format(Locale.ROOT, "throughput: %.0f docs/sec", meter.overallRate()));
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Builds the query for the page following the checkpoint.
+     * Ordering by document ID alone gives a stable cursor that every document has; ordering by
+     * timestamp would silently leave out the legacy documents that lack one.
+     */
+    private ApiFuture<QuerySnapshot> nextPage(Checkpoint checkpoint) {
+        Query query = database.collection(options.sourceCollection)
+                .orderBy(FieldPath.documentId())
+                .limit(options.pageSize);
+        if (checkpoint.isStarted()) {
+            query = query.startAfter(checkpoint.getLastDocumentId());
+        }
+        return query.get();
+    }
+
+    /**
+     * Copies one page into the target layout and waits until every batch has committed.
+     * Target documents reuse the source document ID, so replaying a page after a crash is idempotent.
+     *
+     * @return The number of source documents migrated from this page.
+     */
+    private long migratePage(List<QueryDocumentSnapshot> page) throws Exception {
+        List<ApiFuture<List<WriteResult>>> commits = new ArrayList<>();
+        Map<String, QueryDocumentSnapshot> newest = new LinkedHashMap<>();
+        WriteBatch batch = database.batch();
+        int operations = 0;
+        long migrated = 0;
+
+        for (QueryDocumentSnapshot document : page) {
+            String senderId = document.getString(Constants.KEY_SENDER_ID);
+            String receiverId = document.getString(Constants.KEY_RECEIVER_ID);
+            if (senderId == null || receiverId == null) {
+                continue;
+            }
+            String conversationId = ConversationIds.of(senderId, receiverId);
+            batch.set(database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                    .document(conversationId)
+                    .collection(Constants.KEY_COLLECTION_MESSAGES)
+                    .document(document.getId()), document.getData());
+            migrated++;
+            QueryDocumentSnapshot current = newest.get(conversationId);
+            if (current == null || isNewer(document, current)) {
+                newest.put(conversationId, document);
+            }
+
+            if (++operations == options.batchSize) {
+                commits.add(commit(batch));
+                batch = database.batch();
+                operations = 0;
+            }
+        }
+        for (Map.Entry<String, Map<String, Object>> summary : newerSummaries(newest).entrySet()) {
+            batch.set(database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document(summary.getKey()),
+                    summary.getValue(), SetOptions.merge());
+            if (++operations == options.batchSize) {
+                commits.add(commit(batch));
+                batch = database.batch();
+                operations = 0;
+            }
+        }
+        if (operations > 0) {
+            commits.add(commit(batch));
+        }
+        ApiFutures.allAsList(commits).get();
+        return migrated;
+    }
+
+    /**
+     * Returns the summaries of the conversations whose newest message in this page is newer than
+     * the stored summary. Pages follow document IDs rather than time, so an earlier page or the
+     * app may already have written a newer one, which must not be replaced by an older message.
+     *
+     * @param newest The newest message of the page per conversation ID.
+     */
+    private Map<String, Map<String, Object>> newerSummaries(Map<String, QueryDocumentSnapshot> newest)
+            throws Exception {
+        Map<String, Map<String, Object>> summaries = new LinkedHashMap<>();
+        if (newest.isEmpty()) {
+            return summaries;
+        }
+        List<DocumentReference> references = new ArrayList<>();
+        for (String conversationId : newest.keySet()) {
+            references.add(database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document(conversationId));
+        }
+        for (DocumentSnapshot stored : database.getAll(references.toArray(new DocumentReference[0])).get()) {
+            QueryDocumentSnapshot document = newest.get(stored.getId());
+            Timestamp storedTimestamp = stored.getTimestamp(Constants.KEY_TIMESTAMP);
+            Timestamp timestamp = document.getTimestamp(Constants.KEY_TIMESTAMP);
+            String senderId = document.getString(Constants.KEY_SENDER_ID);
+            String receiverId = document.getString(Constants.KEY_RECEIVER_ID);
+            Map<String, Object> summary = new HashMap<>();
+            summary.put(Constants.KEY_PARTICIPANTS, Arrays.asList(senderId, receiverId));
+            if (timestamp != null && (storedTimestamp == null || timestamp.compareTo(storedTimestamp) > 0)) {
+                summary.put(Constants.KEY_LAST_MESSAGE, document.getString(Constants.KEY_MESSAGE));
+                summary.put(Constants.KEY_LAST_SENDER_ID, senderId);
+                summary.put(Constants.KEY_TIMESTAMP, timestamp);
+            } else if (stored.exists()) {
+                continue; // The stored summary is as new or newer, or this page has no dated message
+            }
+            summaries.put(stored.getId(), summary);
+        }
+        return summaries;
+    }
+
+    /**
+     * Returns whether a message is newer than another; messages without a timestamp are the oldest.
+     */
+    private static boolean isNewer(QueryDocumentSnapshot document, QueryDocumentSnapshot than) {
+        Timestamp timestamp = document.getTimestamp(Constants.KEY_TIMESTAMP);
+        Timestamp thanTimestamp = than.getTimestamp(Constants.KEY_TIMESTAMP);
+        return timestamp != null && (thanTimestamp == null || timestamp.compareTo(thanTimestamp) > 0);
+    }
+
+    /**
+     * Commits a batch once a concurrency permit is available; the permit is returned when the commit finishes.
+     */
+    private ApiFuture<List<WriteResult>> commit(WriteBatch batch) throws InterruptedException {
+        inFlight.acquire();
+        ApiFuture<List<WriteResult>> future = batch.commit();
+        ApiFutures.addCallback(future, new ApiFutureCallback<List<WriteResult>>() {
+            @Override
+            public void onFailure(Throwable throwable) {
+                inFlight.release();
+            }
+
+            @Override
+            public void onSuccess(List<WriteResult> results) {
+                inFlight.release();
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    /**
+     * Command-line options of the migrator.
+     */
+    public static final class Options {
+        String projectId = "demo-chatapp";
+        String emulatorHost = System.getenv("FIRESTORE_EMULATOR_HOST");
+        String sourceCollection = Constants.KEY_COLLECTION_CHAT;
+        Path checkpointFile = Paths.get("chat-migration.checkpoint");
+        int pageSize = 2000;
+        int batchSize = MAX_BATCH_SIZE;
+        int concurrency = 4;
+        int maxPages = 0;
+        long reportIntervalSeconds = 5;
+
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--project": options.projectId = value; i++; break;
+                    case "--emulator-host": options.emulatorHost = value; i++; break;
+                    case "--source": options.sourceCollection = value; i++; break;
+                    case "--checkpoint": options.checkpointFile = Paths.get(value); i++; break;
+                    case "--page-size": options.pageSize = Integer.parseInt(value); i++; break;
+                    case "--batch-size": options.batchSize = Integer.parseInt(value); i++; break;
+                    case "--concurrency": options.concurrency = Integer.parseInt(value); i++; break;
+                    case "--max-pages": options.maxPages = Integer.parseInt(value); i++; break;
+                    case "--report-interval": options.reportIntervalSeconds = Long.parseLong(value); i++; break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (options.batchSize < 1 || options.batchSize > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("--batch-size must be between 1 and " + MAX_BATCH_SIZE);
+            }
+            if (options.pageSize < 1 || options.concurrency < 1) {
+                throw new IllegalArgumentException("--page-size and --concurrency must be positive");
+            }
+            return options;
+        }
+    }
+}
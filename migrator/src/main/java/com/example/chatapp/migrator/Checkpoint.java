@@ -0,0 +1,122 @@
+/**
+ * The Checkpoint class records how far a migration has progressed.
+ * It is rewritten atomically after every fully committed page, so a killed
+ * migration resumes from the last page boundary instead of starting over.
+ */
+package com.example.chatapp.migrator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+public final class Checkpoint {
+
+    /**
+     * Key written by earlier versions, which paged in timestamp order; their cursor cannot be resumed.
+     */
+    private static final String KEY_LEGACY_SECONDS = "lastTimestampSeconds";
+    private static final String KEY_DOCUMENT_ID = "lastDocumentId";
+    private static final String KEY_MIGRATED = "migrated";
+    private static final String KEY_SKIPPED = "skipped";
+
+    /**
+     * ID of the last migrated source document, or null when nothing has been migrated yet.
+     */
+    private final String lastDocumentId;
+
+    /**
+     * Number of source documents copied to the target layout so far.
+     */
+    private final long migrated;
+
+    /**
+     * Number of source documents skipped because they lacked a sender or receiver.
+     */
+    private final long skipped;
+
+    public Checkpoint(String lastDocumentId, long migrated, long skipped) {
+        this.lastDocumentId = lastDocumentId;
+        this.migrated = migrated;
+        this.skipped = skipped;
+    }
+
+    /**
+     * Returns the checkpoint of a migration that has not started yet.
+     */
+    public static Checkpoint empty() {
+        return new Checkpoint(null, 0, 0);
+    }
+
+    /**
+     * Loads a checkpoint from disk, or returns an empty one when the file does not exist.
+     *
+     * @param file The checkpoint file.
+     * @return The stored checkpoint.
+     * @throws IOException If the file exists but cannot be read, or was written by a timestamp-ordered run.
+     */
+    public static Checkpoint load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return empty();
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        if (properties.containsKey(KEY_LEGACY_SECONDS)) {
+            throw new IOException(file + " was written by a timestamp-ordered run; delete it to start over,"
+                    + " which is safe because copying is idempotent");
+        }
+        return new Checkpoint(properties.getProperty(KEY_DOCUMENT_ID),
+                Long.parseLong(properties.getProperty(KEY_MIGRATED, "0")),
+                Long.parseLong(properties.getProperty(KEY_SKIPPED, "0")));
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file and atomically moves it into place,
+     * so a crash never leaves a half-written checkpoint behind.
+     *
+     * @param file The checkpoint file.
+     * @throws IOException If the checkpoint cannot be written.
+     */
+    public void save(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (lastDocumentId != null) {
+            properties.setProperty(KEY_DOCUMENT_ID, lastDocumentId);
+        }
+        properties.setProperty(KEY_MIGRATED, Long.toString(migrated));
+        properties.setProperty(KEY_SKIPPED, Long.toString(skipped));
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            properties.store(out, "chat migration checkpoint");
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns a checkpoint advanced past another committed page.
+     */
+    public Checkpoint advance(String documentId, long pageMigrated, long pageSkipped) {
+        return new Checkpoint(documentId, migrated + pageMigrated, skipped + pageSkipped);
+    }
+
+    public boolean isStarted() {
+        return lastDocumentId != null;
+    }
+
+    public String getLastDocumentId() {
+        return lastDocumentId;
+    }
+
+    public long getMigrated() {
+        return migrated;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+}
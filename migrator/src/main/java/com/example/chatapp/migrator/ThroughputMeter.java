@@ -0,0 +1,84 @@
+/**
+ * The ThroughputMeter class counts processed documents (migrated, exported or imported)
+ * and reports docs/sec, both for the most recent interval and for the whole run.
+ */
+package com.example.chatapp.migrator;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class ThroughputMeter implements AutoCloseable {
+
+    private final AtomicLong documents = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private final PrintStream out;
+    private final String verb;
+    private final ScheduledExecutorService reporter;
+
+    private long lastDocuments;
+    private long lastNanos = startNanos;
+
+    /**
+     * Starts a meter that prints a progress line every interval.
+     *
+     * @param out The stream progress lines are printed to.
+     * @param intervalSeconds Seconds between two progress lines.
+     */
+    public ThroughputMeter(PrintStream out, long intervalSeconds) {
+        this(out, intervalSeconds, "migrated");
+    }
+
+    /**
+     * Starts a meter that prints a progress line every interval.
+     *
+     * @param out The stream progress lines are printed to.
+     * @param intervalSeconds Seconds between two progress lines.
+     * @param verb What happened to the documents, e.g. "exported", as printed in progress lines.
+     */
+    public ThroughputMeter(PrintStream out, long intervalSeconds, String verb) {
+        this.out = out;
+        this.verb = verb;
+        this.reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "throughput-meter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Records documents that have been processed, e.g. committed to the target layout.
+     */
+    public void add(long count) {
+        documents.addAndGet(count);
+    }
+
+    /**
+     * Returns the average throughput since the meter was started.
+     */
+    public double overallRate() {
+        return rate(documents.get(), System.nanoTime() - startNanos);
+    }
+
+    private synchronized void report() {
+        long now = System.nanoTime();
+        long total = documents.get();
+        out.println(String.format(Locale.ROOT, "%s %d docs (%.0f docs/sec, overall %.0f docs/sec)",
+                verb, total, rate(total - lastDocuments, now - lastNanos), rate(total, now - startNanos)));
+        lastDocuments = total;
+        lastNanos = now;
+    }
+
+    private static double rate(long count, long nanos) {
+        return nanos <= 0 ? 0 : count * 1_000_000_000.0 / nanos;
+    }
+
+    @Override
+    public void close() {
+        reporter.shutdownNow();
+    }
+}
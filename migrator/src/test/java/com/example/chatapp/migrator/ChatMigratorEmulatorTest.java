@@ -0,0 +1,95 @@
+package com.example.chatapp.migrator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.ConversationIds;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import com.google.cloud.firestore.WriteBatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs the migrator against the Firestore emulator.
+ * Skipped unless FIRESTORE_EMULATOR_HOST is set, e.g. by `firebase emulators:exec`.
+ */
+public class ChatMigratorEmulatorTest {
+
+    private static final int MESSAGES = 1200;
+
+    private Firestore database;
+    private Path checkpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        String host = System.getenv("FIRESTORE_EMULATOR_HOST");
+        assumeTrue("FIRESTORE_EMULATOR_HOST is not set", host != null && !host.isEmpty());
+        database = FirestoreOptions.getDefaultInstance().toBuilder()
+                .setProjectId("demo-chatapp-migrator")
+                .setEmulatorHost(host)
+                .build()
+                .getService();
+        checkpoint = Files.createTempFile("chat-migration", ".checkpoint");
+        Files.delete(checkpoint);
+
+        WriteBatch batch = database.batch();
+        for (int i = 0; i < MESSAGES; i++) {
+            Map<String, Object> message = new HashMap<>();
+            message.put(Constants.KEY_SENDER_ID, i % 2 == 0 ? "alice" : "bob");
+            message.put(Constants.KEY_RECEIVER_ID, i % 2 == 0 ? "bob" : "alice");
+            message.put(Constants.KEY_MESSAGE, "message " + i);
+            message.put(Constants.KEY_TIMESTAMP, new Date(1_700_000_000_000L + i));
+            batch.set(database.collection(Constants.KEY_COLLECTION_CHAT).document("m" + i), message);
+            if ((i + 1) % ChatMigrator.MAX_BATCH_SIZE == 0) {
+                batch.commit().get();
+                batch = database.batch();
+            }
+        }
+        // Written before messages had a timestamp
+        Map<String, Object> undated = new HashMap<>();
+        undated.put(Constants.KEY_SENDER_ID, "alice");
+        undated.put(Constants.KEY_RECEIVER_ID, "bob");
+        undated.put(Constants.KEY_MESSAGE, "undated");
+        batch.set(database.collection(Constants.KEY_COLLECTION_CHAT).document("legacy"), undated);
+        batch.commit().get();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (database != null) {
+            database.close();
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+
+    @Test
+    public void resumesFromCheckpointAfterInterruption() throws Exception {
+        // Stop after two pages to simulate a killed run, then resume from the checkpoint
+        Checkpoint partial = new ChatMigrator(database, ChatMigrator.Options.parse(new String[]{
+                "--checkpoint", checkpoint.toString(), "--page-size", "300", "--max-pages", "2"})).run();
+        assertEquals(600, partial.getMigrated());
+
+        Checkpoint done = new ChatMigrator(database, ChatMigrator.Options.parse(new String[]{
+                "--checkpoint", checkpoint.toString(), "--page-size", "300"})).run();
+        assertEquals(MESSAGES + 1, done.getMigrated()); // The undated message included
+        assertEquals(0, done.getSkipped());
+
+        DocumentReference conversation = database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                .document(ConversationIds.of("alice", "bob"));
+        int migrated = conversation.collection(Constants.KEY_COLLECTION_MESSAGES).get().get().size();
+        assertEquals(MESSAGES + 1, migrated);
+        // Pages follow document IDs, where m999 comes after m1199; the summary still shows the newest message
+        assertEquals("message " + (MESSAGES - 1), conversation.get().get().getString(Constants.KEY_LAST_MESSAGE));
+    }
+}
@@ -21,3 +21,8 @@ dependencyResolutionManagement {
 
 rootProject.name = "ChatApp"
 include(":app")
+include(":core")
+include(":migrator")
+include(":loadtest")
+include(":benchmarks")
+include(":gateway")